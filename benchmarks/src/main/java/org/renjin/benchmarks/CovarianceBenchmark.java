@@ -0,0 +1,78 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.AtomicVector;
+import org.renjin.sexp.Null;
+import org.renjin.sexp.SEXP;
+import org.renjin.stats.internals.CovarianceCalculator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Pearson and Kendall correlations of the columns of a wide matrix, and the
+ * pairwise Spearman correlations of a matrix with missing values, computed on a single thread
+ * or in parallel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CovarianceBenchmark {
+
+  @Param({"50", "500"})
+  public int numColumns;
+
+  @Param({"true", "false"})
+  public boolean parallel;
+
+  private Session session;
+  private long threshold;
+  private AtomicVector x;
+  private AtomicVector xHead;
+  private AtomicVector y;
+
+  @Setup
+  public void setup() {
+    threshold = parallel ? 0 : Long.MAX_VALUE;
+    session = new SessionBuilder().build();
+    session.getTopLevelContext().evaluate(RParser.parseSource(
+        "x <- matrix(sin(1:(2000 * " + numColumns + ")) * 1000, 2000)\n" +
+        "y <- x\n" +
+        "y[seq(1, length(y), by = 997)] <- NA\n"));
+    x = evaluate("x");
+    xHead = evaluate("x[1:500, ]");
+    y = evaluate("y");
+  }
+
+  private AtomicVector evaluate(String source) {
+    return (AtomicVector) session.getTopLevelContext().evaluate(RParser.parseSource(source + "\n"));
+  }
+
+  @Benchmark
+  public SEXP pearson() {
+    return new CovarianceCalculator(x, Null.INSTANCE, CovarianceCalculator.EVERYTHING)
+        .withCorrelation()
+        .withThreshold(threshold)
+        .calculate(session.getTopLevelContext());
+  }
+
+  @Benchmark
+  public SEXP kendall() {
+    return new CovarianceCalculator(xHead, Null.INSTANCE, CovarianceCalculator.EVERYTHING)
+        .withCorrelation()
+        .withKendall(true)
+        .withThreshold(threshold)
+        .calculate(session.getTopLevelContext());
+  }
+
+  @Benchmark
+  public SEXP spearmanPairwise() {
+    return new CovarianceCalculator(y, Null.INSTANCE, CovarianceCalculator.PAIRWISE_COMPLETE_OBS)
+        .withCorrelation()
+        .withRanks()
+        .withThreshold(threshold)
+        .calculate(session.getTopLevelContext());
+  }
+}
@@ -0,0 +1,68 @@
+package org.renjin.benchmarks;
+
+import org.netlib.blas.BLAS;
+import org.openjdk.jmh.annotations.*;
+import org.renjin.primitives.matrix.ParallelDgemm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the products computed by {@code %*%}, {@code crossprod()} and {@code tcrossprod()} on
+ * large square matrices, by the parallel blocked kernel or by the netlib BLAS.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MatrixProductBenchmark {
+
+  @Param({"1000", "2000", "4000", "8000"})
+  public int n;
+
+  @Param({"true", "false"})
+  public boolean parallel;
+
+  private double[] x;
+  private double[] y;
+  private double[] z;
+
+  @Setup
+  public void setup() {
+    x = new double[n * n];
+    y = new double[n * n];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = Math.sin(i + 1);
+      y[i] = Math.cos(i + 1);
+    }
+    z = new double[n * n];
+  }
+
+  @Benchmark
+  public double[] product() {
+    if(parallel) {
+      ParallelDgemm.dgemm(false, false, n, n, n, x, n, y, n, z);
+    } else {
+      BLAS.getInstance().dgemm("N", "N", n, n, n, 1.0, x, n, y, n, 0.0, z, n);
+    }
+    return z;
+  }
+
+  @Benchmark
+  public double[] crossprod() {
+    if(parallel) {
+      ParallelDgemm.dsyrk(true, n, n, x, n, z);
+    } else {
+      BLAS.getInstance().dsyrk("U", "T", n, n, 1.0, x, n, 0.0, z, n);
+    }
+    return z;
+  }
+
+  @Benchmark
+  public double[] tcrossprod() {
+    if(parallel) {
+      ParallelDgemm.dgemm(false, true, n, n, n, x, n, y, n, z);
+    } else {
+      BLAS.getInstance().dgemm("N", "T", n, n, n, 1.0, x, n, y, n, 0.0, z, n);
+    }
+    return z;
+  }
+}
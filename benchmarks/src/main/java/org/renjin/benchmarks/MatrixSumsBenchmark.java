@@ -0,0 +1,76 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.primitives.matrix.MatrixSums;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sums computed by {@code rowSums()}, {@code colSums()} and {@code rowMeans(na.rm = TRUE)}
+ * on large double and integer matrices, on a single thread or in parallel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MatrixSumsBenchmark {
+
+  private static final int LENGTH = 16000000;
+
+  @Param({"100", "4000", "100000"})
+  public int numRows;
+
+  @Param({"double", "integer"})
+  public String type;
+
+  @Param({"true", "false"})
+  public boolean parallel;
+
+  private long threshold;
+  private int numCols;
+  private double[] doubles;
+  private int[] ints;
+
+  @Setup
+  public void setup() {
+    threshold = parallel ? 0 : Long.MAX_VALUE;
+    numCols = LENGTH / numRows;
+    if(type.equals("double")) {
+      doubles = new double[numRows * numCols];
+      for (int i = 0; i < doubles.length; i++) {
+        doubles[i] = Math.sin(i + 1) * 1000;
+      }
+    } else {
+      ints = new int[numRows * numCols];
+      for (int i = 0; i < ints.length; i++) {
+        ints[i] = (int) (Math.sin(i + 1) * 1000);
+      }
+    }
+  }
+
+  @Benchmark
+  public double[] rowSums() {
+    return sums(true, false, false);
+  }
+
+  @Benchmark
+  public double[] colSums() {
+    return sums(false, false, false);
+  }
+
+  @Benchmark
+  public double[] rowMeans() {
+    return sums(true, true, true);
+  }
+
+  private double[] sums(boolean rows, boolean naRm, boolean mean) {
+    if(doubles != null) {
+      return rows ?
+          MatrixSums.rowSums(doubles, numRows, numCols, naRm, mean, threshold) :
+          MatrixSums.columnSums(doubles, numRows, numCols, naRm, mean, threshold);
+    } else {
+      return rows ?
+          MatrixSums.rowSums(ints, numRows, numCols, naRm, mean, threshold) :
+          MatrixSums.columnSums(ints, numRows, numCols, naRm, mean, threshold);
+    }
+  }
+}
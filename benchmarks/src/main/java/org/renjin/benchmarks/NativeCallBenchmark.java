@@ -0,0 +1,57 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.gcc.runtime.DoublePtr;
+import org.renjin.gcc.runtime.IntPtr;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.ExpressionVector;
+import org.renjin.sexp.SEXP;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of calling a trivial routine through {@code .Fortran()}, and a Java
+ * method through {@code .Call()}, as packages do from tight loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NativeCallBenchmark {
+
+  public static class Routines {
+    public static void scale_(DoublePtr x, IntPtr n, DoublePtr factor) {
+      for (int i = 0; i < n.array[0]; i++) {
+        x.array[x.offset + i] *= factor.array[0];
+      }
+    }
+  }
+
+  private Session session;
+  private ExpressionVector fortran;
+  private ExpressionVector call;
+
+  @Setup
+  public void setup() {
+    session = new SessionBuilder().build();
+    session.getTopLevelContext().evaluate(RParser.parseSource(
+        "x <- c(1, 2, 3)\n" +
+        "bins <- c(1L, 2L, 2L)\n" +
+        "counts <- integer(2)\n"));
+    fortran = RParser.parseSource(
+        ".Fortran('scale', x = x, 3L, 2, CLASS = '" + Routines.class.getName() + "')\n");
+    call = RParser.parseSource(
+        ".Call('R_tabulate', bins, 3L, 2L, counts, CLASS = 'org.renjin.base.Base')\n");
+  }
+
+  @Benchmark
+  public SEXP fortran() {
+    return session.getTopLevelContext().evaluate(fortran);
+  }
+
+  @Benchmark
+  public SEXP call() {
+    return session.getTopLevelContext().evaluate(call);
+  }
+}
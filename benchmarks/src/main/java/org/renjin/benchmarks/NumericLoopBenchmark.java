@@ -0,0 +1,80 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.compiler.loop.LoopProfile;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.ExpressionVector;
+import org.renjin.sexp.SEXP;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scalar arithmetic in {@code for} and {@code while} loops, interpreted and compiled
+ * by the loop compiler once they become hot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NumericLoopBenchmark {
+
+  private static final String SETUP =
+      "x <- ((1:10000 * 7919) %% 1013) / 1013\n" +
+      "total <- function(x) {\n" +
+      "  s <- 0\n" +
+      "  for(i in 1:length(x)) {\n" +
+      "    s <- s + x[i] * x[i]\n" +
+      "  }\n" +
+      "  s\n" +
+      "}\n" +
+      "fill <- function(n) {\n" +
+      "  y <- 0\n" +
+      "  for(i in 1:n) {\n" +
+      "    y[i] <- sqrt(i) * 2 - i %% 7\n" +
+      "  }\n" +
+      "  y\n" +
+      "}\n" +
+      "count <- function(n) {\n" +
+      "  i <- 0L\n" +
+      "  k <- 0L\n" +
+      "  while(i < n) {\n" +
+      "    i <- i + 1L\n" +
+      "    if(i %% 3L == 0L && i %% 5L != 0L) k <- k + 1L\n" +
+      "  }\n" +
+      "  k\n" +
+      "}\n";
+
+  @Param({"true", "false"})
+  public boolean compiled;
+
+  private Session session;
+  private ExpressionVector total;
+  private ExpressionVector fill;
+  private ExpressionVector count;
+
+  @Setup
+  public void setup() {
+    LoopProfile.setThreshold(compiled ? 1000 : Integer.MAX_VALUE);
+    session = new SessionBuilder().build();
+    session.getTopLevelContext().evaluate(RParser.parseSource(SETUP));
+    total = RParser.parseSource("total(x)\n");
+    fill = RParser.parseSource("fill(10000)\n");
+    count = RParser.parseSource("count(10000L)\n");
+  }
+
+  @Benchmark
+  public SEXP total() {
+    return session.getTopLevelContext().evaluate(total);
+  }
+
+  @Benchmark
+  public SEXP fill() {
+    return session.getTopLevelContext().evaluate(fill);
+  }
+
+  @Benchmark
+  public SEXP count() {
+    return session.getTopLevelContext().evaluate(count);
+  }
+}
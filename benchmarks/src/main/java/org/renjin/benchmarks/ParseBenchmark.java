@@ -0,0 +1,79 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.ExpressionVector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures parse throughput when many threads parse concurrently, as happens when
+ * many sessions are served from a thread pool. All parsers intern their symbols
+ * into the single, global symbol table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark {
+
+  private static final String SOURCE =
+      "summarize <- function(x, na.rm = FALSE, ...) {\n" +
+      "  if(na.rm) {\n" +
+      "    x <- x[!is.na(x)]\n" +
+      "  }\n" +
+      "  n <- length(x)\n" +
+      "  m <- sum(x) / n\n" +
+      "  v <- sum((x - m)^2) / (n - 1)\n" +
+      "  list(n = n, mean = m, var = v, sd = sqrt(v),\n" +
+      "       range = c(min(x), max(x)), quantiles = quantile(x, c(0.25, 0.5, 0.75)))\n" +
+      "}\n" +
+      "df <- data.frame(id = seq_len(100), value = rnorm(100), group = sample(letters, 100, TRUE))\n" +
+      "stats <- lapply(split(df$value, df$group), summarize, na.rm = TRUE)\n" +
+      "for(g in names(stats)) {\n" +
+      "  cat(sprintf(\"%s: %.3f (%d)\\n\", g, stats[[g]]$mean, stats[[g]]$n))\n" +
+      "}\n";
+
+  private static final AtomicInteger NEXT_THREAD_ID = new AtomicInteger();
+
+  /**
+   * Prefix for names unique to this thread, so that new symbols
+   * are interned alongside lookups of existing ones.
+   */
+  private String prefix;
+  private int iteration;
+
+  @Setup
+  public void setup() {
+    prefix = "t" + NEXT_THREAD_ID.getAndIncrement() + "_";
+  }
+
+  @Benchmark
+  public ExpressionVector parseCommonSymbols() {
+    return RParser.parseSource(SOURCE);
+  }
+
+  @Benchmark
+  public ExpressionVector parseNewSymbols() {
+    String source = prefix + "v" + (iteration++) + " <- " + prefix + "f(x, y)\n";
+    return RParser.parseSource(source);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads = 1; threads <= 8; threads *= 2) {
+      Options options = new OptionsBuilder()
+          .include(ParseBenchmark.class.getSimpleName())
+          .threads(threads)
+          .forks(1)
+          .warmupIterations(5)
+          .measurementIterations(10)
+          .build();
+
+      new Runner(options).run();
+    }
+  }
+}
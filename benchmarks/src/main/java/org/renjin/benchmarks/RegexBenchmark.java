@@ -0,0 +1,46 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.ExpressionVector;
+import org.renjin.sexp.SEXP;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures regular expression substitution and splitting over a large character vector,
+ * where the cost of compiling the pattern should be paid once rather than once per element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RegexBenchmark {
+
+  @Param({"100000"})
+  public int n;
+
+  private Session session;
+  private ExpressionVector gsub;
+  private ExpressionVector strsplit;
+
+  @Setup
+  public void setup() {
+    session = new SessionBuilder().build();
+    session.getTopLevelContext().evaluate(RParser.parseSource(
+        "x <- .Internal(paste(list('id', seq_len(" + n + "), 'value'), '-', NULL))\n"));
+    gsub = RParser.parseSource(".Internal(gsub('[0-9]+', '#', x, FALSE, FALSE, FALSE, FALSE))\n");
+    strsplit = RParser.parseSource(".Internal(strsplit(x, '-', FALSE, FALSE, FALSE))\n");
+  }
+
+  @Benchmark
+  public SEXP gsub() {
+    return session.getTopLevelContext().evaluate(gsub);
+  }
+
+  @Benchmark
+  public SEXP strsplit() {
+    return session.getTopLevelContext().evaluate(strsplit);
+  }
+}
@@ -0,0 +1,85 @@
+package org.renjin.benchmarks;
+
+import com.google.common.base.Strings;
+import org.openjdk.jmh.annotations.*;
+import org.renjin.primitives.text.regex.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the backtracking {@link ExtendedRE} with the linear-time {@link LinearRE} on
+ * typical patterns, and on a pattern which takes the backtracking matcher exponential time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegexEngineBenchmark {
+
+  @Param({"backtracking", "linear"})
+  public String engine;
+
+  private RE identifier;
+  private RE number;
+  private RE pathological;
+
+  private String[] lines;
+  private String as;
+
+  @Setup
+  public void setup() throws RESyntaxException {
+    identifier = compile("^[[:alpha:]][[:alnum:]._]*$");
+    number = compile("([0-9]+)\\.([0-9]+)");
+    pathological = compile("(a|aa)*b");
+
+    lines = new String[1000];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = "record_" + i + " measured " + (i * 31 % 977) + "." + (i % 10) + " units";
+    }
+    as = Strings.repeat("a", 24);
+  }
+
+  private RE compile(String pattern) throws RESyntaxException {
+    REProgram program = new RECompiler().compile(pattern);
+    if (engine.equals("linear")) {
+      return new LinearRE(LinearProgram.compile(program, ExtendedRE.MATCH_NORMAL));
+    } else {
+      return new ExtendedRE(program);
+    }
+  }
+
+  @Benchmark
+  public int grepl() {
+    int count = 0;
+    for (String line : lines) {
+      if (identifier.match(line)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int regexpr() {
+    int sum = 0;
+    for (String line : lines) {
+      if (number.match(line)) {
+        sum += number.getGroupEnd(2) - number.getGroupStart(1);
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public String gsub() {
+    String last = null;
+    for (String line : lines) {
+      last = number.subst(line, "\\2.\\1", RE.REPLACE_BACKREFERENCES);
+    }
+    return last;
+  }
+
+  @Benchmark
+  public boolean pathological() {
+    return pathological.match(as);
+  }
+}
@@ -0,0 +1,78 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.stats.internals.distributions.Normal;
+import org.renjin.stats.internals.distributions.RNGtype;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of uniform and normal random number generation, drawing one
+ * number at a time through {@code unif_rand()} and {@code norm_rand()}, and in bulk into a {@code double[]}.
+ *
+ * <p>Each benchmark thread has its own forked session, and so its own generator: run with {@code -t}
+ * to measure how throughput scales when each thread draws from its own L'Ecuyer-CMRG stream.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RngBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Template {
+    private Session session;
+
+    @Setup
+    public void setup() {
+      session = new SessionBuilder().build();
+    }
+  }
+
+  @Param({"MERSENNE_TWISTER", "LECUYER_CMRG"})
+  public RNGtype kind;
+
+  @Param({"10000"})
+  public int n;
+
+  private Session session;
+  private double[] values;
+
+  @Setup
+  public void setup(Template template) {
+    synchronized (template) {
+      template.session.rng.RNG_kind = kind;
+      session = template.session.fork();
+    }
+    values = new double[n];
+  }
+
+  @Benchmark
+  public double[] runifSingle() {
+    for (int i = 0; i < n; i++) {
+      values[i] = session.rng.unif_rand();
+    }
+    return values;
+  }
+
+  @Benchmark
+  public double[] runifBulk() {
+    session.rng.unif_rand(values, 0, n);
+    return values;
+  }
+
+  @Benchmark
+  public double[] rnormSingle() {
+    for (int i = 0; i < n; i++) {
+      values[i] = Normal.norm_rand(session);
+    }
+    return values;
+  }
+
+  @Benchmark
+  public double[] rnormBulk() {
+    Normal.norm_rand(session, values);
+    return values;
+  }
+}
@@ -0,0 +1,61 @@
+package org.renjin.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.ExpressionVector;
+import org.renjin.sexp.SEXP;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of S3 dispatch in a tight loop, through a generic with
+ * methods for several classes, an inherited method, and a call to NextMethod().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class S3DispatchBenchmark {
+
+  private static final String SETUP =
+      "area <- function(s, ...) UseMethod('area')\n" +
+      "area.default <- function(s, ...) 0\n" +
+      "area.shape <- function(s, ...) 1\n" +
+      "area.square <- function(s, ...) s$side^2\n" +
+      "area.circle <- function(s, ...) pi * s$r^2\n" +
+      "area.unit <- function(s, ...) NextMethod() * s$scale\n" +
+      "shapes <- list(\n" +
+      "  structure(list(side = 2), class = c('square', 'shape')),\n" +
+      "  structure(list(r = 1), class = c('circle', 'shape')),\n" +
+      "  structure(list(), class = c('triangle', 'shape')),\n" +
+      "  structure(list(side = 3, scale = 2), class = c('unit', 'square', 'shape')),\n" +
+      "  42)\n" +
+      "total <- function(n) {\n" +
+      "  sum <- 0\n" +
+      "  for(i in seq_len(n)) {\n" +
+      "    for(s in shapes) {\n" +
+      "      sum <- sum + area(s)\n" +
+      "    }\n" +
+      "  }\n" +
+      "  sum\n" +
+      "}\n";
+
+  @Param({"1000"})
+  public int n;
+
+  private Session session;
+  private ExpressionVector loop;
+
+  @Setup
+  public void setup() {
+    session = new SessionBuilder().build();
+    session.getTopLevelContext().evaluate(RParser.parseSource(SETUP));
+    loop = RParser.parseSource("total(" + n + ")\n");
+  }
+
+  @Benchmark
+  public SEXP dispatch() {
+    return session.getTopLevelContext().evaluate(loop);
+  }
+}
@@ -29,6 +29,14 @@ public class SsaVariable implements Variable {
     return inner;
   }
 
+  /**
+   * @return the version of the variable, where version 0 is the value of the
+   * variable before it is first assigned.
+   */
+  public int getVersion() {
+    return version;
+  }
+
   @Override
   public Object retrieveValue(Context context, Object[] temps) {
     return inner.retrieveValue(context, temps);
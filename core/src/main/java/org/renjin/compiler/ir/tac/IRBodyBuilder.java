@@ -1,5 +1,7 @@
 package org.renjin.compiler.ir.tac;
 
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.renjin.compiler.ir.tac.expressions.*;
@@ -26,10 +28,26 @@ public class IRBodyBuilder {
   
   private IRFunctionTable functionTable;
   private List<IRThunk> thunks = Lists.newArrayList();
+  private Predicate<Symbol> strictBuiltins = Predicates.alwaysFalse();
   
   public IRBodyBuilder(IRFunctionTable functionTable) {
     this.functionTable = functionTable;
   }
+
+  /**
+   * Translates calls to the functions accepted by {@code predicate} to {@link PrimitiveCall}s with
+   * evaluated arguments, rather than to {@link DynamicCall}s with promised arguments.
+   *
+   * <p>This is only valid if the symbols are known to be bound to builtins when the code is run,
+   * which the caller must check.</p>
+   */
+  public void setStrictBuiltins(Predicate<Symbol> predicate) {
+    this.strictBuiltins = predicate;
+  }
+
+  private boolean isStrictBuiltin(SEXP function) {
+    return function instanceof Symbol && strictBuiltins.apply((Symbol) function);
+  }
   
   public IRBody build(SEXP exp) {
     
@@ -98,7 +116,7 @@ public class IRBodyBuilder {
   
   public Expression translateCall(TranslationContext context, FunctionCall call) {
     SEXP function = call.getFunction();
-    if(function instanceof Symbol && ((Symbol) function).isReservedWord()) {
+    if(function instanceof Symbol && ((Symbol) function).isReservedWord() || isStrictBuiltin(function)) {
       return translatePrimitiveCall(context, call);
     } else {
       return new DynamicCall(call, 
@@ -159,7 +177,7 @@ public class IRBodyBuilder {
     } 
 
     
-    if(setter.isReservedWord()) {
+    if(setter.isReservedWord() || isStrictBuiltin(setter)) {
       List<Expression> arguments = makeEvaledArgList(context, getterCall.getArguments());
       arguments.add(simplify( rhs ));
       
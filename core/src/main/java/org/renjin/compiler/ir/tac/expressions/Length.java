@@ -52,12 +52,16 @@ public class Length implements SimpleExpression {
 
   @Override
   public void setChild(int childIndex, Expression child) {
-    throw new UnsupportedOperationException();
+    if(childIndex == 0) {
+      vector = child;
+    } else {
+      throw new IllegalArgumentException("childIndex=" + childIndex);
+    }
   }
 
   @Override
   public SimpleExpression replaceVariable(Variable name, Variable newName) {
-    throw new UnsupportedOperationException();
+    return new Length(vector.replaceVariable(name, newName));
   }
 
   @Override
@@ -0,0 +1,100 @@
+package org.renjin.compiler.loop;
+
+import org.renjin.eval.Context;
+import org.renjin.eval.EvalException;
+import org.renjin.sexp.*;
+
+/**
+ * A loop compiled to JVM bytecode by the {@link LoopCompiler}, specialized for the types of the
+ * variables it reads and for the builtins it calls.
+ *
+ * <p>The compiled code holds all variables in JVM locals, and only assigns them to the environment once
+ * the loop has completed. If the compiled code can't continue, for example because an index is out of
+ * bounds, the environment is left untouched, and the caller must resume the loop in the interpreter
+ * from the iteration at which the compiled loop was entered.</p>
+ */
+public abstract class CompiledLoop {
+
+  private LoopType sequenceType;
+  private Symbol[] inputs;
+  private LoopType[] inputTypes;
+  private boolean[] inputsCopied;
+  private Symbol[] outputs;
+  private Symbol[] functionNames;
+  private Function[] functions;
+
+  /**
+   * Called by the {@link LoopCompiler} once the class has been loaded.
+   *
+   * @param sequenceType the type of the sequence of a {@code for} loop
+   * @param inputs the variables whose values are read by the loop before they are assigned
+   * @param inputTypes the types of the input variables
+   * @param inputsCopied whether each input is copied to an array, and so must not have attributes
+   * @param outputs the variables which may be assigned by the loop
+   * @param functionNames the symbols to which functions are called in the loop
+   * @param functions the builtins to which the symbols must resolve
+   */
+  void init(LoopType sequenceType, Symbol[] inputs, LoopType[] inputTypes, boolean[] inputsCopied,
+            Symbol[] outputs, Symbol[] functionNames, Function[] functions) {
+    this.sequenceType = sequenceType;
+    this.inputs = inputs;
+    this.inputTypes = inputTypes;
+    this.inputsCopied = inputsCopied;
+    this.outputs = outputs;
+    this.functionNames = functionNames;
+    this.functions = functions;
+  }
+
+  /**
+   * Runs the loop to completion, starting at the given iteration.
+   *
+   * @param sequence the sequence of a {@code for} loop, or {@code null} for a {@code while} loop
+   * @param start the zero-based index of the first element of {@code sequence} to assign to the loop variable
+   * @return true if the loop completed, or false if the variables in {@code rho} did not match the types for
+   * which the loop was compiled, or if the loop could not complete, in which case {@code rho} is unchanged.
+   */
+  public boolean execute(Context context, Environment rho, Vector sequence, int start) {
+    if(sequence != null && !sequenceType.matches(sequence)) {
+      return false;
+    }
+    if(rho.isLocked()) {
+      return false;
+    }
+    for (Symbol output : outputs) {
+      if(rho.bindingIsLocked(output)) {
+        return false;
+      }
+    }
+    for (int i = 0; i < functionNames.length; i++) {
+      if(!LoopRuntime.resolvesTo(rho, functionNames[i], functions[i])) {
+        return false;
+      }
+    }
+    SEXP[] values = new SEXP[inputs.length];
+    for (int i = 0; i < inputs.length; i++) {
+      values[i] = LoopRuntime.lookup(rho, inputs[i]);
+      if(values[i] == null || !inputTypes[i].matches(values[i])) {
+        return false;
+      }
+      if(inputsCopied[i] && !values[i].getAttributes().empty()) {
+        return false;
+      }
+    }
+    try {
+      run(context, rho, sequence, start, values);
+      return true;
+    } catch (LoopRuntime.Deoptimization e) {
+      return false;
+    } catch (EvalException e) {
+      // The interpreter will signal the error at the right iteration
+      return false;
+    }
+  }
+
+  /**
+   * Implemented by the generated bytecode.
+   *
+   * @param inputs the values of the input variables, in the order passed to {@link #init}
+   */
+  protected abstract void run(Context context, Environment rho, Vector sequence, int start, SEXP[] inputs);
+}
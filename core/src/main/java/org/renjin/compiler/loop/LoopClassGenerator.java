@@ -0,0 +1,608 @@
+package org.renjin.compiler.loop;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.renjin.compiler.ir.tac.IRBody;
+import org.renjin.compiler.ir.tac.IRLabel;
+import org.renjin.compiler.ir.tac.expressions.*;
+import org.renjin.compiler.ir.tac.statements.*;
+import org.renjin.eval.Context;
+import org.renjin.sexp.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates the subclass of {@link CompiledLoop} for a loop analyzed by the {@link LoopCompiler}
+ */
+class LoopClassGenerator {
+
+  private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+  private static final String RUNTIME = Type.getInternalName(LoopRuntime.class);
+  private static final String DOUBLE_BUFFER = Type.getInternalName(LoopRuntime.DoubleBuffer.class);
+  private static final String INT_BUFFER = Type.getInternalName(LoopRuntime.IntBuffer.class);
+  private static final String DEOPTIMIZATION = Type.getInternalName(LoopRuntime.Deoptimization.class);
+  private static final String VECTOR = Type.getInternalName(Vector.class);
+
+  private static final String VECTOR_DESCRIPTOR = Type.getDescriptor(Vector.class);
+  private static final String SEXP_DESCRIPTOR = Type.getDescriptor(SEXP.class);
+
+  private static final int CONTEXT_SLOT = 1;
+  private static final int RHO_SLOT = 2;
+  private static final int SEQUENCE_SLOT = 3;
+  private static final int START_SLOT = 4;
+  private static final int INPUTS_SLOT = 5;
+
+  /**
+   * Maps comparison operators to the {@link LoopRuntime} methods which implement them
+   */
+  private static final Map<String, String> COMPARISONS = ImmutableMap.<String, String>builder()
+      .put("==", "equal")
+      .put("!=", "notEqual")
+      .put("<", "less")
+      .put("<=", "lessOrEqual")
+      .put(">", "greater")
+      .put(">=", "greaterOrEqual")
+      .build();
+
+  private static final Map<String, String> ARITHMETIC = ImmutableMap.<String, String>builder()
+      .put("+", "plus")
+      .put("-", "minus")
+      .put("*", "multiply")
+      .put("/", "divide")
+      .put("^", "power")
+      .put("%%", "modulus")
+      .put("%/%", "integerDivision")
+      .build();
+
+  private final LoopCompiler compiler;
+  private final IRBody body;
+  private final String className;
+
+  private MethodVisitor mv;
+  private int nextSlot = INPUTS_SLOT + 1;
+  private final Map<LValue, Integer> slots = Maps.newHashMap();
+  private final Map<Symbol, Integer> assignedFlags = Maps.newHashMap();
+  private final Map<Integer, Label> labels = Maps.newHashMap();
+  private int conditionSlot;
+  private Label deoptimize;
+
+  LoopClassGenerator(LoopCompiler compiler) {
+    this.compiler = compiler;
+    this.body = compiler.getBody();
+    this.className = "org/renjin/compiler/loop/Loop" + CLASS_COUNTER.incrementAndGet();
+  }
+
+  static boolean isComparison(String name) {
+    return COMPARISONS.containsKey(name);
+  }
+
+  CompiledLoop generate() {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+      @Override
+      protected String getCommonSuperClass(String type1, String type2) {
+        // Each local has a single type, so this is only needed where
+        // frames merge different types which are never used afterwards
+        return "java/lang/Object";
+      }
+    };
+    cw.visit(V1_6, ACC_PUBLIC + ACC_SUPER, className, null, Type.getInternalName(CompiledLoop.class), null);
+
+    writeConstructor(cw);
+    writeRun(cw);
+
+    cw.visitEnd();
+
+    byte[] classBytes = cw.toByteArray();
+    Class<?> loopClass = new LoopClassLoader().defineClass(className.replace('/', '.'), classBytes);
+    try {
+      return (CompiledLoop) loopClass.newInstance();
+    } catch (Exception e) {
+      throw new IllegalStateException("Could not instantiate compiled loop", e);
+    }
+  }
+
+  private void writeConstructor(ClassWriter cw) {
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(CompiledLoop.class), "<init>", "()V", false);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(1, 1);
+    mv.visitEnd();
+  }
+
+  private void writeRun(ClassWriter cw) {
+    mv = cw.visitMethod(ACC_PROTECTED, "run",
+        Type.getMethodDescriptor(Type.VOID_TYPE,
+            Type.getType(Context.class), Type.getType(Environment.class), Type.getType(Vector.class),
+            Type.INT_TYPE, Type.getType(SEXP[].class)), null, null);
+    mv.visitCode();
+
+    allocateLocals();
+    loadInputs();
+
+    deoptimize = new Label();
+
+    List<Statement> statements = body.getStatements();
+    for (int i = 0; i < statements.size(); i++) {
+      for (IRLabel irLabel : body.getIntructionLabels(i)) {
+        mv.visitLabel(label(irLabel));
+      }
+      writeStatement(i, statements.get(i));
+    }
+
+    mv.visitLabel(deoptimize);
+    mv.visitFieldInsn(GETSTATIC, DEOPTIMIZATION, "INSTANCE", Type.getDescriptor(LoopRuntime.Deoptimization.class));
+    mv.visitInsn(ATHROW);
+
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private Label label(IRLabel irLabel) {
+    Label label = labels.get(irLabel.getIndex());
+    if(label == null) {
+      label = new Label();
+      labels.put(irLabel.getIndex(), label);
+    }
+    return label;
+  }
+
+  /**
+   * Allocates a JVM local for each variable, and initializes it, so that every local is
+   * definitely assigned, even if its variable is not.
+   */
+  private void allocateLocals() {
+    for (Map.Entry<LValue, LoopType> entry : compiler.getVariableTypes().entrySet()) {
+      LValue variable = entry.getKey();
+      LoopType type = entry.getValue();
+      if(isSequence(variable) || type == LoopType.NULL || compiler.isDiscarded(variable)) {
+        continue;
+      }
+      int slot = nextSlot;
+      slots.put(variable, slot);
+      if(type == LoopType.DOUBLE) {
+        nextSlot += 2;
+        mv.visitInsn(DCONST_0);
+        mv.visitVarInsn(DSTORE, slot);
+      } else if(type.isNumericScalar()) {
+        nextSlot++;
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, slot);
+      } else {
+        nextSlot++;
+        mv.visitInsn(ACONST_NULL);
+        mv.visitVarInsn(ASTORE, slot);
+      }
+    }
+    for (Symbol output : compiler.getOutputs()) {
+      assignedFlags.put(output, nextSlot);
+      mv.visitInsn(ICONST_0);
+      mv.visitVarInsn(ISTORE, nextSlot);
+      nextSlot++;
+    }
+    conditionSlot = nextSlot++;
+  }
+
+  private void loadInputs() {
+    int index = 0;
+    for (Symbol input : compiler.getInputs()) {
+      EnvironmentVariable variable = new EnvironmentVariable(input);
+      LoopType type = compiler.getVariableTypes().get(variable);
+      if(type != LoopType.NULL) {
+        mv.visitVarInsn(ALOAD, INPUTS_SLOT);
+        pushInt(index);
+        mv.visitInsn(AALOAD);
+        if(type == LoopType.DOUBLE) {
+          invokeRuntime("unboxDouble", "(" + SEXP_DESCRIPTOR + ")D");
+        } else if(type.isNumericScalar()) {
+          invokeRuntime("unboxInt", "(" + SEXP_DESCRIPTOR + ")I");
+        } else if(compiler.isCopied(input)) {
+          if(type == LoopType.DOUBLE_VECTOR) {
+            invokeRuntime("doubleBuffer", "(" + SEXP_DESCRIPTOR + ")L" + DOUBLE_BUFFER + ";");
+          } else {
+            invokeRuntime("intBuffer", "(" + SEXP_DESCRIPTOR + ")L" + INT_BUFFER + ";");
+          }
+        } else {
+          mv.visitTypeInsn(CHECKCAST, VECTOR);
+        }
+        store(variable, type);
+      }
+      index++;
+    }
+  }
+
+  private void writeStatement(int index, Statement statement) {
+    if(statement instanceof Assignment) {
+      writeAssignment(index, (Assignment) statement);
+
+    } else if(statement instanceof IfStatement) {
+      writeIf((IfStatement) statement);
+
+    } else if(statement instanceof GotoStatement) {
+      mv.visitJumpInsn(GOTO, label(((GotoStatement) statement).getTarget()));
+
+    } else if(statement instanceof ReturnStatement) {
+      writeCommit();
+
+    } else if(statement instanceof ExprStatement) {
+      Expression expression = statement.getRHS();
+      writeExpression(expression);
+      pop(compiler.typeOf(expression));
+
+    } else {
+      throw new NotCompilableException("unsupported statement %s", statement);
+    }
+  }
+
+  private void writeAssignment(int index, Assignment assignment) {
+    LValue lhs = assignment.getLHS();
+    Expression rhs = assignment.getRHS();
+    LoopType type = compiler.typeOf(lhs);
+
+    if(index == 0 && compiler.isForLoop()) {
+      // The first statement initializes the loop counter, which
+      // starts at the iteration at which the loop is entered
+      if(!(lhs instanceof LocalVariable)) {
+        throw new IllegalStateException("expected the loop counter to be initialized first");
+      }
+      mv.visitVarInsn(ILOAD, START_SLOT);
+      mv.visitVarInsn(ISTORE, slots.get(lhs));
+
+    } else if(LoopCompiler.isElementAssignment(assignment)) {
+      PrimitiveCall call = (PrimitiveCall) rhs;
+      LoopType elementType = type.elementType();
+      mv.visitVarInsn(ALOAD, slots.get(lhs));
+      writeIndex(call.getArguments().get(1));
+      writeExpression(call.getArguments().get(2), elementType);
+      if(type == LoopType.DOUBLE_VECTOR) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, DOUBLE_BUFFER, "set", "(ID)V", false);
+      } else {
+        mv.visitMethodInsn(INVOKEVIRTUAL, INT_BUFFER, "set", "(II)V", false);
+      }
+
+    } else if(rhs instanceof Increment && ((Increment) rhs).getCounter().equals(lhs)) {
+      mv.visitIincInsn(slots.get(lhs), 1);
+
+    } else if(compiler.isDiscarded(lhs)) {
+      writeExpression(rhs);
+      pop(compiler.typeOf(rhs));
+
+    } else {
+      writeExpression(rhs, type);
+      store(lhs, type);
+    }
+
+    if(lhs instanceof EnvironmentVariable) {
+      pushInt(1);
+      mv.visitVarInsn(ISTORE, assignedFlags.get(((EnvironmentVariable) lhs).getName()));
+    }
+  }
+
+  /**
+   * Branches on the condition of an {@code if} or {@code while}, and deoptimizes if the condition is
+   * NA and the IR has no branch for NA, so that the interpreter can signal the error.
+   */
+  private void writeIf(IfStatement statement) {
+    Expression condition = statement.getCondition();
+    if(condition instanceof CmpGE) {
+      CmpGE cmp = (CmpGE) condition;
+      writeExpression(cmp.getOp1(), LoopType.INT);
+      writeExpression(cmp.getOp2(), LoopType.INT);
+      mv.visitJumpInsn(IF_ICMPGE, label(statement.getTrueTarget()));
+      mv.visitJumpInsn(GOTO, label(statement.getFalseTarget()));
+      return;
+    }
+
+    LoopType type = compiler.typeOf(condition);
+    writeExpression(condition);
+    if(type == LoopType.DOUBLE) {
+      invokeRuntime("condition", "(D)I");
+    } else if(!type.isNumericScalar()) {
+      throw new NotCompilableException("condition of type %s", type);
+    }
+    IRLabel naTarget = statement.getNaTarget();
+
+    mv.visitVarInsn(ISTORE, conditionSlot);
+    mv.visitVarInsn(ILOAD, conditionSlot);
+    pushInt(IntVector.NA);
+    mv.visitJumpInsn(IF_ICMPEQ, naTarget == null ? deoptimize : label(naTarget));
+    mv.visitVarInsn(ILOAD, conditionSlot);
+    mv.visitJumpInsn(IFNE, label(statement.getTrueTarget()));
+    mv.visitJumpInsn(GOTO, label(statement.getFalseTarget()));
+  }
+
+  /**
+   * Assigns the variables which have been assigned by the loop to the environment.
+   */
+  private void writeCommit() {
+    for (Symbol output : compiler.getOutputs()) {
+      EnvironmentVariable variable = new EnvironmentVariable(output);
+      LoopType type = compiler.typeOf(variable);
+      Label skip = new Label();
+      mv.visitVarInsn(ILOAD, assignedFlags.get(output));
+      mv.visitJumpInsn(IFEQ, skip);
+      mv.visitVarInsn(ALOAD, RHO_SLOT);
+      mv.visitLdcInsn(output.getPrintName());
+      mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Symbol.class), "get",
+          "(Ljava/lang/String;)" + Type.getDescriptor(Symbol.class), false);
+      if(type == LoopType.NULL) {
+        mv.visitFieldInsn(GETSTATIC, Type.getInternalName(Null.class), "INSTANCE", Type.getDescriptor(Null.class));
+      } else {
+        load(variable, type);
+        box(output, type);
+      }
+      mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Environment.class), "setVariable",
+          "(" + Type.getDescriptor(Symbol.class) + SEXP_DESCRIPTOR + ")V", false);
+      mv.visitLabel(skip);
+    }
+    mv.visitInsn(RETURN);
+  }
+
+  private void box(Symbol name, LoopType type) {
+    switch (type) {
+      case LOGICAL:
+        invokeRuntime("boxLogical", "(I)" + SEXP_DESCRIPTOR);
+        break;
+      case INT:
+        invokeRuntime("boxInt", "(I)" + SEXP_DESCRIPTOR);
+        break;
+      case DOUBLE:
+        invokeRuntime("boxDouble", "(D)" + SEXP_DESCRIPTOR);
+        break;
+      default:
+        if(compiler.isCopied(name)) {
+          if(type == LoopType.DOUBLE_VECTOR) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, DOUBLE_BUFFER, "toVector",
+                "()" + Type.getDescriptor(DoubleVector.class), false);
+          } else if(type == LoopType.INT_VECTOR) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, INT_BUFFER, "toIntVector",
+                "()" + Type.getDescriptor(IntVector.class), false);
+          } else {
+            mv.visitMethodInsn(INVOKEVIRTUAL, INT_BUFFER, "toLogicalVector",
+                "()" + Type.getDescriptor(LogicalVector.class), false);
+          }
+        }
+        break;
+    }
+  }
+
+  /**
+   * Writes {@code expression}, converted to {@code type}
+   */
+  private void writeExpression(Expression expression, LoopType type) {
+    LoopType actualType = compiler.typeOf(expression);
+    writeExpression(expression);
+    convert(actualType, type);
+  }
+
+  private void convert(LoopType from, LoopType to) {
+    if(from == to) {
+      return;
+    }
+    if(to == LoopType.DOUBLE && (from == LoopType.INT || from == LoopType.LOGICAL)) {
+      invokeRuntime("toDouble", "(I)D");
+    } else if(!(to == LoopType.INT && from == LoopType.LOGICAL)) {
+      throw new NotCompilableException("cannot convert %s to %s", from, to);
+    }
+  }
+
+  /**
+   * Writes {@code expression} as a one-based {@code int} index
+   */
+  private void writeIndex(Expression expression) {
+    LoopType type = compiler.typeOf(expression);
+    writeExpression(expression);
+    if(type == LoopType.DOUBLE) {
+      invokeRuntime("index", "(D)I");
+    }
+  }
+
+  /**
+   * Writes {@code expression} as a value of its own type
+   */
+  private void writeExpression(Expression expression) {
+    if(expression instanceof Constant) {
+      writeConstant(((Constant) expression).getValue());
+
+    } else if(expression instanceof EnvironmentVariable || expression instanceof LocalVariable ||
+        expression instanceof Temp) {
+      load((LValue) expression, compiler.typeOf(expression));
+
+    } else if(expression instanceof ElementAccess) {
+      ElementAccess access = (ElementAccess) expression;
+      writeExpression(access.getVector());
+      writeExpression(access.getIndex(), LoopType.INT);
+      if(compiler.typeOf(expression) == LoopType.DOUBLE) {
+        mv.visitMethodInsn(INVOKEINTERFACE, VECTOR, "getElementAsDouble", "(I)D", true);
+      } else {
+        mv.visitMethodInsn(INVOKEINTERFACE, VECTOR, "getElementAsInt", "(I)I", true);
+      }
+
+    } else if(expression instanceof Length) {
+      writeLength(((Length) expression).getVector());
+
+    } else if(expression instanceof Increment) {
+      writeExpression(((Increment) expression).getCounter(), LoopType.INT);
+      pushInt(1);
+      mv.visitInsn(IADD);
+
+    } else if(expression instanceof PrimitiveCall) {
+      writeCall((PrimitiveCall) expression);
+
+    } else {
+      throw new NotCompilableException("unsupported expression %s", expression);
+    }
+  }
+
+  private void writeConstant(Object value) {
+    if(value instanceof Integer) {
+      pushInt((Integer) value);
+    } else if(value instanceof DoubleVector) {
+      double x = ((DoubleVector) value).getElementAsDouble(0);
+      if(DoubleVector.isNA(x)) {
+        // ldc would not preserve the payload which distinguishes NA from NaN
+        mv.visitFieldInsn(GETSTATIC, Type.getInternalName(DoubleVector.class), "NA", "D");
+      } else {
+        mv.visitLdcInsn(x);
+      }
+    } else if(value instanceof LogicalVector) {
+      pushInt(((LogicalVector) value).getElementAsRawLogical(0));
+    } else if(value instanceof IntVector) {
+      pushInt(((IntVector) value).getElementAsInt(0));
+    } else if(value != Null.INSTANCE) {
+      throw new NotCompilableException("constant %s", value);
+    }
+  }
+
+  private void writeLength(Expression vector) {
+    LoopType type = compiler.typeOf(vector);
+    if(type == LoopType.NULL) {
+      pushInt(0);
+    } else if(type.isNumericScalar()) {
+      writeExpression(vector);
+      pop(type);
+      pushInt(1);
+    } else {
+      writeExpression(vector);
+      if(compiler.isCopiedVariable(vector)) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, bufferClass(type), "length", "()I", false);
+      } else {
+        mv.visitMethodInsn(INVOKEINTERFACE, VECTOR, "length", "()I", true);
+      }
+    }
+  }
+
+  private void writeCall(PrimitiveCall call) {
+    String name = call.getName().getPrintName();
+    List<Expression> arguments = call.getArguments();
+    LoopType resultType = compiler.typeOf(call);
+
+    if(name.equals("[") || name.equals("[[")) {
+      Expression vector = arguments.get(0);
+      boolean element = name.equals("[[");
+      LoopType vectorType = compiler.typeOf(vector);
+      writeExpression(vector);
+      writeIndex(arguments.get(1));
+      String descriptor = resultType == LoopType.DOUBLE ? "D" : "I";
+      if(compiler.isCopiedVariable(vector)) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, bufferClass(vectorType), element ? "getElement" : "get",
+            "(I)" + descriptor, false);
+      } else {
+        String method = (element ? "element" : "subset") + (resultType == LoopType.DOUBLE ? "Double" : "Int");
+        invokeRuntime(method, "(" + VECTOR_DESCRIPTOR + "I)" + descriptor);
+      }
+
+    } else if(name.equals("length")) {
+      writeLength(arguments.get(0));
+
+    } else if(name.equals(":")) {
+      mv.visitVarInsn(ALOAD, CONTEXT_SLOT);
+      writeExpression(arguments.get(0), LoopType.DOUBLE);
+      writeExpression(arguments.get(1), LoopType.DOUBLE);
+      invokeRuntime("colon", "(" + Type.getDescriptor(Context.class) + "DD)" + VECTOR_DESCRIPTOR);
+
+    } else if(COMPARISONS.containsKey(name)) {
+      writeExpression(arguments.get(0), LoopType.DOUBLE);
+      writeExpression(arguments.get(1), LoopType.DOUBLE);
+      invokeRuntime(COMPARISONS.get(name), "(DD)I");
+
+    } else if(name.equals("!")) {
+      LoopType argumentType = compiler.typeOf(arguments.get(0));
+      writeExpression(arguments.get(0));
+      invokeRuntime("not", argumentType == LoopType.DOUBLE ? "(D)I" : "(I)I");
+
+    } else if(arguments.size() == 1 && (name.equals("+") || name.equals("-"))) {
+      writeExpression(arguments.get(0), resultType);
+      if(name.equals("-")) {
+        invokeRuntime("negate", resultType == LoopType.DOUBLE ? "(D)D" : "(I)I");
+      }
+
+    } else if(ARITHMETIC.containsKey(name)) {
+      String descriptor = resultType == LoopType.DOUBLE ? "D" : "I";
+      writeExpression(arguments.get(0), resultType);
+      writeExpression(arguments.get(1), resultType);
+      invokeRuntime(ARITHMETIC.get(name), "(" + descriptor + descriptor + ")" + descriptor);
+
+    } else if(name.equals("abs")) {
+      String descriptor = resultType == LoopType.DOUBLE ? "D" : "I";
+      writeExpression(arguments.get(0), resultType);
+      invokeRuntime("abs", "(" + descriptor + ")" + descriptor);
+
+    } else {
+      // sqrt, exp, floor, ceiling, sin, cos
+      writeExpression(arguments.get(0), LoopType.DOUBLE);
+      invokeRuntime(name, "(D)D");
+    }
+  }
+
+  private static String bufferClass(LoopType vectorType) {
+    return vectorType == LoopType.DOUBLE_VECTOR ? DOUBLE_BUFFER : INT_BUFFER;
+  }
+
+  private boolean isSequence(LValue variable) {
+    return variable instanceof EnvironmentVariable &&
+        ((EnvironmentVariable) variable).getName() == LoopCompiler.SEQUENCE;
+  }
+
+  private void load(LValue variable, LoopType type) {
+    if(isSequence(variable)) {
+      mv.visitVarInsn(ALOAD, SEQUENCE_SLOT);
+    } else if(type == LoopType.DOUBLE) {
+      mv.visitVarInsn(DLOAD, slots.get(variable));
+    } else if(type.isNumericScalar()) {
+      mv.visitVarInsn(ILOAD, slots.get(variable));
+    } else if(type != LoopType.NULL) {
+      mv.visitVarInsn(ALOAD, slots.get(variable));
+    }
+  }
+
+  private void store(LValue variable, LoopType type) {
+    if(type == LoopType.DOUBLE) {
+      mv.visitVarInsn(DSTORE, slots.get(variable));
+    } else if(type.isNumericScalar()) {
+      mv.visitVarInsn(ISTORE, slots.get(variable));
+    } else if(type != LoopType.NULL) {
+      mv.visitVarInsn(ASTORE, slots.get(variable));
+    }
+  }
+
+  private void pop(LoopType type) {
+    if(type == LoopType.DOUBLE) {
+      mv.visitInsn(POP2);
+    } else if(type != LoopType.NULL) {
+      mv.visitInsn(POP);
+    }
+  }
+
+  private void pushInt(int value) {
+    mv.visitLdcInsn(value);
+  }
+
+  private void invokeRuntime(String method, String descriptor) {
+    mv.visitMethodInsn(INVOKESTATIC, RUNTIME, method, descriptor, false);
+  }
+
+  /**
+   * Loads each compiled loop in its own class loader, so that the class can be unloaded
+   * once the loop is no longer referenced.
+   */
+  private static class LoopClassLoader extends ClassLoader {
+    LoopClassLoader() {
+      super(CompiledLoop.class.getClassLoader());
+    }
+
+    public Class<?> defineClass(String name, byte[] b) {
+      return defineClass(name, b, 0, b.length);
+    }
+  }
+}
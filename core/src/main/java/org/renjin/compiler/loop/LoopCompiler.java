@@ -0,0 +1,550 @@
+package org.renjin.compiler.loop;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.renjin.compiler.cfg.BasicBlock;
+import org.renjin.compiler.cfg.ControlFlowGraph;
+import org.renjin.compiler.cfg.DominanceTree;
+import org.renjin.compiler.ir.ssa.PhiFunction;
+import org.renjin.compiler.ir.ssa.SsaTransformer;
+import org.renjin.compiler.ir.ssa.SsaVariable;
+import org.renjin.compiler.ir.tac.IRBody;
+import org.renjin.compiler.ir.tac.IRBodyBuilder;
+import org.renjin.compiler.ir.tac.IRFunctionTable;
+import org.renjin.compiler.ir.tac.expressions.*;
+import org.renjin.compiler.ir.tac.statements.*;
+import org.renjin.primitives.Primitives;
+import org.renjin.sexp.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles {@code for} and {@code while} loops whose bodies only do scalar arithmetic and
+ * element-wise subsetting to JVM bytecode.
+ *
+ * <p>The loop is translated to the three-address IR with calls to a small set of builtins translated as
+ * {@link PrimitiveCall}s, and converted to SSA form to find the variables whose values are read before they
+ * are assigned. The types of these inputs are taken from their current values, and propagated to all other
+ * variables, each of which must have a single type throughout the loop. Each variable is then held in a
+ * JVM local of that type: {@code int} for logical and integer scalars, {@code double} for double scalars,
+ * and {@link Vector} or, if it is modified by the loop, an array.</p>
+ *
+ * <p>The resulting {@link CompiledLoop} checks that its inputs and the functions it calls still have the
+ * types for which it was compiled each time it is executed.</p>
+ */
+public class LoopCompiler {
+
+  /**
+   * The builtins, other than the reserved words, which can be called from compiled loops.
+   */
+  private static final Set<String> STRICT_BUILTINS = ImmutableSet.of(
+      "length", "sqrt", "exp", "floor", "ceiling", "abs", "sin", "cos");
+
+  /**
+   * Stands in for the sequence of a {@code for} loop, which is evaluated before the loop is compiled.
+   */
+  static final Symbol SEQUENCE = Symbol.get("for sequence");
+
+  private final Environment rho;
+  private final FunctionCall loop;
+  private final Vector sequence;
+
+  private IRBody body;
+
+  private final Set<Symbol> functionNames = Sets.newHashSet();
+  private final Set<Symbol> inputs = Sets.newLinkedHashSet();
+  private final Set<Symbol> outputs = Sets.newLinkedHashSet();
+  private final Set<Symbol> vectors = Sets.newHashSet();
+  private final Set<Symbol> copied = Sets.newHashSet();
+  private final Set<Temp> readTemps = Sets.newHashSet();
+  private final Map<LValue, LoopType> types = Maps.newHashMap();
+
+  private LoopCompiler(Environment rho, FunctionCall loop, Vector sequence) {
+    this.rho = rho;
+    this.loop = loop;
+    this.sequence = sequence;
+  }
+
+  /**
+   * Compiles a loop for the current values of the variables in {@code rho}
+   *
+   * @param loop a call to {@code for} or {@code while}
+   * @param sequence the value of the sequence of a {@code for} loop, or {@code null}
+   * @throws NotCompilableException if the loop can't be compiled
+   */
+  public static CompiledLoop compile(Environment rho, FunctionCall loop, Vector sequence) {
+    LoopCompiler compiler = new LoopCompiler(rho, toLoop(loop, sequence), sequence);
+    return compiler.compile();
+  }
+
+  /**
+   * Replaces the sequence of a {@code for} loop, which has already been evaluated, with {@link #SEQUENCE}
+   */
+  private static FunctionCall toLoop(FunctionCall loop, Vector sequence) {
+    if(sequence == null) {
+      return loop;
+    }
+    PairList args = loop.getArguments();
+    return FunctionCall.newCall(loop.getFunction(),
+        args.getElementAsSEXP(0), SEQUENCE, args.getElementAsSEXP(2));
+  }
+
+  private CompiledLoop compile() {
+    findFunctions(loop);
+    body = buildBody();
+    findInputs(buildBody());
+    inferTypes();
+
+    LoopClassGenerator generator = new LoopClassGenerator(this);
+    CompiledLoop compiledLoop = generator.generate();
+
+    Symbol[] inputArray = inputs.toArray(new Symbol[inputs.size()]);
+    LoopType[] inputTypes = new LoopType[inputArray.length];
+    boolean[] inputsCopied = new boolean[inputArray.length];
+    for (int i = 0; i < inputArray.length; i++) {
+      inputTypes[i] = typeOf(new EnvironmentVariable(inputArray[i]));
+      inputsCopied[i] = copied.contains(inputArray[i]);
+    }
+    Symbol[] functionArray = functionNames.toArray(new Symbol[functionNames.size()]);
+    Function[] functions = new Function[functionArray.length];
+    for (int i = 0; i < functionArray.length; i++) {
+      functions[i] = Primitives.getBuiltin(functionArray[i]);
+    }
+
+    compiledLoop.init(sequence == null ? null : LoopType.ofVector(sequence),
+        inputArray, inputTypes, inputsCopied,
+        outputs.toArray(new Symbol[outputs.size()]),
+        functionArray, functions);
+
+    return compiledLoop;
+  }
+
+  /**
+   * Finds the functions called by the loop, which must all be builtins.
+   */
+  private void findFunctions(SEXP exp) {
+    if(exp instanceof FunctionCall) {
+      FunctionCall call = (FunctionCall) exp;
+      if(!(call.getFunction() instanceof Symbol)) {
+        throw new NotCompilableException("call to %s", call.getFunction());
+      }
+      Symbol name = (Symbol) call.getFunction();
+      addFunction(name);
+      if((name.getPrintName().equals("<-") || name.getPrintName().equals("=")) &&
+          call.getArguments().getElementAsSEXP(0) instanceof FunctionCall) {
+        FunctionCall target = (FunctionCall) call.getArguments().getElementAsSEXP(0);
+        if(target.getFunction() instanceof Symbol) {
+          addFunction(Symbol.get(((Symbol) target.getFunction()).getPrintName() + "<-"));
+        }
+      }
+      for (SEXP arg : call.getArguments().values()) {
+        findFunctions(arg);
+      }
+    }
+  }
+
+  private void addFunction(Symbol name) {
+    PrimitiveFunction builtin = Primitives.getBuiltin(name);
+    if(builtin == null) {
+      throw new NotCompilableException("call to %s", name);
+    }
+    if(!LoopRuntime.resolvesTo(rho, name, builtin)) {
+      throw new NotCompilableException("%s is not bound to the builtin", name);
+    }
+    functionNames.add(name);
+  }
+
+  private IRBody buildBody() {
+    IRBodyBuilder builder = new IRBodyBuilder(new IRFunctionTable());
+    builder.setStrictBuiltins(new Predicate<Symbol>() {
+      @Override
+      public boolean apply(Symbol symbol) {
+        return STRICT_BUILTINS.contains(symbol.getPrintName());
+      }
+    });
+    return builder.build(loop);
+  }
+
+  /**
+   * Finds the variables whose values may be read before they are assigned in the loop, using
+   * a separately built copy of the body converted to SSA form.
+   *
+   * <p>The SSA transform numbers the value of each variable on entry to the loop as version zero. Any
+   * version which is, or may be through phi functions, version zero, is an input if it is used other than
+   * by a phi function.</p>
+   */
+  private void findInputs(IRBody ssaBody) {
+    ControlFlowGraph cfg = new ControlFlowGraph(ssaBody);
+    DominanceTree dtree = new DominanceTree(cfg);
+    new SsaTransformer(cfg, dtree).transform();
+
+    List<Statement> statements = Lists.newArrayList();
+    for (BasicBlock block : cfg.getBasicBlocks()) {
+      statements.addAll(block.getStatements());
+    }
+
+    Set<Variable> incoming = Sets.newHashSet();
+    boolean changed;
+    do {
+      changed = false;
+      for (Statement statement : statements) {
+        if(statement.getRHS() instanceof PhiFunction) {
+          Variable lhs = (Variable) ((Assignment) statement).getLHS();
+          for (Variable argument : statement.getRHS().variables()) {
+            if(isIncoming(incoming, argument) && incoming.add(lhs)) {
+              changed = true;
+            }
+          }
+        }
+      }
+    } while(changed);
+
+    for (Statement statement : statements) {
+      if(!(statement.getRHS() instanceof PhiFunction)) {
+        for (Variable variable : statement.getRHS().variables()) {
+          if(isIncoming(incoming, variable)) {
+            SsaVariable ssaVariable = (SsaVariable) variable;
+            Symbol name = ((EnvironmentVariable) ssaVariable.getInner()).getName();
+            if(name != SEQUENCE) {
+              inputs.add(name);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isIncoming(Set<Variable> incoming, Variable variable) {
+    if(!(variable instanceof SsaVariable)) {
+      return false;
+    }
+    SsaVariable ssaVariable = (SsaVariable) variable;
+    if(!(ssaVariable.getInner() instanceof EnvironmentVariable)) {
+      return false;
+    }
+    return ssaVariable.getVersion() == 0 || incoming.contains(variable);
+  }
+
+  /**
+   * Assigns a single type to each variable, starting with the types of the inputs.
+   */
+  private void inferTypes() {
+    List<Statement> statements = body.getStatements();
+
+    for (Statement statement : statements) {
+      findVectors(statement.getRHS());
+      if(statement instanceof Reassignment) {
+        throw new NotCompilableException("super-assignment");
+      }
+      if(statement instanceof Assignment) {
+        Assignment assignment = (Assignment) statement;
+        if(assignment.getLHS() instanceof EnvironmentVariable) {
+          Symbol name = ((EnvironmentVariable) assignment.getLHS()).getName();
+          if(name == SEQUENCE) {
+            throw new NotCompilableException("assignment to the loop sequence");
+          }
+          outputs.add(name);
+          if(isElementAssignment(assignment)) {
+            copied.add(name);
+          }
+        }
+      }
+    }
+    vectors.addAll(copied);
+
+    for (Symbol input : inputs) {
+      SEXP value = LoopRuntime.lookup(rho, input);
+      if(value == null) {
+        throw new NotCompilableException("%s is not bound to a value", input);
+      }
+      LoopType type = vectors.contains(input) ? LoopType.ofVector(value) : LoopType.ofScalar(value);
+      if(type == null) {
+        throw new NotCompilableException("%s has unsupported type %s", input, value.getTypeName());
+      }
+      if(copied.contains(input) && !value.getAttributes().empty()) {
+        throw new NotCompilableException("%s has attributes", input);
+      }
+      types.put(new EnvironmentVariable(input), type);
+    }
+    for (Symbol name : copied) {
+      if(!inputs.contains(name)) {
+        throw new NotCompilableException("%s is modified before it is defined", name);
+      }
+    }
+    if(sequence != null) {
+      LoopType sequenceType = LoopType.ofVector(sequence);
+      if(sequenceType == null) {
+        throw new NotCompilableException("unsupported sequence");
+      }
+      types.put(new EnvironmentVariable(SEQUENCE), sequenceType);
+    }
+
+    boolean changed;
+    do {
+      changed = false;
+      for (Statement statement : statements) {
+        if(statement instanceof Assignment) {
+          Assignment assignment = (Assignment) statement;
+          LValue lhs = assignment.getLHS();
+          if(lhs instanceof EnvironmentVariable && copied.contains(((EnvironmentVariable) lhs).getName()) &&
+             !isElementAssignment(assignment)) {
+            throw new NotCompilableException("%s is modified and reassigned", lhs);
+          }
+          LoopType type = typeOf(assignment.getRHS());
+          if(type != null) {
+            LoopType current = types.get(lhs);
+            if(current == null) {
+              types.put(lhs, type);
+              changed = true;
+            } else if(current != type && !isDiscarded(lhs)) {
+              throw new NotCompilableException("%s is assigned both %s and %s", lhs, current, type);
+            }
+          }
+        }
+      }
+    } while(changed);
+
+    for (Statement statement : statements) {
+      if(!(statement instanceof GotoStatement) && typeOf(statement.getRHS()) == null) {
+        throw new NotCompilableException("could not infer the type of %s", statement);
+      }
+    }
+  }
+
+  private void findVectors(Expression expression) {
+    if(expression instanceof Temp) {
+      readTemps.add((Temp) expression);
+    }
+    if(expression instanceof PrimitiveCall) {
+      PrimitiveCall call = (PrimitiveCall) expression;
+      String name = call.getName().getPrintName();
+      if(name.equals("[") || name.equals("[[") || name.equals("length")) {
+        addVector(call.getArguments().get(0));
+      }
+    } else if(expression instanceof ElementAccess) {
+      addVector(((ElementAccess) expression).getVector());
+    } else if(expression instanceof Length) {
+      addVector(((Length) expression).getVector());
+    }
+    for (Expression child : expression.getChildren()) {
+      findVectors(child);
+    }
+  }
+
+  private void addVector(Expression expression) {
+    if(expression instanceof EnvironmentVariable) {
+      vectors.add(((EnvironmentVariable) expression).getName());
+    }
+  }
+
+  /**
+   * @return true if {@code assignment} is of the form {@code x <- `[<-`(x, i, value)}
+   */
+  static boolean isElementAssignment(Assignment assignment) {
+    if(assignment.getRHS() instanceof PrimitiveCall) {
+      PrimitiveCall call = (PrimitiveCall) assignment.getRHS();
+      String name = call.getName().getPrintName();
+      return (name.equals("[<-") || name.equals("[[<-")) &&
+          call.getArguments().size() == 3 &&
+          call.getArguments().get(0).equals(assignment.getLHS());
+    }
+    return false;
+  }
+
+  /**
+   * @return true if {@code lhs} is a temporary whose value is never read
+   */
+  boolean isDiscarded(LValue lhs) {
+    return lhs instanceof Temp && !readTemps.contains(lhs);
+  }
+
+  IRBody getBody() {
+    return body;
+  }
+
+  boolean isForLoop() {
+    return sequence != null;
+  }
+
+  Set<Symbol> getInputs() {
+    return inputs;
+  }
+
+  Set<Symbol> getOutputs() {
+    return outputs;
+  }
+
+  boolean isCopied(Symbol name) {
+    return copied.contains(name);
+  }
+
+  Map<LValue, LoopType> getVariableTypes() {
+    return types;
+  }
+
+  /**
+   * @return the type of the value of {@code expression}, or {@code null} if it depends on
+   * a variable whose type is not yet known
+   * @throws NotCompilableException if the expression can't be compiled
+   */
+  LoopType typeOf(Expression expression) {
+    if(expression instanceof Constant) {
+      Object value = ((Constant) expression).getValue();
+      if(value instanceof Integer) {
+        return LoopType.INT;
+      }
+      LoopType type = value instanceof SEXP ? LoopType.ofScalar((SEXP) value) : null;
+      if(type == null) {
+        throw new NotCompilableException("constant %s", value);
+      }
+      return type;
+
+    } else if(expression instanceof EnvironmentVariable || expression instanceof LocalVariable ||
+        expression instanceof Temp) {
+      return types.get(expression);
+
+    } else if(expression instanceof ElementAccess) {
+      ElementAccess access = (ElementAccess) expression;
+      LoopType vectorType = typeOf(access.getVector());
+      if(vectorType == null) {
+        return null;
+      }
+      if(!vectorType.isVector() || isCopiedVariable(access.getVector())) {
+        throw new NotCompilableException("loop over %s", access.getVector());
+      }
+      return vectorType.elementType();
+
+    } else if(expression instanceof Length) {
+      LoopType vectorType = typeOf(((Length) expression).getVector());
+      if(vectorType == null) {
+        return null;
+      }
+      return LoopType.INT;
+
+    } else if(expression instanceof Increment || expression instanceof CmpGE) {
+      return LoopType.INT;
+
+    } else if(expression instanceof PrimitiveCall) {
+      return typeOfCall((PrimitiveCall) expression);
+
+    } else {
+      throw new NotCompilableException("unsupported expression %s", expression);
+    }
+  }
+
+  boolean isCopiedVariable(Expression expression) {
+    return expression instanceof EnvironmentVariable &&
+        copied.contains(((EnvironmentVariable) expression).getName());
+  }
+
+  private LoopType typeOfCall(PrimitiveCall call) {
+    if(call.hasElipses()) {
+      throw new NotCompilableException("call to %s with ...", call.getName());
+    }
+    List<String> argumentNames = call.getArgumentNames();
+    for (int i = 0; i < argumentNames.size(); i++) {
+      String argumentName = argumentNames.get(i);
+      String name = call.getName().getPrintName();
+      boolean replacementValue = (name.equals("[<-") || name.equals("[[<-")) && i == argumentNames.size() - 1;
+      if(argumentName != null && !(replacementValue && argumentName.equals("value"))) {
+        throw new NotCompilableException("call to %s with named arguments", call.getName());
+      }
+    }
+    List<Expression> arguments = call.getArguments();
+    LoopType[] argumentTypes = new LoopType[arguments.size()];
+    for (int i = 0; i < argumentTypes.length; i++) {
+      argumentTypes[i] = typeOf(arguments.get(i));
+      if(argumentTypes[i] == null) {
+        return null;
+      }
+    }
+    String name = call.getName().getPrintName();
+
+    if(name.equals("[") || name.equals("[[")) {
+      checkArity(call, 2);
+      checkVector(call, argumentTypes[0]);
+      checkIndex(call, argumentTypes[1]);
+      return argumentTypes[0].elementType();
+
+    } else if(name.equals("[<-") || name.equals("[[<-")) {
+      checkArity(call, 3);
+      if(!isCopiedVariable(arguments.get(0))) {
+        throw new NotCompilableException("nested replacement %s", call);
+      }
+      checkVector(call, argumentTypes[0]);
+      checkIndex(call, argumentTypes[1]);
+      checkScalar(call, argumentTypes[2]);
+      LoopType elementType = argumentTypes[0].elementType();
+      if(argumentTypes[2].ordinal() > elementType.ordinal()) {
+        throw new NotCompilableException("%s would change the type of %s", call, arguments.get(0));
+      }
+      return argumentTypes[0];
+
+    } else if(name.equals("length")) {
+      checkArity(call, 1);
+      return LoopType.INT;
+
+    } else if(name.equals(":")) {
+      checkArity(call, 2);
+      checkScalar(call, argumentTypes[0]);
+      checkScalar(call, argumentTypes[1]);
+      return LoopType.INT_VECTOR;
+    }
+
+    for (LoopType argumentType : argumentTypes) {
+      checkScalar(call, argumentType);
+    }
+
+    if(arguments.size() == 1) {
+      LoopType type = argumentTypes[0];
+      if(name.equals("+") || name.equals("-")) {
+        return type == LoopType.DOUBLE ? LoopType.DOUBLE : LoopType.INT;
+      } else if(name.equals("!")) {
+        return LoopType.LOGICAL;
+      } else if(name.equals("abs")) {
+        return type == LoopType.DOUBLE ? LoopType.DOUBLE : LoopType.INT;
+      } else if(name.equals("sqrt") || name.equals("exp") || name.equals("floor") || name.equals("ceiling") ||
+          name.equals("sin") || name.equals("cos")) {
+        return LoopType.DOUBLE;
+      }
+    } else if(arguments.size() == 2) {
+      if(name.equals("+") || name.equals("-") || name.equals("*") || name.equals("%%") || name.equals("%/%")) {
+        return LoopType.arithmetic(argumentTypes[0], argumentTypes[1]);
+      } else if(name.equals("/") || name.equals("^")) {
+        return LoopType.DOUBLE;
+      } else if(LoopClassGenerator.isComparison(name)) {
+        return LoopType.LOGICAL;
+      }
+    }
+    throw new NotCompilableException("unsupported call %s", call);
+  }
+
+  private static void checkArity(PrimitiveCall call, int arity) {
+    if(call.getArguments().size() != arity) {
+      throw new NotCompilableException("%s with %d arguments", call.getName(), call.getArguments().size());
+    }
+  }
+
+  private static void checkVector(PrimitiveCall call, LoopType type) {
+    if(!type.isVector()) {
+      throw new NotCompilableException("%s of %s", call.getName(), type);
+    }
+  }
+
+  private static void checkIndex(PrimitiveCall call, LoopType type) {
+    if(type != LoopType.INT && type != LoopType.DOUBLE) {
+      throw new NotCompilableException("%s with %s index", call.getName(), type);
+    }
+  }
+
+  private static void checkScalar(PrimitiveCall call, LoopType type) {
+    if(!type.isNumericScalar()) {
+      throw new NotCompilableException("%s of %s", call.getName(), type);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package org.renjin.compiler.loop;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.renjin.eval.Context;
+import org.renjin.sexp.Environment;
+import org.renjin.sexp.FunctionCall;
+import org.renjin.sexp.Vector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts the iterations of a {@code for} or {@code while} loop, and compiles the loop with the
+ * {@link LoopCompiler} once it becomes hot.
+ *
+ * <p>The interpreter calls {@link #tick()} at the start of each iteration, and once the loop has
+ * been interpreted for {@code renjin.compile.loops.threshold} iterations, across all of its runs, calls
+ * {@link #run(Context, Environment, FunctionCall, Vector, int)} to execute the rest of the loop, and all later runs
+ * of the loop, as compiled code.</p>
+ *
+ * <p>If the loop can't be compiled, or if its compiled code repeatedly fails to run, the loop
+ * is interpreted from then on.</p>
+ *
+ * <p>Profiles are cached by the loop's call, which is only weakly held, so a profile must not refer
+ * to its call: the call is instead passed to {@link #run} by the interpreter.</p>
+ */
+public class LoopProfile {
+
+  private static final Logger LOGGER = Logger.getLogger(LoopProfile.class.getName());
+
+  private static final boolean ENABLED =
+      Boolean.parseBoolean(System.getProperty("renjin.compile.loops", "true"));
+
+  private static final int DEFAULT_THRESHOLD = 1000;
+
+  /**
+   * The number of times the compiled loop may fail to run before it is discarded
+   */
+  private static final int MAX_FAILURES = 10;
+
+  private static final LoadingCache<FunctionCall, LoopProfile> PROFILES = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(new CacheLoader<FunctionCall, LoopProfile>() {
+        @Override
+        public LoopProfile load(FunctionCall loop) {
+          return new LoopProfile();
+        }
+      });
+
+  private static int threshold = Integer.getInteger("renjin.compile.loops.threshold", DEFAULT_THRESHOLD);
+
+  private int iterations;
+  private int failures;
+  private final AtomicInteger completedRuns = new AtomicInteger();
+  private final AtomicInteger deoptimizations = new AtomicInteger();
+  private volatile boolean disabled;
+  private CompiledLoop compiledLoop;
+
+  private LoopProfile() {
+  }
+
+  /**
+   * @return the profile of the given call to {@code for} or {@code while}, or {@code null}
+   * if loop compilation is disabled.
+   */
+  public static LoopProfile of(FunctionCall loop) {
+    if(!ENABLED) {
+      return null;
+    }
+    return PROFILES.getUnchecked(loop);
+  }
+
+  /**
+   * Sets the number of iterations after which loops are compiled.
+   */
+  public static void setThreshold(int iterations) {
+    threshold = iterations;
+  }
+
+  /**
+   * Counts an iteration of the loop.
+   *
+   * @return true if the loop is hot, and the caller should try to {@link #run} it.
+   */
+  public boolean tick() {
+    if(disabled) {
+      return false;
+    }
+    if(iterations < threshold) {
+      iterations++;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Runs the rest of the loop as compiled code, compiling the loop if it has not yet been compiled.
+   *
+   * @param loop the call to {@code for} or {@code while} of which this is the profile
+   * @param sequence the sequence of a {@code for} loop, or {@code null} for a {@code while} loop
+   * @param iteration the zero-based index of the next element of {@code sequence}
+   * @return true if the loop has been completed, or false if the caller must continue to interpret the loop.
+   */
+  public boolean run(Context context, Environment rho, FunctionCall loop, Vector sequence, int iteration) {
+    CompiledLoop compiledLoop = compile(rho, loop, sequence);
+    if(compiledLoop == null) {
+      return false;
+    }
+    if(compiledLoop.execute(context, rho, sequence, iteration)) {
+      completedRuns.incrementAndGet();
+      return true;
+    }
+    deoptimizations.incrementAndGet();
+    synchronized (this) {
+      if(++failures >= MAX_FAILURES) {
+        disabled = true;
+        this.compiledLoop = null;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of runs of the loop which were completed by compiled code
+   */
+  int getCompletedRuns() {
+    return completedRuns.get();
+  }
+
+  /**
+   * @return the number of times the compiled loop was entered but returned control to the interpreter,
+   * either because a guard failed on entry or because the compiled code could not continue.
+   */
+  int getDeoptimizations() {
+    return deoptimizations.get();
+  }
+
+  private synchronized CompiledLoop compile(Environment rho, FunctionCall loop, Vector sequence) {
+    if(compiledLoop == null && !disabled) {
+      try {
+        compiledLoop = LoopCompiler.compile(rho, loop, sequence);
+        LOGGER.log(Level.FINE, "Compiled loop " + loop);
+      } catch (NotCompilableException e) {
+        LOGGER.log(Level.FINE, "Could not compile loop: " + e.getMessage());
+        disabled = true;
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "Exception compiling loop", e);
+        disabled = true;
+      } catch (LinkageError e) {
+        LOGGER.log(Level.WARNING, "Error loading compiled loop", e);
+        disabled = true;
+      }
+    }
+    return compiledLoop;
+  }
+}
@@ -0,0 +1,494 @@
+package org.renjin.compiler.loop;
+
+import org.renjin.eval.Context;
+import org.renjin.primitives.Ops;
+import org.renjin.primitives.sequence.Sequences;
+import org.renjin.sexp.*;
+
+import java.util.Arrays;
+
+/**
+ * Static methods called by the bytecode of compiled loops.
+ *
+ * <p>Scalars are passed unboxed: logicals and integers as {@code int}s, using {@link IntVector#NA},
+ * and doubles as {@code double}s, using {@link DoubleVector#NA}. Each operation behaves exactly as the
+ * builtin's wrapper does for length-one arguments without attributes.</p>
+ *
+ * <p>Where the builtin would signal an error, or return a value which can't be held by the compiled loop,
+ * these methods throw {@link Deoptimization} instead, so that the iteration can be re-evaluated by the
+ * interpreter.</p>
+ */
+public class LoopRuntime {
+
+  private LoopRuntime() {
+  }
+
+  /**
+   * Thrown when a compiled loop can't continue, and the loop must be resumed in the interpreter.
+   */
+  public static final class Deoptimization extends RuntimeException {
+
+    public static final Deoptimization INSTANCE = new Deoptimization();
+
+    private Deoptimization() {
+      super("deoptimized", null, false, false);
+    }
+  }
+
+  /**
+   * A vector modified by a compiled loop, which is copied when the loop starts and
+   * boxed again when it completes.
+   */
+  public static final class DoubleBuffer {
+    private double[] values;
+    private int length;
+
+    public DoubleBuffer(double[] values) {
+      this.values = values;
+      this.length = values.length;
+    }
+
+    public int length() {
+      return length;
+    }
+
+    public double get(int index) {
+      if(index == IntVector.NA || index > length) {
+        return DoubleVector.NA;
+      }
+      checkPositive(index);
+      return values[index - 1];
+    }
+
+    public double getElement(int index) {
+      checkInBounds(index, length);
+      return values[index - 1];
+    }
+
+    public void set(int index, double value) {
+      checkPositive(index);
+      if(index > length) {
+        if(index > values.length) {
+          int oldCapacity = values.length;
+          values = Arrays.copyOf(values, Math.max(index, oldCapacity * 2));
+          Arrays.fill(values, oldCapacity, values.length, DoubleVector.NA);
+        }
+        length = index;
+      }
+      values[index - 1] = value;
+    }
+
+    public DoubleVector toVector() {
+      return DoubleArrayVector.unsafe(values.length == length ? values : Arrays.copyOf(values, length));
+    }
+  }
+
+  /**
+   * A logical or integer vector modified by a compiled loop.
+   */
+  public static final class IntBuffer {
+    private int[] values;
+    private int length;
+
+    public IntBuffer(int[] values) {
+      this.values = values;
+      this.length = values.length;
+    }
+
+    public int length() {
+      return length;
+    }
+
+    public int get(int index) {
+      if(index == IntVector.NA || index > length) {
+        return IntVector.NA;
+      }
+      checkPositive(index);
+      return values[index - 1];
+    }
+
+    public int getElement(int index) {
+      checkInBounds(index, length);
+      return values[index - 1];
+    }
+
+    public void set(int index, int value) {
+      checkPositive(index);
+      if(index > length) {
+        if(index > values.length) {
+          int oldCapacity = values.length;
+          values = Arrays.copyOf(values, Math.max(index, oldCapacity * 2));
+          Arrays.fill(values, oldCapacity, values.length, IntVector.NA);
+        }
+        length = index;
+      }
+      values[index - 1] = value;
+    }
+
+    public IntVector toIntVector() {
+      return IntArrayVector.unsafe(values.length == length ? values : Arrays.copyOf(values, length));
+    }
+
+    public LogicalVector toLogicalVector() {
+      return LogicalArrayVector.unsafe(values.length == length ? values : Arrays.copyOf(values, length));
+    }
+  }
+
+  /**
+   * @return the value bound to {@code symbol} in {@code rho} or its parents, or {@code null} if the
+   * symbol is unbound, a missing argument, or bound to a promise which has not yet been evaluated.
+   */
+  public static SEXP lookup(Environment rho, Symbol symbol) {
+    SEXP value = rho.findVariable(symbol);
+    if(value instanceof Promise) {
+      Promise promise = (Promise) value;
+      if(!promise.isEvaluated()) {
+        return null;
+      }
+      value = promise.getValue();
+    }
+    if(value == Symbol.UNBOUND_VALUE || value == Symbol.MISSING_ARG) {
+      return null;
+    }
+    return value;
+  }
+
+  /**
+   * @return true if {@code symbol} is bound to {@code function} in {@code rho}, without forcing
+   * any promises on the way.
+   */
+  public static boolean resolvesTo(Environment rho, Symbol symbol, Function function) {
+    Environment env = rho;
+    while(env != Environment.EMPTY) {
+      Frame frame = env.getFrame();
+      if(frame.isMissingArgument(symbol)) {
+        return false;
+      }
+      SEXP value = frame.getVariable(symbol);
+      if(value instanceof Promise) {
+        Promise promise = (Promise) value;
+        if(!promise.isEvaluated()) {
+          return false;
+        }
+        value = promise.getValue();
+      }
+      if(value instanceof Function) {
+        return value == function;
+      }
+      env = env.getParent();
+    }
+    return false;
+  }
+
+  public static int unboxInt(SEXP value) {
+    return ((Vector) value).getElementAsInt(0);
+  }
+
+  public static double unboxDouble(SEXP value) {
+    return ((Vector) value).getElementAsDouble(0);
+  }
+
+  public static DoubleBuffer doubleBuffer(SEXP value) {
+    return new DoubleBuffer(((AtomicVector) value).toDoubleArray());
+  }
+
+  public static IntBuffer intBuffer(SEXP value) {
+    return new IntBuffer(((AtomicVector) value).toIntArray());
+  }
+
+  public static SEXP boxLogical(int value) {
+    if(value == IntVector.NA) {
+      return LogicalVector.NA_VECTOR;
+    }
+    return value != 0 ? LogicalVector.TRUE : LogicalVector.FALSE;
+  }
+
+  public static SEXP boxInt(int value) {
+    return IntVector.valueOf(value);
+  }
+
+  public static SEXP boxDouble(double value) {
+    return DoubleVector.valueOf(value);
+  }
+
+  public static double toDouble(int x) {
+    return x == IntVector.NA ? DoubleVector.NA : x;
+  }
+
+  /**
+   * @return the one-based index {@code x}, truncated towards zero as R does.
+   */
+  public static int index(double x) {
+    if(Double.isNaN(x)) {
+      return IntVector.NA;
+    }
+    if(x < 1 || x >= Integer.MAX_VALUE) {
+      throw Deoptimization.INSTANCE;
+    }
+    return (int) x;
+  }
+
+  private static void checkPositive(int index) {
+    if(index < 1) {
+      throw Deoptimization.INSTANCE;
+    }
+  }
+
+  private static void checkInBounds(int index, int length) {
+    if(index == IntVector.NA || index < 1 || index > length) {
+      throw Deoptimization.INSTANCE;
+    }
+  }
+
+  /**
+   * @return {@code x[index]}
+   */
+  public static double subsetDouble(Vector x, int index) {
+    if(index == IntVector.NA || index > x.length()) {
+      return DoubleVector.NA;
+    }
+    checkPositive(index);
+    return x.getElementAsDouble(index - 1);
+  }
+
+  /**
+   * @return {@code x[index]}
+   */
+  public static int subsetInt(Vector x, int index) {
+    if(index == IntVector.NA || index > x.length()) {
+      return IntVector.NA;
+    }
+    checkPositive(index);
+    return x.getElementAsInt(index - 1);
+  }
+
+  /**
+   * @return {@code x[[index]]}
+   */
+  public static double elementDouble(Vector x, int index) {
+    checkInBounds(index, x.length());
+    return x.getElementAsDouble(index - 1);
+  }
+
+  /**
+   * @return {@code x[[index]]}
+   */
+  public static int elementInt(Vector x, int index) {
+    checkInBounds(index, x.length());
+    return x.getElementAsInt(index - 1);
+  }
+
+  /**
+   * @return the integer sequence {@code from:to}
+   */
+  public static Vector colon(Context context, double from, double to) {
+    if(Double.isNaN(from) || Double.isNaN(to)) {
+      throw Deoptimization.INSTANCE;
+    }
+    Vector sequence = Sequences.colonSequence(context, DoubleVector.valueOf(from), DoubleVector.valueOf(to));
+    if(!(sequence instanceof IntVector)) {
+      throw Deoptimization.INSTANCE;
+    }
+    return sequence;
+  }
+
+  public static int plus(int x, int y) {
+    if(x == IntVector.NA || y == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return Ops.plus(x, y);
+  }
+
+  public static double plus(double x, double y) {
+    if(DoubleVector.isNA(x) || DoubleVector.isNA(y)) {
+      return DoubleVector.NA;
+    }
+    return x + y;
+  }
+
+  public static int minus(int x, int y) {
+    if(x == IntVector.NA || y == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return Ops.minus(x, y);
+  }
+
+  public static double minus(double x, double y) {
+    if(DoubleVector.isNA(x) || DoubleVector.isNA(y)) {
+      return DoubleVector.NA;
+    }
+    return x - y;
+  }
+
+  public static int multiply(int x, int y) {
+    if(x == IntVector.NA || y == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return Ops.multiply(x, y);
+  }
+
+  public static double multiply(double x, double y) {
+    if(DoubleVector.isNA(x) || DoubleVector.isNA(y)) {
+      return DoubleVector.NA;
+    }
+    return x * y;
+  }
+
+  public static double divide(double x, double y) {
+    if(DoubleVector.isNA(x) || DoubleVector.isNA(y)) {
+      return DoubleVector.NA;
+    }
+    return x / y;
+  }
+
+  public static double power(double x, double y) {
+    return Ops.power(x, y);
+  }
+
+  public static int modulus(int x, int y) {
+    if(x == IntVector.NA || y == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return Ops.modulus(x, y);
+  }
+
+  public static double modulus(double x, double y) {
+    if(DoubleVector.isNA(x) || DoubleVector.isNA(y)) {
+      return DoubleVector.NA;
+    }
+    return Ops.modulus(x, y);
+  }
+
+  public static int integerDivision(int x, int y) {
+    if(x == IntVector.NA || y == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return Ops.integerDivision(x, y);
+  }
+
+  public static double integerDivision(double x, double y) {
+    if(DoubleVector.isNA(x) || DoubleVector.isNA(y)) {
+      return DoubleVector.NA;
+    }
+    return Ops.integerDivision(x, y);
+  }
+
+  public static int negate(int x) {
+    if(x == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return -x;
+  }
+
+  public static double negate(double x) {
+    if(DoubleVector.isNA(x)) {
+      return DoubleVector.NA;
+    }
+    return -x;
+  }
+
+  /**
+   * Compares two doubles, or integers converted to doubles.
+   *
+   * @return -1, 0 or 1, or 2 if either is NA or NaN.
+   */
+  private static int compare(double x, double y) {
+    if(Double.isNaN(x) || Double.isNaN(y)) {
+      return 2;
+    }
+    return x < y ? -1 : (x == y ? 0 : 1);
+  }
+
+  public static int equal(double x, double y) {
+    int c = compare(x, y);
+    return c == 2 ? IntVector.NA : (c == 0 ? 1 : 0);
+  }
+
+  public static int notEqual(double x, double y) {
+    int c = compare(x, y);
+    return c == 2 ? IntVector.NA : (c != 0 ? 1 : 0);
+  }
+
+  public static int less(double x, double y) {
+    int c = compare(x, y);
+    return c == 2 ? IntVector.NA : (c < 0 ? 1 : 0);
+  }
+
+  public static int lessOrEqual(double x, double y) {
+    int c = compare(x, y);
+    return c == 2 ? IntVector.NA : (c <= 0 ? 1 : 0);
+  }
+
+  public static int greater(double x, double y) {
+    int c = compare(x, y);
+    return c == 2 ? IntVector.NA : (c > 0 ? 1 : 0);
+  }
+
+  public static int greaterOrEqual(double x, double y) {
+    int c = compare(x, y);
+    return c == 2 ? IntVector.NA : (c >= 0 ? 1 : 0);
+  }
+
+  public static int not(int x) {
+    if(x == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return x == 0 ? 1 : 0;
+  }
+
+  public static int not(double x) {
+    if(Double.isNaN(x)) {
+      return IntVector.NA;
+    }
+    return x == 0 ? 1 : 0;
+  }
+
+  public static int abs(int x) {
+    if(x == IntVector.NA) {
+      return IntVector.NA;
+    }
+    return Math.abs(x);
+  }
+
+  public static double abs(double x) {
+    if(DoubleVector.isNA(x)) {
+      return DoubleVector.NA;
+    }
+    return Math.abs(x);
+  }
+
+  public static double sqrt(double x) {
+    return DoubleVector.isNA(x) ? DoubleVector.NA : Math.sqrt(x);
+  }
+
+  public static double exp(double x) {
+    return DoubleVector.isNA(x) ? DoubleVector.NA : Math.exp(x);
+  }
+
+  public static double floor(double x) {
+    return DoubleVector.isNA(x) ? DoubleVector.NA : Math.floor(x);
+  }
+
+  public static double ceiling(double x) {
+    return DoubleVector.isNA(x) ? DoubleVector.NA : Math.ceil(x);
+  }
+
+  public static double sin(double x) {
+    return DoubleVector.isNA(x) ? DoubleVector.NA : Math.sin(x);
+  }
+
+  public static double cos(double x) {
+    return DoubleVector.isNA(x) ? DoubleVector.NA : Math.cos(x);
+  }
+
+  /**
+   * @return the condition of an {@code if} or {@code while}: 0 if false, 1 if true,
+   * or {@link IntVector#NA}
+   */
+  public static int condition(double x) {
+    if(Double.isNaN(x)) {
+      return IntVector.NA;
+    }
+    return x != 0 ? 1 : 0;
+  }
+}
@@ -0,0 +1,120 @@
+package org.renjin.compiler.loop;
+
+import org.renjin.sexp.*;
+
+/**
+ * The types of the values held by a compiled loop in JVM local variables.
+ *
+ * <p>Scalars are length-one vectors without attributes, which are kept unboxed as {@code int}s or
+ * {@code double}s. Vectors are kept as {@link Vector}s, or as arrays if they are modified by the loop.</p>
+ */
+public enum LoopType {
+  LOGICAL,
+  INT,
+  DOUBLE,
+  NULL,
+  LOGICAL_VECTOR,
+  INT_VECTOR,
+  DOUBLE_VECTOR;
+
+  public boolean isNumericScalar() {
+    return this == LOGICAL || this == INT || this == DOUBLE;
+  }
+
+  public boolean isVector() {
+    return this == LOGICAL_VECTOR || this == INT_VECTOR || this == DOUBLE_VECTOR;
+  }
+
+  /**
+   * @return the type of the elements of a vector type
+   */
+  public LoopType elementType() {
+    switch (this) {
+      case LOGICAL_VECTOR:
+        return LOGICAL;
+      case INT_VECTOR:
+        return INT;
+      case DOUBLE_VECTOR:
+        return DOUBLE;
+      default:
+        throw new IllegalStateException(name() + " is not a vector type");
+    }
+  }
+
+  /**
+   * @return the vector type whose elements have this scalar type
+   */
+  public LoopType vectorType() {
+    switch (this) {
+      case LOGICAL:
+        return LOGICAL_VECTOR;
+      case INT:
+        return INT_VECTOR;
+      case DOUBLE:
+        return DOUBLE_VECTOR;
+      default:
+        throw new IllegalStateException(name() + " is not a scalar type");
+    }
+  }
+
+  /**
+   * @return the type of the result of arithmetic on operands of types {@code x} and {@code y}:
+   * {@code DOUBLE} if either is a double, and otherwise {@code INT}.
+   */
+  public static LoopType arithmetic(LoopType x, LoopType y) {
+    if(x == DOUBLE || y == DOUBLE) {
+      return DOUBLE;
+    }
+    return INT;
+  }
+
+  /**
+   * @return true if {@code value} has this type
+   */
+  public boolean matches(SEXP value) {
+    return (isVector() ? ofVector(value) : ofScalar(value)) == this;
+  }
+
+  /**
+   * @return the type of {@code value} if it is a scalar, or {@code NULL}, or otherwise {@code null}
+   */
+  public static LoopType ofScalar(SEXP value) {
+    if(value == Null.INSTANCE) {
+      return NULL;
+    }
+    if(value.length() == 1 && value.getAttributes().empty()) {
+      if(value instanceof LogicalVector) {
+        return LOGICAL;
+      } else if(value instanceof IntVector) {
+        return INT;
+      } else if(value instanceof DoubleVector) {
+        return DOUBLE;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the type of {@code value} if it is a vector which can be subset by a compiled loop,
+   * or otherwise {@code null}.
+   */
+  public static LoopType ofVector(SEXP value) {
+    // Subsetting only dispatches on objects with a class, and
+    // only retains the names of the vector
+    if(value.getAttributes().hasClass() || value.getAttributes().hasNames()) {
+      return null;
+    }
+    return ofSequence(value);
+  }
+
+  private static LoopType ofSequence(SEXP value) {
+    if(value instanceof LogicalVector) {
+      return LOGICAL_VECTOR;
+    } else if(value instanceof IntVector) {
+      return INT_VECTOR;
+    } else if(value instanceof DoubleVector) {
+      return DOUBLE_VECTOR;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,12 @@
+package org.renjin.compiler.loop;
+
+/**
+ * Thrown when a loop uses a construct which the {@link LoopCompiler} does not support,
+ * in which case the loop continues to be interpreted.
+ */
+public class NotCompilableException extends RuntimeException {
+
+  public NotCompilableException(String message, Object... args) {
+    super(String.format(message, args));
+  }
+}
@@ -2,20 +2,37 @@ package org.renjin.compiler.pipeline;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Maintains a cache of recently used JITted classes.
+ *
+ * <p>Classes are kept in memory, and optionally in a {@link DiskJitCache} so that
+ * they can be reused by later JVMs.</p>
  */
 public class DeferredJitCache {
 
-  public static final DeferredJitCache INSTANCE = new DeferredJitCache();
+  public static final DeferredJitCache INSTANCE = new DeferredJitCache(
+      Integer.getInteger("renjin.jit.cache.size", 100),
+      DiskJitCache.fromSystemProperties());
 
   private final Cache<JitKey, JittedComputation> cache;
+  private final DiskJitCache diskCache;
+
+  private final AtomicLong compileCount = new AtomicLong();
 
-  private DeferredJitCache() {
-    cache = CacheBuilder.newBuilder()
+  /**
+   * @param maximumSize the maximum number of classes to keep in memory
+   * @param diskCache the cache in which to store classes on disk, or {@code null}
+   */
+  DeferredJitCache(int maximumSize, DiskJitCache diskCache) {
+    this.diskCache = diskCache;
+    this.cache = CacheBuilder.newBuilder()
             .softValues()
-            .maximumSize(100)
+            .maximumSize(maximumSize)
+            .recordStats()
             .build();
   }
 
@@ -25,10 +42,136 @@ public class DeferredJitCache {
     if(computation != null) {
       return computation;
     }
-    DeferredJitter jitter = new DeferredJitter();
-    computation = jitter.compile(node);
+    if(diskCache != null) {
+      computation = diskCache.load(key);
+    }
+    if(computation == null) {
+      DeferredJitter jitter = new DeferredJitter(DiskJitCache.className(key));
+      byte[] classBytes = jitter.generate(node);
+      computation = DeferredJitter.load(jitter.getClassName(), classBytes);
+      compileCount.incrementAndGet();
+
+      if(diskCache != null) {
+        diskCache.store(key, classBytes);
+      }
+    }
     cache.put(key, computation);
 
     return computation;
   }
+
+  /**
+   * Removes the class for {@code key} from memory and from disk, after it failed to link.
+   */
+  public void discard(JitKey key, LinkageError error) {
+    cache.invalidate(key);
+    if(diskCache != null) {
+      diskCache.discard(key, error);
+    }
+  }
+
+  /**
+   * @return the second-level cache on disk, or {@code null} if it is not enabled.
+   */
+  public DiskJitCache getDiskCache() {
+    return diskCache;
+  }
+
+  /**
+   * @return a snapshot of this cache's hit, miss and eviction counts.
+   */
+  public Stats getStats() {
+    return new Stats(this);
+  }
+
+  /**
+   * A snapshot of the hit, miss and eviction counts of the in-memory cache and, if enabled,
+   * of the cache on disk.
+   */
+  public static class Stats {
+    private final CacheStats memoryStats;
+    private final long memorySize;
+    private final long diskHitCount;
+    private final long diskMissCount;
+    private final long diskEvictionCount;
+    private final int diskSize;
+    private final long compileCount;
+
+    private Stats(DeferredJitCache cache) {
+      this.memoryStats = cache.cache.stats();
+      this.memorySize = cache.cache.size();
+      this.compileCount = cache.compileCount.get();
+      DiskJitCache disk = cache.diskCache;
+      this.diskHitCount = disk == null ? 0 : disk.getHitCount();
+      this.diskMissCount = disk == null ? 0 : disk.getMissCount();
+      this.diskEvictionCount = disk == null ? 0 : disk.getEvictionCount();
+      this.diskSize = disk == null ? 0 : disk.size();
+    }
+
+    /**
+     * @return the number of computations found in memory
+     */
+    public long getMemoryHitCount() {
+      return memoryStats.hitCount();
+    }
+
+    /**
+     * @return the number of computations not found in memory
+     */
+    public long getMemoryMissCount() {
+      return memoryStats.missCount();
+    }
+
+    /**
+     * @return the number of computations evicted from memory, either because the cache
+     * was full or because they were garbage collected.
+     */
+    public long getMemoryEvictionCount() {
+      return memoryStats.evictionCount();
+    }
+
+    public long getMemorySize() {
+      return memorySize;
+    }
+
+    /**
+     * @return the number of computations loaded from disk
+     */
+    public long getDiskHitCount() {
+      return diskHitCount;
+    }
+
+    /**
+     * @return the number of computations found neither in memory nor on disk
+     */
+    public long getDiskMissCount() {
+      return diskMissCount;
+    }
+
+    /**
+     * @return the number of classes deleted from disk
+     */
+    public long getDiskEvictionCount() {
+      return diskEvictionCount;
+    }
+
+    public int getDiskSize() {
+      return diskSize;
+    }
+
+    /**
+     * @return the number of classes generated
+     */
+    public long getCompileCount() {
+      return compileCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("memory: hits=%d, misses=%d, evictions=%d, size=%d; " +
+              "disk: hits=%d, misses=%d, evictions=%d, size=%d; compiled=%d",
+          getMemoryHitCount(), getMemoryMissCount(), getMemoryEvictionCount(), memorySize,
+          diskHitCount, diskMissCount, diskEvictionCount, diskSize, compileCount);
+    }
+  }
 }
@@ -47,7 +47,25 @@ public class DeferredJitter {
     className = "Jit" + System.identityHashCode(this);
   }
 
+  /**
+   * @param className the name of the class to generate
+   */
+  public DeferredJitter(String className) {
+    this.className = className;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
   public JittedComputation compile(DeferredNode node)  {
+    return load(className, generate(node));
+  }
+
+  /**
+   * Generates the bytecode of a class implementing {@link JittedComputation} for the given node.
+   */
+  public byte[] generate(DeferredNode node) {
     long startTime = System.nanoTime();
     ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
     cv = cw;
@@ -66,12 +84,25 @@ public class DeferredJitter {
     byte[] classBytes = cw.toByteArray();
     long compileTime = System.nanoTime() - startTime;
 
+    if(VectorPipeliner.DEBUG) {
+      System.out.println("compile: " + (compileTime/1e6) + "ms");
+    }
+
+    return classBytes;
+  }
+
+  /**
+   * Defines a class previously generated by {@link #generate(DeferredNode)} and
+   * creates a new instance.
+   */
+  public static JittedComputation load(String className, byte[] classBytes) {
+    long startTime = System.nanoTime();
+
     Class jitClass = new MyClassLoader().defineClass(className, classBytes);
 
-    long loadTime = System.nanoTime() - startTime - compileTime;
+    long loadTime = System.nanoTime() - startTime;
 
     if(VectorPipeliner.DEBUG) {
-      System.out.println("compile: " + (compileTime/1e6) + "ms");
       System.out.println("load: " + (loadTime/1e6) + "ms");
     }
 
@@ -115,7 +146,7 @@ public class DeferredJitter {
     }
   }
 
-  class MyClassLoader extends ClassLoader {
+  static class MyClassLoader extends ClassLoader {
     public Class defineClass(String name, byte[] b) {
       return defineClass(name, b, 0, b.length);
     }
@@ -4,6 +4,9 @@ import org.renjin.primitives.vector.MemoizedComputation;
 import org.renjin.sexp.DoubleArrayVector;
 import org.renjin.sexp.Vector;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 
 /**
  * Fully computes a node and stores its value
@@ -11,38 +14,125 @@ import org.renjin.sexp.Vector;
 public class DeferredNodeComputer implements Runnable {
 
   private final DeferredNode node;
+  private final ForkJoinPool forkJoinPool;
+  private final int parallelThreshold;
+  private final DeferredJitCache jitCache;
+
+  private NodeTiming timing;
 
   public DeferredNodeComputer(DeferredNode node) {
+    this(node, null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param forkJoinPool the pool in which to compute sums and means in parallel
+   * @param parallelThreshold the minimum length of vector for which to compute sums and means in parallel
+   */
+  public DeferredNodeComputer(DeferredNode node, ForkJoinPool forkJoinPool, int parallelThreshold) {
+    this(node, forkJoinPool, parallelThreshold, DeferredJitCache.INSTANCE);
+  }
+
+  DeferredNodeComputer(DeferredNode node, ForkJoinPool forkJoinPool, int parallelThreshold,
+                       DeferredJitCache jitCache) {
     this.node = node;
+    this.forkJoinPool = forkJoinPool;
+    this.parallelThreshold = parallelThreshold;
+    this.jitCache = jitCache;
   }
 
   @Override
   public void run() {
+    String label = node.getDebugId() + " " + node.getDebugLabel();
+    long start = System.nanoTime();
+    int chunks = 1;
+
+    String name = node.getComputation().getComputationName();
+
     // TODO: at the moment, we can compile only a small number of summary
     // function, eventually we want to generate bytecode on the fly based
     // on their implementations elsewhere.
-    if(node.getComputation().getComputationName().equals("mean") ||
-        node.getComputation().getComputationName().equals("rowMeans")) {
+    if(isParallelizable(name)) {
+      chunks = computeInParallel(name);
+    } else if(name.equals("mean") || name.equals("rowMeans")) {
       try {
         Vector[] operands = node.flattenVectors();
-        JittedComputation computer = DeferredJitCache.INSTANCE.compile(node);
-
-        long start = System.nanoTime();
+        JittedComputation computer = jitCache.compile(node);
 
-        Vector result = DoubleArrayVector.unsafe(computer.compute(operands));
-
-        long time = System.nanoTime() - start;
-        if(VectorPipeliner.DEBUG) {
-          System.out.println("compute: " + (time/1e6) + "ms");
+        Vector result;
+        try {
+          result = DoubleArrayVector.unsafe(computer.compute(operands));
+        } catch(LinkageError e) {
+          // A class loaded from the disk cache may have been generated against different
+          // internals, which only fails once it is run: discard it and compute the node directly
+          jitCache.discard(node.jitKey(), e);
+          result = ((MemoizedComputation) node.getVector()).forceResult();
         }
-
-        ((MemoizedComputation)node.getVector()).setResult(result);
-        node.setResult(result);
+        setResult(result);
       } catch(Throwable e) {
         throw new RuntimeException("Exception compiling node " + node, e);
       }
     } else if(node.getVector() instanceof MemoizedComputation) {
       node.setResult(((MemoizedComputation) node.getVector()).forceResult());
     }
+
+    timing = new NodeTiming(label, System.nanoTime() - start, chunks);
+    if(VectorPipeliner.DEBUG) {
+      System.out.println("compute: " + timing);
+    }
+  }
+
+  public DeferredNode getNode() {
+    return node;
+  }
+
+  /**
+   * @return the time taken to compute the node, or {@code null} if it has not yet been computed.
+   */
+  public NodeTiming getTiming() {
+    return timing;
+  }
+
+  private boolean isParallelizable(String name) {
+    if(forkJoinPool == null) {
+      return false;
+    }
+    if(!name.equals("sum") && !name.equals("mean") && !name.equals("rowMeans")) {
+      return false;
+    }
+    return node.getOperand(0).getVector().length() >= parallelThreshold;
+  }
+
+  private int computeInParallel(String name) {
+    Vector vector = node.getOperand(0).getVector();
+    int numRows = 1;
+    if(name.equals("rowMeans")) {
+      numRows = node.getOperand(1).getVector().getElementAsInt(0);
+    }
+
+    // Aim for a few chunks per worker so that idle workers can steal from busy ones
+    int chunkSize = Math.max(parallelThreshold / 4, vector.length() / (forkJoinPool.getParallelism() * 4));
+    PartialSumTask task = new PartialSumTask(vector, numRows, chunkSize);
+
+    double[] sums;
+    if(ForkJoinTask.inForkJoinPool()) {
+      sums = task.invoke();
+    } else {
+      sums = forkJoinPool.invoke(task);
+    }
+
+    if(!name.equals("sum")) {
+      double count = vector.length() / numRows;
+      for(int i=0;i!=sums.length;++i) {
+        sums[i] /= count;
+      }
+    }
+    setResult(DoubleArrayVector.unsafe(sums));
+
+    return task.getChunkCount();
+  }
+
+  private void setResult(Vector result) {
+    ((MemoizedComputation)node.getVector()).setResult(result);
+    node.setResult(result);
   }
 }
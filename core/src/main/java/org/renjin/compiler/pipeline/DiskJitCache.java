@@ -0,0 +1,276 @@
+package org.renjin.compiler.pipeline;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.renjin.RenjinVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores the bytecode generated by {@link DeferredJitter} on disk, so that
+ * new JVMs do not need to generate classes again for the same computations.
+ *
+ * <p>Each class is stored in a file named after the {@link JitKey#stableHash() stable hash} of its key,
+ * in a subdirectory for the current build of Renjin, as the generated code refers directly
+ * to Renjin's internal classes. The existing files are indexed when the cache is opened, and
+ * the least recently used files are deleted once there are more than {@code maxEntries}.</p>
+ *
+ * <p>The cache is enabled for {@link DeferredJitCache#INSTANCE} by setting the
+ * {@code renjin.jit.cache.dir} system property, and its size with {@code renjin.jit.cache.disk.size}.</p>
+ */
+public class DiskJitCache {
+
+  private static final Logger LOGGER = Logger.getLogger(DiskJitCache.class.getName());
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  private static final String SUFFIX = ".class";
+
+  private final File directory;
+  private final int maxEntries;
+
+  /**
+   * Files in the cache, ordered from least to most recently used
+   */
+  private final LinkedHashMap<String, File> index = new LinkedHashMap<String, File>(16, 0.75f, true);
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * @param directory the root directory of the cache
+   * @param maxEntries the maximum number of classes to keep on disk
+   */
+  public DiskJitCache(File directory, int maxEntries) {
+    this.directory = new File(directory, versionName());
+    this.maxEntries = maxEntries;
+
+    if(!this.directory.exists() && !this.directory.mkdirs()) {
+      LOGGER.warning("Could not create JIT cache directory " + this.directory);
+    }
+    loadIndex();
+  }
+
+  /**
+   * @return a cache configured by the {@code renjin.jit.cache.dir} and {@code renjin.jit.cache.disk.size}
+   * system properties, or {@code null} if {@code renjin.jit.cache.dir} is not set.
+   */
+  public static DiskJitCache fromSystemProperties() {
+    String dir = System.getProperty("renjin.jit.cache.dir");
+    if(Strings.isNullOrEmpty(dir)) {
+      return null;
+    }
+    return new DiskJitCache(new File(dir), Integer.getInteger("renjin.jit.cache.disk.size", DEFAULT_MAX_ENTRIES));
+  }
+
+  /**
+   * @return the name of the subdirectory for classes generated by this build of Renjin: its version,
+   * followed by a {@link #buildFingerprint() fingerprint} which tells apart snapshot and local builds
+   * of the same version.
+   */
+  static String versionName() {
+    String version;
+    try {
+      version = RenjinVersion.getVersionName();
+    } catch(AssertionError e) {
+      version = "unknown";
+    }
+    return version + "-" + buildFingerprint();
+  }
+
+  /**
+   * @return a hash of the code generator's bytecode and, when Renjin is loaded from a jar,
+   * of the jar's size and modification time, so that each build has its own cache.
+   */
+  static String buildFingerprint() {
+    Hasher hasher = Hashing.sha1().newHasher();
+    URL generator = DeferredJitter.class.getResource(DeferredJitter.class.getSimpleName() + ".class");
+    if(generator != null) {
+      try {
+        hasher.putBytes(Resources.toByteArray(generator));
+      } catch(IOException e) {
+        LOGGER.log(Level.FINE, "Could not read " + generator, e);
+      }
+    }
+    CodeSource codeSource = DeferredJitter.class.getProtectionDomain().getCodeSource();
+    if(codeSource != null && codeSource.getLocation() != null) {
+      try {
+        File file = new File(codeSource.getLocation().toURI());
+        if(file.isFile()) {
+          hasher.putLong(file.length());
+          hasher.putLong(file.lastModified());
+        }
+      } catch(Exception e) {
+        LOGGER.log(Level.FINE, "Could not locate " + codeSource.getLocation(), e);
+      }
+    }
+    return hasher.hash().toString().substring(0, 12);
+  }
+
+  private void loadIndex() {
+    File[] files = directory.listFiles();
+    if(files == null) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long am = a.lastModified();
+        long bm = b.lastModified();
+        return am < bm ? -1 : (am == bm ? 0 : 1);
+      }
+    });
+    synchronized (index) {
+      for (File file : files) {
+        if(file.getName().endsWith(SUFFIX)) {
+          String hash = file.getName().substring(0, file.getName().length() - SUFFIX.length());
+          index.put(hash, file);
+        }
+      }
+      evictExcessEntries();
+    }
+  }
+
+  /**
+   * @return the name of the class generated for the given key
+   */
+  public static String className(JitKey key) {
+    return "Jit" + key.stableHash();
+  }
+
+  /**
+   * Loads the class previously stored for the given key.
+   *
+   * @return a new instance of the class, or {@code null} if no class has been stored for this key.
+   */
+  public JittedComputation load(JitKey key) {
+    String hash = key.stableHash();
+    File file;
+    synchronized (index) {
+      file = index.get(hash);
+    }
+    if(file != null) {
+      try {
+        JittedComputation computation = DeferredJitter.load(className(key), Files.toByteArray(file));
+        hitCount.incrementAndGet();
+        return computation;
+
+      } catch(Exception e) {
+        LOGGER.log(Level.WARNING, "Could not load jitted class from " + file + ", discarding", e);
+        remove(hash, file);
+      } catch(LinkageError e) {
+        LOGGER.log(Level.WARNING, "Could not load jitted class from " + file + ", discarding", e);
+        remove(hash, file);
+      }
+    }
+    missCount.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Stores the class generated for the given key.
+   */
+  public void store(JitKey key, byte[] classBytes) {
+    String hash = key.stableHash();
+    File file = new File(directory, hash + SUFFIX);
+
+    // Write to a temporary file first so that other JVMs sharing
+    // this directory never see a partially written class
+    try {
+      File tempFile = File.createTempFile(hash, ".tmp", directory);
+      Files.write(classBytes, tempFile);
+      if(!tempFile.renameTo(file)) {
+        tempFile.delete();
+        if(!file.exists()) {
+          throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+      }
+    } catch(IOException e) {
+      LOGGER.log(Level.WARNING, "Could not store jitted class in " + file, e);
+      return;
+    }
+
+    synchronized (index) {
+      index.put(hash, file);
+      evictExcessEntries();
+    }
+  }
+
+  /**
+   * Deletes the class stored for {@code key}, which was loaded but failed to link when it was run.
+   */
+  public void discard(JitKey key, LinkageError error) {
+    String hash = key.stableHash();
+    File file;
+    synchronized (index) {
+      file = index.get(hash);
+    }
+    if(file != null) {
+      LOGGER.log(Level.WARNING, "Jitted class in " + file + " failed to link, discarding", error);
+      remove(hash, file);
+    }
+  }
+
+  private void remove(String hash, File file) {
+    synchronized (index) {
+      index.remove(hash);
+    }
+    file.delete();
+  }
+
+  private void evictExcessEntries() {
+    Iterator<Map.Entry<String, File>> it = index.entrySet().iterator();
+    while(index.size() > maxEntries && it.hasNext()) {
+      File file = it.next().getValue();
+      it.remove();
+      file.delete();
+      evictionCount.incrementAndGet();
+    }
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public int size() {
+    synchronized (index) {
+      return index.size();
+    }
+  }
+
+  /**
+   * @return the number of classes loaded from disk
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of lookups for which no class was stored on disk
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of classes deleted from disk to keep the cache within its maximum size
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+}
@@ -1,5 +1,9 @@
 package org.renjin.compiler.pipeline;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 import java.util.Arrays;
 
 /**
@@ -15,6 +19,19 @@ public class JitKey {
     this.hash = Arrays.hashCode(classes);
   }
 
+  /**
+   * @return a hash of the names of the classes in this key which, unlike {@link #hashCode()},
+   * is the same in every JVM, and so can be used to identify jitted classes stored on disk.
+   */
+  public String stableHash() {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for(Class clazz : classes) {
+      hasher.putString(clazz.getName(), Charsets.UTF_8);
+      hasher.putChar(';');
+    }
+    return hasher.hash().toString();
+  }
+
   @Override
   public int hashCode() {
     return hash;
@@ -1,25 +1,69 @@
 package org.renjin.compiler.pipeline;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
 import org.renjin.primitives.vector.DeferredComputation;
 import org.renjin.sexp.Vector;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ * Computes deferred computation graphs using multiple threads.
+ *
+ * <p>Memoized nodes which do not depend on each other are computed concurrently on the
+ * {@code ExecutorService}, each being submitted as soon as all the memoized nodes on which
+ * it depends have been computed. In addition, sums, means and row means of vectors longer
+ * than the parallel threshold are split into chunks which are summed in a {@link ForkJoinPool},
+ * so that even a graph with a single large node can use all available cores.</p>
+ *
+ * <p>The threshold defaults to the value of the {@code renjin.vp.parallel.threshold}
+ * system property, or {@link #DEFAULT_PARALLEL_THRESHOLD} if it is not set.</p>
+ */
 public class MultiThreadedVectorPipeliner implements VectorPipeliner {
 
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 1000000;
+
   private final ExecutorService executorService;
+  private final ForkJoinPool forkJoinPool;
+  private final int parallelThreshold;
+
+  private volatile List<NodeTiming> lastTimings = Collections.emptyList();
 
   public MultiThreadedVectorPipeliner(ExecutorService executorService) {
+    this(executorService, new ForkJoinPool(), Integer.getInteger("renjin.vp.parallel.threshold", DEFAULT_PARALLEL_THRESHOLD));
+  }
+
+  /**
+   * @param executorService the executor on which independent nodes are computed
+   * @param forkJoinPool the pool in which large nodes are split into chunks
+   * @param parallelThreshold the minimum length of vector for which a node is split into chunks
+   */
+  public MultiThreadedVectorPipeliner(ExecutorService executorService, ForkJoinPool forkJoinPool, int parallelThreshold) {
     this.executorService = executorService;
+    this.forkJoinPool = forkJoinPool;
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  public int getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * @return the time taken to compute each memoized node during the most recent
+   * call to {@link #materialize(DeferredComputation)}, in the order in which they completed.
+   */
+  public List<NodeTiming> getLastTimings() {
+    return lastTimings;
   }
 
   @Override
@@ -59,48 +103,66 @@ public class MultiThreadedVectorPipeliner implements VectorPipeliner {
     Multimap<DeferredNode, DeferredNode> dependencies = HashMultimap.create();
     findDependencies(graph.getRoot(), graph.getRoot(), dependencies);
 
-    // define set of nodes to be computed
-    Set<DeferredNode> toCompute = Sets.newHashSet();
+    // count the dependencies of each memoized node that remain to be computed,
+    // and note which nodes are waiting on each dependency
+    Map<DeferredNode, Integer> remaining = Maps.newHashMap();
+    Multimap<DeferredNode, DeferredNode> dependents = HashMultimap.create();
     for(DeferredNode node : graph.getNodes()) {
       if(node.isMemoized()) {
-        toCompute.add(node);
+        int count = 0;
+        for(DeferredNode dependency : dependencies.get(node)) {
+          if(!dependency.isComputed()) {
+            dependents.put(dependency, node);
+            count++;
+          }
+        }
+        remaining.put(node, count);
       }
     }
 
     // execute in parallel
-    ExecutorCompletionService<DeferredNode> service = new ExecutorCompletionService<DeferredNode>(executorService);
+    ExecutorCompletionService<DeferredNodeComputer> service =
+        new ExecutorCompletionService<DeferredNodeComputer>(executorService);
 
+    List<NodeTiming> timings = Lists.newArrayList();
     int running = 0;
-    while(!toCompute.isEmpty() || running > 0) {
+    for(Map.Entry<DeferredNode, Integer> entry : remaining.entrySet()) {
+      if(entry.getValue() == 0) {
+        submit(service, entry.getKey());
+        running++;
+      }
+    }
+
+    while(running > 0) {
+      Future<DeferredNodeComputer> completed = service.take();
+      running--;
+
+      DeferredNodeComputer computer = completed.get();
+      timings.add(computer.getTiming());
+      if(VectorPipeliner.DEBUG) {
+        System.out.println("Completed " + computer.getTiming());
+      }
 
       // queue all memoized values with no remaining dependencies
-      Iterator<DeferredNode> it = toCompute.iterator();
-      while(it.hasNext()) {
-        DeferredNode node = it.next();
-        if(allComputed(dependencies.get(node))) {
-          if(VectorPipeliner.DEBUG) {
-            System.out.println("Starting " + node);
-          }
-          service.submit(new DeferredNodeComputer(node), node);
-          running ++;
-          it.remove();
+      for(DeferredNode dependent : dependents.get(computer.getNode())) {
+        int count = remaining.get(dependent) - 1;
+        remaining.put(dependent, count);
+        if(count == 0) {
+          submit(service, dependent);
+          running++;
         }
       }
-      DeferredNode computed = service.take().get();
-      running --;
-      if(VectorPipeliner.DEBUG) {
-        System.out.println("Completed " + computed);
-      }
     }
+
+    lastTimings = Collections.unmodifiableList(timings);
   }
 
-  private boolean allComputed(Collection<DeferredNode> deferredNodes) {
-    for(DeferredNode node : deferredNodes) {
-      if(!node.isComputed()) {
-        return false;
-      }
+  private void submit(ExecutorCompletionService<DeferredNodeComputer> service, DeferredNode node) {
+    if(VectorPipeliner.DEBUG) {
+      System.out.println("Starting " + node);
     }
-    return true;
+    DeferredNodeComputer computer = new DeferredNodeComputer(node, forkJoinPool, parallelThreshold);
+    service.submit(computer, computer);
   }
 
   private void findDependencies(DeferredNode parentMemo, DeferredNode node, Multimap<DeferredNode, DeferredNode> dependencies) {
@@ -0,0 +1,43 @@
+package org.renjin.compiler.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken to compute a single memoized node in a deferred computation graph.
+ */
+public class NodeTiming {
+
+  private final String node;
+  private final long nanos;
+  private final int chunks;
+
+  NodeTiming(String node, long nanos, int chunks) {
+    this.node = node;
+    this.nanos = nanos;
+    this.chunks = chunks;
+  }
+
+  /**
+   * @return a description of the node that was computed
+   */
+  public String getNode() {
+    return node;
+  }
+
+  public long getTime(TimeUnit unit) {
+    return unit.convert(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the number of chunks into which the computation was split, or 1 if
+   * the node was computed on a single thread.
+   */
+  public int getChunkCount() {
+    return chunks;
+  }
+
+  @Override
+  public String toString() {
+    return node + ": " + (nanos / 1e6) + "ms" + (chunks > 1 ? " in " + chunks + " chunks" : "");
+  }
+}
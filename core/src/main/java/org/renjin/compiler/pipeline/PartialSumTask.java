@@ -0,0 +1,96 @@
+package org.renjin.compiler.pipeline;
+
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.Vector;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the row sums of a column-major matrix by recursively splitting
+ * its columns between tasks in a {@link java.util.concurrent.ForkJoinPool}, and adding up
+ * the partial sums of each half.
+ *
+ * <p>A plain vector is treated as a matrix with a single row, so the same task computes
+ * {@code sum()} and {@code mean()} as well as {@code rowMeans()}.</p>
+ *
+ * <p>Elements are read with {@link Vector#getElementAsDouble(int)}, so the vector may
+ * itself be a deferred computation, as long as computing its elements has no side effects.</p>
+ */
+public class PartialSumTask extends RecursiveTask<double[]> {
+
+  private final Vector vector;
+  private final int numRows;
+  private final int startColumn;
+  private final int endColumn;
+  private final int columnsPerChunk;
+
+  /**
+   * @param vector the vector to sum
+   * @param numRows the number of rows in the matrix, or 1 to compute the sum of all elements
+   * @param chunkSize the approximate number of elements to sum in each task
+   */
+  public PartialSumTask(Vector vector, int numRows, int chunkSize) {
+    this(vector, numRows, 0, vector.length() / numRows, Math.max(1, chunkSize / numRows));
+  }
+
+  private PartialSumTask(Vector vector, int numRows, int startColumn, int endColumn, int columnsPerChunk) {
+    this.vector = vector;
+    this.numRows = numRows;
+    this.startColumn = startColumn;
+    this.endColumn = endColumn;
+    this.columnsPerChunk = columnsPerChunk;
+  }
+
+  /**
+   * @return the number of tasks among which the columns will be divided
+   */
+  public int getChunkCount() {
+    int numColumns = endColumn - startColumn;
+    return Math.max(1, (numColumns + columnsPerChunk - 1) / columnsPerChunk);
+  }
+
+  @Override
+  protected double[] compute() {
+    int numColumns = endColumn - startColumn;
+    if(numColumns <= columnsPerChunk) {
+      return sumColumns();
+    }
+
+    int middleColumn = startColumn + numColumns / 2;
+    PartialSumTask left = new PartialSumTask(vector, numRows, startColumn, middleColumn, columnsPerChunk);
+    PartialSumTask right = new PartialSumTask(vector, numRows, middleColumn, endColumn, columnsPerChunk);
+    right.fork();
+
+    double[] sums = left.compute();
+    double[] rightSums = right.join();
+    for(int i=0;i!=numRows;++i) {
+      sums[i] += rightSums[i];
+    }
+    return sums;
+  }
+
+  private double[] sumColumns() {
+    double[] sums = new double[numRows];
+    int start = startColumn * numRows;
+    int end = endColumn * numRows;
+    int row = 0;
+
+    if(vector instanceof DoubleArrayVector) {
+      double[] array = ((DoubleArrayVector) vector).toDoubleArrayUnsafe();
+      for(int i=start;i!=end;++i) {
+        sums[row] += array[i];
+        if(++row == numRows) {
+          row = 0;
+        }
+      }
+    } else {
+      for(int i=start;i!=end;++i) {
+        sums[row] += vector.getElementAsDouble(i);
+        if(++row == numRows) {
+          row = 0;
+        }
+      }
+    }
+    return sums;
+  }
+}
@@ -278,12 +278,20 @@ public class Context {
     if(Profiler.ENABLED && profiling) {
       Profiler.functionStart((Symbol)fn);
     }
+    SamplingProfiler sampler = session.profiler;
+    SamplingProfiler.Frame callerFrame = null;
+    if(sampler != null) {
+      callerFrame = sampler.enter(this, functionExpr, fn);
+    }
     try {
       return functionExpr.apply(this, rho, call, call.getArguments());
     } finally {
       if(Profiler.ENABLED && profiling) {
         Profiler.functionEnd();
       }
+      if(sampler != null) {
+        sampler.exit(callerFrame);
+      }
     }
   }
 
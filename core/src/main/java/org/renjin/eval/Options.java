@@ -36,6 +36,13 @@ public class Options {
     map.put("OutDec", new StringArrayVector("."));
   }
 
+  /**
+   * Creates a copy of {@code other}, which can subsequently be changed independently.
+   */
+  public Options(Options other) {
+    map = Maps.newHashMap(other.map);
+  }
+
   public SEXP get(String name) {
     SEXP value = map.get(name);
     return value == null ? Null.INSTANCE : value;
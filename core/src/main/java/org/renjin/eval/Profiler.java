@@ -15,6 +15,9 @@ import java.util.concurrent.TimeUnit;
  * Simple profiler intended to be used from the command line.
  * 
  * <p>The profiler can be enabled using the JVM flag -Drenjin.profile=true</p>
+ *
+ * <p>Its state is shared by all Sessions in the JVM. To profile an individual
+ * Session at runtime, use the {@link SamplingProfiler}.</p>
  */
 public class Profiler {
 
@@ -0,0 +1,207 @@
+package org.renjin.eval;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stack samples collected by a {@link SamplingProfiler}, aggregated into
+ * a flat profile and a call tree.
+ */
+public class SampledProfile {
+
+  private static class FunctionStats {
+    private final String name;
+    private long selfSamples;
+    private long totalSamples;
+
+    private FunctionStats(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class CallNode {
+    private final String name;
+    private long selfSamples;
+    private long totalSamples;
+    private final Map<String, CallNode> children = Maps.newLinkedHashMap();
+
+    private CallNode(String name) {
+      this.name = name;
+    }
+
+    private CallNode child(String name) {
+      CallNode child = children.get(name);
+      if(child == null) {
+        child = new CallNode(name);
+        children.put(name, child);
+      }
+      return child;
+    }
+  }
+
+  private static final Ordering<FunctionStats> BY_SELF_SAMPLES = new Ordering<FunctionStats>() {
+    @Override
+    public int compare(FunctionStats left, FunctionStats right) {
+      return Long.compare(right.selfSamples, left.selfSamples);
+    }
+  };
+
+  private static final Ordering<CallNode> BY_TOTAL_SAMPLES = new Ordering<CallNode>() {
+    @Override
+    public int compare(CallNode left, CallNode right) {
+      return Long.compare(right.totalSamples, left.totalSamples);
+    }
+  };
+
+  private final long intervalNanos;
+  private final Map<String, FunctionStats> functions = Maps.newHashMap();
+  private final CallNode root = new CallNode("<Top level>");
+
+  SampledProfile(long intervalNanos) {
+    this.intervalNanos = intervalNanos;
+  }
+
+  /**
+   * Records a single sample
+   * @param stack the names of the functions on the stack, starting with the innermost
+   */
+  synchronized void record(List<String> stack) {
+    root.totalSamples++;
+
+    if(stack.isEmpty()) {
+      root.selfSamples++;
+      return;
+    }
+
+    // Flat profile: recursive calls only count once towards the total
+    Set<String> counted = Sets.newHashSet();
+    for (String name : stack) {
+      FunctionStats stats = stats(name);
+      if(counted.add(name)) {
+        stats.totalSamples++;
+      }
+    }
+    stats(stack.get(0)).selfSamples++;
+
+    // Call tree
+    CallNode node = root;
+    for (int i = stack.size() - 1; i >= 0; i--) {
+      node = node.child(stack.get(i));
+      node.totalSamples++;
+    }
+    node.selfSamples++;
+  }
+
+  private FunctionStats stats(String name) {
+    FunctionStats stats = functions.get(name);
+    if(stats == null) {
+      stats = new FunctionStats(name);
+      functions.put(name, stats);
+    }
+    return stats;
+  }
+
+  /**
+   * @return the total number of samples taken while the session was evaluating
+   */
+  public synchronized long getSampleCount() {
+    return root.totalSamples;
+  }
+
+  /**
+   * @return the number of samples in which {@code function} was the innermost function on the stack
+   */
+  public synchronized long getSelfSamples(String function) {
+    FunctionStats stats = functions.get(function);
+    return stats == null ? 0 : stats.selfSamples;
+  }
+
+  /**
+   * @return the number of samples in which {@code function} was anywhere on the stack
+   */
+  public synchronized long getTotalSamples(String function) {
+    FunctionStats stats = functions.get(function);
+    return stats == null ? 0 : stats.totalSamples;
+  }
+
+  /**
+   * Writes a flat profile, with the time spent in each function itself and in total,
+   * ordered by self time.
+   */
+  public synchronized void writeFlatProfile(PrintWriter out) {
+    List<FunctionStats> sorted = BY_SELF_SAMPLES.sortedCopy(functions.values());
+
+    out.println(String.format("%-30s%10s%8s%10s%8s", "Function", "Self (ms)", "Self %", "Total (ms)", "Total %"));
+    for (FunctionStats stats : sorted) {
+      out.println(String.format("%-30s%10d%7.1f%%%10d%7.1f%%",
+          stats.name,
+          millis(stats.selfSamples),
+          percent(stats.selfSamples),
+          millis(stats.totalSamples),
+          percent(stats.totalSamples)));
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the call tree, indenting each callee under its caller.
+   */
+  public synchronized void writeCallTree(PrintWriter out) {
+    writeCallTree(out, root, 0);
+    out.flush();
+  }
+
+  private void writeCallTree(PrintWriter out, CallNode node, int depth) {
+    out.println(String.format("%6.1f%% %6.1f%%  %s%s",
+        percent(node.totalSamples),
+        percent(node.selfSamples),
+        indent(depth),
+        node.name));
+    for (CallNode child : BY_TOTAL_SAMPLES.sortedCopy(node.children.values())) {
+      writeCallTree(out, child, depth + 1);
+    }
+  }
+
+  /**
+   * Writes the samples in the "collapsed stack" format used by flame graph tools:
+   * one line per distinct stack, with the function names from the outermost to the innermost
+   * separated by semicolons, followed by the number of samples.
+   */
+  public synchronized void writeCollapsedStacks(PrintWriter out) {
+    for (CallNode child : root.children.values()) {
+      writeCollapsedStacks(out, child, child.name);
+    }
+    out.flush();
+  }
+
+  private void writeCollapsedStacks(PrintWriter out, CallNode node, String path) {
+    if(node.selfSamples > 0) {
+      out.println(path + " " + node.selfSamples);
+    }
+    for (CallNode child : node.children.values()) {
+      writeCollapsedStacks(out, child, path + ";" + child.name);
+    }
+  }
+
+  private long millis(long samples) {
+    return TimeUnit.NANOSECONDS.toMillis(samples * intervalNanos);
+  }
+
+  private double percent(long samples) {
+    if(root.totalSamples == 0) {
+      return 0;
+    }
+    return ((double) samples) / ((double) root.totalSamples) * 100d;
+  }
+
+  private static String indent(int depth) {
+    return depth == 0 ? "" : String.format("%" + (depth * 2) + "s", "");
+  }
+}
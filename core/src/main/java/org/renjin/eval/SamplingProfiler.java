@@ -0,0 +1,245 @@
+package org.renjin.eval;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.renjin.sexp.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistical profiler which periodically samples the call stack of a single {@link Session}.
+ *
+ * <p>Unlike {@link Profiler}, which times every function call and keeps its state
+ * in static fields, each {@code Session} has its own sampling profiler, which
+ * can be started and stopped at runtime, either from R through {@code Rprof()}, or
+ * from Java through {@link Session#startProfiler(long, TimeUnit)}.</p>
+ *
+ * <p>While the profiler is running, the evaluating thread only publishes the innermost
+ * {@link Context} on each function call. A background thread reads it at a fixed interval,
+ * walks the {@code Context} stack and aggregates the samples into a {@link SampledProfile}.
+ * The thread is started by a {@link Trigger}, which tests can replace to take samples at
+ * exact points of evaluation.</p>
+ */
+public class SamplingProfiler {
+
+  /**
+   * The name recorded for functions which are not called through a symbol.
+   */
+  public static final String ANONYMOUS = "<Anonymous>";
+
+  /**
+   * The innermost point of evaluation: the context in which a call is being evaluated,
+   * and, if the function called is a builtin, its name.
+   */
+  static final class Frame {
+    private final Context context;
+    private final String builtinName;
+
+    private Frame(Context context, String builtinName) {
+      this.context = context;
+      this.builtinName = builtinName;
+    }
+  }
+
+  /**
+   * Decides when samples are taken.
+   */
+  interface Trigger {
+
+    /**
+     * Starts calling {@code sample} about every {@code intervalNanos} nanoseconds.
+     */
+    void start(Runnable sample, long intervalNanos);
+
+    /**
+     * Stops calling {@code sample}, waiting for a sample in progress to complete.
+     */
+    void stop();
+  }
+
+  /**
+   * Takes samples on a daemon thread at a fixed rate.
+   */
+  private static class ScheduledTrigger implements Trigger {
+    private ScheduledExecutorService sampler;
+
+    @Override
+    public void start(Runnable sample, long intervalNanos) {
+      sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("renjin-profiler-%d")
+          .build());
+      sampler.scheduleAtFixedRate(sample, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void stop() {
+      sampler.shutdown();
+      try {
+        sampler.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      sampler = null;
+    }
+  }
+
+  private final long intervalNanos;
+  private final SampledProfile profile;
+  private final Trigger trigger;
+  private Writer output;
+
+  private volatile Frame current;
+
+  private final Object lifecycleLock = new Object();
+  private boolean running;
+
+  SamplingProfiler(long interval, TimeUnit unit) {
+    this(interval, unit, new ScheduledTrigger());
+  }
+
+  SamplingProfiler(long interval, TimeUnit unit, Trigger trigger) {
+    this.intervalNanos = unit.toNanos(interval);
+    this.profile = new SampledProfile(intervalNanos);
+    this.trigger = trigger;
+  }
+
+  /**
+   * Writes each sample to {@code output} in the format of GNU R's {@code Rprof()},
+   * so that the file can be read by {@code summaryRprof()}.
+   */
+  synchronized void setOutput(Writer output) throws IOException {
+    this.output = output;
+    output.write("sample.interval=" + TimeUnit.NANOSECONDS.toMicros(intervalNanos) + "\n");
+  }
+
+  public long getInterval(TimeUnit unit) {
+    return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the profile collected so far
+   */
+  public SampledProfile getProfile() {
+    return profile;
+  }
+
+  public boolean isRunning() {
+    synchronized (lifecycleLock) {
+      return running;
+    }
+  }
+
+  void start() {
+    synchronized (lifecycleLock) {
+      if(running) {
+        return;
+      }
+      trigger.start(new Runnable() {
+        @Override
+        public void run() {
+          sample();
+        }
+      }, intervalNanos);
+      running = true;
+    }
+  }
+
+  void stop() {
+    synchronized (lifecycleLock) {
+      if(running) {
+        trigger.stop();
+        running = false;
+      }
+    }
+    synchronized (this) {
+      if(output != null) {
+        try {
+          output.close();
+        } catch (IOException ignored) {
+        }
+        output = null;
+      }
+    }
+  }
+
+  /**
+   * Called by the evaluating thread before applying {@code function} in {@code context}.
+   *
+   * @return the previous frame, which must be passed to {@link #exit(Frame)} once the call
+   * completes.
+   */
+  Frame enter(Context context, Function function, SEXP functionName) {
+    Frame previous = current;
+    String builtinName = null;
+    if(function instanceof BuiltinFunction) {
+      builtinName = nameOf(functionName);
+    }
+    current = new Frame(context, builtinName);
+    return previous;
+  }
+
+  void exit(Frame previous) {
+    current = previous;
+  }
+
+  private void sample() {
+    Frame frame = current;
+    if(frame == null) {
+      // Session is idle
+      return;
+    }
+    List<String> stack = stackOf(frame);
+    synchronized (this) {
+      profile.record(stack);
+      if(output != null) {
+        writeSample(stack);
+      }
+    }
+  }
+
+  private void writeSample(List<String> stack) {
+    StringBuilder line = new StringBuilder();
+    for (String name : stack) {
+      line.append('"').append(name).append("\" ");
+    }
+    line.append('\n');
+    try {
+      output.write(line.toString());
+    } catch (IOException e) {
+      // Give up on the file, but keep sampling
+      output = null;
+    }
+  }
+
+  /**
+   * @return the names of the functions on the stack, starting with the innermost.
+   */
+  private static List<String> stackOf(Frame frame) {
+    List<String> stack = Lists.newArrayList();
+    if(frame.builtinName != null) {
+      stack.add(frame.builtinName);
+    }
+    Context context = frame.context;
+    while(context != null) {
+      if(context.getType() == Context.Type.FUNCTION) {
+        stack.add(nameOf(context.getFunctionName()));
+      }
+      context = context.getParent();
+    }
+    return stack;
+  }
+
+  private static String nameOf(SEXP functionName) {
+    if(functionName instanceof Symbol) {
+      return ((Symbol) functionName).getPrintName();
+    } else {
+      return ANONYMOUS;
+    }
+  }
+}
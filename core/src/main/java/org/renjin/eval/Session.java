@@ -7,6 +7,8 @@ import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemManager;
 import org.renjin.compiler.pipeline.SimpleVectorPipeliner;
 import org.renjin.compiler.pipeline.VectorPipeliner;
+import org.renjin.methods.MethodDispatch;
+import org.renjin.methods.PrimitiveMethodTable;
 import org.renjin.primitives.io.connections.ConnectionTable;
 import org.renjin.primitives.packaging.NamespaceRegistry;
 import org.renjin.primitives.packaging.PackageLoader;
@@ -16,8 +18,10 @@ import org.renjin.util.FileSystemUtils;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Outermost context for R evaluation.
@@ -30,6 +34,13 @@ public class Session {
 
   public static final List<String> DEFAULT_PACKAGES = ImmutableList.of(
       "stats", "utils", "graphics", "grDevices", "datasets", "methods");
+
+  /**
+   * Singletons which describe the shared namespaces, and which are therefore
+   * shared between a session and its forks.
+   */
+  private static final List<Class<?>> FORK_SHARED_SINGLETONS = ImmutableList.<Class<?>>of(
+      MethodDispatch.class, PrimitiveMethodTable.class);
   
   private final Context topLevelContext;
 
@@ -76,6 +87,11 @@ public class Session {
   
   private final ConnectionTable connectionTable = new ConnectionTable();
 
+  /**
+   * The session from which this session was forked, or {@code null}
+   */
+  private final Session template;
+
   private FileObject workingDirectory;
   
   private StringVector commandLineArguments = StringVector.valueOf("renjin");
@@ -86,6 +102,11 @@ public class Session {
   
   private VectorPipeliner vectorPipeliner;
 
+  /**
+   * The running profiler, if any. Read by the evaluator on every function call.
+   */
+  volatile SamplingProfiler profiler;
+
   /**
    * Whether the result of the evaluation should be "invisible" in a
    * REPL
@@ -93,6 +114,7 @@ public class Session {
   boolean invisible;
 
   Session(Map<Class, Object> bindings) {
+    this.template = null;
     this.fileSystemManager = (FileSystemManager) bindings.get(FileSystemManager.class);
     this.homeDirectory = FileSystemUtils.homeDirectoryInCoreJar();
     this.workingDirectory = FileSystemUtils.workingDirectory(fileSystemManager);
@@ -118,6 +140,70 @@ public class Session {
     globalEnvironment.setVariable(".Random.seed", IntVector.valueOf(1)); 
   }
 
+  /**
+   * Creates a fork of {@code template}. See {@link #fork()}
+   */
+  private Session(Session template) {
+    this.template = template;
+    this.fileSystemManager = template.fileSystemManager;
+    this.homeDirectory = template.homeDirectory;
+    this.workingDirectory = template.workingDirectory;
+    this.systemEnvironment = Maps.newHashMap(template.systemEnvironment);
+    this.commandLineArguments = template.commandLineArguments;
+    this.securityManager = template.securityManager;
+    this.sessionController = template.sessionController;
+    this.vectorPipeliner = template.vectorPipeliner;
+
+    // The base environment, the attached packages and the loaded namespaces
+    // are shared with the template
+    this.baseEnvironment = template.baseEnvironment;
+    this.baseNamespaceEnv = template.baseNamespaceEnv;
+    this.namespaceRegistry = template.namespaceRegistry;
+    for (Class<?> sharedSingleton : FORK_SHARED_SINGLETONS) {
+      if(template.singletons.containsKey(sharedSingleton)) {
+        singletons.put(sharedSingleton, template.singletons.get(sharedSingleton));
+      }
+    }
+    if(template.singletons.containsKey(Options.class)) {
+      singletons.put(Options.class, new Options((Options) template.singletons.get(Options.class)));
+    }
+
+    // ...but the global environment is our own, starting with a copy of
+    // the template's variables
+    this.globalEnvironment = Environment.createGlobalEnvironment(template.globalEnvironment.getParent());
+    for (Symbol symbol : template.globalEnvironment.getFrame().getSymbols()) {
+      globalEnvironment.setVariable(symbol, template.globalEnvironment.getVariable(symbol));
+    }
+    this.rng = template.rng.newStream(this);
+    this.topLevelContext = new Context(this);
+  }
+
+  /**
+   * Creates a new session which shares this session's base environment, attached packages,
+   * and loaded namespaces, but has its own global environment, connection table, options,
+   * and random number generator. If the template uses the L'Ecuyer-CMRG generator, each fork 
+   * draws from its own stream: see {@link RNG#newStream(Session)}.
+   * 
+   * <p>Forking is much cheaper than building a new session, as the base package and any other
+   * packages loaded into this session need not be loaded again. This session should 
+   * be fully initialized before it is forked, and should no longer be used to evaluate
+   * R code: forks may run concurrently with one another, and the shared environments must 
+   * therefore be treated as read-only. Note in particular that namespaces loaded by a fork
+   * are loaded into the shared registry, and that a fork's deferred warnings 
+   * ({@code last.warning}) are still stored in the shared base environment.</p>
+   */
+  public Session fork() {
+    return new Session(this);
+  }
+
+  /**
+   * @return the session from which this session was forked, or {@code null} if 
+   * this session was not created by {@link #fork()}
+   */
+  public Session getTemplate() {
+    return template;
+  }
+
   /** 
    * Sets the paths in which to search for libraries.
    *
@@ -230,6 +316,58 @@ public class Session {
     return systemEnvironment;
   }
 
+  /**
+   * Starts sampling this session's call stack at the given interval, stopping
+   * any profiler which is already running.
+   *
+   * @return the new profiler
+   */
+  public SamplingProfiler startProfiler(long interval, TimeUnit unit) {
+    return startProfiler(new SamplingProfiler(interval, unit));
+  }
+
+  /**
+   * Starts sampling this session's call stack at the given interval, stopping
+   * any profiler which is already running, and writing each sample to {@code output}
+   * in the format of GNU R's {@code Rprof()}.
+   *
+   * @return the new profiler
+   */
+  public SamplingProfiler startProfiler(long interval, TimeUnit unit, Writer output) throws IOException {
+    SamplingProfiler newProfiler = new SamplingProfiler(interval, unit);
+    newProfiler.setOutput(output);
+    return startProfiler(newProfiler);
+  }
+
+  SamplingProfiler startProfiler(SamplingProfiler newProfiler) {
+    stopProfiler();
+    newProfiler.start();
+    profiler = newProfiler;
+    return newProfiler;
+  }
+
+  /**
+   * Stops the running profiler, if any.
+   *
+   * @return the profile collected by the profiler, or {@code null} if no profiler was running.
+   */
+  public SampledProfile stopProfiler() {
+    SamplingProfiler stopped = profiler;
+    if(stopped == null) {
+      return null;
+    }
+    profiler = null;
+    stopped.stop();
+    return stopped.getProfile();
+  }
+
+  /**
+   * @return the running profiler, or {@code null} if this session is not being profiled
+   */
+  public SamplingProfiler getProfiler() {
+    return profiler;
+  }
+
   public SecurityManager getSecurityManager() {
     return securityManager;
   }
@@ -267,6 +405,7 @@ public class Session {
    * any finalizers registered with reg.finalizer(on.exit = TRUE)
    */
   public void close() {
+    stopProfiler();
     topLevelContext.exit();
     if(finalizers != null) {
       finalizers.finalizeOnExit(topLevelContext);
@@ -0,0 +1,270 @@
+package org.renjin.eval;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of sessions forked from a single, warmed-up template session, for servers that
+ * need a fresh session for each request but cannot afford to load the base package
+ * and other packages each time.
+ *
+ * <p>Each call to {@link #lease()} returns a session which has its own global environment,
+ * connection table, options, and random number generator, but which shares the template's
+ * base environment and namespaces. See {@link Session#fork()}.</p>
+ *
+ * <p>Sessions are returned with {@link #release(Session)}, which closes the session and
+ * discards its state, so that nothing assigned during one lease is visible to the next.
+ * The pool keeps up to {@code maxIdle} fresh forks ready to be leased.</p>
+ *
+ * <pre>
+ * Session template = new SessionBuilder().withDefaultPackages().build();
+ * SessionPool pool = new SessionPool(template, 16, 4);
+ *
+ * Session session = pool.lease();
+ * try {
+ *   session.getTopLevelContext().evaluate(...);
+ * } finally {
+ *   pool.release(session);
+ * }
+ * </pre>
+ */
+public class SessionPool {
+
+  private final Session template;
+  private final int maxIdle;
+
+  /**
+   * Limits the number of sessions leased at any one time
+   */
+  private final Semaphore permits;
+
+  private final ConcurrentLinkedQueue<Session> idle = new ConcurrentLinkedQueue<Session>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  /**
+   * Maps leased sessions to the time, in nanoseconds, at which they were leased
+   */
+  private final ConcurrentHashMap<Session, Long> leased = new ConcurrentHashMap<Session, Long>();
+
+  private final AtomicLong leaseCount = new AtomicLong();
+  private final AtomicLong forkCount = new AtomicLong();
+  private final AtomicLong timeoutCount = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong totalLeaseNanos = new AtomicLong();
+  private final AtomicLong releaseCount = new AtomicLong();
+  private final AtomicInteger peakActive = new AtomicInteger();
+
+  /**
+   * @param template the fully initialized session from which sessions are forked
+   * @param maxActive the maximum number of sessions which can be leased at any one time
+   * @param maxIdle the number of forked sessions to keep ready for lease
+   */
+  public SessionPool(Session template, int maxActive, int maxIdle) {
+    Preconditions.checkNotNull(template, "template");
+    Preconditions.checkArgument(maxActive > 0, "maxActive must be positive");
+    Preconditions.checkArgument(maxIdle >= 0, "maxIdle cannot be negative");
+
+    this.template = template;
+    this.maxIdle = maxIdle;
+    this.permits = new Semaphore(maxActive, true);
+
+    for (int i = 0; i < maxIdle; i++) {
+      offerIdle(fork());
+    }
+  }
+
+  public Session getTemplate() {
+    return template;
+  }
+
+  /**
+   * Leases a session from the pool, waiting if the maximum number of
+   * sessions are already leased.
+   */
+  public Session lease() throws InterruptedException {
+    long waitStart = System.nanoTime();
+    permits.acquire();
+    return checkOut(waitStart);
+  }
+
+  /**
+   * Leases a session from the pool, waiting up to the given timeout if the maximum number of
+   * sessions are already leased.
+   *
+   * @return the leased session, or {@code null} if no session became available before the timeout.
+   */
+  public Session tryLease(long timeout, TimeUnit unit) throws InterruptedException {
+    long waitStart = System.nanoTime();
+    if(!permits.tryAcquire(timeout, unit)) {
+      timeoutCount.incrementAndGet();
+      return null;
+    }
+    return checkOut(waitStart);
+  }
+
+  private Session checkOut(long waitStart) {
+    long leaseStart = System.nanoTime();
+    totalWaitNanos.addAndGet(leaseStart - waitStart);
+
+    Session session = idle.poll();
+    if(session == null) {
+      try {
+        session = fork();
+      } catch(RuntimeException e) {
+        permits.release();
+        throw e;
+      }
+    } else {
+      idleCount.decrementAndGet();
+    }
+    leased.put(session, leaseStart);
+    leaseCount.incrementAndGet();
+
+    int active = leased.size();
+    int peak;
+    do {
+      peak = peakActive.get();
+    } while(active > peak && !peakActive.compareAndSet(peak, active));
+
+    return session;
+  }
+
+  /**
+   * Returns a leased session to the pool. The session is closed, running any
+   * pending {@code on.exit} handlers and finalizers, and must not be used again.
+   *
+   * @throws IllegalArgumentException if {@code session} is not currently leased from this pool.
+   */
+  public void release(Session session) {
+    Long leaseStart = leased.remove(session);
+    if(leaseStart == null) {
+      throw new IllegalArgumentException("Session was not leased from this pool, or has already been released");
+    }
+    try {
+      session.close();
+    } finally {
+      totalLeaseNanos.addAndGet(System.nanoTime() - leaseStart);
+      releaseCount.incrementAndGet();
+
+      // Replace the released session with a fresh fork, rather than trying
+      // to undo whatever changes were made during the lease
+      if(idleCount.get() < maxIdle) {
+        offerIdle(fork());
+      }
+      permits.release();
+    }
+  }
+
+  private Session fork() {
+    forkCount.incrementAndGet();
+    return template.fork();
+  }
+
+  private void offerIdle(Session session) {
+    idle.offer(session);
+    idleCount.incrementAndGet();
+  }
+
+  /**
+   * @return a snapshot of this pool's usage statistics
+   */
+  public Metrics getMetrics() {
+    return new Metrics(this);
+  }
+
+  /**
+   * A snapshot of a pool's usage statistics.
+   */
+  public static class Metrics {
+    private final int activeCount;
+    private final int idleCount;
+    private final int peakActiveCount;
+    private final long leaseCount;
+    private final long forkCount;
+    private final long timeoutCount;
+    private final long meanWaitNanos;
+    private final long meanLeaseNanos;
+
+    private Metrics(SessionPool pool) {
+      this.activeCount = pool.leased.size();
+      this.idleCount = pool.idleCount.get();
+      this.peakActiveCount = pool.peakActive.get();
+      this.leaseCount = pool.leaseCount.get();
+      this.forkCount = pool.forkCount.get();
+      this.timeoutCount = pool.timeoutCount.get();
+      this.meanWaitNanos = leaseCount == 0 ? 0 : pool.totalWaitNanos.get() / leaseCount;
+      long releaseCount = pool.releaseCount.get();
+      this.meanLeaseNanos = releaseCount == 0 ? 0 : pool.totalLeaseNanos.get() / releaseCount;
+    }
+
+    /**
+     * @return the number of sessions currently leased
+     */
+    public int getActiveCount() {
+      return activeCount;
+    }
+
+    /**
+     * @return the number of forked sessions ready to be leased
+     */
+    public int getIdleCount() {
+      return idleCount;
+    }
+
+    /**
+     * @return the largest number of sessions leased at the same time
+     */
+    public int getPeakActiveCount() {
+      return peakActiveCount;
+    }
+
+    /**
+     * @return the total number of leases granted
+     */
+    public long getLeaseCount() {
+      return leaseCount;
+    }
+
+    /**
+     * @return the total number of sessions forked from the template
+     */
+    public long getForkCount() {
+      return forkCount;
+    }
+
+    /**
+     * @return the number of calls to {@link SessionPool#tryLease(long, TimeUnit)} which timed out
+     */
+    public long getTimeoutCount() {
+      return timeoutCount;
+    }
+
+    /**
+     * @return the mean time callers waited for a session to become available
+     */
+    public long getMeanWait(TimeUnit unit) {
+      return unit.convert(meanWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the mean time between the lease and release of a session
+     */
+    public long getMeanLeaseTime(TimeUnit unit) {
+      return unit.convert(meanLeaseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("active=%d, idle=%d, peakActive=%d, leases=%d, forks=%d, timeouts=%d, " +
+              "meanWait=%dus, meanLease=%dus",
+          activeCount, idleCount, peakActiveCount, leaseCount, forkCount, timeoutCount,
+          getMeanWait(TimeUnit.MICROSECONDS), getMeanLeaseTime(TimeUnit.MICROSECONDS));
+    }
+  }
+}
@@ -4,8 +4,10 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import com.google.common.base.Function;
+import com.google.common.io.ByteStreams;
 import org.renjin.eval.Context;
 import org.renjin.primitives.io.serialization.RDataReader;
 import org.renjin.sexp.ListVector;
@@ -16,16 +18,28 @@ public class LazyLoadFrame {
   
   private static final int OLD_VERSION = 1;
   private static final int VERSION = 2;
+  private static final int BLOB_VERSION = 3;
 
   
   public static Iterable<NamedValue> load(Context context,
                                           Function<String, InputStream> resourceProvider) throws IOException {
 
-    DataInputStream din = new DataInputStream(resourceProvider.apply("environment"));
+    InputStream in = resourceProvider.apply("environment");
+    byte[] environment;
+    try {
+      environment = ByteStreams.toByteArray(in);
+    } finally {
+      in.close();
+    }
+
+    DataInputStream din = new DataInputStream(new ByteArrayInputStream(environment));
     int version = din.readInt();
     if(version == OLD_VERSION) {
       return readOldVersion(din);
     }
+    if(version == BLOB_VERSION) {
+      return readBlobVersion(din, environment);
+    }
     if(version != VERSION) {
       throw new IOException("Unsupported version: " + version);
     }
@@ -49,6 +63,36 @@ public class LazyLoadFrame {
     return vector.build().namedValues();
   }
 
+  /**
+   * Reads an index of names, offsets and lengths, which is followed by a single blob
+   * holding the serialized values. No values are deserialized until they are forced.
+   *
+   * <p>Each promise keeps a copy of only its own value's bytes, so that the blob itself can be
+   * collected once the frame has been read.</p>
+   */
+  private static Iterable<NamedValue> readBlobVersion(DataInputStream din, byte[] environment) throws IOException {
+    int count = din.readInt();
+    String[] names = new String[count];
+    int[] offsets = new int[count];
+    int[] lengths = new int[count];
+    for(int i=0;i!=count;++i) {
+      names[i] = din.readUTF();
+      offsets[i] = din.readInt();
+      lengths[i] = din.readInt();
+    }
+
+    // The blob follows the index
+    int blobStart = environment.length - din.available();
+    din.close();
+
+    ListVector.NamedBuilder vector = new ListVector.NamedBuilder(0, count);
+    for(int i=0;i!=count;++i) {
+      int start = blobStart + offsets[i];
+      vector.add(names[i], new SerializedPromise(Arrays.copyOfRange(environment, start, start + lengths[i])));
+    }
+    return vector.build().namedValues();
+  }
+
   private static Iterable<NamedValue> readOldVersion(DataInputStream din) throws IOException {
     int count = din.readInt();
     ListVector.NamedBuilder vector = new ListVector.NamedBuilder(0, count);
@@ -3,18 +3,20 @@ package org.renjin.packaging;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
-import com.google.common.io.Files;
+import com.google.common.collect.Lists;
 import org.renjin.eval.Context;
 import org.renjin.primitives.io.serialization.RDataWriter;
 import org.renjin.sexp.Environment;
 import org.renjin.sexp.NamedValue;
 
 import java.io.*;
+import java.util.List;
 
 public class LazyLoadFrameBuilder {
 
   private static final int VERSION_1 = 1;
   private static final int VERSION_2 = 2;
+  private static final int VERSION_3 = 3;
 
   private File outputDir;
 
@@ -42,30 +44,35 @@ public class LazyLoadFrameBuilder {
     Iterable<NamedValue> toWrite = Iterables.filter(env.namedValues(), filter);
 
 
-    // Now write an index of symbols
+    // Serialize all the values into a single blob
+    ByteArrayOutputStream blob = new ByteArrayOutputStream();
+    List<String> names = Lists.newArrayList();
+    List<Integer> offsets = Lists.newArrayList();
+    List<Integer> lengths = Lists.newArrayList();
+    for(NamedValue namedValue : toWrite) {
+      byte[] bytes = serializeSymbol(namedValue);
+      names.add(namedValue.getName());
+      offsets.add(blob.size());
+      lengths.add(bytes.length);
+      blob.write(bytes);
+    }
+
+    // Now write an index of symbols, followed by the blob, to a single resource
+    // so that the namespace can be loaded without opening a resource for each symbol,
+    // and each value is only deserialized when it is first used
     File indexFile = new File(outputDir, "environment");
     DataOutputStream indexOut = new DataOutputStream(new FileOutputStream(indexFile));
 
-    // mark this format as version 2
-    indexOut.writeInt(VERSION_2);
-
-    // write out each (large) symbols to a separate resource file.
-    // Small values will be serialized directly in the index file
-
-    indexOut.writeInt(Iterables.size(toWrite));
-    for(NamedValue namedValue : toWrite) {
-
-      indexOut.writeUTF(namedValue.getName());
-      byte[] bytes = serializeSymbol(namedValue);
+    // mark this format as version 3
+    indexOut.writeInt(VERSION_3);
 
-      if(bytes.length > 1024) {
-        indexOut.writeInt(-1);
-        Files.write(bytes, new File(outputDir, SerializedPromise.resourceName(namedValue.getName())));
-      } else {
-        indexOut.writeInt(bytes.length);
-        indexOut.write(bytes);
-      }
+    indexOut.writeInt(names.size());
+    for(int i = 0; i != names.size(); ++i) {
+      indexOut.writeUTF(names.get(i));
+      indexOut.writeInt(offsets.get(i));
+      indexOut.writeInt(lengths.get(i));
     }
+    blob.writeTo(indexOut);
     indexOut.close();
   }
 
@@ -10,25 +10,63 @@ import org.renjin.sexp.Null;
 import org.renjin.sexp.Promise;
 import org.renjin.sexp.SEXP;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * A promise for a value serialized when a package was built, which is deserialized the first
+ * time it is forced.
+ *
+ * <p>Namespaces are shared between forked sessions, so the same promise may be forced from
+ * several threads at once: forcing is synchronized, so that the value is deserialized only once.</p>
+ */
 public class SerializedPromise extends Promise {
 
   private Function<String, InputStream> resourceProvider;
   private String name;
 
+  /**
+   * The serialized value, or {@code null} if the value is stored in its own resource
+   */
+  private byte[] serialized;
+
   public SerializedPromise(Function<String, InputStream> resourceProvider, String name) {
     super(Environment.EMPTY, Null.INSTANCE);
     this.resourceProvider = resourceProvider;
     this.name = name;
   }
 
+  /**
+   * Creates a promise for the value serialized in {@code serialized}
+   */
+  public SerializedPromise(byte[] serialized) {
+    super(Environment.EMPTY, Null.INSTANCE);
+    this.serialized = serialized;
+  }
+
+  @Override
+  public synchronized SEXP force(Context context) {
+    return super.force(context);
+  }
+
   @Override
   protected SEXP doEval(Context context) {
     try {
-      RDataReader reader = new RDataReader(context, resourceProvider.apply(resourceName(name)));
-      return reader.readFile();
+      InputStream in;
+      if(serialized != null) {
+        in = new ByteArrayInputStream(serialized);
+      } else {
+        in = resourceProvider.apply(resourceName(name));
+      }
+      RDataReader reader = new RDataReader(context, in);
+      SEXP value = reader.readFile();
+
+      // Once forced, the serialized value is no longer needed. As force() is synchronized,
+      // no other thread can still be reading it.
+      serialized = null;
+      resourceProvider = null;
+      return value;
     } catch (IOException e) {
       throw new EvalException(e);
     }
@@ -0,0 +1,44 @@
+package org.renjin.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The {@link ForkJoinPool} shared by the parallel numeric kernels, such as matrix products, so
+ * that kernels running at the same time together use no more than {@code renjin.parallel.threads}
+ * threads (by default, one per processor).
+ *
+ * <p>The pool is only started when a kernel first needs it.</p>
+ */
+public final class KernelPool {
+
+  private static class Holder {
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+        Integer.getInteger("renjin.parallel.threads", Runtime.getRuntime().availableProcessors()));
+  }
+
+  private KernelPool() { }
+
+  public static ForkJoinPool get() {
+    return Holder.POOL;
+  }
+
+  /**
+   * @return the number of threads in the pool
+   */
+  public static int getParallelism() {
+    return Holder.POOL.getParallelism();
+  }
+
+  /**
+   * Runs {@code task} in the pool and waits for its result. If called from a task already running in the
+   * pool, such as a kernel called by another kernel, the task is forked within the pool instead.
+   */
+  public static <T> T invoke(ForkJoinTask<T> task) {
+    if(ForkJoinTask.getPool() == Holder.POOL) {
+      return task.invoke();
+    } else {
+      return Holder.POOL.invoke(task);
+    }
+  }
+}
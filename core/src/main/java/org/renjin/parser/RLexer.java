@@ -40,7 +40,7 @@ public class RLexer implements RParser.Lexer {
   /**
    * Line in file of the above
    */
-  public static int R_ParseContextLine = 0;
+  private int R_ParseContextLine = 0;
   
   private static Logger logger = Logger.getLogger("R.Lexer");
 
@@ -2,7 +2,6 @@ package org.renjin.primitives;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.renjin.base.Base;
 import org.renjin.eval.Context;
@@ -21,16 +20,28 @@ import org.renjin.sexp.*;
 
 import java.awt.*;
 import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class Native {
 
   public static final boolean DEBUG = false;
 
+  /**
+   * The bindings of the Java methods to which calls are delegated, by declaring class and name
+   */
+  private static final ClassValue<ConcurrentMap<String, FunctionBinding>> JAVA_METHODS =
+      new ClassValue<ConcurrentMap<String, FunctionBinding>>() {
+        @Override
+        protected ConcurrentMap<String, FunctionBinding> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
 
   @Builtin(".C")
   public static SEXP dotC(@Current Context context,
@@ -42,7 +53,7 @@ public class Native {
                           @NamedFlag("DUP") boolean dup,
                           @NamedFlag("ENCODING") boolean encoding) throws IllegalAccessException {
 
-    MethodHandle method;
+    NativeCallSite method;
 
     if(methodExp instanceof StringVector) {
       String methodName = ((StringVector) methodExp).getElementAsString(0);
@@ -52,27 +63,25 @@ public class Native {
         return delegateToJavaMethod(context, Base.class, methodName, callArguments);
       }
 
-      List<Method> methods = findMethod(getPackageClass(packageName, context), methodName);
-      if (methods.isEmpty()) {
+      method = NativeCallSite.ofC(getPackageClass(packageName, context), methodName);
+      if (method == null) {
         throw new EvalException("Can't find method %s in package %s", methodName, packageName);
       }
 
-      method = MethodHandles.publicLookup().unreflect(Iterables.getOnlyElement(methods));
-
     } else if(methodExp instanceof ExternalPtr && ((ExternalPtr) methodExp).getInstance() instanceof Method) {
-      method = MethodHandles.publicLookup().unreflect((Method) ((ExternalPtr) methodExp).getInstance());
+      method = NativeCallSite.of((Method) ((ExternalPtr) methodExp).getInstance());
 
     } else if(methodExp instanceof ListVector) {
       ExternalPtr<MethodHandle> address = (ExternalPtr<MethodHandle>) ((ListVector)methodExp).get("address");
-      method = address.getInstance();
+      method = NativeCallSite.of(address.getInstance());
 
     } else {
       throw new EvalException("Invalid method argument of type %s", methodExp.getTypeName());
     }
 
-    Object[] nativeArguments = new Object[method.type().parameterCount()];
+    Object[] nativeArguments = new Object[method.getParameterCount()];
     for(int i=0;i!=nativeArguments.length;++i) {
-      Type type = method.type().parameterType(i);
+      Type type = method.getParameterType(i);
       if(type.equals(IntPtr.class)) {
         nativeArguments[i] = intPtrFromVector(callArguments.get(i));
       } else if(type.equals(DoublePtr.class)) {
@@ -86,7 +95,7 @@ public class Native {
     }
 
     try {
-      method.invokeWithArguments(nativeArguments);
+      method.invoke(nativeArguments);
     } catch (EvalException | Error e) {
       throw e;
     } catch (Throwable e) {
@@ -187,35 +196,34 @@ public class Native {
     // TODO: map package names to implementation classes
 
 
-    MethodHandle method;
+    NativeCallSite method;
     String methodName;
 
     if(methodExp instanceof ListVector) {
       ListVector methodObject = (ListVector) methodExp;
       ExternalPtr<MethodHandle> address = (ExternalPtr<MethodHandle>) methodObject.get("address");
-      method = address.getInstance();
+      method = NativeCallSite.of(address.getInstance());
       methodName = ((StringVector) methodObject.get("name")).getElementAsString(0);
     } else if(methodExp instanceof StringVector) {
       if("base".equals(packageName)) {
         className = "org.renjin.appl.Appl";
       }
       methodName = ((StringVector) methodExp).getElementAsString(0);
-      method = findFortranMethod(className, methodName);
+      method = NativeCallSite.ofFortran(className, methodName);
 
     } else if(methodExp instanceof ExternalPtr && ((ExternalPtr) methodExp).getInstance() instanceof Method) {
       Method methodRef = (Method) ((ExternalPtr) methodExp).getInstance();
       methodName = methodRef.getName();
-      method =  MethodHandles.publicLookup().unreflect(methodRef);
+      method = NativeCallSite.of(methodRef);
     } else {
       throw new EvalException("Invalid argument type for method = %s", methodExp.getTypeName());
     }
 
-    Class<?>[] fortranTypes = method.type().parameterArray();
-    if(fortranTypes.length != callArguments.length()) {
+    if(method.getParameterCount() != callArguments.length()) {
       throw new EvalException("Invalid number of args");
     }
 
-    Object[] fortranArgs = new Object[fortranTypes.length];
+    Object[] fortranArgs = new Object[method.getParameterCount()];
     ListVector.NamedBuilder returnValues = ListVector.newNamedBuilder();
 
     if(Profiler.ENABLED) {
@@ -228,28 +236,28 @@ public class Native {
 
     for(int i=0;i!=callArguments.length();++i) {
       AtomicVector vector = (AtomicVector) callArguments.get(i);
-      if(fortranTypes[i].equals(DoublePtr.class)) {
+      if(method.getParameterType(i).equals(DoublePtr.class)) {
         double[] array = vector.toDoubleArray();
         fortranArgs[i] = new DoublePtr(array, 0);
         returnValues.add(callArguments.getName(i), DoubleArrayVector.unsafe(array, vector.getAttributes()));
 
-      } else if(fortranTypes[i].equals(IntPtr.class)) {
+      } else if(method.getParameterType(i).equals(IntPtr.class)) {
         int[] array = vector.toIntArray();
         fortranArgs[i] = new IntPtr(array, 0);
         returnValues.add(callArguments.getName(i), IntArrayVector.unsafe(array, vector.getAttributes()));
 
-      } else if(fortranTypes[i].equals(BooleanPtr.class)) {
+      } else if(method.getParameterType(i).equals(BooleanPtr.class)) {
         boolean[] array = toBooleanArray(vector);
         fortranArgs[i] = new BooleanPtr(array);
         returnValues.add(callArguments.getName(i), BooleanArrayVector.unsafe(array));
 
       } else {
-        throw new UnsupportedOperationException("fortran type: " + fortranTypes[i]);
+        throw new UnsupportedOperationException("fortran type: " + method.getParameterType(i));
       }
     }
 
     try {
-      method.invokeWithArguments(fortranArgs);
+      method.invoke(fortranArgs);
     } catch (Error e) {
       throw e;
     } catch (Throwable e) {
@@ -276,26 +284,6 @@ public class Native {
   }
 
 
-  private static MethodHandle findFortranMethod(String className, String methodName) throws IllegalAccessException {
-    Class<?> declaringClass = null;
-    try {
-      declaringClass = Class.forName(className);
-    } catch (ClassNotFoundException e) {
-      throw new EvalException(String.format("Could not find class named %s", className), e);
-    }
-
-    String mangledName = methodName.toLowerCase() + "_";
-
-    for(Method method : declaringClass.getMethods()) {
-      if(method.getName().equals(mangledName) &&
-              Modifier.isPublic(method.getModifiers()) &&
-              Modifier.isStatic(method.getModifiers())) {
-        return MethodHandles.publicLookup().unreflect(method);
-      }
-    }
-    throw new EvalException("Could not find method %s in class %s", methodName, className);
-  }
-
   @Builtin(".Call")
   public static SEXP dotCall(@Current Context context,
                              @Current Environment rho,
@@ -307,25 +295,20 @@ public class Native {
     if(methodExp.inherits("NativeSymbolInfo")) {
 
       ExternalPtr<MethodHandle> address = (ExternalPtr<MethodHandle>) ((ListVector)methodExp).get("address");
-      MethodHandle methodHandle = address.getInstance();
-      if(methodHandle.type().parameterCount() != callArguments.length()) {
+      NativeCallSite method = NativeCallSite.of(address.getInstance());
+      if(method.getParameterCount() != callArguments.length()) {
         throw new EvalException("Expected %d arguments, found %d",
-                methodHandle.type().parameterCount(),
+                method.getParameterCount(),
                 callArguments.length());
       }
-      MethodHandle transformedHandle = methodHandle.asSpreader(SEXP[].class, methodHandle.type().parameterCount());
-      SEXP[] arguments = toSexpArray(callArguments);
+      Object[] arguments = toSexpArray(callArguments);
       if(Profiler.ENABLED) {
         StringVector nameExp = (StringVector)((ListVector) methodExp).get("name");
         Profiler.functionStart(Symbol.get(nameExp.getElementAsString(0)));
       }
       try {
-        if (methodHandle.type().returnType().equals(void.class)) {
-          transformedHandle.invokeExact(arguments);
-          return Null.INSTANCE;
-        } else {
-          return (SEXP) transformedHandle.invokeExact(arguments);
-        }
+        SEXP result = (SEXP) method.invoke(arguments);
+        return result == null ? Null.INSTANCE : result;
       } catch (Error e) {
         throw e;
       } catch (Throwable e) {
@@ -381,13 +364,18 @@ public class Native {
                                           String methodName,
                                           ListVector arguments) {
 
-    List<Method> overloads = findMethod(clazz, methodName);
+    ConcurrentMap<String, FunctionBinding> bindings = JAVA_METHODS.get(clazz);
+    FunctionBinding binding = bindings.get(methodName);
+    if(binding == null) {
+      List<Method> overloads = findMethod(clazz, methodName);
 
-    if(overloads.isEmpty()) {
-      throw new EvalException("Method " + methodName + " not defined in " + clazz.getName());
-    }
+      if(overloads.isEmpty()) {
+        throw new EvalException("Method " + methodName + " not defined in " + clazz.getName());
+      }
 
-    FunctionBinding binding = new FunctionBinding(overloads);
+      binding = new FunctionBinding(overloads);
+      bindings.putIfAbsent(methodName, binding);
+    }
     return binding.invoke(null, context, arguments);
   }
 
@@ -0,0 +1,155 @@
+package org.renjin.primitives;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import org.renjin.eval.EvalException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The target of a {@code .C}, {@code .Fortran} or {@code .Call} call, resolved once and adapted
+ * to take its arguments as an {@code Object[]}, so that each call is a single {@code invokeExact}
+ * rather than an {@code invokeWithArguments}, which builds a new invoker for every call.
+ *
+ * <p>Call sites are cached by method handle, by reflected method, and by declaring class and name,
+ * so that the declaring class's methods are only searched on the first call. A call site's invoker
+ * refers to its method handle, so call sites cached by method handle are only softly held: otherwise
+ * the weakly held handle could never be collected.</p>
+ */
+class NativeCallSite {
+
+  private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+  private static final LoadingCache<MethodHandle, NativeCallSite> HANDLES = CacheBuilder.newBuilder()
+      .weakKeys()
+      .softValues()
+      .build(new CacheLoader<MethodHandle, NativeCallSite>() {
+        @Override
+        public NativeCallSite load(MethodHandle handle) {
+          return new NativeCallSite(handle);
+        }
+      });
+
+  private static final LoadingCache<Method, NativeCallSite> METHODS = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(new CacheLoader<Method, NativeCallSite>() {
+        @Override
+        public NativeCallSite load(Method method) throws IllegalAccessException {
+          return new NativeCallSite(MethodHandles.publicLookup().unreflect(method));
+        }
+      });
+
+  private static final ClassValue<ConcurrentMap<String, NativeCallSite>> C_METHODS = new MethodsByName();
+
+  private static final ClassValue<ConcurrentMap<String, NativeCallSite>> FORTRAN_METHODS = new MethodsByName();
+
+  private final Class<?>[] parameterTypes;
+  private final MethodHandle invoker;
+
+  private NativeCallSite(MethodHandle method) {
+    this.parameterTypes = method.type().parameterArray();
+    this.invoker = method
+        .asSpreader(Object[].class, parameterTypes.length)
+        .asType(INVOKER_TYPE);
+  }
+
+  /**
+   * @return the call site of a method handle from a {@code NativeSymbolInfo}
+   */
+  public static NativeCallSite of(MethodHandle method) {
+    return HANDLES.getUnchecked(method);
+  }
+
+  /**
+   * @return the call site of a reflected method
+   */
+  public static NativeCallSite of(Method method) throws IllegalAccessException {
+    try {
+      return METHODS.get(method);
+    } catch (ExecutionException e) {
+      throw (IllegalAccessException) e.getCause();
+    }
+  }
+
+  /**
+   * @return the call site of the public static method named {@code methodName} in {@code declaringClass},
+   * or {@code null} if there is no such method.
+   */
+  public static NativeCallSite ofC(Class<?> declaringClass, String methodName) throws IllegalAccessException {
+    ConcurrentMap<String, NativeCallSite> sites = C_METHODS.get(declaringClass);
+    NativeCallSite site = sites.get(methodName);
+    if(site == null) {
+      List<Method> methods = Native.findMethod(declaringClass, methodName);
+      if(methods.isEmpty()) {
+        return null;
+      }
+      site = new NativeCallSite(MethodHandles.publicLookup().unreflect(Iterables.getOnlyElement(methods)));
+      sites.putIfAbsent(methodName, site);
+    }
+    return site;
+  }
+
+  /**
+   * @return the call site of the Fortran subroutine {@code methodName}, compiled to the
+   * class named {@code className}.
+   */
+  public static NativeCallSite ofFortran(String className, String methodName) throws IllegalAccessException {
+    Class<?> declaringClass;
+    try {
+      declaringClass = Class.forName(className);
+    } catch (ClassNotFoundException e) {
+      throw new EvalException(String.format("Could not find class named %s", className), e);
+    }
+
+    String mangledName = methodName.toLowerCase() + "_";
+    ConcurrentMap<String, NativeCallSite> sites = FORTRAN_METHODS.get(declaringClass);
+    NativeCallSite site = sites.get(mangledName);
+    if(site == null) {
+      for(Method method : declaringClass.getMethods()) {
+        if(method.getName().equals(mangledName) &&
+            Modifier.isPublic(method.getModifiers()) &&
+            Modifier.isStatic(method.getModifiers())) {
+          site = new NativeCallSite(MethodHandles.publicLookup().unreflect(method));
+          sites.putIfAbsent(mangledName, site);
+          return site;
+        }
+      }
+      throw new EvalException("Could not find method %s in class %s", methodName, className);
+    }
+    return site;
+  }
+
+  public int getParameterCount() {
+    return parameterTypes.length;
+  }
+
+  public Class<?> getParameterType(int index) {
+    return parameterTypes[index];
+  }
+
+  /**
+   * Invokes the target with the given arguments, which must have the target's parameter types.
+   *
+   * @return the value returned by the target, or {@code null} if the target returns {@code void}
+   */
+  public Object invoke(Object[] arguments) throws Throwable {
+    return (Object) invoker.invokeExact(arguments);
+  }
+
+  private static class MethodsByName extends ClassValue<ConcurrentMap<String, NativeCallSite>> {
+    @Override
+    protected ConcurrentMap<String, NativeCallSite> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<>();
+    }
+  }
+}
@@ -514,6 +514,8 @@ public class Primitives {
 
     f("RNGkind", RNG.class, 11);
     f("set.seed", RNG.class, 11);
+    f("nextRNGStream", RNG.class, 11);
+    f("nextRNGSubStream", RNG.class, 11);
 
 /* Data Summaries */
 /* sum, min, max, prod, range are group generic and so need to eval args */
@@ -525,6 +527,7 @@ public class Primitives {
     f("range", Summary.class, 1);
     f("cov", Covariance.class, 11);
     f("cor", Covariance.class, 11);
+    f("cor.rank", Covariance.class, 11);
 
 /* Note that the number of arguments in this group only applies
    to the default method */
@@ -740,7 +743,7 @@ public class Primitives {
     f("colMeans", Matrices.class, 11);
     f("rowSums", Matrices.class, 11);
     f("rowMeans", Matrices.class, 11);
-    f("Rprof", /*Rprof*/ null, 11);
+    f("Rprof", Profiling.class, 11);
     f("Rprofmem", /*Rprofmem*/ null, 11);
     f("tracemem", /*memtrace*/ null, 1);
     f("retracemem", /*memretrace*/ null, 1);
@@ -0,0 +1,59 @@
+package org.renjin.primitives;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.vfs2.FileObject;
+import org.renjin.eval.Context;
+import org.renjin.eval.Session;
+import org.renjin.invoke.annotations.Current;
+import org.renjin.invoke.annotations.Internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Profiling of R code through the session's {@link org.renjin.eval.SamplingProfiler}
+ */
+public class Profiling {
+
+  /**
+   * The shortest supported sampling interval, in microseconds
+   */
+  private static final long MIN_INTERVAL = 1000;
+
+  private Profiling() { }
+
+  /**
+   * Enables or disables profiling of the current session.
+   *
+   * <p>The session's call stack is sampled at the given interval and written to
+   * {@code filename} in the format expected by {@code summaryRprof()}.
+   * Memory, GC and line profiling are not supported, and the corresponding flags
+   * are ignored.
+   *
+   * @param filename the file to which samples are written, or an empty string to stop profiling
+   * @param append true if samples should be appended to an existing file
+   * @param interval the time interval between samples, in seconds
+   */
+  @Internal("Rprof")
+  public static void rprof(@Current Context context, String filename, boolean append, double interval,
+                           boolean memoryProfiling, boolean gcProfiling, boolean lineProfiling,
+                           int numFiles, int bufSize) throws IOException {
+
+    Session session = context.getSession();
+    session.stopProfiler();
+
+    if(filename.isEmpty()) {
+      return;
+    }
+
+    long intervalMicros = Math.max(MIN_INTERVAL, Math.round(interval * 1e6));
+
+    FileObject file = context.resolveFile(filename);
+    BufferedWriter output = new BufferedWriter(
+        new OutputStreamWriter(file.getContent().getOutputStream(append), Charsets.UTF_8));
+
+    session.startProfiler(intervalMicros, TimeUnit.MICROSECONDS, output);
+  }
+}
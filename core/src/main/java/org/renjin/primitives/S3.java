@@ -328,6 +328,8 @@ public class S3 {
    */
   private static class Resolver {
 
+    private static final List<String> DEFAULT_CLASS = Collections.singletonList("default");
+
     /**
      * The environment of the call to the generic method.
      */
@@ -471,8 +473,7 @@ public class S3 {
       if(next != null) {
         return next;
       } else {
-        Environment methodTable = getMethodTable();
-        GenericMethod function = findNext(methodTable, genericMethodName, "default");
+        GenericMethod function = resolve(genericMethodName, null, DEFAULT_CLASS);
         if(function != null) {
           return function;
         }
@@ -481,7 +482,7 @@ public class S3 {
         // to get the default implementation  - ~ YECK ~
         PrimitiveFunction primitive = Primitives.getBuiltin(genericMethodName);
         if(primitive != null) {
-          return new GenericMethod(this, Symbol.get(genericMethodName + ".default"), null, primitive);
+          return new GenericMethod(this, S3DispatchCache.methodSymbol(genericMethodName, "default"), null, primitive);
         }
 
         return null;
@@ -489,37 +490,16 @@ public class S3 {
     }
 
     public GenericMethod findNext() {
-      Environment methodTable = getMethodTable();
-      GenericMethod method;
-      
-      for(String className : classes) {
-        
-        method = findNext(methodTable, genericMethodName, className);
-        if(method != null) {
-          return method;
-        }
-        if(group != null) {
-          method = findNext(methodTable, group, className);
-          if(method != null) {
-            return method;
-          }
-        }
-      }
-      return null;
+      return resolve(genericMethodName, group, classes);
     }
 
-    private GenericMethod findNext(Environment methodTable, String name, String className) {
-      Symbol method = Symbol.get(name + "." + className);
-      SEXP function = callingEnvironment.findFunction(context, method);
-      if(function != null) {
-        return new GenericMethod(this, method, className, (Function) function);
-        
-      } else if(methodTable != null && methodTable.hasVariable(method)) {
-        return new GenericMethod(this, method, className, (Function) methodTable.getVariable(method).force(context));
-      
-      } else {
+    private GenericMethod resolve(String name, String group, List<String> classes) {
+      S3DispatchCache.Resolution resolution = context.getSingleton(S3DispatchCache.class)
+          .resolve(context, callingEnvironment, definitionEnvironment, getMethodTable(), name, group, classes);
+      if(resolution == null) {
         return null;
       }
+      return new GenericMethod(this, resolution.getMethod(), resolution.getClassName(), resolution.getFunction());
     }
 
     private Environment getMethodTable() {
@@ -0,0 +1,326 @@
+package org.renjin.primitives;
+
+import com.google.common.collect.ImmutableList;
+import org.renjin.eval.Context;
+import org.renjin.invoke.annotations.SessionScoped;
+import org.renjin.sexp.*;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the resolution of S3 methods, so that repeatedly dispatching the same generic
+ * on objects of the same class does not need to build method names and search the
+ * environment hierarchy each time.
+ *
+ * <p>Entries are keyed on the generic, the class vector, the environment in which the
+ * generic was defined and the environment from which methods are looked up. They are
+ * validated against the {@link Environment#getCumulativeModCount() cumulative mod count}
+ * of the lookup environment and of the S3 methods table, so defining, removing or
+ * replacing a method, or attaching a package, invalidates the affected entries.</p>
+ *
+ * <p>The cache only holds weak references to environments and to the methods it has found,
+ * so that it does not keep closures, and the environments they enclose, alive once they are no
+ * longer used. Entries whose referents have been collected are never matched again, and are
+ * eventually evicted as the least recently used.</p>
+ */
+@SessionScoped
+public class S3DispatchCache {
+
+  private static final int MAX_ENTRIES = 2048;
+
+  /**
+   * Method names, such as "print.data.frame", interned once per (generic, class) pair
+   */
+  private static final ConcurrentMap<String, ConcurrentMap<String, Symbol>> METHOD_SYMBOLS =
+      new ConcurrentHashMap<String, ConcurrentMap<String, Symbol>>();
+
+  private final Map<Key, CachedMethod> entries = new LinkedHashMap<Key, CachedMethod>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, CachedMethod> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private long hits;
+  private long misses;
+
+  /**
+   * The result of resolving an S3 method
+   */
+  public static class Resolution {
+    private final Symbol method;
+    private final String className;
+    private final Function function;
+
+    private Resolution(Symbol method, String className, Function function) {
+      this.method = method;
+      this.className = className;
+      this.function = function;
+    }
+
+    public Symbol getMethod() {
+      return method;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public Function getFunction() {
+      return function;
+    }
+  }
+
+  /**
+   * @return the symbol for the method implementing {@code generic} for {@code className},
+   * for example {@code print.data.frame}
+   */
+  public static Symbol methodSymbol(String generic, String className) {
+    ConcurrentMap<String, Symbol> byClass = METHOD_SYMBOLS.get(generic);
+    if(byClass == null) {
+      ConcurrentMap<String, Symbol> newMap = new ConcurrentHashMap<String, Symbol>();
+      byClass = METHOD_SYMBOLS.putIfAbsent(generic, newMap);
+      if(byClass == null) {
+        byClass = newMap;
+      }
+    }
+    Symbol symbol = byClass.get(className);
+    if(symbol == null) {
+      symbol = Symbol.get(generic + "." + className);
+      byClass.put(className, symbol);
+    }
+    return symbol;
+  }
+
+  /**
+   * Finds the first method for {@code generic} (or for {@code group}, if not {@code null})
+   * among {@code classes}, searching first from {@code callingEnvironment} and then
+   * in {@code methodTable}.
+   *
+   * @return the resolved method, or {@code null} if there is no method for any of the classes
+   */
+  public Resolution resolve(Context context, Environment callingEnvironment, Environment definitionEnvironment,
+                            Environment methodTable, String generic, String group, List<String> classes) {
+
+    // The environment of a function call is new for each call, and so is useless
+    // as a cache key. Instead we search its frame directly, and use the cache for
+    // the enclosing environments.
+    Frame localFrame = null;
+    Environment lookupEnvironment = callingEnvironment;
+    if(context.getType() == Context.Type.FUNCTION && callingEnvironment == context.getEnvironment()) {
+      localFrame = callingEnvironment.getFrame();
+      lookupEnvironment = callingEnvironment.getParent();
+    }
+
+    Key key = new LookupKey(lookupEnvironment, definitionEnvironment, generic, group, classes);
+    CachedMethod entry = entries.get(key);
+    Function function = null;
+    if(entry != null && entry.isValid(lookupEnvironment, methodTable) &&
+        (entry.found < 0 || (function = entry.function.get()) != null)) {
+      hits++;
+    } else {
+      misses++;
+      entry = new CachedMethod(context, lookupEnvironment, methodTable, generic, group, classes);
+      entries.put(new StoredKey(lookupEnvironment, definitionEnvironment, generic, group,
+          ImmutableList.copyOf(classes), key.hashCode), entry);
+      function = entry.found < 0 ? null : entry.function.get();
+    }
+
+    if(localFrame != null) {
+      int limit = entry.found >= 0 ? entry.found : entry.candidates.length - 1;
+      for (int i = 0; i <= limit; i++) {
+        Function localFunction = localFrame.getFunction(context, entry.candidates[i]);
+        if(localFunction != null) {
+          return new Resolution(entry.candidates[i], entry.candidateClasses[i], localFunction);
+        }
+      }
+    }
+
+    if(entry.found >= 0) {
+      return new Resolution(entry.candidates[entry.found], entry.candidateClasses[entry.found], function);
+    }
+    return null;
+  }
+
+  public long getHitCount() {
+    return hits;
+  }
+
+  public long getMissCount() {
+    return misses;
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Identifies a cached method. Keys are looked up with a {@link LookupKey}, which refers to
+   * the environments directly, and stored as a {@link StoredKey}, which refers to them weakly.
+   */
+  private abstract static class Key {
+    private final String generic;
+    private final String group;
+    private final List<String> classes;
+    private final int hashCode;
+
+    private Key(String generic, String group, List<String> classes, int hashCode) {
+      this.generic = generic;
+      this.group = group;
+      this.classes = classes;
+      this.hashCode = hashCode;
+    }
+
+    protected abstract Environment getLookupEnvironment();
+
+    protected abstract Environment getDefinitionEnvironment();
+
+    @Override
+    public final boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      if(hashCode != other.hashCode) {
+        return false;
+      }
+      Environment lookupEnvironment = getLookupEnvironment();
+      return lookupEnvironment != null &&
+          lookupEnvironment == other.getLookupEnvironment() &&
+          getDefinitionEnvironment() == other.getDefinitionEnvironment() &&
+          generic.equals(other.generic) &&
+          (group == null ? other.group == null : group.equals(other.group)) &&
+          classes.equals(other.classes);
+    }
+
+    @Override
+    public final int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class LookupKey extends Key {
+    private final Environment lookupEnvironment;
+    private final Environment definitionEnvironment;
+
+    private LookupKey(Environment lookupEnvironment, Environment definitionEnvironment,
+                      String generic, String group, List<String> classes) {
+      super(generic, group, classes, hash(lookupEnvironment, definitionEnvironment, generic, group, classes));
+      this.lookupEnvironment = lookupEnvironment;
+      this.definitionEnvironment = definitionEnvironment;
+    }
+
+    private static int hash(Environment lookupEnvironment, Environment definitionEnvironment,
+                            String generic, String group, List<String> classes) {
+      int hash = java.lang.System.identityHashCode(lookupEnvironment);
+      hash = 31 * hash + java.lang.System.identityHashCode(definitionEnvironment);
+      hash = 31 * hash + generic.hashCode();
+      hash = 31 * hash + (group == null ? 0 : group.hashCode());
+      hash = 31 * hash + classes.hashCode();
+      return hash;
+    }
+
+    @Override
+    protected Environment getLookupEnvironment() {
+      return lookupEnvironment;
+    }
+
+    @Override
+    protected Environment getDefinitionEnvironment() {
+      return definitionEnvironment;
+    }
+  }
+
+  private static class StoredKey extends Key {
+    private final WeakReference<Environment> lookupEnvironment;
+    private final WeakReference<Environment> definitionEnvironment;
+
+    private StoredKey(Environment lookupEnvironment, Environment definitionEnvironment,
+                      String generic, String group, List<String> classes, int hashCode) {
+      super(generic, group, classes, hashCode);
+      this.lookupEnvironment = new WeakReference<Environment>(lookupEnvironment);
+      this.definitionEnvironment = definitionEnvironment == null ? null :
+          new WeakReference<Environment>(definitionEnvironment);
+    }
+
+    @Override
+    protected Environment getLookupEnvironment() {
+      return lookupEnvironment.get();
+    }
+
+    @Override
+    protected Environment getDefinitionEnvironment() {
+      return definitionEnvironment == null ? null : definitionEnvironment.get();
+    }
+  }
+
+  private static class CachedMethod {
+
+    /**
+     * The methods to try, in order: for each class, the method for
+     * the generic, followed by the method for the group, if any.
+     */
+    private final Symbol[] candidates;
+    private final String[] candidateClasses;
+
+    /**
+     * The index of the first candidate found, or -1 if none was found
+     */
+    private int found = -1;
+    private WeakReference<Function> function;
+
+    private final int lookupModCount;
+    private final WeakReference<Environment> methodTable;
+    private final int methodTableModCount;
+
+    private CachedMethod(Context context, Environment lookupEnvironment, Environment methodTable,
+                  String generic, String group, List<String> classes) {
+
+      int perClass = group == null ? 1 : 2;
+      candidates = new Symbol[classes.size() * perClass];
+      candidateClasses = new String[candidates.length];
+      int i = 0;
+      for (String className : classes) {
+        candidates[i] = methodSymbol(generic, className);
+        candidateClasses[i] = className;
+        i++;
+        if(group != null) {
+          candidates[i] = methodSymbol(group, className);
+          candidateClasses[i] = className;
+          i++;
+        }
+      }
+
+      this.lookupModCount = lookupEnvironment.getCumulativeModCount();
+      this.methodTable = methodTable == null ? null : new WeakReference<Environment>(methodTable);
+      this.methodTableModCount = methodTable == null ? 0 : methodTable.getCumulativeModCount();
+
+      for (i = 0; i < candidates.length; i++) {
+        Function function = lookupEnvironment.findFunction(context, candidates[i]);
+        if(function == null && methodTable != null && methodTable.hasVariable(candidates[i])) {
+          function = (Function) methodTable.getVariable(candidates[i]).force(context);
+        }
+        if(function != null) {
+          this.found = i;
+          this.function = new WeakReference<Function>(function);
+          break;
+        }
+      }
+    }
+
+    private boolean isValid(Environment lookupEnvironment, Environment methodTable) {
+      Environment cachedTable = this.methodTable == null ? null : this.methodTable.get();
+      return cachedTable == methodTable &&
+          this.lookupModCount == lookupEnvironment.getCumulativeModCount() &&
+          (methodTable == null || this.methodTableModCount == methodTable.getCumulativeModCount());
+    }
+  }
+}
@@ -20,16 +20,14 @@
  */
 package org.renjin.primitives;
 
-import com.google.common.collect.Lists;
 import org.renjin.eval.Context;
 import org.renjin.eval.EvalException;
 import org.renjin.invoke.annotations.*;
+import org.renjin.primitives.sort.Order;
 import org.renjin.sexp.*;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 public class Sort {
 
@@ -230,55 +228,21 @@ public class Sort {
       }
     }
 
-    List<Integer> ordering = Lists.newArrayListWithCapacity(numRows);
-    for (int i = 0; i != numRows; ++i) {
-      ordering.add(i);
-    }
-
-    Collections.sort(ordering, new Comparator<Integer>() {
-
-      @Override
-      public int compare(Integer row1, Integer row2) {
-        int col = 0;
-        int rel;
-        while ((rel = compare(row1, row2, col)) == 0) {
-          col++;
-          if (col == columns.length()) {
-            return 0;
-          }
-        }
-        return rel;
-      }
-
-      private int compare(Integer row1, Integer row2, int col) {
-        AtomicVector column = (AtomicVector) columns.get(col);
-        boolean na1 = column.isElementNA(row1);
-        boolean na2 = column.isElementNA(row2);
-        if(na1 && na2) {
-          // Both values are NA, consider equal
-          return 0;
-        } else if(na1) {
-          // NA <-> 42
-          return naLast ? +1 : -1;
-        } else if(na2) {
-          // 42 <-> NA
-          return naLast ? -1 : +1;
-        } else {
-          // 42 <-> 41
-          return decreasing ?
-              -column.compare(row1, row2) :
-              +column.compare(row1, row2);
-        }
+    AtomicVector keys[] = new AtomicVector[columns.length()];
+    for (int i = 0; i != columns.length(); ++i) {
+      SEXP column = columns.getElementAsSEXP(i);
+      if (!(column instanceof AtomicVector)) {
+        throw new EvalException("argument %d is not a vector", i + 1);
       }
+      keys[i] = (AtomicVector) column;
+    }
 
-    });
-
-    IntArrayVector.Builder result = new IntArrayVector.Builder();
-    for (Integer index : ordering) {
-      result.add(index + 1);
+    int[] ordering = Order.order(keys, naLast, decreasing);
+    for (int i = 0; i != ordering.length; ++i) {
+      ordering[i]++;
     }
 
-    return result.build();
+    return IntArrayVector.unsafe(ordering);
   }   
 
   @Internal("which.min")
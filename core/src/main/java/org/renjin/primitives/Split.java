@@ -1,71 +1,120 @@
 package org.renjin.primitives;
 
-import com.google.common.collect.Maps;
+import org.renjin.eval.Context;
+import org.renjin.eval.EvalException;
+import org.renjin.invoke.annotations.Current;
 import org.renjin.invoke.annotations.Internal;
+import org.renjin.primitives.vector.IndexedDoubleVector;
+import org.renjin.primitives.vector.IndexedIntVector;
+import org.renjin.primitives.vector.IndexedStringVector;
 import org.renjin.sexp.*;
 
-import java.util.Map;
-
 public class Split {
   private Split() {}
-  
 
+
+  /**
+   * Divides the elements of {@code toSplit} into groups by the levels of {@code factors},
+   * which is recycled if shorter than {@code toSplit}.
+   *
+   * <p>The groups are listed in the order of the levels, including levels with no elements. Their
+   * elements are found with a counting sort: the elements of each level are counted, and the
+   * indices of the elements are then written, grouped by level, to a single array, which the
+   * groups of double, integer, and character vectors share as views.</p>
+   */
   @Internal
-  public static ListVector split(Vector toSplit, IntVector factors) {
-    assert toSplit.length() == factors.length();
-    
-    Map<Integer, SplitBuilder> map = Maps.newHashMap();
-    
-    for(int i=0;i!=factors.length();++i) {
-      int splitIndex = factors.getElementAsInt(i);
-      if(!IntVector.isNA(splitIndex)) {
-        SplitBuilder splitBuilder = map.get(splitIndex);
-        if(splitBuilder == null) {
-          splitBuilder = new SplitBuilder(toSplit);
-          map.put(splitIndex, splitBuilder);
+  public static ListVector split(@Current Context context, Vector toSplit, IntVector factors) {
+    int length = toSplit.length();
+    int numFactors = factors.length();
+    if(numFactors == 0 && length > 0) {
+      throw new EvalException("group length is 0 but data length > 0");
+    }
+    if(numFactors > 0 && (length % numFactors) != 0) {
+      context.warn("data length is not a multiple of split variable");
+    }
+
+    AtomicVector levels = (AtomicVector) factors.getAttributes().get(Symbols.LEVELS);
+    int numLevels = levels.length();
+
+    // Count the number of elements in each group
+    int[] counts = new int[numLevels];
+    int factorIndex = 0;
+    for(int i=0;i!=length;++i) {
+      int level = factors.getElementAsInt(factorIndex);
+      if(!IntVector.isNA(level)) {
+        if(level < 1 || level > numLevels) {
+          throw new EvalException("factor has bad level");
         }
-        splitBuilder.add(toSplit, i);
+        counts[level - 1]++;
+      }
+      if(++factorIndex == numFactors) {
+        factorIndex = 0;
       }
     }
 
-    StringVector levels = (StringVector) factors.getAttributes().get(Symbols.LEVELS);
-    
-    ListVector.NamedBuilder resultList = new ListVector.NamedBuilder();
-    for(Integer split : map.keySet()) {
-      resultList.add(levels.getElementAsString(split-1), map.get(split).build());
+    // Write the indices of each group's elements to consecutive ranges of a single array
+    int[] starts = new int[numLevels];
+    int total = 0;
+    for(int level=0;level!=numLevels;++level) {
+      starts[level] = total;
+      total += counts[level];
+    }
+    int[] indices = new int[total];
+    int[] next = starts.clone();
+    factorIndex = 0;
+    for(int i=0;i!=length;++i) {
+      int level = factors.getElementAsInt(factorIndex);
+      if(!IntVector.isNA(level)) {
+        indices[next[level - 1]++] = i;
+      }
+      if(++factorIndex == numFactors) {
+        factorIndex = 0;
+      }
+    }
+
+    ListVector.NamedBuilder resultList = new ListVector.NamedBuilder(0, numLevels);
+    for(int level=0;level!=numLevels;++level) {
+      resultList.add(levels.getElementAsString(level),
+          group(toSplit, indices, starts[level], counts[level]));
     }
-    
     return resultList.build();
   }
-  
-  
-  private static class SplitBuilder {
-    private Vector.Builder source;
-    private AtomicVector sourceNames;
-    private StringVector.Builder names;
 
-    public SplitBuilder(Vector toSplit) {
-      this.source = toSplit.newBuilderWithInitialCapacity(0);
-      this.sourceNames = toSplit.getNames();
-      if(sourceNames != Null.INSTANCE) {
-        names = new StringArrayVector.Builder();
+  private static Vector group(Vector toSplit, int[] indices, int offset, int length) {
+    StringVector names = groupNames(toSplit.getNames(), indices, offset, length);
+
+    if(toSplit.isConstantAccessTime()) {
+      AttributeMap attributes = names == null ? AttributeMap.EMPTY : AttributeMap.builder().setNames(names).build();
+      if(toSplit instanceof DoubleVector) {
+        return new IndexedDoubleVector((DoubleVector) toSplit, indices, offset, length, attributes);
+      } else if(toSplit instanceof IntVector) {
+        return new IndexedIntVector((IntVector) toSplit, indices, offset, length, attributes);
+      } else if(toSplit instanceof StringVector) {
+        return new IndexedStringVector((StringVector) toSplit, indices, offset, length, attributes);
       }
     }
-    
-    public void add(Vector source, int sourceIndex) {
-      this.source.addFrom(source, sourceIndex);
-      if(names != null) {
-        names.add(sourceNames.getElementAsString(sourceIndex));
-      }
+
+    Vector.Builder group = toSplit.newBuilderWithInitialCapacity(length);
+    for(int i=0;i!=length;++i) {
+      group.addFrom(toSplit, indices[offset + i]);
     }
-    
-    public Vector build() {
-      if(names != null) {
-        source.setAttribute(Symbols.NAMES, names.build());
-      }
-      return source.build();
+    if(names != null) {
+      group.setAttribute(Symbols.NAMES, names);
+    }
+    return group.build();
+  }
+
+  private static StringVector groupNames(AtomicVector sourceNames, int[] indices, int offset, int length) {
+    if(sourceNames == Null.INSTANCE) {
+      return null;
+    }
+    if(sourceNames instanceof StringVector) {
+      return new IndexedStringVector((StringVector) sourceNames, indices, offset, length, AttributeMap.EMPTY);
+    }
+    StringVector.Builder names = new StringArrayVector.Builder(0, length);
+    for(int i=0;i!=length;++i) {
+      names.add(sourceNames.getElementAsString(indices[offset + i]));
     }
-    
+    return names.build();
   }
-  
 }
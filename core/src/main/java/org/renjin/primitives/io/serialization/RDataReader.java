@@ -36,8 +36,10 @@ import org.renjin.sexp.*;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
@@ -60,6 +62,11 @@ public class RDataReader {
   private PersistentRestorer restorer;
   private ReadContext readContext;
 
+  /**
+   * True if double and integer vectors should be backed by a memory-mapped view of the file
+   */
+  private boolean mapVectors;
+
   public RDataReader(Context context, InputStream conn) {
     this.readContext = new SessionReadContext(context.getSession());
     this.conn = conn;
@@ -75,11 +82,44 @@ public class RDataReader {
     this.conn = conn;
   }
 
+  /**
+   * Reads an uncompressed XDR file, such as one written by {@code saveRDS(x, file, compress = FALSE)},
+   * without copying the contents of its double and integer vectors to the heap. These vectors are instead
+   * backed by a memory-mapped view of the file and are decoded as their elements are accessed, so that
+   * the heap used is proportional to the rest of the object.
+   *
+   * <p>The file must not be modified while the vectors are in use. Files with more than 2 GB
+   * to map are read onto the heap as usual.</p>
+   *
+   * @throws IOException if the file is not an uncompressed XDR file
+   */
+  public static SEXP readMappedFile(Context context, File file) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      RDataReader reader = new RDataReader(context, in);
+      reader.mapVectors = true;
+      byte streamType = readStreamType(in);
+      if(streamType != XDR_FORMAT) {
+        throw new IOException(file + " is not an uncompressed XDR file");
+      }
+      return reader.readFile(streamType);
+    } finally {
+      in.close();
+    }
+  }
+
   public SEXP readFile() throws IOException {
-    byte streamType = readStreamType(conn);
-    in = createStreamReader(streamType, conn);
+    return readFile(readStreamType(conn));
+  }
+
+  private SEXP readFile(byte streamType) throws IOException {
+    in = createStreamReader(streamType, conn, mapVectors);
     readAndVerifyVersion();
-    return readExp();
+    SEXP exp = readExp();
+    if(in instanceof MappedXdrReader) {
+      ((MappedXdrReader) in).release();
+    }
+    return exp;
   }
 
   protected void readAndVerifyVersion() throws IOException {
@@ -139,9 +179,18 @@ public class RDataReader {
     }
   }
 
-  private static StreamReader createStreamReader(byte type, InputStream conn) throws IOException {
+  private static StreamReader createStreamReader(byte type, InputStream conn, boolean mapVectors) throws IOException {
     switch(type) {
       case XDR_FORMAT:
+        if(conn instanceof FileInputStream) {
+          // Uncompressed files can be decoded directly from memory
+          FileChannel channel = ((FileInputStream) conn).getChannel();
+          long remaining = channel.size() - channel.position();
+          if(remaining <= Integer.MAX_VALUE) {
+            return new MappedXdrReader(channel, remaining, mapVectors);
+          }
+        }
+        return new XdrReader(conn);
       case BINARY_FORMAT:
         return new XdrReader(conn);
       case ASCII_FORMAT:
@@ -565,19 +614,23 @@ public class RDataReader {
 
   private SEXP readComplexExp(int flags) throws IOException {
     int length = in.readInt();
+    double[] parts = new double[length * 2];
+    in.readDoubles(parts);
     Complex[] values = new Complex[length];
     for(int i=0;i!=length;++i) {
-      values[i] = new Complex(in.readDouble(), in.readDouble());
+      values[i] = new Complex(parts[i * 2], parts[i * 2 + 1]);
     }
     return new ComplexArrayVector(values, readAttributes(flags));
   }
 
   private SEXP readDoubleExp(int flags) throws IOException {
     int length = in.readInt();
-    double[] values = new double[length];
-    for(int i=0;i!=length;++i) {
-      values[i] = in.readDouble();
+    if(mapVectors && in instanceof MappedXdrReader) {
+      DoubleBuffer buffer = ((MappedXdrReader) in).mapDoubles(length);
+      return new DoubleBufferVector(buffer, length, readAttributes(flags));
     }
+    double[] values = new double[length];
+    in.readDoubles(values);
     return new DoubleArrayVector(values, readAttributes(flags));
   }
 
@@ -591,9 +644,7 @@ public class RDataReader {
   private SEXP readLogical(int flags) throws IOException {
     int length = in.readInt();
     int values[] = new int[length];
-    for(int i=0;i!=length;++i) {
-      values[i] = in.readInt();
-    }
+    in.readInts(values);
     return new LogicalArrayVector(values, readAttributes(flags));
   }
 
@@ -658,6 +709,16 @@ public class RDataReader {
     IntBuffer readIntBuffer(int size) throws IOException;
     byte[] readString(int length) throws IOException;
     double readDouble() throws IOException;
+
+    /**
+     * Reads {@code values.length} integers into {@code values}
+     */
+    void readInts(int[] values) throws IOException;
+
+    /**
+     * Reads {@code values.length} doubles into {@code values}
+     */
+    void readDoubles(double[] values) throws IOException;
   }
 
   private static class AsciiReader implements StreamReader {
@@ -708,6 +769,20 @@ public class RDataReader {
       return IntBuffer.wrap(array);
     }
 
+    @Override
+    public void readInts(int[] values) throws IOException {
+      for(int i=0;i!=values.length;++i) {
+        values[i] = readInt();
+      }
+    }
+
+    @Override
+    public void readDoubles(double[] values) throws IOException {
+      for(int i=0;i!=values.length;++i) {
+        values[i] = readDouble();
+      }
+    }
+
     @Override
     public double readDouble() throws IOException {
       String word = readWord();
@@ -777,7 +852,14 @@ public class RDataReader {
   }
 
   private static class XdrReader implements StreamReader {
+
+    /**
+     * The number of bytes decoded at a time by {@link #readInts(int[])} and {@link #readDoubles(double[])}
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
     private final DataInputStream in;
+    private ByteBuffer block;
 
     private XdrReader(DataInputStream in) throws IOException {
       this.in = in;
@@ -818,6 +900,128 @@ public class RDataReader {
       long bits = in.readLong();
       return Double.longBitsToDouble(bits);
     }
+
+    @Override
+    public void readInts(int[] values) throws IOException {
+      int blockLength = BLOCK_SIZE / 4;
+      for(int start = 0; start < values.length; start += blockLength) {
+        int count = Math.min(blockLength, values.length - start);
+        readBlock(count * 4).asIntBuffer().get(values, start, count);
+      }
+    }
+
+    @Override
+    public void readDoubles(double[] values) throws IOException {
+      int blockLength = BLOCK_SIZE / 8;
+      for(int start = 0; start < values.length; start += blockLength) {
+        int count = Math.min(blockLength, values.length - start);
+        readBlock(count * 8).asDoubleBuffer().get(values, start, count);
+      }
+    }
+
+    /**
+     * Reads the next {@code length} bytes into a big-endian buffer
+     */
+    private ByteBuffer readBlock(int length) throws IOException {
+      if(block == null) {
+        block = ByteBuffer.allocate(BLOCK_SIZE);
+      }
+      in.readFully(block.array(), 0, length);
+      block.clear();
+      block.limit(length);
+      return block;
+    }
+  }
+
+  /**
+   * Reads an uncompressed XDR file through a memory-mapped buffer, so that
+   * vectors are decoded in bulk without copying the file through a stream.
+   */
+  private static class MappedXdrReader implements StreamReader {
+    private final FileChannel channel;
+    private final long start;
+    private final ByteBuffer buffer;
+    private final boolean mapVectors;
+
+    private MappedXdrReader(FileChannel channel, long length, boolean mapVectors) throws IOException {
+      this.channel = channel;
+      this.mapVectors = mapVectors;
+      this.start = channel.position();
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      this.buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    public int readInt() throws IOException {
+      ensureRemaining(4);
+      return buffer.getInt();
+    }
+
+    @Override
+    public IntBuffer readIntBuffer(int size) throws IOException {
+      if(mapVectors) {
+        return slice(size * 4L).asIntBuffer();
+      }
+      int[] array = new int[size];
+      readInts(array);
+      return IntBuffer.wrap(array);
+    }
+
+    /**
+     * @return a view of the next {@code length} doubles in the file, which are decoded on access.
+     */
+    public DoubleBuffer mapDoubles(int length) throws IOException {
+      return slice(length * 8L).asDoubleBuffer();
+    }
+
+    private ByteBuffer slice(long length) throws IOException {
+      ensureRemaining(length);
+      ByteBuffer view = buffer.duplicate();
+      view.limit(buffer.position() + (int) length);
+      buffer.position(view.limit());
+      return view.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    public byte[] readString(int length) throws IOException {
+      ensureRemaining(length);
+      byte buf[] = new byte[length];
+      buffer.get(buf);
+      return buf;
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+      ensureRemaining(8);
+      return buffer.getDouble();
+    }
+
+    @Override
+    public void readInts(int[] values) throws IOException {
+      ensureRemaining(values.length * 4L);
+      buffer.asIntBuffer().get(values);
+      buffer.position(buffer.position() + values.length * 4);
+    }
+
+    @Override
+    public void readDoubles(double[] values) throws IOException {
+      ensureRemaining(values.length * 8L);
+      buffer.asDoubleBuffer().get(values);
+      buffer.position(buffer.position() + values.length * 8);
+    }
+
+    private void ensureRemaining(long length) throws EOFException {
+      if(buffer.remaining() < length) {
+        throw new EOFException();
+      }
+    }
+
+    /**
+     * Positions the underlying file after the bytes which have been read
+     */
+    public void release() throws IOException {
+      channel.position(start + buffer.position());
+    }
   }
 
   /**
@@ -30,12 +30,17 @@ import org.renjin.sexp.*;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import static org.renjin.primitives.io.serialization.SerializationFormat.*;
 
 public class RDataWriter {
 
+  /**
+   * The number of elements of numeric vectors which are encoded at a time
+   */
+  private static final int BLOCK_SIZE = 8 * 1024;
 
   /**
    * Interfaces that allows R developers and Renjin containers to provide
@@ -262,9 +267,7 @@ public class RDataWriter {
         }
       }
     } else {
-      for(int i=0;i!=vector.length();++i) {
-        out.writeInt(vector.getElementAsInt(i));
-      }
+      writeXdrInts(vector);
     }
     
     writeAttributes(vector);
@@ -289,16 +292,48 @@ public class RDataWriter {
         }  
       }
     } else {
-      for(int i=0;i!=vector.length();++i) { 
+      writeXdrDoubles(vector);
+    }
+    
+    writeAttributes(vector);
+  }
+
+  /**
+   * Writes the elements of {@code vector} in big-endian order, encoding them in blocks
+   * rather than writing each element separately to the stream.
+   */
+  private void writeXdrInts(IntVector vector) throws IOException {
+    int length = vector.length();
+    ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, BLOCK_SIZE) * 4);
+    for(int start = 0; start < length; start += BLOCK_SIZE) {
+      int end = Math.min(length, start + BLOCK_SIZE);
+      buffer.clear();
+      for(int i = start; i < end; ++i) {
+        buffer.putInt(vector.getElementAsInt(i));
+      }
+      conn.write(buffer.array(), 0, buffer.position());
+    }
+  }
+
+  /**
+   * Writes the elements of {@code vector} in big-endian order, encoding them in blocks
+   * rather than writing each element separately to the stream.
+   */
+  private void writeXdrDoubles(DoubleVector vector) throws IOException {
+    int length = vector.length();
+    ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, BLOCK_SIZE) * 8);
+    for(int start = 0; start < length; start += BLOCK_SIZE) {
+      int end = Math.min(length, start + BLOCK_SIZE);
+      buffer.clear();
+      for(int i = start; i < end; ++i) {
         if(vector.isElementNA(i)) {
-          out.writeLong(DoubleVector.NA_BITS);
+          buffer.putLong(DoubleVector.NA_BITS);
         } else {
-          out.writeDouble(vector.getElementAsDouble(i));
+          buffer.putLong(Double.doubleToLongBits(vector.getElementAsDouble(i)));
         }
       }
+      conn.write(buffer.array(), 0, buffer.position());
     }
-    
-    writeAttributes(vector);
   }
 
 
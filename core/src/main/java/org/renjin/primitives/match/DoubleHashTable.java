@@ -0,0 +1,106 @@
+package org.renjin.primitives.match;
+
+import org.renjin.sexp.DoubleVector;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table mapping {@code double} keys to the
+ * (zero-based) index at which they were first encountered, without boxing.
+ *
+ * <p>Keys are compared using R's notion of identity: {@code 0} and {@code -0}
+ * are the same key, all {@code NA} values are the same key, and all other
+ * {@code NaN} values are the same key, distinct from {@code NA}.
+ */
+final class DoubleHashTable {
+
+  private static final long ZERO_BITS = Double.doubleToLongBits(0d);
+  private static final long NA_BITS = Double.doubleToRawLongBits(DoubleVector.NA);
+  private static final long NaN_BITS = Double.doubleToRawLongBits(DoubleVector.NaN);
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  DoubleHashTable(int expectedSize) {
+    allocate(HashTables.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, HashTables.EMPTY);
+    mask = capacity - 1;
+  }
+
+  /**
+   * @return the canonical bit pattern of {@code value} used as the hash key
+   */
+  static long keyOf(double value) {
+    if(value == 0) {
+      return ZERO_BITS;
+    } else if(Double.isNaN(value)) {
+      return DoubleVector.isNA(value) ? NA_BITS : NaN_BITS;
+    } else {
+      return Double.doubleToRawLongBits(value);
+    }
+  }
+
+  /**
+   * @return the index stored for {@code value}, or {@code -1} if the key is not present
+   */
+  int get(double value) {
+    long key = keyOf(value);
+    int slot = HashTables.mix(key) & mask;
+    while(values[slot] != HashTables.EMPTY) {
+      if(keys[slot] == key) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return HashTables.EMPTY;
+  }
+
+  /**
+   * Associates {@code value} with {@code index} if the key is not yet present.
+   *
+   * @return the index previously stored for {@code value}, or {@code -1} if the key was added
+   */
+  int putIfAbsent(double value, int index) {
+    long key = keyOf(value);
+    int slot = HashTables.mix(key) & mask;
+    while(values[slot] != HashTables.EMPTY) {
+      if(keys[slot] == key) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = index;
+    if(++size * 2 > keys.length) {
+      rehash();
+    }
+    return HashTables.EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for(int i=0;i!=oldKeys.length;++i) {
+      if(oldValues[i] != HashTables.EMPTY) {
+        int slot = HashTables.mix(oldKeys[i]) & mask;
+        while(values[slot] != HashTables.EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+}
@@ -6,9 +6,12 @@ import org.renjin.eval.EvalException;
 import org.renjin.invoke.annotations.Internal;
 import org.renjin.primitives.match.DuplicateSearchAlgorithm.Action;
 import org.renjin.sexp.AtomicVector;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
 import org.renjin.sexp.Logical;
 import org.renjin.sexp.LogicalVector;
 import org.renjin.sexp.Null;
+import org.renjin.sexp.StringVector;
 import org.renjin.sexp.Vector;
 
 import com.google.common.collect.Maps;
@@ -70,11 +73,23 @@ public class Duplicates {
       DuplicateSearchAlgorithm<ResultType> algorithm) {
    
     algorithm.init(x);
+
+    if(x instanceof DoubleVector) {
+      return searchDoubles((DoubleVector) x, fromLast, algorithm);
+    } else if(x instanceof IntVector) {
+      return searchInts((IntVector) x, fromLast, algorithm);
+    } else if(x instanceof LogicalVector) {
+      return searchLogicals((LogicalVector) x, fromLast, algorithm);
+    } else if(x instanceof StringVector) {
+      return searchStrings((StringVector) x, fromLast, algorithm);
+    }
     
     /** Maps elements -> first encountered index */
     HashMap<Object, Integer> seen = Maps.newHashMap();
-   
-    for(Integer index : new IndexSequence(x, fromLast)) {
+
+    int length = x.length();
+    for(int i=0;i!=length;++i) {
+      int index = fromLast ? length - 1 - i : i;
       
       Object element = x.getElementAsObject(index);
       
@@ -91,5 +106,73 @@ public class Duplicates {
       }
     }
     return algorithm.getResult();
-  }  
+  }
+
+  private static <ResultType> ResultType searchDoubles(DoubleVector x, boolean fromLast,
+                                                       DuplicateSearchAlgorithm<ResultType> algorithm) {
+    DoubleHashTable seen = new DoubleHashTable(x.length());
+    int length = x.length();
+    for(int i=0;i!=length;++i) {
+      int index = fromLast ? length - 1 - i : i;
+      int originalIndex = seen.putIfAbsent(x.getElementAsDouble(index), index);
+      if(originalIndex == HashTables.EMPTY) {
+        algorithm.onUnique(index);
+      } else if(algorithm.onDuplicate(index, originalIndex) == Action.STOP) {
+        break;
+      }
+    }
+    return algorithm.getResult();
+  }
+
+  private static <ResultType> ResultType searchInts(IntVector x, boolean fromLast,
+                                                    DuplicateSearchAlgorithm<ResultType> algorithm) {
+    IntHashTable seen = new IntHashTable(x.length());
+    int length = x.length();
+    for(int i=0;i!=length;++i) {
+      int index = fromLast ? length - 1 - i : i;
+      int originalIndex = seen.putIfAbsent(x.getElementAsInt(index), index);
+      if(originalIndex == HashTables.EMPTY) {
+        algorithm.onUnique(index);
+      } else if(algorithm.onDuplicate(index, originalIndex) == Action.STOP) {
+        break;
+      }
+    }
+    return algorithm.getResult();
+  }
+
+  private static <ResultType> ResultType searchLogicals(LogicalVector x, boolean fromLast,
+                                                        DuplicateSearchAlgorithm<ResultType> algorithm) {
+    /** First encountered index of FALSE, TRUE and NA */
+    int[] seen = new int[] { HashTables.EMPTY, HashTables.EMPTY, HashTables.EMPTY };
+    int length = x.length();
+    for(int i=0;i!=length;++i) {
+      int index = fromLast ? length - 1 - i : i;
+      int value = x.getElementAsRawLogical(index);
+      int key = IntVector.isNA(value) ? 2 : (value == 0 ? 0 : 1);
+      int originalIndex = seen[key];
+      if(originalIndex == HashTables.EMPTY) {
+        seen[key] = index;
+        algorithm.onUnique(index);
+      } else if(algorithm.onDuplicate(index, originalIndex) == Action.STOP) {
+        break;
+      }
+    }
+    return algorithm.getResult();
+  }
+
+  private static <ResultType> ResultType searchStrings(StringVector x, boolean fromLast,
+                                                       DuplicateSearchAlgorithm<ResultType> algorithm) {
+    StringHashTable seen = new StringHashTable(x.length());
+    int length = x.length();
+    for(int i=0;i!=length;++i) {
+      int index = fromLast ? length - 1 - i : i;
+      int originalIndex = seen.putIfAbsent(x.getElementAsString(index), index);
+      if(originalIndex == HashTables.EMPTY) {
+        algorithm.onUnique(index);
+      } else if(algorithm.onDuplicate(index, originalIndex) == Action.STOP) {
+        break;
+      }
+    }
+    return algorithm.getResult();
+  }
 }
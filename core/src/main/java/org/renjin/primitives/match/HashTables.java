@@ -0,0 +1,48 @@
+package org.renjin.primitives.match;
+
+/**
+ * Helpers shared by the primitive open-addressing hash tables used
+ * to implement match(), unique() and friends.
+ */
+final class HashTables {
+
+  /**
+   * Marks an empty slot in the values array. All stored values are
+   * zero-based vector indices, so they are never negative.
+   */
+  static final int EMPTY = -1;
+
+  private static final int MIN_CAPACITY = 16;
+
+  private HashTables() { }
+
+  /**
+   * @return a power-of-two capacity that keeps the table at most half full
+   * when it holds {@code expectedSize} keys.
+   */
+  static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while(capacity < expectedSize * 2L && capacity < (1 << 30)) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Scrambles the bits of {@code h} so that keys which differ only in their
+   * high bits (such as doubles) still spread out over the table.
+   * (This is the finalization step of MurmurHash3)
+   */
+  static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  static int mix(long bits) {
+    return mix((int)(bits ^ (bits >>> 32)));
+  }
+}
@@ -0,0 +1,81 @@
+package org.renjin.primitives.match;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table mapping {@code int} keys to the
+ * (zero-based) index at which they were first encountered, without boxing.
+ */
+final class IntHashTable {
+
+  private int[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  IntHashTable(int expectedSize) {
+    allocate(HashTables.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, HashTables.EMPTY);
+    mask = capacity - 1;
+  }
+
+  /**
+   * @return the index stored for {@code key}, or {@code -1} if the key is not present
+   */
+  int get(int key) {
+    int slot = HashTables.mix(key) & mask;
+    while(values[slot] != HashTables.EMPTY) {
+      if(keys[slot] == key) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return HashTables.EMPTY;
+  }
+
+  /**
+   * Associates {@code key} with {@code index} if the key is not yet present.
+   *
+   * @return the index previously stored for {@code key}, or {@code -1} if the key was added
+   */
+  int putIfAbsent(int key, int index) {
+    int slot = HashTables.mix(key) & mask;
+    while(values[slot] != HashTables.EMPTY) {
+      if(keys[slot] == key) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = index;
+    if(++size * 2 > keys.length) {
+      rehash();
+    }
+    return HashTables.EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for(int i=0;i!=oldKeys.length;++i) {
+      if(oldValues[i] != HashTables.EMPTY) {
+        int slot = HashTables.mix(oldKeys[i]) & mask;
+        while(values[slot] != HashTables.EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+}
@@ -62,7 +62,16 @@ public class Match {
     // We need to handle factors specially here -
     // treat them as strings if one of the other arguments
     // is a string
-    if(search instanceof StringVector || table instanceof StringVector) {
+    boolean factorsAsStrings = search instanceof StringVector || table instanceof StringVector;
+
+    // For all but the smallest tables, look up elements through a
+    // hash index rather than scanning the table for each element
+    MatchIndex index = null;
+    if(search instanceof AtomicVector && table.length() >= MatchIndex.MIN_TABLE_LENGTH) {
+      index = MatchIndex.forTable(table, factorsAsStrings);
+    }
+
+    if(factorsAsStrings) {
       if(search.inherits("factor")) {
         search = new FactorString(search);
       }
@@ -75,6 +84,9 @@ public class Match {
     for(int i=0;i!=search.length();++i) {
       if( incomparables.contains(search, i)) {
         matches[i] = noMatch;
+      } else if(index != null) {
+        int pos = index.indexOf((AtomicVector) search, i);
+        matches[i] = pos >= 0 ? pos+1 : noMatch;
       } else {
         int pos;
         if(search.isElementNA(i)) {
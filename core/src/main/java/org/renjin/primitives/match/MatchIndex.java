@@ -0,0 +1,191 @@
+package org.renjin.primitives.match;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.renjin.sexp.*;
+
+/**
+ * Hash index over the elements of a {@code match()} table, so that each
+ * element of the search vector can be located in constant time rather than
+ * by scanning the table.
+ *
+ * <p>Lookups follow exactly the same comparison rules as
+ * {@link AtomicVector#indexOf(AtomicVector, int, int)}: the search element is
+ * converted to the table's type before it is compared.
+ *
+ * <p>Indexes are cached on the identity of the table vector, so that
+ * repeated calls to {@code match(x, table)} against the same table only pay
+ * for building the index once.
+ */
+abstract class MatchIndex {
+
+  /**
+   * Tables shorter than this are cheaper to scan than to hash.
+   */
+  static final int MIN_TABLE_LENGTH = 8;
+
+  private static final Cache<Vector, MatchIndex> CACHE = CacheBuilder.newBuilder()
+      .weakKeys()
+      .maximumSize(64)
+      .build();
+
+  private final boolean factorAsString;
+  private int firstNA = -1;
+
+  private MatchIndex(boolean factorAsString) {
+    this.factorAsString = factorAsString;
+  }
+
+  /**
+   * Returns the index for the given table, building it if it is not already
+   * cached.
+   *
+   * @param table the vector to be matched against
+   * @param factorAsString true if factor tables are to be matched on their labels rather than their codes
+   * @return the index, or {@code null} if this type of table cannot be indexed.
+   */
+  static MatchIndex forTable(Vector table, boolean factorAsString) {
+    MatchIndex index = CACHE.getIfPresent(table);
+    if(index == null || index.factorAsString != factorAsString) {
+      index = build(table, factorAsString);
+      if(index != null) {
+        CACHE.put(table, index);
+      }
+    }
+    return index;
+  }
+
+  private static MatchIndex build(Vector table, boolean factorAsString) {
+    if(factorAsString && table instanceof IntVector && table.inherits("factor")) {
+      return new FactorIndex((IntVector) table, (Vector) table.getAttribute(Symbols.LEVELS));
+    } else if(table instanceof StringVector) {
+      return new StringIndex((StringVector) table);
+    } else if(table instanceof DoubleVector) {
+      return new DoubleIndex((DoubleVector) table);
+    } else if(table instanceof IntVector) {
+      return new IntIndex((IntVector) table, factorAsString);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * @return the zero-based position of the first element of the table
+   * matching {@code search[i]}, or -1 if there is no match.
+   */
+  final int indexOf(AtomicVector search, int i) {
+    if(search.isElementNA(i)) {
+      return firstNA;
+    } else {
+      return indexOfNonNA(search, i);
+    }
+  }
+
+  protected abstract int indexOfNonNA(AtomicVector search, int i);
+
+  protected final void elementIsNA(int i) {
+    if(firstNA == -1) {
+      firstNA = i;
+    }
+  }
+
+  private static class IntIndex extends MatchIndex {
+    private final IntHashTable table;
+
+    private IntIndex(IntVector vector, boolean factorAsString) {
+      super(factorAsString);
+      table = new IntHashTable(vector.length());
+      for(int i=0;i!=vector.length();++i) {
+        int value = vector.getElementAsInt(i);
+        if(IntVector.isNA(value)) {
+          elementIsNA(i);
+        }
+        table.putIfAbsent(value, i);
+      }
+    }
+
+    @Override
+    protected int indexOfNonNA(AtomicVector search, int i) {
+      return table.get(search.getElementAsInt(i));
+    }
+  }
+
+  private static class DoubleIndex extends MatchIndex {
+    private final DoubleHashTable table;
+
+    private DoubleIndex(DoubleVector vector) {
+      super(false);
+      table = new DoubleHashTable(vector.length());
+      for(int i=0;i!=vector.length();++i) {
+        double value = vector.getElementAsDouble(i);
+        if(DoubleVector.isNA(value)) {
+          elementIsNA(i);
+        } else if(!Double.isNaN(value)) {
+          // NaNs other than NA never compare equal, so are left out of the index
+          table.putIfAbsent(value, i);
+        }
+      }
+    }
+
+    @Override
+    protected int indexOfNonNA(AtomicVector search, int i) {
+      double value = search.getElementAsDouble(i);
+      if(Double.isNaN(value)) {
+        return -1;
+      }
+      return table.get(value);
+    }
+  }
+
+  private static class StringIndex extends MatchIndex {
+    protected final StringHashTable table;
+
+    private StringIndex(boolean factorAsString, int expectedSize) {
+      super(factorAsString);
+      table = new StringHashTable(expectedSize);
+    }
+
+    private StringIndex(StringVector vector) {
+      this(false, vector.length());
+      for(int i=0;i!=vector.length();++i) {
+        String value = vector.getElementAsString(i);
+        if(value == null) {
+          elementIsNA(i);
+        } else {
+          table.putIfAbsent(value, i);
+        }
+      }
+    }
+
+    @Override
+    protected final int indexOfNonNA(AtomicVector search, int i) {
+      return table.get(search.getElementAsString(i));
+    }
+  }
+
+  /**
+   * Indexes a factor by its labels. Each level's label is only hashed
+   * the first time its code is encountered in the table.
+   */
+  private static class FactorIndex extends StringIndex {
+
+    private FactorIndex(IntVector factor, Vector levels) {
+      super(true, Math.min(levels.length(), factor.length()));
+      boolean[] seen = new boolean[levels.length()];
+      for(int i=0;i!=factor.length();++i) {
+        int code = factor.getElementAsInt(i);
+        if(IntVector.isNA(code)) {
+          elementIsNA(i);
+        } else if(code >= 1 && code <= seen.length && !seen[code-1]) {
+          seen[code-1] = true;
+          String label = levels.getElementAsString(code-1);
+          if(label == null) {
+            elementIsNA(i);
+          } else {
+            table.putIfAbsent(label, i);
+          }
+        }
+      }
+    }
+  }
+}
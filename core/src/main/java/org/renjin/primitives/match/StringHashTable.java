@@ -0,0 +1,93 @@
+package org.renjin.primitives.match;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table mapping {@code String} keys to the
+ * (zero-based) index at which they were first encountered.
+ *
+ * <p>Strings cache their hash codes and short-circuit {@code equals()} on
+ * identity, so lookups of interned or repeated values are cheap.
+ * The {@code NA} string ({@code null}) is a valid key.
+ */
+final class StringHashTable {
+
+  private String[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  StringHashTable(int expectedSize) {
+    allocate(HashTables.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new String[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, HashTables.EMPTY);
+    mask = capacity - 1;
+  }
+
+  private static int hash(String key) {
+    return key == null ? 0 : HashTables.mix(key.hashCode());
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == b || (a != null && a.equals(b));
+  }
+
+  /**
+   * @return the index stored for {@code key}, or {@code -1} if the key is not present
+   */
+  int get(String key) {
+    int slot = hash(key) & mask;
+    while(values[slot] != HashTables.EMPTY) {
+      if(equal(keys[slot], key)) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return HashTables.EMPTY;
+  }
+
+  /**
+   * Associates {@code key} with {@code index} if the key is not yet present.
+   *
+   * @return the index previously stored for {@code key}, or {@code -1} if the key was added
+   */
+  int putIfAbsent(String key, int index) {
+    int slot = hash(key) & mask;
+    while(values[slot] != HashTables.EMPTY) {
+      if(equal(keys[slot], key)) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = index;
+    if(++size * 2 > keys.length) {
+      rehash();
+    }
+    return HashTables.EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void rehash() {
+    String[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for(int i=0;i!=oldKeys.length;++i) {
+      if(oldValues[i] != HashTables.EMPTY) {
+        int slot = hash(oldKeys[i]) & mask;
+        while(values[slot] != HashTables.EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+}
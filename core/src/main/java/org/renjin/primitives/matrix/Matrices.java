@@ -88,20 +88,7 @@ public class Matrices {
 
   @Internal
   public static DoubleVector rowSums(AtomicVector x, int numRows, int rowLength, boolean naRm) {
-    double sums[] = new double[numRows];
-    int sourceIndex = 0;
-    for(int col=0;col < rowLength; col++) {
-      for(int row=0;row<numRows;row++) {
-        double value = x.getElementAsDouble(sourceIndex++);
-        if(!naRm) {
-          sums[row] += value;
-        } else if(!Double.isNaN(value)) {
-          sums[row] += value;
-        }
-      }
-    }
-
-    return DoubleArrayVector.unsafe(sums);
+    return sums(x, numRows, rowLength, naRm, false, true);
   }
 
   @Internal
@@ -112,84 +99,48 @@ public class Matrices {
     if(!naRm && x instanceof DeferredComputation) {
       return new DeferredRowMeans(x, numRows, AttributeMap.EMPTY);
     }
-
-    double sums[] = new double[numRows];
-    int counts[] = new int[numRows];
-    int sourceIndex = 0;
-    for(int col=0;col < rowLength; col++) {
-      for(int row=0;row<numRows;row++) {
-        double value = x.getElementAsDouble(sourceIndex++);
-        if(!naRm) {
-          sums[row] += value;
-          counts[row] ++;
-        } else if(!Double.isNaN(value)) {
-          sums[row] += value;
-          counts[row] ++;
-        }
-      }
-    }
-    for(int row=0;row<numRows;row++) {
-      sums[row] /= (double)counts[row];
-    }
-    return DoubleArrayVector.unsafe(sums);
+    return sums(x, numRows, rowLength, naRm, true, true);
   }
 
   @Internal
   public static DoubleVector colSums(AtomicVector x, int columnLength, int numColumns, boolean naRm) {
-
-    double sums[] = new double[numColumns];
-    for(int column=0;column < numColumns; column++) {
-      int sourceIndex = columnLength*column;
-
-      double sum = 0;
-      for(int row=0;row < columnLength; ++row) {
-        double cellValue = x.getElementAsDouble(sourceIndex++);
-        if(Double.isNaN(cellValue)) {
-          if(!naRm) {
-            sum = DoubleVector.NA;
-            break;
-          }
-        } else {
-          sum += cellValue;
-        }
-      }
-      sums[column] = sum;
-    }
-
-    return new DoubleArrayVector(sums);
+    return sums(x, columnLength, numColumns, naRm, false, false);
   }
 
   @Internal
   public static DoubleVector colMeans(AtomicVector x, int columnLength, int numColumns, boolean naRm) {
-    double sums[] = new double[numColumns];
-    int counts[] = new int[numColumns];
-
-    for(int column=0;column < numColumns; column++) {
-      int sourceIndex = columnLength*column;
-
-      double sum = 0;
-      int count = 0;
-      for(int row=0;row < columnLength; ++row) {
-        double cellValue = x.getElementAsDouble(sourceIndex++);
-        if(Double.isNaN(cellValue)) {
-          if(!naRm) {
-            sum = DoubleVector.NA;
-            break;
-          }
-        } else {
-          sum += cellValue;
-          count++;
-        }
-      }
-      sums[column] = sum;
-      counts[column] = count;
-    }
+    return sums(x, columnLength, numColumns, naRm, true, false);
+  }
 
-    for(int i=0;i!=sums.length;++i) {
-      sums[i] = sums[i] / (double)counts[i];
+  /**
+   * Computes the row or column sums or means of {@code x} with {@link MatrixSums}, directly from the
+   * array of an integer, logical or double vector, or else from a copy of its elements.
+   */
+  private static DoubleVector sums(AtomicVector x, int numRows, int numCols, boolean naRm,
+                                   boolean mean, boolean rows) {
+    if(x instanceof IntVector || x instanceof LogicalVector) {
+      int[] array;
+      if(x instanceof IntArrayVector) {
+        array = ((IntArrayVector) x).toIntArrayUnsafe();
+      } else if(x instanceof LogicalArrayVector) {
+        array = ((LogicalArrayVector) x).toIntArrayUnsafe();
+      } else {
+        array = x.toIntArray();
+      }
+      return DoubleArrayVector.unsafe(rows ?
+          MatrixSums.rowSums(array, numRows, numCols, naRm, mean, MatrixSums.DEFAULT_THRESHOLD) :
+          MatrixSums.columnSums(array, numRows, numCols, naRm, mean, MatrixSums.DEFAULT_THRESHOLD));
+    } else {
+      double[] array;
+      if(x instanceof DoubleArrayVector) {
+        array = ((DoubleArrayVector) x).toDoubleArrayUnsafe();
+      } else {
+        array = x.toDoubleArray();
+      }
+      return DoubleArrayVector.unsafe(rows ?
+          MatrixSums.rowSums(array, numRows, numCols, naRm, mean, MatrixSums.DEFAULT_THRESHOLD) :
+          MatrixSums.columnSums(array, numRows, numCols, naRm, mean, MatrixSums.DEFAULT_THRESHOLD));
     }
-
-    return new DoubleArrayVector(sums);
   }
 
   /**
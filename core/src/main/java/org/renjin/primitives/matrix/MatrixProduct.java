@@ -27,6 +27,8 @@ class MatrixProduct {
   private int ldy;
 
   private boolean sym;
+
+  private long parallelThreshold = ParallelDgemm.DEFAULT_THRESHOLD;
   
   private ListVector.Builder dimnames = new ListVector.Builder(2);
 
@@ -46,6 +48,23 @@ class MatrixProduct {
   }
 
 
+  /**
+   * Sets the number of multiply-adds above which this product is computed in parallel by
+   * {@link ParallelDgemm} rather than by the netlib BLAS.
+   */
+  MatrixProduct withParallelThreshold(long multiplyAdds) {
+    this.parallelThreshold = multiplyAdds;
+    return this;
+  }
+
+  /**
+   * @return true if a product of an {@code m x k} matrix and a {@code k x n} matrix is large
+   * enough to be computed by {@link ParallelDgemm}.
+   */
+  private boolean isParallel(int m, int n, int k) {
+    return (long)m * (long)n * (long)k >= parallelThreshold;
+  }
+
   private void computeMatrixDims() {
 
     xdims = (AtomicVector)x.getAttribute(Symbols.DIM);
@@ -334,7 +353,9 @@ class MatrixProduct {
     String uplo = "U";
     double one = 1.0, zero = 0.0;
     int i, j;
-    if (nr > 0 && nc > 0) {
+    if (nr > 0 && nc > 0 && isParallel(nc, nc, nr)) {
+      ParallelDgemm.dsyrk(true, nc, nr, x, nr, z);
+    } else if (nr > 0 && nc > 0) {
       BLAS.getInstance().dsyrk(uplo, trans, nc, nr, one, x, nr, zero, z, nc);  
       for (i = 1; i < nc; i++) {
         for (j = 0; j < i; j++) {
@@ -366,7 +387,10 @@ class MatrixProduct {
     double sum;
     boolean have_na = false;
 
-    if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0) {
+    if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0 && isParallel(nrx, ncy, ncx)) {
+      /* Handles NA/NaNs correctly */
+      ParallelDgemm.dgemm(false, false, nrx, ncy, ncx, x, nrx, y, nry, z);
+    } else if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0) {
       /* Don't trust the BLAS to handle NA/NaNs correctly: PR#4582
        * The test is only O(n) here
        */
@@ -415,7 +439,9 @@ class MatrixProduct {
     String uplo = "U";
     double one = 1.0, zero = 0.0;
     int i, j;
-    if (nr > 0 && nc > 0) {
+    if (nr > 0 && nc > 0 && isParallel(nr, nr, nc)) {
+      ParallelDgemm.dsyrk(false, nr, nc, x, nr, z);
+    } else if (nr > 0 && nc > 0) {
       BLAS.getInstance().dsyrk(uplo, trans, nr, nc, one, x, nr, zero, z, nr);
       for (i = 1; i < nr; i++) {
         for (j = 0; j < i; j++) {
@@ -436,7 +462,9 @@ class MatrixProduct {
     String transa = "N";
     String transb = "T";
     double one = 1.0, zero = 0.0;
-    if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0) {
+    if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0 && isParallel(nrx, nry, ncx)) {
+      ParallelDgemm.dgemm(false, true, nrx, nry, ncx, x, nrx, y, nry, z);
+    } else if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0) {
       BLAS.getInstance().dgemm(transa, transb, nrx, nry, ncx, one,
           x, nrx, y, nry, zero, z, nrx);
     } else { /* zero-extent operations should return zeroes */
@@ -454,7 +482,9 @@ class MatrixProduct {
     String transa = "T";
     String transb = "N";
     double one = 1.0, zero = 0.0;
-    if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0) {
+    if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0 && isParallel(ncx, ncy, nrx)) {
+      ParallelDgemm.dgemm(true, false, ncx, ncy, nrx, x, nrx, y, nry, z);
+    } else if (nrx > 0 && ncx > 0 && nry > 0 && ncy > 0) {
       BLAS.getInstance().dgemm(transa, transb, ncx, ncy, nrx, one,
           x, nrx, y, nry, zero, z, ncx);
     } else { /* zero-extent operations should return zeroes */
@@ -0,0 +1,236 @@
+package org.renjin.primitives.matrix;
+
+import org.renjin.parallel.KernelPool;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Row and column sums and means of column-major matrices stored in {@code double[]} or,
+ * for integer and logical matrices, {@code int[]} arrays.
+ *
+ * <p>Column sums read each column sequentially. Row sums are accumulated a panel of rows at a
+ * time, so that the accumulators of the panel stay in the cache while each column of the panel
+ * is added to them. Above a threshold number of elements, which is passed to each sum, the columns,
+ * or the panels of rows, are divided among the threads of the {@link KernelPool}. Each thread owns a distinct range of
+ * the result and adds its elements in the same order as a single thread would, so the results do
+ * not depend on the number of threads.</p>
+ *
+ * <p>Missing values are handled as in GNU R: unless {@code naRm} is set, {@code NA} and
+ * {@code NaN} elements of double matrices propagate through the sums, while a {@code NA} element
+ * of an integer or logical matrix makes its sum {@code NA}. When {@code naRm} is set, means
+ * are divided by the number of elements that are not missing.</p>
+ */
+public class MatrixSums {
+
+  /**
+   * The number of elements above which {@code rowSums()} and {@code colSums()} are computed in parallel
+   */
+  public static final long DEFAULT_THRESHOLD = Long.getLong("renjin.matrix.sums.threshold", 1L << 20);
+
+  /**
+   * The largest number of rows accumulated at a time by row sums
+   */
+  private static final int ROW_PANEL = 2048;
+
+  /**
+   * The smallest number of rows accumulated at a time when row sums are divided among threads
+   */
+  private static final int MIN_ROW_PANEL = 64;
+
+  private MatrixSums() { }
+
+  public static double[] columnSums(final double[] x, final int numRows, int numCols,
+                                    final boolean naRm, final boolean mean, long threshold) {
+    final double[] sums = new double[numCols];
+    run(new Kernel() {
+      @Override
+      public void compute(int from, int to) {
+        for(int j=from;j<to;++j) {
+          int offset = j * numRows;
+          double sum = 0;
+          int count = 0;
+          if(naRm) {
+            for(int i=0;i<numRows;++i) {
+              double value = x[offset + i];
+              if(!Double.isNaN(value)) {
+                sum += value;
+                count++;
+              }
+            }
+          } else {
+            for(int i=0;i<numRows;++i) {
+              sum += x[offset + i];
+            }
+            count = numRows;
+          }
+          sums[j] = mean ? sum / count : sum;
+        }
+      }
+    }, numCols, (long)numRows * numCols, threshold);
+    return sums;
+  }
+
+  public static double[] columnSums(final int[] x, final int numRows, int numCols,
+                                    final boolean naRm, final boolean mean, long threshold) {
+    final double[] sums = new double[numCols];
+    run(new Kernel() {
+      @Override
+      public void compute(int from, int to) {
+        for(int j=from;j<to;++j) {
+          int offset = j * numRows;
+          double sum = 0;
+          int count = 0;
+          for(int i=0;i<numRows;++i) {
+            int value = x[offset + i];
+            if(value != IntVector.NA) {
+              sum += value;
+              count++;
+            } else if(!naRm) {
+              sum = DoubleVector.NA;
+              break;
+            }
+          }
+          if(naRm) {
+            sums[j] = mean ? sum / count : sum;
+          } else {
+            sums[j] = mean ? sum / numRows : sum;
+          }
+        }
+      }
+    }, numCols, (long)numRows * numCols, threshold);
+    return sums;
+  }
+
+  public static double[] rowSums(final double[] x, final int numRows, final int numCols,
+                                 final boolean naRm, final boolean mean, long threshold) {
+    final double[] sums = new double[numRows];
+    final int panelRows = panelRows(numRows, numCols, threshold);
+    run(new Kernel() {
+      @Override
+      public void compute(int fromPanel, int toPanel) {
+        int start = fromPanel * panelRows;
+        int end = (int)Math.min(numRows, (long)toPanel * panelRows);
+        int[] counts = (naRm && mean) ? new int[end - start] : null;
+        for(int j=0;j<numCols;++j) {
+          int offset = j * numRows;
+          if(naRm) {
+            for(int i=start;i<end;++i) {
+              double value = x[offset + i];
+              if(!Double.isNaN(value)) {
+                sums[i] += value;
+                if(counts != null) {
+                  counts[i - start]++;
+                }
+              }
+            }
+          } else {
+            for(int i=start;i<end;++i) {
+              sums[i] += x[offset + i];
+            }
+          }
+        }
+        if(mean) {
+          for(int i=start;i<end;++i) {
+            sums[i] /= (counts == null ? numCols : counts[i - start]);
+          }
+        }
+      }
+    }, (numRows + panelRows - 1) / panelRows, (long)numRows * numCols, threshold);
+    return sums;
+  }
+
+  public static double[] rowSums(final int[] x, final int numRows, final int numCols,
+                                 final boolean naRm, final boolean mean, long threshold) {
+    final double[] sums = new double[numRows];
+    final int panelRows = panelRows(numRows, numCols, threshold);
+    run(new Kernel() {
+      @Override
+      public void compute(int fromPanel, int toPanel) {
+        int start = fromPanel * panelRows;
+        int end = (int)Math.min(numRows, (long)toPanel * panelRows);
+        int[] counts = (naRm && mean) ? new int[end - start] : null;
+        for(int j=0;j<numCols;++j) {
+          int offset = j * numRows;
+          for(int i=start;i<end;++i) {
+            int value = x[offset + i];
+            if(value != IntVector.NA) {
+              sums[i] += value;
+              if(counts != null) {
+                counts[i - start]++;
+              }
+            } else if(!naRm) {
+              sums[i] = DoubleVector.NA;
+            }
+          }
+        }
+        if(mean) {
+          for(int i=start;i<end;++i) {
+            sums[i] /= (counts == null ? numCols : counts[i - start]);
+          }
+        }
+      }
+    }, (numRows + panelRows - 1) / panelRows, (long)numRows * numCols, threshold);
+    return sums;
+  }
+
+  /**
+   * @return the number of rows to accumulate at a time: small enough for the accumulators
+   * to stay in the cache, and, when the sums are computed in parallel, to give each thread
+   * several panels.
+   */
+  private static int panelRows(int numRows, int numCols, long threshold) {
+    if((long)numRows * numCols < threshold) {
+      return ROW_PANEL;
+    }
+    int parts = KernelPool.getParallelism() * 4;
+    return Math.min(ROW_PANEL, Math.max(MIN_ROW_PANEL, (numRows + parts - 1) / parts));
+  }
+
+  /**
+   * Computes the parts {@code [0, count)} of a sum, in parallel if the sum covers
+   * more than the threshold number of elements.
+   */
+  private static void run(Kernel kernel, int count, long elements, long threshold) {
+    if(count <= 1 || elements < threshold) {
+      kernel.compute(0, count);
+    } else {
+      int grain = Math.max(1, count / (KernelPool.getParallelism() * 4));
+      KernelPool.invoke(new RangeTask(kernel, 0, count, grain));
+    }
+  }
+
+  private interface Kernel {
+
+    /**
+     * Computes the parts {@code [from, to)} of the result: columns for column sums,
+     * or panels of rows for row sums.
+     */
+    void compute(int from, int to);
+  }
+
+  private static class RangeTask extends RecursiveAction {
+    private final Kernel kernel;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    private RangeTask(Kernel kernel, int from, int to, int grain) {
+      this.kernel = kernel;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if(to - from <= grain) {
+        kernel.compute(from, to);
+      } else {
+        int split = (from + to) >>> 1;
+        invokeAll(new RangeTask(kernel, from, split, grain), new RangeTask(kernel, split, to, grain));
+      }
+    }
+  }
+}
@@ -0,0 +1,340 @@
+package org.renjin.primitives.matrix;
+
+import org.renjin.parallel.KernelPool;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure-Java matrix multiplication for large matrices, which divides the result into tiles that
+ * are computed in parallel in the {@link KernelPool}.
+ *
+ * <p>Each tile is computed in the style of GotoBLAS: the operands are copied, {@code KC} terms
+ * at a time, into contiguous panels of {@code MR} rows of A and {@code NR} columns of B, and each
+ * {@code MR x NR} block of the tile is accumulated in local variables by a small kernel that
+ * reads both panels sequentially.</p>
+ *
+ * <p>Unlike the reference BLAS, terms are never skipped when an element is zero, so NA and NaN values
+ * propagate to the result as they would in a naive triple loop.</p>
+ */
+public class ParallelDgemm {
+
+  /**
+   * The number of multiply-adds above which {@link MatrixProduct} uses this class rather than
+   * the netlib BLAS, unless the product is given another threshold.
+   */
+  static final long DEFAULT_THRESHOLD = Long.getLong("renjin.matrix.parallel.threshold", 64L * 64L * 64L);
+
+  private static final int MR = 4;
+  private static final int NR = 4;
+
+  /**
+   * The number of terms packed at a time
+   */
+  private static final int KC = 256;
+
+  /**
+   * The number of rows in each tile of the result
+   */
+  private static final int MC = 128;
+
+  /**
+   * The number of columns in each tile of the result
+   */
+  private static final int NC = 256;
+
+  private static final int MIRROR_BLOCK = 64;
+
+  private ParallelDgemm() { }
+
+  /**
+   * Computes {@code C = op(A) op(B)}, where {@code op(X)} is {@code X} or its transpose.
+   *
+   * @param transA true if {@code op(A)} is the transpose of {@code A}
+   * @param transB true if {@code op(B)} is the transpose of {@code B}
+   * @param m the number of rows of {@code op(A)} and {@code C}
+   * @param n the number of columns of {@code op(B)} and {@code C}
+   * @param k the number of columns of {@code op(A)} and rows of {@code op(B)}
+   * @param a the column-major elements of {@code A}
+   * @param lda the number of rows of {@code A}
+   * @param b the column-major elements of {@code B}
+   * @param ldb the number of rows of {@code B}
+   * @param c the array to which the {@code m x n} elements of {@code C} are written, in column-major order
+   */
+  public static void dgemm(boolean transA, boolean transB, int m, int n, int k,
+                           double[] a, int lda, double[] b, int ldb, double[] c) {
+    if(m == 0 || n == 0) {
+      return;
+    }
+    Product product = new Product(transA, transB, m, n, k, a, lda, b, ldb, c, false);
+    product.compute();
+  }
+
+  /**
+   * Computes the symmetric matrix {@code C = t(A) A} if {@code trans} is true, or {@code A t(A)} otherwise.
+   *
+   * <p>Only the tiles of {@code C} that intersect the upper triangle are computed, and the
+   * lower triangle is then copied from the upper triangle.</p>
+   *
+   * @param n the number of rows and columns of {@code C}
+   * @param k the number of rows of {@code A} if {@code trans} is true, or the number of columns otherwise
+   * @param a the column-major elements of {@code A}
+   * @param lda the number of rows of {@code A}
+   * @param c the array to which the {@code n x n} elements of {@code C} are written, in column-major order
+   */
+  public static void dsyrk(boolean trans, int n, int k, double[] a, int lda, double[] c) {
+    if(n == 0) {
+      return;
+    }
+    Product product = new Product(trans, !trans, n, n, k, a, lda, a, lda, c, true);
+    product.compute();
+
+    // Copy the upper triangle in square blocks, so that the rows read from
+    // the upper triangle stay in the cache
+    for (int j0 = 0; j0 < n; j0 += MIRROR_BLOCK) {
+      int j1 = Math.min(n, j0 + MIRROR_BLOCK);
+      for (int i0 = j0; i0 < n; i0 += MIRROR_BLOCK) {
+        int i1 = Math.min(n, i0 + MIRROR_BLOCK);
+        for (int j = j0; j < j1; j++) {
+          for (int i = Math.max(i0, j + 1); i < i1; i++) {
+            c[i + n * j] = c[j + n * i];
+          }
+        }
+      }
+    }
+  }
+
+  private static class Product {
+    private final boolean transA;
+    private final boolean transB;
+    private final int m;
+    private final int n;
+    private final int k;
+    private final double[] a;
+    private final int lda;
+    private final double[] b;
+    private final int ldb;
+    private final double[] c;
+    private final boolean upper;
+
+    private final int rowTiles;
+    private final int columnTiles;
+
+    Product(boolean transA, boolean transB, int m, int n, int k,
+            double[] a, int lda, double[] b, int ldb, double[] c, boolean upper) {
+      this.transA = transA;
+      this.transB = transB;
+      this.m = m;
+      this.n = n;
+      this.k = k;
+      this.a = a;
+      this.lda = lda;
+      this.b = b;
+      this.ldb = ldb;
+      this.c = c;
+      this.upper = upper;
+      this.rowTiles = (m + MC - 1) / MC;
+      this.columnTiles = (n + NC - 1) / NC;
+    }
+
+    void compute() {
+      int tiles = rowTiles * columnTiles;
+      if(tiles == 1) {
+        computeTile(0, 0);
+      } else {
+        KernelPool.invoke(new TileTask(this, 0, tiles));
+      }
+    }
+
+    void computeTile(int tile) {
+      computeTile(tile % rowTiles, tile / rowTiles);
+    }
+
+    private void computeTile(int rowTile, int columnTile) {
+      int i0 = rowTile * MC;
+      int j0 = columnTile * NC;
+      int mc = Math.min(MC, m - i0);
+      int nc = Math.min(NC, n - j0);
+
+      if(upper && i0 >= j0 + nc) {
+        // The tile lies entirely below the diagonal
+        return;
+      }
+
+      if(k == 0) {
+        for (int j = 0; j < nc; j++) {
+          for (int i = 0; i < mc; i++) {
+            c[(i0 + i) + (j0 + j) * m] = 0;
+          }
+        }
+        return;
+      }
+
+      int rowPanels = (mc + MR - 1) / MR;
+      int columnPanels = (nc + NR - 1) / NR;
+      double[] packedA = new double[rowPanels * MR * Math.min(KC, k)];
+      double[] packedB = new double[columnPanels * NR * Math.min(KC, k)];
+
+      for (int p0 = 0; p0 < k; p0 += KC) {
+        int kc = Math.min(KC, k - p0);
+        packA(packedA, i0, mc, p0, kc);
+        packB(packedB, j0, nc, p0, kc);
+
+        boolean accumulate = p0 > 0;
+        for (int jp = 0; jp < columnPanels; jp++) {
+          for (int ip = 0; ip < rowPanels; ip++) {
+            kernel(packedA, ip * MR * kc, packedB, jp * NR * kc, kc,
+                i0 + ip * MR, Math.min(MR, mc - ip * MR),
+                j0 + jp * NR, Math.min(NR, nc - jp * NR),
+                accumulate);
+          }
+        }
+      }
+    }
+
+    /**
+     * Copies rows {@code i0} to {@code i0+mc} and columns {@code p0} to {@code p0+kc} of {@code op(A)}
+     * into panels of {@code MR} rows, padding the last panel with zeros.
+     */
+    private void packA(double[] packed, int i0, int mc, int p0, int kc) {
+      int index = 0;
+      for (int ir = 0; ir < mc; ir += MR) {
+        int mr = Math.min(MR, mc - ir);
+        for (int p = 0; p < kc; p++) {
+          int r = 0;
+          if(transA) {
+            int offset = (p0 + p) + (i0 + ir) * lda;
+            for (; r < mr; r++) {
+              packed[index++] = a[offset + r * lda];
+            }
+          } else {
+            int offset = (i0 + ir) + (p0 + p) * lda;
+            for (; r < mr; r++) {
+              packed[index++] = a[offset + r];
+            }
+          }
+          for (; r < MR; r++) {
+            packed[index++] = 0;
+          }
+        }
+      }
+    }
+
+    /**
+     * Copies rows {@code p0} to {@code p0+kc} and columns {@code j0} to {@code j0+nc} of {@code op(B)}
+     * into panels of {@code NR} columns, padding the last panel with zeros.
+     */
+    private void packB(double[] packed, int j0, int nc, int p0, int kc) {
+      int index = 0;
+      for (int jr = 0; jr < nc; jr += NR) {
+        int nr = Math.min(NR, nc - jr);
+        for (int p = 0; p < kc; p++) {
+          int s = 0;
+          if(transB) {
+            int offset = (j0 + jr) + (p0 + p) * ldb;
+            for (; s < nr; s++) {
+              packed[index++] = b[offset + s];
+            }
+          } else {
+            int offset = (p0 + p) + (j0 + jr) * ldb;
+            for (; s < nr; s++) {
+              packed[index++] = b[offset + s * ldb];
+            }
+          }
+          for (; s < NR; s++) {
+            packed[index++] = 0;
+          }
+        }
+      }
+    }
+
+    /**
+     * Computes the {@code MR x NR} block of {@code C} at row {@code i} and column {@code j} from
+     * a packed panel of A and a packed panel of B, writing only the {@code mr x nr} elements that
+     * lie within {@code C}.
+     */
+    private void kernel(double[] pa, int ai, double[] pb, int bi, int kc,
+                        int i, int mr, int j, int nr, boolean accumulate) {
+      double c00 = 0, c10 = 0, c20 = 0, c30 = 0;
+      double c01 = 0, c11 = 0, c21 = 0, c31 = 0;
+      double c02 = 0, c12 = 0, c22 = 0, c32 = 0;
+      double c03 = 0, c13 = 0, c23 = 0, c33 = 0;
+
+      for (int p = 0; p < kc; p++) {
+        double a0 = pa[ai];
+        double a1 = pa[ai + 1];
+        double a2 = pa[ai + 2];
+        double a3 = pa[ai + 3];
+        double b0 = pb[bi];
+        double b1 = pb[bi + 1];
+        double b2 = pb[bi + 2];
+        double b3 = pb[bi + 3];
+        c00 += a0 * b0; c10 += a1 * b0; c20 += a2 * b0; c30 += a3 * b0;
+        c01 += a0 * b1; c11 += a1 * b1; c21 += a2 * b1; c31 += a3 * b1;
+        c02 += a0 * b2; c12 += a1 * b2; c22 += a2 * b2; c32 += a3 * b2;
+        c03 += a0 * b3; c13 += a1 * b3; c23 += a2 * b3; c33 += a3 * b3;
+        ai += MR;
+        bi += NR;
+      }
+
+      if(mr == MR && nr == NR) {
+        int c0 = i + j * m;
+        int c1 = c0 + m;
+        int c2 = c1 + m;
+        int c3 = c2 + m;
+        if(accumulate) {
+          c[c0] += c00; c[c0 + 1] += c10; c[c0 + 2] += c20; c[c0 + 3] += c30;
+          c[c1] += c01; c[c1 + 1] += c11; c[c1 + 2] += c21; c[c1 + 3] += c31;
+          c[c2] += c02; c[c2 + 1] += c12; c[c2 + 2] += c22; c[c2 + 3] += c32;
+          c[c3] += c03; c[c3 + 1] += c13; c[c3 + 2] += c23; c[c3 + 3] += c33;
+        } else {
+          c[c0] = c00; c[c0 + 1] = c10; c[c0 + 2] = c20; c[c0 + 3] = c30;
+          c[c1] = c01; c[c1 + 1] = c11; c[c1 + 2] = c21; c[c1 + 3] = c31;
+          c[c2] = c02; c[c2 + 1] = c12; c[c2 + 2] = c22; c[c2 + 3] = c32;
+          c[c3] = c03; c[c3 + 1] = c13; c[c3 + 2] = c23; c[c3 + 3] = c33;
+        }
+      } else {
+        double[] block = {
+            c00, c10, c20, c30,
+            c01, c11, c21, c31,
+            c02, c12, c22, c32,
+            c03, c13, c23, c33 };
+        for (int s = 0; s < nr; s++) {
+          for (int r = 0; r < mr; r++) {
+            int index = (i + r) + (j + s) * m;
+            if(accumulate) {
+              c[index] += block[r + s * MR];
+            } else {
+              c[index] = block[r + s * MR];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes a range of tiles, recursively splitting the range in half.
+   */
+  private static class TileTask extends RecursiveAction {
+    private final Product product;
+    private final int startTile;
+    private final int endTile;
+
+    TileTask(Product product, int startTile, int endTile) {
+      this.product = product;
+      this.startTile = startTile;
+      this.endTile = endTile;
+    }
+
+    @Override
+    protected void compute() {
+      if(endTile - startTile == 1) {
+        product.computeTile(startTile);
+      } else {
+        int middleTile = startTile + (endTile - startTile) / 2;
+        invokeAll(new TileTask(product, startTile, middleTile),
+                  new TileTask(product, middleTile, endTile));
+      }
+    }
+  }
+}
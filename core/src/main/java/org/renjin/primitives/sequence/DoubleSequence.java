@@ -10,6 +10,7 @@ public class DoubleSequence extends DoubleVector {
   private double from;
   private double by;
   private int length;
+  private volatile double[] array;
 
   public DoubleSequence(AttributeMap attributes, double from, double by, int length) {
     super(attributes);
@@ -26,6 +27,10 @@ public class DoubleSequence extends DoubleVector {
 
   @Override
   public double getElementAsDouble(int index) {
+    double[] array = this.array;
+    if(array != null) {
+      return array[index];
+    }
     return from + index * by;
   }
 
@@ -39,8 +44,26 @@ public class DoubleSequence extends DoubleVector {
     return length;
   }
 
+  /**
+   * @return the elements of this sequence as an array, which is computed on the first call and then
+   * shared by all later calls. Once the array exists, the elements of this sequence are read from it,
+   * so that changes made to it by native code are also seen from R.
+   */
+  public double[] toDoubleArrayUnsafe() {
+    double[] array = this.array;
+    if(array == null) {
+      array = toDoubleArray();
+      this.array = array;
+    }
+    return array;
+  }
+
   @Override
   protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    double[] array = this.array;
+    if(array != null) {
+      return new DoubleArrayVector(array, attributes);
+    }
     return new DoubleSequence(attributes, from, by, length);
   }
 
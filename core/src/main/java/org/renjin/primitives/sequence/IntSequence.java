@@ -2,6 +2,7 @@ package org.renjin.primitives.sequence;
 
 
 import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.IntArrayVector;
 import org.renjin.sexp.IntVector;
 import org.renjin.sexp.SEXP;
 import org.renjin.sexp.Vector;
@@ -11,6 +12,7 @@ public class IntSequence extends IntVector {
   private int from;
   private int by;
   private int length;
+  private volatile int[] array;
 
   public IntSequence(int from, int by, int length) {
     this.from = from;
@@ -32,12 +34,17 @@ public class IntSequence extends IntVector {
 
   @Override
   public int getElementAsInt(int i) {
+    int[] array = this.array;
+    if(array != null) {
+      return array[i];
+    }
     return from + i*by;
   }
 
   @Override
   public boolean isElementNA(int index) {
-    return false;
+    int[] array = this.array;
+    return array != null && IntVector.isNA(array[index]);
   }
 
   @Override
@@ -45,8 +52,26 @@ public class IntSequence extends IntVector {
     return true;
   }
 
+  /**
+   * @return the elements of this sequence as an array, which is computed on the first call and then
+   * shared by all later calls. Once the array exists, the elements of this sequence are read from it,
+   * so that changes made to it by native code are also seen from R.
+   */
+  public int[] toIntArrayUnsafe() {
+    int[] array = this.array;
+    if(array == null) {
+      array = toIntArray();
+      this.array = array;
+    }
+    return array;
+  }
+
   @Override
   protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    int[] array = this.array;
+    if(array != null) {
+      return new IntArrayVector(array, attributes);
+    }
     return new IntSequence(attributes, from, by, length);
   }
 
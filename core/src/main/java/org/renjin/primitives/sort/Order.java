@@ -0,0 +1,301 @@
+package org.renjin.primitives.sort;
+
+import org.renjin.sexp.*;
+
+/**
+ * Computes the permutation which rearranges a set of key columns into
+ * ascending or descending order, as R's {@code order()} does.
+ *
+ * <p>The ordering works on primitive {@code int[]} permutations rather than
+ * boxed indices. Columns are applied from the last to the first, each with
+ * a stable sort, so that earlier columns take precedence and ties keep their
+ * original order:
+ * <ul>
+ *   <li>integer, factor and logical keys use a least-significant-digit radix sort</li>
+ *   <li>double keys are mapped to integers with the same ordering as
+ *   {@link Double#compare(double, double)} and radix-sorted</li>
+ *   <li>character and all other keys fall back to a merge sort</li>
+ * </ul>
+ *
+ * <p>{@code NA} elements are moved to the beginning or the end of the ordering, depending on {@code naLast},
+ * and {@code decreasing} only applies to the non-{@code NA} values.
+ */
+public class Order {
+
+  /**
+   * Runs shorter than this are sorted by insertion sort
+   */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX = 1 << RADIX_BITS;
+  private static final int RADIX_MASK = RADIX - 1;
+
+  private final boolean naLast;
+  private final boolean decreasing;
+  private final int numRows;
+
+  private int[] order;
+  private int[] orderBuffer;
+
+  private Order(int numRows, boolean naLast, boolean decreasing) {
+    this.numRows = numRows;
+    this.naLast = naLast;
+    this.decreasing = decreasing;
+    this.order = new int[numRows];
+    this.orderBuffer = new int[numRows];
+    for(int i=0;i!=numRows;++i) {
+      order[i] = i;
+    }
+  }
+
+  /**
+   * @param columns the key columns, which must all have the same length
+   * @param naLast true if {@code NA}s should be ordered after all other values
+   * @param decreasing true if non-{@code NA} values should be in decreasing order
+   * @return the zero-based permutation of the rows
+   */
+  public static int[] order(AtomicVector[] columns, boolean naLast, boolean decreasing) {
+    int numRows = columns.length == 0 ? 0 : columns[0].length();
+    Order order = new Order(numRows, naLast, decreasing);
+    for(int col=columns.length-1; col >= 0; --col) {
+      order.sortBy(columns[col]);
+    }
+    return order.order;
+  }
+
+  private void sortBy(AtomicVector column) {
+    int naCount = partitionNAs(column);
+    int from = naLast ? 0 : naCount;
+    int to = naLast ? numRows - naCount : numRows;
+    if(to - from < 2) {
+      return;
+    }
+    if(column instanceof DoubleVector) {
+      sortDoubles((DoubleVector) column, from, to);
+    } else if(column instanceof IntVector || column instanceof LogicalVector) {
+      sortInts(column, from, to);
+    } else if(column instanceof StringVector) {
+      mergeSort(new StringComparator((StringVector) column, decreasing), from, to);
+    } else {
+      mergeSort(new ColumnComparator(column, decreasing), from, to);
+    }
+  }
+
+  /**
+   * Moves the rows whose key is {@code NA} to the beginning or the end of the ordering,
+   * without changing the relative order of the rows.
+   *
+   * @return the number of {@code NA} keys
+   */
+  private int partitionNAs(AtomicVector column) {
+    int naCount = 0;
+    for(int i=0;i!=numRows;++i) {
+      if(column.isElementNA(i)) {
+        naCount++;
+      }
+    }
+    if(naCount == 0 || naCount == numRows) {
+      return naCount;
+    }
+    int nextValue = naLast ? 0 : naCount;
+    int nextNA = naLast ? numRows - naCount : 0;
+    for(int i=0;i!=numRows;++i) {
+      int row = order[i];
+      if(column.isElementNA(row)) {
+        orderBuffer[nextNA++] = row;
+      } else {
+        orderBuffer[nextValue++] = row;
+      }
+    }
+    swapBuffers();
+    return naCount;
+  }
+
+  private void sortInts(AtomicVector column, int from, int to) {
+    int[] keys = new int[numRows];
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for(int i=from;i!=to;++i) {
+      int value = column.getElementAsInt(order[i]);
+      keys[i] = value;
+      if(value < min) {
+        min = value;
+      }
+      if(value > max) {
+        max = value;
+      }
+    }
+    // Rebase the keys so that they can be compared as unsigned integers
+    // within [0, max-min], flipping them if we are sorting in decreasing order
+    long range = max - min;
+    for(int i=from;i!=to;++i) {
+      keys[i] = (int)(decreasing ? max - keys[i] : keys[i] - min);
+    }
+    int[] keyBuffer = new int[numRows];
+    for(int shift=0; shift < 32 && (range >>> shift) != 0; shift += RADIX_BITS) {
+      radixPass(keys, keyBuffer, from, to, shift);
+      int[] tmp = keys;
+      keys = keyBuffer;
+      keyBuffer = tmp;
+    }
+  }
+
+  private void radixPass(int[] keys, int[] keyBuffer, int from, int to, int shift) {
+    int[] offsets = new int[RADIX + 1];
+    for(int i=from;i!=to;++i) {
+      offsets[((keys[i] >>> shift) & RADIX_MASK) + 1]++;
+    }
+    for(int d=0;d!=RADIX;++d) {
+      offsets[d+1] += offsets[d];
+    }
+    for(int i=from;i!=to;++i) {
+      int pos = from + offsets[(keys[i] >>> shift) & RADIX_MASK]++;
+      keyBuffer[pos] = keys[i];
+      orderBuffer[pos] = order[i];
+    }
+    copyBack(from, to);
+  }
+
+  private void sortDoubles(DoubleVector column, int from, int to) {
+    long[] keys = new long[numRows];
+    for(int i=from;i!=to;++i) {
+      long key = sortableBits(column.getElementAsDouble(order[i]));
+      keys[i] = decreasing ? ~key : key;
+    }
+    long[] keyBuffer = new long[numRows];
+    for(int shift=0; shift < 64; shift += RADIX_BITS) {
+      if(radixPass(keys, keyBuffer, from, to, shift)) {
+        long[] tmp = keys;
+        keys = keyBuffer;
+        keyBuffer = tmp;
+      }
+    }
+  }
+
+  /**
+   * Maps a double to a long whose unsigned ordering is the same as
+   * {@link Double#compare(double, double)}: {@code -0} sorts before {@code 0},
+   * and {@code NaN} sorts after positive infinity.
+   */
+  static long sortableBits(double value) {
+    long bits = Double.doubleToLongBits(value);
+    return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+  }
+
+  /**
+   * Sorts the range by the digit at {@code shift}, skipping the pass
+   * altogether if all the keys share the same digit.
+   *
+   * @return true if the keys were moved to {@code keyBuffer}
+   */
+  private boolean radixPass(long[] keys, long[] keyBuffer, int from, int to, int shift) {
+    int[] offsets = new int[RADIX + 1];
+    for(int i=from;i!=to;++i) {
+      offsets[((int)(keys[i] >>> shift) & RADIX_MASK) + 1]++;
+    }
+    for(int d=0;d!=RADIX;++d) {
+      if(offsets[d+1] == to - from) {
+        return false;
+      }
+      offsets[d+1] += offsets[d];
+    }
+    for(int i=from;i!=to;++i) {
+      int pos = from + offsets[(int)(keys[i] >>> shift) & RADIX_MASK]++;
+      keyBuffer[pos] = keys[i];
+      orderBuffer[pos] = order[i];
+    }
+    copyBack(from, to);
+    return true;
+  }
+
+  /**
+   * Stable merge sort of the rows in the given range
+   */
+  private void mergeSort(RowComparator comparator, int from, int to) {
+    mergeSort(comparator, order, orderBuffer, from, to);
+  }
+
+  private static void mergeSort(RowComparator comparator, int[] rows, int[] buffer, int from, int to) {
+    if(to - from <= INSERTION_SORT_THRESHOLD) {
+      insertionSort(comparator, rows, from, to);
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(comparator, rows, buffer, from, mid);
+    mergeSort(comparator, rows, buffer, mid, to);
+
+    // already in order?
+    if(comparator.compare(rows[mid - 1], rows[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(rows, from, buffer, from, to - from);
+    int left = from;
+    int right = mid;
+    for(int i=from;i!=to;++i) {
+      if(right >= to || (left < mid && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+        rows[i] = buffer[left++];
+      } else {
+        rows[i] = buffer[right++];
+      }
+    }
+  }
+
+  private static void insertionSort(RowComparator comparator, int[] rows, int from, int to) {
+    for(int i=from+1;i<to;++i) {
+      int row = rows[i];
+      int j = i - 1;
+      while(j >= from && comparator.compare(rows[j], row) > 0) {
+        rows[j+1] = rows[j];
+        j--;
+      }
+      rows[j+1] = row;
+    }
+  }
+
+  private void copyBack(int from, int to) {
+    System.arraycopy(orderBuffer, from, order, from, to - from);
+  }
+
+  private void swapBuffers() {
+    int[] tmp = order;
+    order = orderBuffer;
+    orderBuffer = tmp;
+  }
+
+  private interface RowComparator {
+    int compare(int row1, int row2);
+  }
+
+  private static class StringComparator implements RowComparator {
+    private final String[] values;
+    private final boolean decreasing;
+
+    public StringComparator(StringVector column, boolean decreasing) {
+      this.values = column.toArray();
+      this.decreasing = decreasing;
+    }
+
+    @Override
+    public int compare(int row1, int row2) {
+      int rel = values[row1].compareTo(values[row2]);
+      return decreasing ? -rel : rel;
+    }
+  }
+
+  private static class ColumnComparator implements RowComparator {
+    private final AtomicVector column;
+    private final boolean decreasing;
+
+    public ColumnComparator(AtomicVector column, boolean decreasing) {
+      this.column = column;
+      this.decreasing = decreasing;
+    }
+
+    @Override
+    public int compare(int row1, int row2) {
+      int rel = column.compare(row1, row2);
+      return decreasing ? -rel : rel;
+    }
+  }
+}
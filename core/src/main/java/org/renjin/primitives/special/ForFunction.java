@@ -21,6 +21,7 @@
 
 package org.renjin.primitives.special;
 
+import org.renjin.compiler.loop.LoopProfile;
 import org.renjin.eval.Context;
 import org.renjin.eval.EvalException;
 import org.renjin.sexp.*;
@@ -53,7 +54,15 @@ public class ForFunction extends SpecialFunction {
     }
     Vector elements = (Vector) elementsExp;
     SEXP statement = args.getElementAsSEXP(2);
+    LoopProfile profile = LoopProfile.of(call);
     for(int i=0; i!=elements.length(); ++i) {
+      if(profile != null && profile.tick()) {
+        if(profile.run(context, rho, call, elements, i)) {
+          break;
+        }
+        // finish this run of the loop in the interpreter
+        profile = null;
+      }
       try {
         rho.setVariable(symbol, elements.getElementAsSEXP(i));
         context.evaluate( statement, rho);
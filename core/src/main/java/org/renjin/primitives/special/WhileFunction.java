@@ -21,6 +21,7 @@
 
 package org.renjin.primitives.special;
 
+import org.renjin.compiler.loop.LoopProfile;
 import org.renjin.eval.Context;
 import org.renjin.sexp.Environment;
 import org.renjin.sexp.FunctionCall;
@@ -40,8 +41,19 @@ public class WhileFunction extends SpecialFunction {
     SEXP condition = args.getElementAsSEXP(0);
     SEXP statement = args.getElementAsSEXP(1);
 
-    while(asLogicalNoNA(context, call, context.evaluate( condition, rho))) {
+    LoopProfile profile = LoopProfile.of(call);
 
+    while(true) {
+      if(profile != null && profile.tick()) {
+        if(profile.run(context, rho, call, null, 0)) {
+          break;
+        }
+        // finish this run of the loop in the interpreter
+        profile = null;
+      }
+      if(!asLogicalNoNA(context, call, context.evaluate( condition, rho))) {
+        break;
+      }
       try {
 
         context.evaluate( statement, rho);
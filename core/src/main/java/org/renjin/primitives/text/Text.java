@@ -28,9 +28,10 @@ import org.renjin.eval.Context;
 import org.renjin.eval.EvalException;
 import org.renjin.invoke.annotations.*;
 import org.renjin.primitives.Deparse;
+import org.renjin.primitives.Warning;
 import org.renjin.primitives.text.regex.ExtendedRE;
 import org.renjin.primitives.text.regex.RE;
-import org.renjin.primitives.text.regex.REFactory;
+import org.renjin.primitives.text.regex.RECache;
 import org.renjin.sexp.*;
 
 import java.nio.charset.Charset;
@@ -260,25 +261,25 @@ public class Text {
    * @param pattern a regular expression pattern to look for
    * @param replacement the string with which to replace matches. Can contain backreferences
    * denoted by \1, \2, ...\n
-   * @param x The string in which to replace
+   * @param x The strings in which to replace
    * @param ignoreCase  true to ignore case
    * @param perl true to use perl-compatible regexps
    * @param fixed true to use normal string replacement
    * @param useBytes true to perform matching on byte-level rather than character-level.
    * Not supported
-   * @return  the string with replacements made
+   * @return  the strings with replacements made
    */
   @Internal
-  @DataParallel
-  public static String sub(String pattern, String replacement,
-                           @Recycle String x,
-                           boolean ignoreCase,
-                           boolean perl,
-                           boolean fixed,
-                           boolean useBytes) {
-    
-    RE re = REFactory.compile(pattern, ignoreCase, perl, fixed, useBytes);
-    return  re.subst(x, replacement, ExtendedRE.REPLACE_FIRSTONLY | ExtendedRE.REPLACE_BACKREFERENCES );
+  public static StringVector sub(@Current Context context,
+                                 StringVector pattern, StringVector replacement,
+                                 StringVector x,
+                                 boolean ignoreCase,
+                                 boolean perl,
+                                 boolean fixed,
+                                 boolean useBytes) {
+
+    return substitute(context, pattern, replacement, x, ignoreCase, perl, fixed, useBytes,
+        ExtendedRE.REPLACE_FIRSTONLY | ExtendedRE.REPLACE_BACKREFERENCES);
   }
 
 
@@ -287,50 +288,116 @@ public class Text {
    * @param pattern a regular expression pattern to look for
    * @param replacement the string with which to replace matches. Can contain backreferences
    * denoted by \1, \2, ...\n
-   * @param x The string in which to replace
+   * @param x The strings in which to replace
    * @param ignoreCase  true to ignore case
    * @param perl true to use perl-compatible regexps
    * @param fixed true to use normal string replacement
    * @param useBytes true to perform matching on byte-level rather than character-level.
    * Not supported
-   * @return  the string with replacements made
+   * @return  the strings with replacements made
    */
   @Internal
-  @DataParallel
-  public static String gsub(String pattern, String replacement,
-                            @Recycle String x,
-                            boolean ignoreCase,
-                            boolean perl,
-                            boolean fixed,
-                            boolean useBytes) {
+  public static StringVector gsub(@Current Context context,
+                                  StringVector pattern, StringVector replacement,
+                                  StringVector x,
+                                  boolean ignoreCase,
+                                  boolean perl,
+                                  boolean fixed,
+                                  boolean useBytes) {
 
-    RE re = REFactory.compile(pattern, ignoreCase, perl, fixed, useBytes);
-    return re.subst(x, replacement, ExtendedRE.REPLACE_ALL | ExtendedRE.REPLACE_BACKREFERENCES );
+    return substitute(context, pattern, replacement, x, ignoreCase, perl, fixed, useBytes,
+        ExtendedRE.REPLACE_ALL | ExtendedRE.REPLACE_BACKREFERENCES);
+  }
+
+  /**
+   * Compiles the pattern once and applies it to each element of {@code x}
+   */
+  private static StringVector substitute(Context context, StringVector patternVector, StringVector replacementVector,
+                                         StringVector x,
+                                         boolean ignoreCase, boolean perl, boolean fixed, boolean useBytes,
+                                         int flags) {
+    String pattern = firstElement(context, "pattern", patternVector);
+    String replacement = firstElement(context, "replacement", replacementVector);
+
+    if(x.length() == 0) {
+      return StringVector.EMPTY;
+    }
+
+    String[] result = new String[x.length()];
+
+    // An NA pattern or replacement yields NA for every element
+    if(pattern != null && replacement != null) {
+      RE re = context.getSingleton(RECache.class).compile(pattern, ignoreCase, perl, fixed, useBytes);
+      for(int i=0;i!=result.length;++i) {
+        String string = x.getElementAsString(i);
+        if(string != null) {
+          result[i] = re.subst(string, replacement, flags);
+        }
+      }
+    }
+    return new StringArrayVector(result, x.getAttributes().copyStructural());
+  }
+
+  private static String firstElement(Context context, String argumentName, StringVector vector) {
+    if(vector.length() == 0) {
+      throw new EvalException("invalid '%s' argument", argumentName);
+    }
+    if(vector.length() > 1) {
+      Warning.invokeWarning(context, "argument '%s' has length > 1 and only the first element will be used",
+          argumentName);
+    }
+    return vector.getElementAsString(0);
   }
 
   /**
    * Substitute the all patterns in a string
    * @param split a regular expression pattern to look for
-   * @param x The string in which to replace
+   * @param x The strings to split
    * @param perl true to use perl-compatible regexps
    * @param fixed true to use normal string replacement
    * @param useBytes true to perform matching on byte-level rather than character-level.
    * Not supported
-   * @return  a {@code StringVector} containing the splits
+   * @return  a list containing a {@code StringVector} of the splits of each element of {@code x}
    */
   @Internal
-  @DataParallel
-  public static StringVector strsplit(@Recycle String x, @Recycle String split,
-                                      boolean fixed,
-                                      boolean perl,
-                                      boolean useBytes) {
+  public static ListVector strsplit(@Current Context context,
+                                    AtomicVector x, StringVector split,
+                                    boolean fixed,
+                                    boolean perl,
+                                    boolean useBytes) {
+
+    if(x.length() == 0 || split.length() == 0) {
+      return ListVector.EMPTY;
+    }
+
+    // Compile each of the split patterns once, rather than once for each element of x
+    RECache cache = context.getSingleton(RECache.class);
+    RE[] splitters = new RE[split.length()];
+    for(int i=0;i!=splitters.length;++i) {
+      if(!split.isElementNA(i)) {
+        splitters[i] = cache.compile(split.getElementAsString(i), false, perl, fixed, useBytes);
+      }
+    }
 
-    RE re = REFactory.compile(split, false, perl, fixed, useBytes);
-    return new StringArrayVector( re.split(x) );
+    int length = Math.max(x.length(), split.length());
+    ListVector.Builder result = new ListVector.Builder(length);
+    for(int i=0;i!=length;++i) {
+      RE re = splitters[i % splitters.length];
+      if(re == null || x.isElementNA(i % x.length())) {
+        result.setNA(i);
+      } else {
+        result.set(i, new StringArrayVector(re.split(x.getElementAsString(i % x.length()))));
+      }
+    }
+    if(length == x.length()) {
+      result.combineStructuralAttributesFrom(x);
+    }
+    return result.build();
   }
 
   @Internal
   public static Vector grep(
+      @Current Context context,
       String pattern,
       StringVector x,
       boolean ignoreCase,
@@ -340,7 +407,7 @@ public class Text {
       boolean useBytes,
       boolean invert) {
 
-    RE re = REFactory.compile(pattern,ignoreCase, perl, fixed, useBytes);
+    RE re = context.getSingleton(RECache.class).compile(pattern, ignoreCase, perl, fixed, useBytes);
     if(value) {
       StringVector.Builder result = new StringVector.Builder();
       for(String string : x) {
@@ -375,6 +442,7 @@ public class Text {
    */
   @Internal
   public static Vector grepl(
+      @Current Context context,
       String pattern,
       StringVector x,
       boolean ignoreCase,
@@ -384,7 +452,7 @@ public class Text {
       boolean useBytes,
       boolean invert) {
 
-    RE re = REFactory.compile(pattern, ignoreCase,  perl, fixed, useBytes);
+    RE re = context.getSingleton(RECache.class).compile(pattern, ignoreCase, perl, fixed, useBytes);
     LogicalArrayVector.Builder result = new LogicalArrayVector.Builder();
     for(String string : x) {
       result.add( ! StringVector.isNA(string) && re.match(string ));
@@ -441,10 +509,10 @@ public class Text {
 
 
   @Internal
-  public static IntVector regexpr(String pattern, StringVector vector, boolean ignoreCase, boolean perl,
+  public static IntVector regexpr(@Current Context context, String pattern, StringVector vector, boolean ignoreCase, boolean perl,
       boolean fixed, boolean useBytes) {
     
-    RE re = REFactory.compile(pattern, ignoreCase,  perl, fixed, useBytes);
+    RE re = context.getSingleton(RECache.class).compile(pattern, ignoreCase, perl, fixed, useBytes);
     IntArrayVector.Builder position = IntArrayVector.Builder.withInitialCapacity(vector.length());
     IntArrayVector.Builder matchLength = IntArrayVector.Builder.withInitialCapacity(vector.length());
     
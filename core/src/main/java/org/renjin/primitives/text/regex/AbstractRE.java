@@ -0,0 +1,146 @@
+package org.renjin.primitives.text.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements splitting and substitution in terms of repeated matching, so that
+ * they behave identically for each of the regular expression engines.
+ */
+public abstract class AbstractRE implements RE {
+
+  /**
+   * Finds the first match at or after index {@code i} of {@code search}
+   *
+   * @return true if the string matched, in which case the position of the match
+   * is available from {@link #getGroupStart(int)} and {@link #getGroupEnd(int)}
+   */
+  public abstract boolean match(String search, int i);
+
+  /**
+   * @return the contents of a parenthesized subexpression after a successful match,
+   * or {@code null} if the subexpression did not participate in the match.
+   */
+  public abstract String getParen(int which);
+
+  @Override
+  public boolean match(String search) {
+    return match(search, 0);
+  }
+
+  @Override
+  public String[] split(String s) {
+    List<String> v = new ArrayList<String>();
+
+    // Start at position 0 and search the whole string
+    int pos = 0;
+    int len = s.length();
+
+    // Try a match at each position
+    while (pos < len && match(s, pos)) {
+      // Get start of match
+      int start = getGroupStart(0);
+
+      // Get end of match
+      int newpos = getGroupEnd(0);
+
+      // Check if no progress was made
+      if (newpos == pos) {
+        v.add(s.substring(pos, start + 1));
+        newpos++;
+      } else {
+        v.add(s.substring(pos, start));
+      }
+
+      // Move to new position
+      pos = newpos;
+    }
+
+    // Push remainder if it's not empty
+    String remainder = s.substring(pos);
+    if (remainder.length() != 0) {
+      v.add(remainder);
+    }
+
+    return v.toArray(new String[v.size()]);
+  }
+
+  @Override
+  public String subst(String substituteIn, String substitution) {
+    return subst(substituteIn, substitution, REPLACE_ALL);
+  }
+
+  @Override
+  public String subst(String substituteIn, String substitution, int flags) {
+    // String to return
+    StringBuilder ret = new StringBuilder();
+
+    // Start at position 0 and search the whole string
+    int pos = 0;
+    int len = substituteIn.length();
+
+    // Try a match at each position
+    while (pos < len && match(substituteIn, pos)) {
+      // Append string before match
+      ret.append(substituteIn, pos, getGroupStart(0));
+
+      if ((flags & REPLACE_BACKREFERENCES) != 0) {
+        // Process backreferences
+        int lCurrentPosition = 0;
+        int lLastPosition = -2;
+        int lLength = substitution.length();
+
+        // R: Changed back reference character from $0 to \0
+        while ((lCurrentPosition = substitution.indexOf("\\", lCurrentPosition)) >= 0) {
+          if ((lCurrentPosition == 0 || substitution.charAt(lCurrentPosition - 1) != '\\')
+              && lCurrentPosition + 1 < lLength) {
+            char c = substitution.charAt(lCurrentPosition + 1);
+            if (c >= '0' && c <= '9') {
+              // Append everything between the last and the current $ sign
+              ret.append(substitution.substring(lLastPosition + 2, lCurrentPosition));
+
+              // Append the parenthesized expression, if present
+              String val = getParen(c - '0');
+              if (val != null) {
+                ret.append(val);
+              }
+              lLastPosition = lCurrentPosition;
+            }
+          }
+
+          // Move forward, skipping past match
+          lCurrentPosition++;
+        }
+
+        // Append everything after the last $ sign
+        ret.append(substitution.substring(lLastPosition + 2, lLength));
+      } else {
+        // Append substitution without processing backreferences
+        ret.append(substitution);
+      }
+
+      // Move forward, skipping past match
+      int newpos = getGroupEnd(0);
+
+      // We always want to make progress!
+      if (newpos == pos) {
+        newpos++;
+      }
+
+      // Try new position
+      pos = newpos;
+
+      // Break out if we're only supposed to replace one occurrence
+      if ((flags & REPLACE_FIRSTONLY) != 0) {
+        break;
+      }
+    }
+
+    // If there's remaining input, append it
+    if (pos < len) {
+      ret.append(substituteIn.substring(pos));
+    }
+
+    return ret.toString();
+  }
+}
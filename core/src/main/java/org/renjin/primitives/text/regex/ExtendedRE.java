@@ -301,7 +301,7 @@ import java.util.Vector;
  * @author <a href="mailto:ts@sch-fer.de">Tobias Sch&auml;fer</a>
  * @version $Id$
  */
-public class ExtendedRE implements Serializable, RE {
+public class ExtendedRE extends AbstractRE implements Serializable {
     /**
      * Specifies normal, case-sensitive matching behaviour.
      */
@@ -1054,34 +1054,9 @@ public class ExtendedRE implements Serializable, RE {
                                 return -1;
                             }
 
-                            char c = search.charAt(idx);
-
-                            // Switch on escape
-                            switch (opdata)
+                            if (!isInEscapeClass(opdata, search.charAt(idx)))
                             {
-                                case E_ALNUM:
-                                case E_NALNUM:
-                                    if (!((Character.isLetterOrDigit(c) || c == '_') == (opdata == E_ALNUM)))
-                                    {
-                                        return -1;
-                                    }
-                                    break;
-
-                                case E_DIGIT:
-                                case E_NDIGIT:
-                                    if (!(Character.isDigit(c) == (opdata == E_DIGIT)))
-                                    {
-                                        return -1;
-                                    }
-                                    break;
-
-                                case E_SPACE:
-                                case E_NSPACE:
-                                    if (!(Character.isWhitespace(c) == (opdata == E_SPACE)))
-                                    {
-                                        return -1;
-                                    }
-                                    break;
+                                return -1;
                             }
                             idx++;
                             break;
@@ -1151,132 +1126,9 @@ public class ExtendedRE implements Serializable, RE {
                             return -1;
                         }
 
-                        switch (opdata)
+                        if (!isInPosixClass(opdata, search.charAt(idx)))
                         {
-                            case POSIX_CLASS_ALNUM:
-                                if (!Character.isLetterOrDigit(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_ALPHA:
-                                if (!Character.isLetter(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_DIGIT:
-                                if (!Character.isDigit(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_BLANK: // JWL - bugbug: is this right??
-                                if (!Character.isSpaceChar(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_SPACE:
-                                if (!Character.isWhitespace(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_CNTRL:
-                                if (Character.getType(search.charAt(idx)) != Character.CONTROL)
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_GRAPH: // JWL - bugbug???
-                                switch (Character.getType(search.charAt(idx)))
-                                {
-                                    case Character.MATH_SYMBOL:
-                                    case Character.CURRENCY_SYMBOL:
-                                    case Character.MODIFIER_SYMBOL:
-                                    case Character.OTHER_SYMBOL:
-                                        break;
-
-                                    default:
-                                        return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_LOWER:
-                                if (Character.getType(search.charAt(idx)) != Character.LOWERCASE_LETTER)
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_UPPER:
-                                if (Character.getType(search.charAt(idx)) != Character.UPPERCASE_LETTER)
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_PRINT:
-                                if (Character.getType(search.charAt(idx)) == Character.CONTROL)
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_PUNCT:
-                            {
-                                int type = Character.getType(search.charAt(idx));
-                                switch(type)
-                                {
-                                    case Character.DASH_PUNCTUATION:
-                                    case Character.START_PUNCTUATION:
-                                    case Character.END_PUNCTUATION:
-                                    case Character.CONNECTOR_PUNCTUATION:
-                                    case Character.OTHER_PUNCTUATION:
-                                        break;
-
-                                    default:
-                                        return -1;
-                                }
-                            }
-                            break;
-
-                            case POSIX_CLASS_XDIGIT: // JWL - bugbug??
-                            {
-                                boolean isXDigit = ((search.charAt(idx) >= '0' && search.charAt(idx) <= '9') ||
-                                                    (search.charAt(idx) >= 'a' && search.charAt(idx) <= 'f') ||
-                                                    (search.charAt(idx) >= 'A' && search.charAt(idx) <= 'F'));
-                                if (!isXDigit)
-                                {
-                                    return -1;
-                                }
-                            }
-                            break;
-
-                            case POSIX_CLASS_JSTART:
-                                if (!Character.isJavaIdentifierStart(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            case POSIX_CLASS_JPART:
-                                if (!Character.isJavaIdentifierPart(search.charAt(idx)))
-                                {
-                                    return -1;
-                                }
-                                break;
-
-                            default:
-                                internalError("Bad posix class");
-                                break;
+                            return -1;
                         }
 
                         // Matched.
@@ -1537,70 +1389,30 @@ public class ExtendedRE implements Serializable, RE {
     }
 
     /**
-     * Matches the current regular expression program against a String.
-     *
-     * @param search String to match against
-     * @return True if string matched
-     */
-    @Override
-    public boolean match(String search)
-    {
-        return match(search, 0);
-    }
-
-    /**
-     * Splits a string into an array of strings on regular expression boundaries.
-     * This function works the same way as the Perl function of the same name.
-     * Given a regular expression of "[ab]+" and a string to split of
-     * "xyzzyababbayyzabbbab123", the result would be the array of Strings
-     * "[xyzzy, yyz, 123]".
-     *
-     * <p>Please note that the first string in the resulting array may be an empty
-     * string. This happens when the very first character of input string is
-     * matched by the pattern.
+     * Returns an array of Strings, whose toString representation matches a regular
+     * expression. This method works like the Perl function of the same name.  Given
+     * a regular expression of "a*b" and an array of String objects of [foo, aab, zzz,
+     * aaaab], the array of Strings returned by grep would be [aab, aaaab].
      *
-     * @param s String to split on this regular exression
-     * @return Array of strings
+     * @param search Array of Objects to search
+     * @return Array of Strings whose toString() value matches this regular expression.
      */
-    @Override
-    public String[] split(String s)
+    public String[] grep(Object[] search)
     {
-        // Create new vector
+        // Create new vector to hold return items
         Vector v = new Vector();
 
-        // Start at position 0 and search the whole string
-        int pos = 0;
-        int len = s.length();
-
-        // Try a match at each position
-        while (pos < len && match(s, pos))
+        // Traverse array of objects
+        for (int i = 0; i < search.length; i++)
         {
-            // Get start of match
-            int start = getGroupStart(0);
-
-            // Get end of match
-            int newpos = getGroupEnd(0);
+            // Get next object as a string
+            String s = search[i].toString();
 
-            // Check if no progress was made
-            if (newpos == pos)
-            {
-                v.addElement(s.substring(pos, start + 1));
-                newpos++;
-            }
-            else
+            // If it matches this regexp, add it to the list
+            if (match(s))
             {
-                v.addElement(s.substring(pos, start));
+                v.addElement(s);
             }
-
-            // Move to new position
-            pos = newpos;
-        }
-
-        // Push remainder if it's not empty
-        String remainder = s.substring(pos);
-        if (remainder.length() != 0)
-        {
-            v.addElement(remainder);
         }
 
         // Return vector as an array of strings
@@ -1609,141 +1421,121 @@ public class ExtendedRE implements Serializable, RE {
         return ret;
     }
 
+    /**
+     * @return true if character at i-th position in the <code>search</code> string is a newline
+     */
+    private boolean isNewline(int i)
+    {
+        return isNewline(search.charAt(i));
+    }
 
-    @Override
-    public String subst(String substituteIn, String substitution)
+    static boolean isNewline(char c)
     {
-        return subst(substituteIn, substitution, REPLACE_ALL);
+        return c == '\n' || c == '\r' || c == '\u0085' ||
+               c == '\u2028' || c == '\u2029';
     }
 
-    @Override
-    public String subst(String substituteIn, String substitution, int flags)
+    /**
+     * @param escape one of the E_* escape codes for a class of characters, such as {@code E_DIGIT}
+     * @return true if {@code c} is a member of the class
+     */
+    static boolean isInEscapeClass(int escape, char c)
     {
-        // String to return
-        StringBuffer ret = new StringBuffer();
+        switch (escape)
+        {
+            case E_ALNUM:
+            case E_NALNUM:
+                return (Character.isLetterOrDigit(c) || c == '_') == (escape == E_ALNUM);
 
-        // Start at position 0 and search the whole string
-        int pos = 0;
-        int len = substituteIn.length();
+            case E_DIGIT:
+            case E_NDIGIT:
+                return Character.isDigit(c) == (escape == E_DIGIT);
 
-        // Try a match at each position
-        while (pos < len && match(substituteIn, pos))
-        {
-            // Append string before match
-            ret.append(substituteIn.substring(pos, getGroupStart(0)));
+            case E_SPACE:
+            case E_NSPACE:
+                return Character.isWhitespace(c) == (escape == E_SPACE);
 
-            if ((flags & REPLACE_BACKREFERENCES) != 0)
-            {
-                // Process backreferences
-                int lCurrentPosition = 0;
-                int lLastPosition = -2;
-                int lLength = substitution.length();
+            default:
+                throw new Error("RE internal error: Unrecognized escape '" + escape + "'");
+        }
+    }
 
-                // R: Changed back reference character from $0 to \0
-                while ((lCurrentPosition = substitution.indexOf("\\", lCurrentPosition)) >= 0)
-                {
-                    if ((lCurrentPosition == 0 || substitution.charAt(lCurrentPosition - 1) != '\\')
-                        && lCurrentPosition + 1 < lLength)
-                    {
-                        char c = substitution.charAt(lCurrentPosition + 1);
-                        if (c >= '0' && c <= '9')
-                        {
-                            // Append everything between the last and the current $ sign
-                            ret.append(substitution.substring(lLastPosition + 2, lCurrentPosition));
+    /**
+     * @param posixClass one of the POSIX_CLASS_* codes
+     * @return true if {@code c} is a member of the class
+     */
+    static boolean isInPosixClass(int posixClass, char c)
+    {
+        switch (posixClass)
+        {
+            case POSIX_CLASS_ALNUM:
+                return Character.isLetterOrDigit(c);
 
-                            // Append the parenthesized expression, if present
-                            String val = getParen(c - '0');
-                            if (val != null) {
-                                ret.append(val);
-                            }
-                            lLastPosition = lCurrentPosition;
-                        }
-                    }
+            case POSIX_CLASS_ALPHA:
+                return Character.isLetter(c);
 
-                    // Move forward, skipping past match
-                    lCurrentPosition++;
-                }
+            case POSIX_CLASS_DIGIT:
+                return Character.isDigit(c);
 
-                // Append everything after the last $ sign
-                ret.append(substitution.substring(lLastPosition + 2, lLength));
-            }
-            else
-            {
-                // Append substitution without processing backreferences
-                ret.append(substitution);
-            }
+            case POSIX_CLASS_BLANK: // JWL - bugbug: is this right??
+                return Character.isSpaceChar(c);
 
-            // Move forward, skipping past match
-            int newpos = getGroupEnd(0);
+            case POSIX_CLASS_SPACE:
+                return Character.isWhitespace(c);
 
-            // We always want to make progress!
-            if (newpos == pos)
-            {
-                newpos++;
-            }
+            case POSIX_CLASS_CNTRL:
+                return Character.getType(c) == Character.CONTROL;
+
+            case POSIX_CLASS_GRAPH: // JWL - bugbug???
+                switch (Character.getType(c))
+                {
+                    case Character.MATH_SYMBOL:
+                    case Character.CURRENCY_SYMBOL:
+                    case Character.MODIFIER_SYMBOL:
+                    case Character.OTHER_SYMBOL:
+                        return true;
 
-            // Try new position
-            pos = newpos;
+                    default:
+                        return false;
+                }
 
-            // Break out if we're only supposed to replace one occurrence
-            if ((flags & REPLACE_FIRSTONLY) != 0)
-            {
-                break;
-            }
-        }
+            case POSIX_CLASS_LOWER:
+                return Character.getType(c) == Character.LOWERCASE_LETTER;
 
-        // If there's remaining input, append it
-        if (pos < len)
-        {
-            ret.append(substituteIn.substring(pos));
-        }
+            case POSIX_CLASS_UPPER:
+                return Character.getType(c) == Character.UPPERCASE_LETTER;
 
-        // Return string buffer as string
-        return ret.toString();
-    }
+            case POSIX_CLASS_PRINT:
+                return Character.getType(c) != Character.CONTROL;
 
-    /**
-     * Returns an array of Strings, whose toString representation matches a regular
-     * expression. This method works like the Perl function of the same name.  Given
-     * a regular expression of "a*b" and an array of String objects of [foo, aab, zzz,
-     * aaaab], the array of Strings returned by grep would be [aab, aaaab].
-     *
-     * @param search Array of Objects to search
-     * @return Array of Strings whose toString() value matches this regular expression.
-     */
-    public String[] grep(Object[] search)
-    {
-        // Create new vector to hold return items
-        Vector v = new Vector();
+            case POSIX_CLASS_PUNCT:
+                switch (Character.getType(c))
+                {
+                    case Character.DASH_PUNCTUATION:
+                    case Character.START_PUNCTUATION:
+                    case Character.END_PUNCTUATION:
+                    case Character.CONNECTOR_PUNCTUATION:
+                    case Character.OTHER_PUNCTUATION:
+                        return true;
 
-        // Traverse array of objects
-        for (int i = 0; i < search.length; i++)
-        {
-            // Get next object as a string
-            String s = search[i].toString();
+                    default:
+                        return false;
+                }
 
-            // If it matches this regexp, add it to the list
-            if (match(s))
-            {
-                v.addElement(s);
-            }
-        }
+            case POSIX_CLASS_XDIGIT: // JWL - bugbug??
+                return (c >= '0' && c <= '9') ||
+                       (c >= 'a' && c <= 'f') ||
+                       (c >= 'A' && c <= 'F');
 
-        // Return vector as an array of strings
-        String[] ret = new String[v.size()];
-        v.copyInto(ret);
-        return ret;
-    }
+            case POSIX_CLASS_JSTART:
+                return Character.isJavaIdentifierStart(c);
 
-    /**
-     * @return true if character at i-th position in the <code>search</code> string is a newline
-     */
-    private boolean isNewline(int i)
-    {
-        char nextChar = search.charAt(i);
+            case POSIX_CLASS_JPART:
+                return Character.isJavaIdentifierPart(c);
 
-        return nextChar == '\n' || nextChar == '\r' || nextChar == '\u0085' ||
-               nextChar == '\u2028' || nextChar == '\u2029';
+            default:
+                throw new Error("RE internal error: Bad posix class");
+        }
     }
 
     /**
@@ -1755,7 +1547,7 @@ public class ExtendedRE implements Serializable, RE {
      * @return negative, 0, or positive integer as the first character
      *         less than, equal to, or greater then the second.
      */
-    private int compareChars(char c1, char c2, boolean caseIndependent)
+    static int compareChars(char c1, char c2, boolean caseIndependent)
     {
         if (caseIndependent)
         {
@@ -0,0 +1,756 @@
+package org.renjin.primitives.text.regex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A regular expression program which is matched in time linear in the length of the input,
+ * by simulating the NFA rather than backtracking.
+ *
+ * <p>Programs are translated from the {@link REProgram}s produced by {@link RECompiler}, so the syntax
+ * and the semantics of matches are the same as for {@link ExtendedRE}: of all the matches starting at the
+ * leftmost position, the one found first by the backtracking matcher is chosen. This is done by running
+ * the threads of the NFA in priority order (Pike's VM), which costs O(n * m) for an input of length n and
+ * a program of size m.</p>
+ *
+ * <p>When only the existence of a match is needed, the NFA is run instead as a DFA whose states are
+ * built lazily and cached, which costs O(n) once the states visited have been built.</p>
+ *
+ * <p>Patterns with backreferences cannot be matched by an automaton; {@link #compile(REProgram, int)}
+ * returns {@code null} for these so that they can be matched by {@link ExtendedRE}.</p>
+ *
+ * <p>Programs are immutable, apart from the cache of DFA states, and can be shared between threads.</p>
+ */
+public class LinearProgram {
+
+  /**
+   * The maximum number of DFA states to keep. Once exceeded, the states are discarded and
+   * built again as needed.
+   */
+  static final int MAX_DFA_STATES = 2000;
+
+  // Instructions
+  private static final byte MATCH = 0;
+  private static final byte CHAR = 1;
+  private static final byte ANYOF = 2;
+  private static final byte ANY = 3;
+  private static final byte ESCAPE = 4;
+  private static final byte POSIX = 5;
+  private static final byte SPLIT = 6;
+  private static final byte JMP = 7;
+  private static final byte SAVE = 8;
+  private static final byte BOL = 9;
+  private static final byte EOL = 10;
+  private static final byte BOUND = 11;
+  private static final byte NBOUND = 12;
+
+  private final byte[] op;
+  private final int[] arg;
+  private final int[] next;
+
+  /**
+   * The lower priority target of SPLIT instructions
+   */
+  private final int[] alt;
+
+  /**
+   * The instructions of the source program, from which character class ranges are read
+   */
+  private final char[] instruction;
+
+  private final boolean caseIndependent;
+  private final boolean singleLine;
+
+  /**
+   * True if the pattern can only match at the beginning of the input
+   */
+  private final boolean anchored;
+  private final boolean hasWordBoundaries;
+  private final int groupCount;
+
+  // Lazily built DFA
+  private final Map<StateKey, DState> dfaStates = new HashMap<StateKey, DState>();
+  private DState dfaStart;
+  private DState dfaStartAtBeginning;
+  private int dfaFlushCount;
+
+  private LinearProgram(int size, REProgram program, int matchFlags, boolean hasWordBoundaries, int groupCount) {
+    this.op = new byte[size];
+    this.arg = new int[size];
+    this.next = new int[size];
+    this.alt = new int[size];
+    this.instruction = program.instruction;
+    this.caseIndependent = (matchFlags & ExtendedRE.MATCH_CASEINDEPENDENT) != 0;
+    this.singleLine = (matchFlags & ExtendedRE.MATCH_SINGLELINE) != 0;
+    this.anchored = (program.flags & REProgram.OPT_HASBOL) != 0;
+    this.hasWordBoundaries = hasWordBoundaries;
+    this.groupCount = groupCount;
+  }
+
+  /**
+   * Translates a program compiled by {@link RECompiler} to a program which can be matched in linear time.
+   *
+   * @param program the compiled program
+   * @param matchFlags the {@code ExtendedRE.MATCH_*} flags
+   * @return the translated program, or {@code null} if the program contains backreferences or
+   * requires {@code MATCH_MULTILINE}, which are only supported by {@link ExtendedRE}
+   */
+  public static LinearProgram compile(REProgram program, int matchFlags) {
+    if ((program.flags & REProgram.OPT_HASBACKREFS) != 0 ||
+        (matchFlags & ExtendedRE.MATCH_MULTILINE) != 0) {
+      return null;
+    }
+
+    char[] instruction = program.instruction;
+    int length = program.lenInstruction;
+
+    // First assign each node of the source program to the start of a range of instructions
+    int[] nodePc = new int[length];
+    int size = 0;
+    int groupCount = 1;
+    boolean hasWordBoundaries = false;
+    for (int node = 0; node < length; node += ExtendedRE.nodeSize) {
+      char opcode = instruction[node];
+      char opdata = instruction[node + ExtendedRE.offsetOpdata];
+      nodePc[node] = size;
+      switch (opcode) {
+        case ExtendedRE.OP_ATOM:
+          size += Math.max(1, (int) opdata);
+          node += opdata;
+          break;
+
+        case ExtendedRE.OP_ANYOF:
+          size++;
+          node += opdata * 2;
+          break;
+
+        case ExtendedRE.OP_BRANCH:
+          size += branchTargets(instruction, node).length;
+          break;
+
+        case ExtendedRE.OP_OPEN:
+          groupCount = Math.max(groupCount, opdata + 1);
+          size++;
+          break;
+
+        case ExtendedRE.OP_ESCAPE:
+          if (opdata == ExtendedRE.E_BOUND || opdata == ExtendedRE.E_NBOUND) {
+            hasWordBoundaries = true;
+          }
+          size++;
+          break;
+
+        case ExtendedRE.OP_BACKREF:
+          return null;
+
+        default:
+          size++;
+          break;
+      }
+    }
+
+    LinearProgram linear = new LinearProgram(size, program, matchFlags, hasWordBoundaries, groupCount);
+    for (int node = 0; node < length; node += ExtendedRE.nodeSize) {
+      linear.translate(node, nodePc);
+      char opcode = instruction[node];
+      if (opcode == ExtendedRE.OP_ATOM) {
+        node += instruction[node + ExtendedRE.offsetOpdata];
+      } else if (opcode == ExtendedRE.OP_ANYOF) {
+        node += instruction[node + ExtendedRE.offsetOpdata] * 2;
+      }
+    }
+    return linear;
+  }
+
+  /**
+   * @return the nodes at which each alternative of the branch starting at {@code node} begins,
+   * in order of priority
+   */
+  private static int[] branchTargets(char[] instruction, int node) {
+    int[] targets = new int[4];
+    int count = 0;
+    int nextBranch;
+    do {
+      if (count == targets.length) {
+        targets = Arrays.copyOf(targets, count * 2);
+      }
+      targets[count++] = node + ExtendedRE.nodeSize;
+      nextBranch = (short) instruction[node + ExtendedRE.offsetNext];
+      node += nextBranch;
+    } while (nextBranch != 0 && instruction[node] == ExtendedRE.OP_BRANCH);
+
+    return Arrays.copyOf(targets, count);
+  }
+
+  /**
+   * Emits the instructions for a node, following the control flow of {@link ExtendedRE#matchNodes(int, int, int)}
+   */
+  private void translate(int node, int[] nodePc) {
+    int pc = nodePc[node];
+    char opcode = instruction[node];
+    char opdata = instruction[node + ExtendedRE.offsetOpdata];
+    int nextNode = node + (short) instruction[node + ExtendedRE.offsetNext];
+    int following = node + ExtendedRE.nodeSize;
+
+    switch (opcode) {
+      case ExtendedRE.OP_END:
+        emit(pc, MATCH, 0, -1, -1);
+        break;
+
+      case ExtendedRE.OP_ATOM:
+        if (opdata == 0) {
+          emit(pc, JMP, 0, nodePc[nextNode], -1);
+        }
+        for (int i = 0; i < opdata; i++) {
+          char c = instruction[following + i];
+          if (caseIndependent) {
+            c = Character.toLowerCase(c);
+          }
+          emit(pc + i, CHAR, c, i + 1 < opdata ? pc + i + 1 : nodePc[nextNode], -1);
+        }
+        break;
+
+      case ExtendedRE.OP_ANYOF:
+        emit(pc, ANYOF, node, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_ANY:
+        emit(pc, ANY, 0, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_POSIXCLASS:
+        emit(pc, POSIX, opdata, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_ESCAPE:
+        if (opdata == ExtendedRE.E_BOUND) {
+          emit(pc, BOUND, 0, nodePc[nextNode], -1);
+        } else if (opdata == ExtendedRE.E_NBOUND) {
+          emit(pc, NBOUND, 0, nodePc[nextNode], -1);
+        } else {
+          emit(pc, ESCAPE, opdata, nodePc[nextNode], -1);
+        }
+        break;
+
+      case ExtendedRE.OP_BOL:
+        emit(pc, BOL, 0, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_EOL:
+        emit(pc, EOL, 0, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_BRANCH: {
+        int[] targets = branchTargets(instruction, node);
+        for (int i = 0; i + 1 < targets.length; i++) {
+          emit(pc + i, SPLIT, 0, nodePc[targets[i]], pc + i + 1);
+        }
+        emit(pc + targets.length - 1, JMP, 0, nodePc[targets[targets.length - 1]], -1);
+        break;
+      }
+
+      case ExtendedRE.OP_STAR:
+      case ExtendedRE.OP_MAYBE:
+        emit(pc, SPLIT, 0, nodePc[following], nodePc[nextNode]);
+        break;
+
+      case ExtendedRE.OP_RELUCTANTSTAR:
+      case ExtendedRE.OP_RELUCTANTMAYBE:
+        emit(pc, SPLIT, 0, nodePc[nextNode], nodePc[following]);
+        break;
+
+      case ExtendedRE.OP_PLUS:
+        // The rest of the expression follows the OP_CONTINUE node at 'nextNode'
+        emit(pc, SPLIT, 0, nodePc[nextNode], nodePc[continuation(nextNode)]);
+        break;
+
+      case ExtendedRE.OP_RELUCTANTPLUS:
+        emit(pc, SPLIT, 0, nodePc[continuation(nextNode)], nodePc[nextNode]);
+        break;
+
+      case ExtendedRE.OP_OPEN:
+        emit(pc, SAVE, opdata * 2, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_CLOSE:
+        emit(pc, SAVE, opdata * 2 + 1, nodePc[nextNode], -1);
+        break;
+
+      case ExtendedRE.OP_CONTINUE:
+        emit(pc, JMP, 0, nodePc[following], -1);
+        break;
+
+      case ExtendedRE.OP_OPEN_CLUSTER:
+      case ExtendedRE.OP_CLOSE_CLUSTER:
+      case ExtendedRE.OP_NOTHING:
+      case ExtendedRE.OP_GOTO:
+        emit(pc, JMP, 0, nodePc[nextNode], -1);
+        break;
+
+      default:
+        throw new Error("RE internal error: Invalid opcode '" + opcode + "'");
+    }
+  }
+
+  private int continuation(int node) {
+    return node + (short) instruction[node + ExtendedRE.offsetNext];
+  }
+
+  private void emit(int pc, byte opcode, int argument, int nextPc, int altPc) {
+    op[pc] = opcode;
+    arg[pc] = argument;
+    next[pc] = nextPc;
+    alt[pc] = altPc;
+  }
+
+  /**
+   * @return the number of groups in the pattern, including the whole match as group 0
+   */
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+  /**
+   * @return true if the existence of a match can be determined by {@link #matches(String, int)}
+   * without computing the position of the match.
+   */
+  public boolean canTestWithDfa() {
+    return !hasWordBoundaries;
+  }
+
+  /**
+   * @return the number of times the cache of DFA states has been discarded because it was full
+   */
+  public int getDfaFlushCount() {
+    return dfaFlushCount;
+  }
+
+  private boolean consumes(int pc, char c) {
+    switch (op[pc]) {
+      case CHAR:
+        return (caseIndependent ? Character.toLowerCase(c) : c) == arg[pc];
+
+      case ANY:
+        return singleLine || !ExtendedRE.isNewline(c);
+
+      case ESCAPE:
+        return ExtendedRE.isInEscapeClass(arg[pc], c);
+
+      case POSIX:
+        return ExtendedRE.isInPosixClass(arg[pc], c);
+
+      case ANYOF: {
+        int node = arg[pc];
+        int idxRange = node + ExtendedRE.nodeSize;
+        int idxEnd = idxRange + instruction[node + ExtendedRE.offsetOpdata] * 2;
+        for (int i = idxRange; i < idxEnd; i += 2) {
+          if (ExtendedRE.compareChars(c, instruction[i], caseIndependent) >= 0 &&
+              ExtendedRE.compareChars(c, instruction[i + 1], caseIndependent) <= 0) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isWordBoundary(String search, int pos) {
+    char last = pos == 0 ? '\n' : search.charAt(pos - 1);
+    char next = pos >= search.length() ? '\n' : search.charAt(pos);
+    return Character.isLetterOrDigit(last) != Character.isLetterOrDigit(next);
+  }
+
+  /**
+   * Finds the leftmost match starting at or after {@code start}.
+   *
+   * @return an array holding the start and end of each group, or {@code -1} if the group did not
+   * participate in the match, or {@code null} if there is no match.
+   */
+  public int[] execute(String search, int start) {
+    int length = search.length();
+    if (start > length || (anchored && start != 0)) {
+      return null;
+    }
+
+    Threads current = new Threads(op.length);
+    Threads pending = new Threads(op.length);
+    int[] stackPc = new int[op.length + 1];
+    int[][] stackGroups = new int[op.length + 1][];
+    int[] matched = null;
+
+    for (int pos = start; ; pos++) {
+
+      // Threads started at earlier positions take priority over one started here
+      if (matched == null && (!anchored || pos == 0)) {
+        int[] groups = new int[groupCount * 2];
+        Arrays.fill(groups, -1);
+        groups[0] = pos;
+        addThread(current, 0, groups, search, pos, stackPc, stackGroups);
+      }
+      if (current.size == 0) {
+        if (matched != null || anchored || pos >= length) {
+          break;
+        }
+        current.clear();
+        continue;
+      }
+
+      pending.clear();
+      for (int i = 0; i < current.size; i++) {
+        int pc = current.pc[i];
+        if (op[pc] == MATCH) {
+          // Threads of lower priority than this one can be abandoned
+          matched = current.groups[i].clone();
+          matched[1] = pos;
+          break;
+        }
+        if (pos < length && consumes(pc, search.charAt(pos))) {
+          addThread(pending, next[pc], current.groups[i], search, pos + 1, stackPc, stackGroups);
+        }
+      }
+      Threads swap = current;
+      current = pending;
+      pending = swap;
+
+      if (pos >= length) {
+        break;
+      }
+    }
+    return matched;
+  }
+
+  /**
+   * Adds the thread at {@code pc}, and the threads which follow it through assertions and
+   * instructions which consume no input, to {@code threads} in order of priority.
+   */
+  private void addThread(Threads threads, int startPc, int[] startGroups, String search, int pos,
+                         int[] stackPc, int[][] stackGroups) {
+    int top = 0;
+    stackPc[top] = startPc;
+    stackGroups[top] = startGroups;
+    top++;
+
+    while (top > 0) {
+      top--;
+      int pc = stackPc[top];
+      int[] groups = stackGroups[top];
+      stackGroups[top] = null;
+
+      while (threads.add(pc)) {
+        switch (op[pc]) {
+          case JMP:
+            pc = next[pc];
+            continue;
+
+          case SPLIT:
+            stackPc[top] = alt[pc];
+            stackGroups[top] = groups;
+            top++;
+            pc = next[pc];
+            continue;
+
+          case SAVE:
+            groups = groups.clone();
+            groups[arg[pc]] = pos;
+            pc = next[pc];
+            continue;
+
+          case BOL:
+            if (pos == 0) {
+              pc = next[pc];
+              continue;
+            }
+            break;
+
+          case EOL:
+            if (pos == search.length()) {
+              pc = next[pc];
+              continue;
+            }
+            break;
+
+          case BOUND:
+          case NBOUND:
+            if (isWordBoundary(search, pos) == (op[pc] == BOUND)) {
+              pc = next[pc];
+              continue;
+            }
+            break;
+
+          default:
+            threads.addThread(pc, groups);
+            break;
+        }
+        break;
+      }
+    }
+  }
+
+  /**
+   * Determines whether there is a match starting at or after {@code start}, using the lazily built DFA.
+   * Only programs for which {@link #canTestWithDfa()} is true can be tested in this way.
+   */
+  public synchronized boolean matches(String search, int start) {
+    int length = search.length();
+    if (start > length || (anchored && start != 0)) {
+      return false;
+    }
+    DState state = startState(start == 0);
+    if (state.match) {
+      return true;
+    }
+    for (int pos = start; pos < length; pos++) {
+      state = state.transition(this, search.charAt(pos));
+      if (state.match) {
+        return true;
+      }
+      if (state.pcs.length == 0 && anchored) {
+        return false;
+      }
+    }
+    return state.matchesAtEnd(this, length == 0);
+  }
+
+  private void flushDfa() {
+    dfaStates.clear();
+    dfaStart = null;
+    dfaStartAtBeginning = null;
+    dfaFlushCount++;
+  }
+
+  private DState startState(boolean atBeginning) {
+    if (atBeginning) {
+      if (dfaStartAtBeginning == null) {
+        dfaStartAtBeginning = state(closure(new int[] { 0 }, 1, true, false));
+      }
+      return dfaStartAtBeginning;
+    } else {
+      if (dfaStart == null) {
+        dfaStart = state(closure(new int[] { 0 }, 1, false, false));
+      }
+      return dfaStart;
+    }
+  }
+
+  private DState state(int[] pcs) {
+    StateKey key = new StateKey(pcs);
+    DState state = dfaStates.get(key);
+    if (state == null) {
+      if (dfaStates.size() >= MAX_DFA_STATES) {
+        // States already reachable from the current state remain usable until the end of the match
+        flushDfa();
+      }
+      boolean match = false;
+      for (int pc : pcs) {
+        if (op[pc] == MATCH) {
+          match = true;
+          break;
+        }
+      }
+      state = new DState(pcs, match);
+      dfaStates.put(key, state);
+    }
+    return state;
+  }
+
+  /**
+   * Computes the set of instructions which are reachable from {@code pcs} without consuming input.
+   * Instructions which consume input, {@code MATCH}, and {@code EOL} assertions which do not
+   * (yet) hold are included in the result.
+   */
+  private int[] closure(int[] pcs, int count, boolean atBeginning, boolean atEnd) {
+    boolean[] visited = new boolean[op.length];
+    int[] stack = new int[op.length * 2 + count];
+    int[] result = new int[op.length];
+    int resultSize = 0;
+
+    for (int i = 0; i < count; i++) {
+      int top = 0;
+      stack[top++] = pcs[i];
+      while (top > 0) {
+        int pc = stack[--top];
+        if (visited[pc]) {
+          continue;
+        }
+        visited[pc] = true;
+        switch (op[pc]) {
+          case JMP:
+          case SAVE:
+            stack[top++] = next[pc];
+            break;
+
+          case SPLIT:
+            stack[top++] = alt[pc];
+            stack[top++] = next[pc];
+            break;
+
+          case BOL:
+            if (atBeginning) {
+              stack[top++] = next[pc];
+            }
+            break;
+
+          case EOL:
+            if (atEnd) {
+              stack[top++] = next[pc];
+            } else {
+              result[resultSize++] = pc;
+            }
+            break;
+
+          default:
+            result[resultSize++] = pc;
+            break;
+        }
+      }
+    }
+    int[] sorted = Arrays.copyOf(result, resultSize);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * A set of NFA threads, in order of priority, each with the positions of the groups
+   * matched so far.
+   */
+  private static class Threads {
+    private final int[] sparse;
+    private final int[] dense;
+    private final int[] pc;
+    private final int[][] groups;
+    private int visited;
+    private int size;
+
+    Threads(int programSize) {
+      sparse = new int[programSize];
+      dense = new int[programSize];
+      pc = new int[programSize];
+      groups = new int[programSize][];
+    }
+
+    /**
+     * Marks {@code pc} as visited at this position
+     *
+     * @return false if it was already visited
+     */
+    boolean add(int pc) {
+      int i = sparse[pc];
+      if (i < visited && dense[i] == pc) {
+        return false;
+      }
+      sparse[pc] = visited;
+      dense[visited++] = pc;
+      return true;
+    }
+
+    void addThread(int pc, int[] groups) {
+      this.pc[size] = pc;
+      this.groups[size] = groups;
+      size++;
+    }
+
+    void clear() {
+      Arrays.fill(groups, 0, size, null);
+      visited = 0;
+      size = 0;
+    }
+  }
+
+  private static class StateKey {
+    private final int[] pcs;
+    private final int hashCode;
+
+    StateKey(int[] pcs) {
+      this.pcs = pcs;
+      this.hashCode = Arrays.hashCode(pcs);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof StateKey && Arrays.equals(pcs, ((StateKey) obj).pcs);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * A state of the DFA, corresponding to a set of NFA instructions
+   */
+  private static class DState {
+    private final int[] pcs;
+    private final boolean match;
+    private final DState[] ascii = new DState[128];
+    private Map<Character, DState> other;
+
+    DState(int[] pcs, boolean match) {
+      this.pcs = pcs;
+      this.match = match;
+    }
+
+    DState transition(LinearProgram program, char c) {
+      DState target;
+      if (c < 128) {
+        target = ascii[c];
+      } else {
+        target = other == null ? null : other.get(c);
+      }
+      if (target == null) {
+        target = program.computeTransition(this, c);
+        if (c < 128) {
+          ascii[c] = target;
+        } else {
+          if (other == null) {
+            other = new HashMap<Character, DState>();
+          }
+          other.put(c, target);
+        }
+      }
+      return target;
+    }
+
+    /**
+     * @return true if a match is reached by following the EOL assertions in this state
+     * at the end of the input
+     */
+    boolean matchesAtEnd(LinearProgram program, boolean atBeginning) {
+      int[] eols = new int[pcs.length];
+      int count = 0;
+      for (int pc : pcs) {
+        if (program.op[pc] == EOL) {
+          eols[count++] = program.next[pc];
+        }
+      }
+      if (count == 0) {
+        return false;
+      }
+      for (int pc : program.closure(eols, count, atBeginning, true)) {
+        if (program.op[pc] == MATCH) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private DState computeTransition(DState state, char c) {
+    int[] targets = new int[op.length + 1];
+    int count = 0;
+    for (int pc : state.pcs) {
+      if (op[pc] != EOL && op[pc] != MATCH && consumes(pc, c)) {
+        targets[count++] = next[pc];
+      }
+    }
+    if (!anchored) {
+      // A new thread can start at each position
+      targets[count++] = 0;
+    }
+    return state(closure(targets, count, false, false));
+  }
+}
@@ -0,0 +1,92 @@
+package org.renjin.primitives.text.regex;
+
+/**
+ * Matches a {@link LinearProgram} in time linear in the length of the input.
+ *
+ * <p>Where possible, {@link #match(String, int)} only determines whether there is a match, using the
+ * program's DFA, and the positions of the groups are computed when they are first requested.</p>
+ */
+public class LinearRE extends AbstractRE {
+
+  private final LinearProgram program;
+
+  private String search;
+  private int start;
+  private boolean matched;
+
+  /**
+   * The start and end of each group in the last match, or {@code null}
+   * if they have not been computed yet.
+   */
+  private int[] groups;
+
+  public LinearRE(LinearProgram program) {
+    this.program = program;
+  }
+
+  public LinearProgram getProgram() {
+    return program;
+  }
+
+  @Override
+  public boolean match(String search, int i) {
+    this.search = search;
+    this.start = i;
+    if (program.canTestWithDfa()) {
+      this.groups = null;
+      this.matched = program.matches(search, i);
+    } else {
+      this.groups = program.execute(search, i);
+      this.matched = groups != null;
+    }
+    return matched;
+  }
+
+  private int[] groups() {
+    if (matched && groups == null) {
+      groups = program.execute(search, start);
+    }
+    return groups;
+  }
+
+  /**
+   * @return the number of groups in the last match, including the whole match as group 0,
+   * and up to the last group which participated in the match.
+   */
+  public int getParenCount() {
+    int[] groups = groups();
+    if (groups == null) {
+      return 0;
+    }
+    int count = groups.length / 2;
+    while (count > 1 && groups[(count - 1) * 2] == -1) {
+      count--;
+    }
+    return count;
+  }
+
+  @Override
+  public int getGroupStart(int groupIndex) {
+    if (groupIndex < getParenCount()) {
+      return groups[groupIndex * 2];
+    }
+    return -1;
+  }
+
+  @Override
+  public int getGroupEnd(int groupIndex) {
+    if (groupIndex < getParenCount()) {
+      return groups[groupIndex * 2 + 1];
+    }
+    return -1;
+  }
+
+  @Override
+  public String getParen(int which) {
+    int start = getGroupStart(which);
+    if (start >= 0) {
+      return search.substring(start, getGroupEnd(which));
+    }
+    return null;
+  }
+}
@@ -0,0 +1,118 @@
+package org.renjin.primitives.text.regex;
+
+import org.renjin.invoke.annotations.SessionScoped;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Session-scoped cache of compiled regular expressions, so that calls such as
+ * {@code gsub()} within a loop, or over many elements, do not compile the same
+ * pattern again and again.
+ *
+ * <p>Compiled {@link REProgram}s and {@link LinearProgram}s can be shared, but the {@link RE}
+ * matchers which hold the state of the last match cannot, so each call to
+ * {@link #compile(String, boolean, boolean, boolean, boolean)} returns a new
+ * matcher for the cached program. Sharing the {@code LinearProgram} also shares
+ * the DFA states built while matching.</p>
+ */
+@SessionScoped
+public class RECache {
+
+  public static final int MAX_ENTRIES = 256;
+
+  private final Map<Key, CompiledPattern> programs = new LinkedHashMap<Key, CompiledPattern>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, CompiledPattern> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private long hits;
+  private long misses;
+
+  /**
+   * Returns a matcher for the pattern, compiling it only if it has not been
+   * compiled recently. The arguments are the same as for
+   * {@link REFactory#compile(String, boolean, boolean, boolean, boolean)}.
+   */
+  public RE compile(String pattern, boolean ignoreCase, boolean perl, boolean fixed, boolean useBytes) {
+
+    // Fixed patterns are matched with String.indexOf() and need no compilation
+    if(fixed) {
+      return REFactory.compile(pattern, ignoreCase, perl, fixed, useBytes);
+    }
+
+    int matchFlags = ignoreCase ? ExtendedRE.MATCH_CASEINDEPENDENT : ExtendedRE.MATCH_NORMAL;
+    Key key = new Key(pattern, ignoreCase, perl, useBytes);
+    CompiledPattern entry = programs.get(key);
+    if(entry == null) {
+      misses++;
+      REProgram program = REFactory.compileProgram(pattern, perl, fixed);
+      entry = new CompiledPattern(program, REFactory.compileLinear(program, matchFlags));
+      programs.put(key, entry);
+    } else {
+      hits++;
+    }
+    return REFactory.newMatcher(entry.program, entry.linearProgram, matchFlags);
+  }
+
+  public long getHitCount() {
+    return hits;
+  }
+
+  public long getMissCount() {
+    return misses;
+  }
+
+  public int size() {
+    return programs.size();
+  }
+
+  public void clear() {
+    programs.clear();
+  }
+
+  private static class CompiledPattern {
+    private final REProgram program;
+    private final LinearProgram linearProgram;
+
+    private CompiledPattern(REProgram program, LinearProgram linearProgram) {
+      this.program = program;
+      this.linearProgram = linearProgram;
+    }
+  }
+
+  private static class Key {
+    private final String pattern;
+    private final boolean ignoreCase;
+    private final boolean perl;
+    private final boolean useBytes;
+
+    private Key(String pattern, boolean ignoreCase, boolean perl, boolean useBytes) {
+      this.pattern = pattern;
+      this.ignoreCase = ignoreCase;
+      this.perl = perl;
+      this.useBytes = useBytes;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return pattern.equals(other.pattern) && ignoreCase == other.ignoreCase &&
+          perl == other.perl && useBytes == other.useBytes;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = pattern.hashCode();
+      hash = 31 * hash + (ignoreCase ? 1 : 0);
+      hash = 31 * hash + (perl ? 1 : 0);
+      hash = 31 * hash + (useBytes ? 1 : 0);
+      return hash;
+    }
+  }
+}
@@ -29,6 +29,13 @@ import org.renjin.eval.EvalException;
  */
 public class REFactory {
 
+  /**
+   * True if patterns without backreferences should be matched by {@link LinearRE}, which
+   * can be disabled by setting the system property {@code renjin.regex.engine} to {@code backtracking}
+   */
+  static final boolean LINEAR_ENGINE_ENABLED =
+      !"backtracking".equals(System.getProperty("renjin.regex.engine"));
+
   /**
    * Compiles the pattern based on the supplied arguments.
    *
@@ -51,16 +58,59 @@ public class REFactory {
           return new FixedRE(pattern);
         }
       } else {
-        return new ExtendedRE(pattern, ignoreCase);
+        int matchFlags = ignoreCase ? ExtendedRE.MATCH_CASEINDEPENDENT : ExtendedRE.MATCH_NORMAL;
+        REProgram program = new RECompiler().compile(pattern);
+        return newMatcher(program, compileLinear(program, matchFlags), matchFlags);
       }
     } catch (RESyntaxException e) {
-      throw new EvalException("Invalid pattern '%s': %s (perl=%s, fixed=%s)",
-          pattern,
-          e.getMessage(),
-          perl ? "TRUE" : "FALSE",
-          fixed ? "TRUE" : "FALSE");
+      throw invalidPattern(pattern, perl, fixed, e);
+    }
+  }
+
+  /**
+   * Compiles a (non-fixed) pattern to a program which can be shared between
+   * {@link ExtendedRE} matchers.
+   */
+  public static REProgram compileProgram(String pattern, boolean perl, boolean fixed) {
+    try {
+      return new RECompiler().compile(pattern);
+    } catch (RESyntaxException e) {
+      throw invalidPattern(pattern, perl, fixed, e);
     }
   }
+
+  /**
+   * Translates a program for the linear-time engine.
+   *
+   * @return the translated program, or {@code null} if the program can only be matched by
+   * {@link ExtendedRE}, or if the linear-time engine is disabled.
+   */
+  public static LinearProgram compileLinear(REProgram program, int matchFlags) {
+    if (!LINEAR_ENGINE_ENABLED) {
+      return null;
+    }
+    return LinearProgram.compile(program, matchFlags);
+  }
+
+  /**
+   * Creates a new matcher for a compiled program, using the linear-time engine if
+   * the program could be translated for it.
+   */
+  public static RE newMatcher(REProgram program, LinearProgram linearProgram, int matchFlags) {
+    if (linearProgram != null) {
+      return new LinearRE(linearProgram);
+    } else {
+      return new ExtendedRE(program, matchFlags);
+    }
+  }
+
+  private static EvalException invalidPattern(String pattern, boolean perl, boolean fixed, RESyntaxException e) {
+    return new EvalException("Invalid pattern '%s': %s (perl=%s, fixed=%s)",
+        pattern,
+        e.getMessage(),
+        perl ? "TRUE" : "FALSE",
+        fixed ? "TRUE" : "FALSE");
+  }
   
   public static Predicate<String> asPredicate(final RE re) {
     return new Predicate<String>() {
@@ -0,0 +1,50 @@
+package org.renjin.primitives.vector;
+
+import org.renjin.sexp.*;
+
+/**
+ * A view of the elements of {@code source} at a range of positions in an index array,
+ * such as a group of {@code split()}. The groups share a single index array, so creating
+ * a group copies no elements.
+ */
+public class IndexedIntVector extends IntVector {
+
+  private final IntVector source;
+  private final int[] indices;
+  private final int offset;
+  private final int length;
+
+  /**
+   * @param source the vector whose elements are selected
+   * @param indices the zero-based indices of the selected elements in {@code source}
+   * @param offset the position in {@code indices} of the index of the first element
+   * @param length the number of elements
+   */
+  public IndexedIntVector(IntVector source, int[] indices, int offset, int length, AttributeMap attributes) {
+    super(attributes);
+    this.source = source;
+    this.indices = indices;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public int getElementAsInt(int index) {
+    return source.getElementAsInt(indices[offset + index]);
+  }
+
+  @Override
+  public boolean isConstantAccessTime() {
+    return source.isConstantAccessTime();
+  }
+
+  @Override
+  protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    return new IndexedIntVector(source, indices, offset, length, attributes);
+  }
+}
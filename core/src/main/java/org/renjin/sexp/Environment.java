@@ -67,8 +67,12 @@ public class Environment extends AbstractSEXP implements Recursive, HasNamedValu
   private Set<Symbol> lockedBindings;
 
   /**
-   * Keeps track of the number of times setVariable() has been called on this 
-   * environment.
+   * Keeps track of the number of changes to this environment which could change
+   * the result of a function lookup: changes to the parent, and the creation, removal or
+   * replacement of bindings to functions (or promises, which may evaluate to functions).
+   *
+   * <p>Assigning a non-function value over another non-function value, by far the most 
+   * common case, does not change the count.
    */
   private transient int modCount = 0;
   
@@ -154,10 +158,12 @@ public class Environment extends AbstractSEXP implements Recursive, HasNamedValu
 
   public void remove(Symbol symbol) {
     frame.remove(symbol);
+    modCount++;
   }
   
   public void clear() {
     frame.clear();
+    modCount++;
   }
 
 
@@ -235,8 +241,26 @@ public class Environment extends AbstractSEXP implements Recursive, HasNamedValu
     } else if(locked && frame.getVariable(symbol) != Symbol.UNBOUND_VALUE) {
       throw new EvalException("cannot add bindings to a locked environment");
     }
+    if(mayBeFunction(value) || mayHoldFunction(symbol)) {
+      modCount++;
+    }
     frame.setVariable(symbol, value);
-    modCount++;
+  }
+
+  private static boolean mayBeFunction(SEXP value) {
+    return value instanceof Function || value instanceof Promise;
+  }
+
+  /**
+   * @return true if {@code symbol} may currently be bound to a function in this frame. A
+   * {@link HashFrame} keeps track of the symbols to which it may have bound functions, so
+   * that most assignments of other values do not need to look up the previous value.
+   */
+  private boolean mayHoldFunction(Symbol symbol) {
+    if(frame instanceof HashFrame && !((HashFrame) frame).mayHoldFunction(symbol)) {
+      return false;
+    }
+    return mayBeFunction(frame.getVariable(symbol));
   }
 
   /**
@@ -338,7 +362,8 @@ public class Environment extends AbstractSEXP implements Recursive, HasNamedValu
   /**
    * 
    * @return the number of modifications to this environment
-   * and all of its parent environments
+   * and all of its parent environments which could change the result 
+   * of {@link #findFunction(Context, Symbol)}
    */
   public int getCumulativeModCount() {
     return modCount + parent.getCumulativeModCount();
@@ -68,6 +68,14 @@ public class HashFrame implements Frame{
   }
 
 
+  /**
+   * @return false if {@code name} has certainly never been bound to a function,
+   * a promise or a missing argument in this frame
+   */
+  public boolean mayHoldFunction(Symbol name) {
+    return (functionFilter & name.hashBit()) != 0;
+  }
+
   @Override
   public boolean isMissingArgument(Symbol name) {
     if(functionFilter != 0 && (functionFilter & name.hashBit()) != 0) {
@@ -84,6 +84,13 @@ public class LogicalArrayVector extends LogicalVector {
     return vector;
   }
 
+  /**
+   * @return a pointer to the underlying array. DO NOT MODIFY!!
+   */
+  public int[] toIntArrayUnsafe() {
+    return values;
+  }
+
   @Override
   public int length() {
     return values.length;
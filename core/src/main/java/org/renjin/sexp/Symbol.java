@@ -21,10 +21,9 @@
 
 package org.renjin.sexp;
 
-import com.google.common.collect.Maps;
 import org.renjin.eval.EvalException;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Symbol extends AbstractSEXP {
 
@@ -35,8 +34,11 @@ public final class Symbol extends AbstractSEXP {
    * The global symbol table. We store symbols here so that
    * we can compare symbols using reference equality (==) rather than
    * the equals() method.
+   *
+   * <p>The table is shared by all sessions in the JVM, so it must tolerate
+   * concurrent parsing from many threads. Lookups of existing symbols never block.
    */
-  private static final HashMap<String, Symbol> TABLE;
+  private static final ConcurrentHashMap<String, Symbol> TABLE;
 
   public static final Symbol UNBOUND_VALUE = new Symbol();
   
@@ -59,7 +61,7 @@ public final class Symbol extends AbstractSEXP {
   private static final int NUM_RESERVED_BITS = 4;
   
   static { 
-    TABLE = Maps.newHashMap();
+    TABLE = new ConcurrentHashMap<String, Symbol>(1024, 0.75f, 16);
     addReserved(0, 
         "if", 
         ".Internal",   
@@ -170,14 +172,17 @@ public final class Symbol extends AbstractSEXP {
       throw new EvalException("attempt to use zero-length variable name");
     }
 
-    synchronized (TABLE) {
-      Symbol symbol = TABLE.get(printName);
-      if(symbol == null) {
-        symbol = new Symbol(printName, calcHashBit(printName));
-        TABLE.put(printName, symbol);
-      }
+    // Fast path: the vast majority of lookups are for symbols already interned
+    Symbol symbol = TABLE.get(printName);
+    if(symbol != null) {
       return symbol;
     }
+
+    // If another thread interns the same name first, use its instance so that
+    // reference equality continues to hold
+    Symbol newSymbol = new Symbol(printName, calcHashBit(printName));
+    Symbol existing = TABLE.putIfAbsent(printName, newSymbol);
+    return existing == null ? newSymbol : existing;
   }
 
   private Symbol() {
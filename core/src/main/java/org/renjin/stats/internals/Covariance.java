@@ -2,8 +2,8 @@ package org.renjin.stats.internals;
 
 
 
-import org.renjin.eval.EvalException;
-import org.renjin.invoke.annotations.Builtin;
+import org.renjin.eval.Context;
+import org.renjin.invoke.annotations.Current;
 import org.renjin.invoke.annotations.Internal;
 import org.renjin.sexp.AtomicVector;
 import org.renjin.sexp.DoubleVector;
@@ -12,27 +12,35 @@ import org.renjin.sexp.Vector;
 public class Covariance {
 
   @Internal
-  public static DoubleVector cor(AtomicVector x, AtomicVector y, int naMethod, boolean kendall) {
-
-    if(kendall) {
-      throw new EvalException("kendall=true nyi");
-    }
-
-    return new VarianceCalculator(x, y, naMethod)
-    .withPearsonCorrelation()
-    .calculate();
+  public static DoubleVector cor(@Current Context context, AtomicVector x, AtomicVector y, int naMethod, boolean kendall) {
+    return new CovarianceCalculator(x, y, naMethod)
+    .withCorrelation()
+    .withKendall(kendall)
+    .calculate(context);
   }
 
 
   @Internal
-  public static Vector cov(AtomicVector x, AtomicVector y, int naMethod, boolean kendall) {
-    if(kendall) {
-      throw new EvalException("kendall=true nyi");
-    }
+  public static Vector cov(@Current Context context, AtomicVector x, AtomicVector y, int naMethod, boolean kendall) {
+    return new CovarianceCalculator(x, y, naMethod)
+    .withKendall(kendall)
+    .calculate(context);
+  }
 
-    return new VarianceCalculator(x, y, naMethod)
-    .withCovarianceMethod()
-    .calculate();
+  /**
+   * Computes rank correlations, excluding missing values pairwise. Unlike {@code cor()} on
+   * ranked columns, the observations of each pair of columns are ranked after the observations
+   * missing from either column are removed, as {@code cor(method = "spearman", use = "pairwise")} requires.
+   */
+  @Internal("cor.rank")
+  public static DoubleVector corRank(@Current Context context, AtomicVector x, AtomicVector y, boolean kendall) {
+    CovarianceCalculator calculator = new CovarianceCalculator(x, y, CovarianceCalculator.PAIRWISE_COMPLETE_OBS)
+        .withCorrelation()
+        .withKendall(kendall);
+    if(!kendall) {
+      calculator.withRanks();
+    }
+    return calculator.calculate(context);
   }
 
 }
@@ -0,0 +1,661 @@
+package org.renjin.stats.internals;
+
+import org.renjin.eval.Context;
+import org.renjin.eval.EvalException;
+import org.renjin.parallel.KernelPool;
+import org.renjin.sexp.*;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the covariances or correlations between the columns of one or two matrices, as
+ * {@code cov()}, {@code cor()} and {@code var()} do.
+ *
+ * <p>The Pearson statistics of columns without missing values are computed together from the
+ * sums of products of the centered columns, in a single blocked pass over the observations (see
+ * {@link CrossProducts}). Kendall's tau is computed for each pair of columns by Knight's
+ * {@code O(n log n)} algorithm (see {@link KendallTau}), starting from the order of each column,
+ * which is sorted only once. Only the pairs of columns in which some observations are missing
+ * need to be computed one pair at a time, and only when missing values are to be excluded pairwise.</p>
+ *
+ * <p>Above a threshold, both the sums of products and the pairs of columns are computed
+ * in parallel, in the {@link KernelPool}.</p>
+ */
+public class CovarianceCalculator {
+
+  public static final int ALL_OBS = 1;
+  public static final int COMPLETE_OBS = 2;
+  public static final int PAIRWISE_COMPLETE_OBS = 3;
+  public static final int EVERYTHING = 4;
+  public static final int NA_OR_COMPLETE = 5;
+
+  /**
+   * The number of observations, multiplied by the number of pairs of columns,
+   * above which statistics are computed in parallel.
+   */
+  private static final long DEFAULT_THRESHOLD = Long.getLong("renjin.stats.cov.threshold", 1L << 20);
+
+  /**
+   * The number of pairs of columns computed by each task when pairs are computed in parallel
+   */
+  private static final int PAIRS_PER_TASK = 8;
+
+  private class Variables {
+    private final double[] values;
+    private final int columns;
+    private final Vector names;
+
+    private Variables(AtomicVector vector) {
+      Vector dim = vector.getAttributes().getDim();
+      Vector names = Null.INSTANCE;
+      if(dim == Null.INSTANCE) {
+        this.columns = 1;
+      } else {
+        if(dim.length() != 2) {
+          throw new EvalException("must be vector or matrix, not higher-order array");
+        }
+        this.columns = dim.getElementAsInt(1);
+        Vector dimNames = vector.getAttributes().getDimNames();
+        if(dimNames != Null.INSTANCE && dimNames.length() == 2) {
+          names = (Vector) dimNames.getElementAsSEXP(1);
+        }
+      }
+      this.names = names;
+      if(vector instanceof DoubleArrayVector) {
+        this.values = ((DoubleArrayVector) vector).toDoubleArrayUnsafe();
+      } else {
+        this.values = vector.toDoubleArray();
+      }
+    }
+
+    private Variables(double[] values, int columns, Vector names) {
+      this.values = values;
+      this.columns = columns;
+      this.names = names;
+    }
+
+    private boolean hasMissing() {
+      for(double value : values) {
+        if(Double.isNaN(value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean[] missingColumns(int numObservations) {
+      boolean[] missing = new boolean[columns];
+      for(int j=0;j!=columns;++j) {
+        int offset = j * numObservations;
+        for(int i=0;i!=numObservations;++i) {
+          if(Double.isNaN(values[offset + i])) {
+            missing[j] = true;
+            break;
+          }
+        }
+      }
+      return missing;
+    }
+
+    private Variables select(boolean[] complete, int count, int numObservations) {
+      double[] selected = new double[count * columns];
+      int k = 0;
+      for(int j=0;j!=columns;++j) {
+        int offset = j * numObservations;
+        for(int i=0;i!=numObservations;++i) {
+          if(complete[i]) {
+            selected[k++] = values[offset + i];
+          }
+        }
+      }
+      return new Variables(selected, columns, names);
+    }
+  }
+
+  private final boolean matrixResult;
+  private final int naMethod;
+  private Variables x;
+  private Variables y;
+  private int numObservations;
+
+  private boolean correlation;
+  private boolean kendall;
+  private boolean ranks;
+  private boolean zeroStandardDeviation;
+  private long threshold = DEFAULT_THRESHOLD;
+
+  /**
+   * @param y the second set of variables, or {@code Null.INSTANCE} to compute the statistics of
+   *          the columns of {@code x} with each other
+   * @param naMethod the treatment of missing values, one of {@link #ALL_OBS}, {@link #COMPLETE_OBS},
+   *                 {@link #PAIRWISE_COMPLETE_OBS}, {@link #EVERYTHING}, or {@link #NA_OR_COMPLETE}
+   */
+  public CovarianceCalculator(AtomicVector x, AtomicVector y, int naMethod) {
+    if(naMethod < ALL_OBS || naMethod > NA_OR_COMPLETE) {
+      throw new EvalException("invalid 'use' (computational method)");
+    }
+    this.naMethod = naMethod;
+    this.x = new Variables(x);
+    this.numObservations = x.getAttributes().getDim() == Null.INSTANCE ?
+        x.length() : x.getAttributes().getDim().getElementAsInt(0);
+    this.matrixResult = x.getAttributes().getDim() != Null.INSTANCE ||
+        (y != Null.INSTANCE && y.getAttributes().getDim() != Null.INSTANCE);
+
+    if(y != Null.INSTANCE) {
+      this.y = new Variables(y);
+      if(y.length() != (long) numObservations * this.y.columns) {
+        throw new EvalException("incompatible dimensions");
+      }
+    }
+  }
+
+  public CovarianceCalculator withCorrelation() {
+    this.correlation = true;
+    return this;
+  }
+
+  public CovarianceCalculator withKendall(boolean kendall) {
+    this.kendall = kendall;
+    return this;
+  }
+
+  /**
+   * Ranks the observations of each pair of columns before computing its Pearson correlation,
+   * giving Spearman's rank correlation. Columns without missing values are ranked only once.
+   */
+  public CovarianceCalculator withRanks() {
+    this.ranks = true;
+    return this;
+  }
+
+  /**
+   * Sets the number of observations, multiplied by the number of pairs of columns,
+   * above which this calculator computes statistics in parallel.
+   */
+  public CovarianceCalculator withThreshold(long work) {
+    this.threshold = work;
+    return this;
+  }
+
+  public DoubleVector calculate(Context context) {
+    int nx = x.columns;
+    int ny = (y == null) ? nx : y.columns;
+    double[] result = new double[nx * ny];
+
+    if(naMethod == ALL_OBS && (x.hasMissing() || (y != null && y.hasMissing()))) {
+      throw new EvalException("missing observations in cov/cor");
+    }
+    if(naMethod == COMPLETE_OBS || naMethod == NA_OR_COMPLETE) {
+      if(!selectCompleteObservations()) {
+        if(naMethod == COMPLETE_OBS) {
+          throw new EvalException("no complete element pairs");
+        }
+        Arrays.fill(result, DoubleVector.NA);
+        return build(result, nx, ny);
+      }
+    }
+
+    boolean[] xMissing = x.missingColumns(numObservations);
+    boolean[] yMissing = (y == null) ? xMissing : y.missingColumns(numObservations);
+
+    if(numObservations < 2) {
+      Arrays.fill(result, DoubleVector.NA);
+    } else if(kendall) {
+      computeKendall(xMissing, yMissing, result);
+    } else {
+      computePearson(xMissing, yMissing, result);
+    }
+
+    // Pairs of columns with missing values
+    if(naMethod == EVERYTHING) {
+      for(int j=0;j!=ny;++j) {
+        for(int i=0;i!=nx;++i) {
+          if(xMissing[i] || yMissing[j]) {
+            result[i + j * nx] = DoubleVector.NA;
+          }
+        }
+      }
+    } else if(naMethod == PAIRWISE_COMPLETE_OBS) {
+      computePairwise(xMissing, yMissing, result);
+    }
+
+    if(zeroStandardDeviation) {
+      context.warn("the standard deviation is zero");
+    }
+    return build(result, nx, ny);
+  }
+
+  /**
+   * Drops the observations with a missing value in any column
+   *
+   * @return false if there are no complete observations
+   */
+  private boolean selectCompleteObservations() {
+    boolean[] complete = new boolean[numObservations];
+    Arrays.fill(complete, true);
+    int count = numObservations;
+    for(Variables variables : new Variables[] { x, y }) {
+      if(variables != null) {
+        for(int j=0;j!=variables.columns;++j) {
+          int offset = j * numObservations;
+          for(int i=0;i!=numObservations;++i) {
+            if(complete[i] && Double.isNaN(variables.values[offset + i])) {
+              complete[i] = false;
+              count--;
+            }
+          }
+        }
+      }
+    }
+    if(count == 0) {
+      return false;
+    }
+    if(count < numObservations) {
+      x = x.select(complete, count, numObservations);
+      if(y != null) {
+        y = y.select(complete, count, numObservations);
+      }
+      numObservations = count;
+    }
+    return true;
+  }
+
+  private void computePearson(boolean[] xMissing, boolean[] yMissing, double[] result) {
+    int nx = x.columns;
+    int[] xColumns = columnsWithout(xMissing);
+    int[] yColumns = (y == null) ? xColumns : columnsWithout(yMissing);
+    if(xColumns.length == 0 || yColumns.length == 0) {
+      return;
+    }
+    int n = numObservations;
+
+    // Rank columns once, so that they can be treated like any others
+    double[] xValues = x.values;
+    double[] yValues = (y == null) ? null : y.values;
+    if(ranks) {
+      xValues = rankColumns(xValues, xColumns);
+      xColumns = sequence(xColumns.length);
+      if(y != null) {
+        yValues = rankColumns(yValues, yColumns);
+        yColumns = sequence(yColumns.length);
+      }
+    }
+
+    double[] xMeans = columnMeans(xValues, xColumns);
+    double[] yMeans = (y == null) ? xMeans : columnMeans(yValues, yColumns);
+
+    long work = (long) n * xColumns.length * yColumns.length;
+    CrossProducts products = new CrossProducts(xValues, xColumns, xMeans, yValues, yColumns, yMeans, n);
+    double[] sums = products.compute(work >= threshold ? KernelPool.get() : null);
+
+    int[] xIndices = columnsWithout(xMissing);
+    int[] yIndices = (y == null) ? xIndices : columnsWithout(yMissing);
+    int rows = xIndices.length;
+
+    if(!correlation) {
+      for(int b=0;b!=yIndices.length;++b) {
+        for(int a=0;a!=rows;++a) {
+          result[xIndices[a] + yIndices[b] * nx] = sums[a + b * rows] / (n - 1);
+        }
+      }
+      return;
+    }
+
+    double[] xSquares = new double[rows];
+    double[] ySquares = new double[yIndices.length];
+    if(y == null) {
+      for(int a=0;a!=rows;++a) {
+        xSquares[a] = sums[a + a * rows];
+      }
+      ySquares = xSquares;
+    } else {
+      for(int a=0;a!=rows;++a) {
+        xSquares[a] = sumOfSquares(xValues, xColumns[a], xMeans[a]);
+      }
+      for(int b=0;b!=yIndices.length;++b) {
+        ySquares[b] = sumOfSquares(yValues, yColumns[b], yMeans[b]);
+      }
+    }
+
+    for(int b=0;b!=yIndices.length;++b) {
+      for(int a=0;a!=rows;++a) {
+        result[xIndices[a] + yIndices[b] * nx] = correlation(sums[a + b * rows], xSquares[a], ySquares[b],
+            y == null && a == b);
+      }
+    }
+  }
+
+  private void computeKendall(boolean[] xMissing, boolean[] yMissing, final double[] result) {
+    final int nx = x.columns;
+    final int n = numObservations;
+    final int[] xColumns = columnsWithout(xMissing);
+    final int[] yColumns = (y == null) ? xColumns : columnsWithout(yMissing);
+    if(xColumns.length == 0 || yColumns.length == 0) {
+      return;
+    }
+    final double[] yValues = (y == null) ? x.values : y.values;
+
+    // Sort each column of x only once, and count its ties
+    final int[][] orders = new int[xColumns.length][];
+    final long[] xTies = new long[xColumns.length];
+    int[] scratch = new int[n];
+    for(int a=0;a!=xColumns.length;++a) {
+      orders[a] = new int[n];
+      Ranking.order(x.values, xColumns[a] * n, n, orders[a], scratch);
+      xTies[a] = KendallTau.ties(x.values, xColumns[a] * n, orders[a], 0, n);
+    }
+
+    final long[] yTies = new long[yColumns.length];
+    if(y == null) {
+      System.arraycopy(xTies, 0, yTies, 0, xTies.length);
+    } else {
+      int[] order = new int[n];
+      for(int b=0;b!=yColumns.length;++b) {
+        Ranking.order(yValues, yColumns[b] * n, n, order, scratch);
+        yTies[b] = KendallTau.ties(yValues, yColumns[b] * n, order, 0, n);
+      }
+    }
+
+    final int numPairs = y == null ?
+        xColumns.length * (xColumns.length - 1) / 2 : xColumns.length * yColumns.length;
+    final long totalPairs = KendallTau.pairs(n);
+
+    forEachPair(numPairs, n, new PairKernel() {
+      @Override
+      public void compute(int from, int to) {
+        KendallTau tau = new KendallTau(n);
+        for(int pair=from;pair<to;++pair) {
+          int a;
+          int b;
+          if(y == null) {
+            // Enumerate the pairs a < b of the upper triangle
+            b = 1;
+            int remaining = pair;
+            while(remaining >= b) {
+              remaining -= b;
+              b++;
+            }
+            a = remaining;
+          } else {
+            a = pair % xColumns.length;
+            b = pair / xColumns.length;
+          }
+          long concordance = tau.concordance(x.values, xColumns[a] * n, orders[a], yValues, yColumns[b] * n, n);
+          double value = kendallStatistic(concordance, totalPairs - xTies[a], totalPairs - yTies[b]);
+          result[xColumns[a] + yColumns[b] * nx] = value;
+          if(y == null) {
+            result[xColumns[b] + yColumns[a] * nx] = value;
+          }
+        }
+      }
+    });
+
+    if(y == null) {
+      for(int a=0;a!=xColumns.length;++a) {
+        long untied = totalPairs - xTies[a];
+        if(!correlation) {
+          result[xColumns[a] + xColumns[a] * nx] = 2d * untied;
+        } else {
+          result[xColumns[a] + xColumns[a] * nx] = diagonalCorrelation(untied == 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the statistics of each pair of columns with missing values, from the
+   * observations that are present in both columns.
+   */
+  private void computePairwise(final boolean[] xMissing, final boolean[] yMissing, final double[] result) {
+    final int nx = x.columns;
+    final int ny = (y == null) ? nx : y.columns;
+    final int n = numObservations;
+    final double[] yValues = (y == null) ? x.values : y.values;
+
+    // Collect the pairs with missing values, and, for correlations of x with itself, the diagonal
+    int count = 0;
+    final int[] pairs = new int[nx * ny];
+    for(int j=0;j!=ny;++j) {
+      for(int i=0;i!=nx;++i) {
+        if(y == null && i > j) {
+          continue;
+        }
+        if(xMissing[i] || yMissing[j]) {
+          pairs[count++] = i + j * nx;
+        }
+      }
+    }
+
+    forEachPair(count, n, new PairKernel() {
+      @Override
+      public void compute(int from, int to) {
+        double[] a = new double[n];
+        double[] b = new double[n];
+        int[] order = new int[n];
+        int[] scratch = new int[n];
+        KendallTau tau = kendall ? new KendallTau(n) : null;
+        for(int p=from;p<to;++p) {
+          int i = pairs[p] % nx;
+          int j = pairs[p] / nx;
+          int xOffset = i * n;
+          int yOffset = j * n;
+          int m = 0;
+          for(int k=0;k!=n;++k) {
+            double xk = x.values[xOffset + k];
+            double yk = yValues[yOffset + k];
+            if(!Double.isNaN(xk) && !Double.isNaN(yk)) {
+              a[m] = xk;
+              b[m] = yk;
+              m++;
+            }
+          }
+          double value;
+          if(m < 2) {
+            value = DoubleVector.NA;
+          } else if(kendall) {
+            long concordance = tau.concordance(a, 0, null, b, 0, m);
+            long totalPairs = KendallTau.pairs(m);
+            value = kendallStatistic(concordance, totalPairs - tau.getXTies(), totalPairs - tau.getYTies());
+          } else {
+            if(ranks) {
+              Ranking.averageRanks(a, 0, m, a, 0, order, scratch);
+              Ranking.averageRanks(b, 0, m, b, 0, order, scratch);
+            }
+            value = pearson(a, b, m);
+          }
+          result[i + j * nx] = value;
+          if(y == null) {
+            result[j + i * nx] = value;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * @return the Pearson covariance or correlation of two columns of {@code m} complete observations
+   */
+  private double pearson(double[] a, double[] b, int m) {
+    double aMean = CrossProducts.mean(a, 0, m);
+    double bMean = CrossProducts.mean(b, 0, m);
+    double sum = 0;
+    double aSquares = 0;
+    double bSquares = 0;
+    for(int k=0;k!=m;++k) {
+      double aDeviation = a[k] - aMean;
+      double bDeviation = b[k] - bMean;
+      sum += aDeviation * bDeviation;
+      aSquares += aDeviation * aDeviation;
+      bSquares += bDeviation * bDeviation;
+    }
+    if(!correlation) {
+      return sum / (m - 1);
+    }
+    if(aSquares == 0 || bSquares == 0) {
+      zeroStandardDeviation = true;
+      return DoubleVector.NA;
+    }
+    return clamp(sum / (Math.sqrt(aSquares) * Math.sqrt(bSquares)));
+  }
+
+  /**
+   * @param concordance the number of concordant pairs minus the number of discordant pairs
+   * @param xUntied the number of pairs not tied in x
+   * @param yUntied the number of pairs not tied in y
+   * @return Kendall's tau-b, or, for covariances, the sum over ordered pairs of observations of
+   * the product of the signs of their differences, as GNU R computes it.
+   */
+  private double kendallStatistic(long concordance, long xUntied, long yUntied) {
+    if(!correlation) {
+      return 2d * concordance;
+    }
+    if(xUntied == 0 || yUntied == 0) {
+      zeroStandardDeviation = true;
+      return DoubleVector.NA;
+    }
+    return clamp(concordance / (Math.sqrt(xUntied) * Math.sqrt(yUntied)));
+  }
+
+  private double correlation(double sum, double xSquares, double ySquares, boolean diagonal) {
+    if(diagonal) {
+      return diagonalCorrelation(xSquares == 0);
+    }
+    if(xSquares == 0 || ySquares == 0) {
+      zeroStandardDeviation = true;
+      return DoubleVector.NA;
+    }
+    return clamp(sum / (Math.sqrt(xSquares) * Math.sqrt(ySquares)));
+  }
+
+  /**
+   * The correlation of a column with itself is one, except when missing values are excluded
+   * pairwise, in which case GNU R computes it like any other pair, and so yields {@code NA}
+   * for a column with no deviation.
+   */
+  private double diagonalCorrelation(boolean zeroDeviation) {
+    if(zeroDeviation && naMethod == PAIRWISE_COMPLETE_OBS) {
+      zeroStandardDeviation = true;
+      return DoubleVector.NA;
+    }
+    return 1;
+  }
+
+  private static double clamp(double r) {
+    if(r > 1) {
+      return 1;
+    } else if(r < -1) {
+      return -1;
+    } else {
+      return r;
+    }
+  }
+
+  private double[] rankColumns(double[] values, int[] columns) {
+    int n = numObservations;
+    double[] ranked = new double[columns.length * n];
+    int[] order = new int[n];
+    int[] scratch = new int[n];
+    for(int c=0;c!=columns.length;++c) {
+      Ranking.averageRanks(values, columns[c] * n, n, ranked, c * n, order, scratch);
+    }
+    return ranked;
+  }
+
+  private double[] columnMeans(double[] values, int[] columns) {
+    double[] means = new double[columns.length];
+    for(int c=0;c!=columns.length;++c) {
+      means[c] = CrossProducts.mean(values, columns[c] * numObservations, numObservations);
+    }
+    return means;
+  }
+
+  private double sumOfSquares(double[] values, int column, double mean) {
+    int offset = column * numObservations;
+    double sum = 0;
+    for(int i=0;i!=numObservations;++i) {
+      double deviation = values[offset + i] - mean;
+      sum += deviation * deviation;
+    }
+    return sum;
+  }
+
+  private static int[] columnsWithout(boolean[] missing) {
+    int count = 0;
+    for(boolean m : missing) {
+      if(!m) {
+        count++;
+      }
+    }
+    int[] columns = new int[count];
+    int k = 0;
+    for(int j=0;j!=missing.length;++j) {
+      if(!missing[j]) {
+        columns[k++] = j;
+      }
+    }
+    return columns;
+  }
+
+  private static int[] sequence(int length) {
+    int[] sequence = new int[length];
+    for(int i=0;i!=length;++i) {
+      sequence[i] = i;
+    }
+    return sequence;
+  }
+
+  private DoubleVector build(double[] result, int nx, int ny) {
+    if(!matrixResult) {
+      return DoubleArrayVector.unsafe(result);
+    }
+    AttributeMap.Builder attributes = AttributeMap.builder().setDim(nx, ny);
+    Vector rowNames = x.names;
+    Vector colNames = (y == null) ? x.names : y.names;
+    if(rowNames != Null.INSTANCE || colNames != Null.INSTANCE) {
+      attributes.setDimNames(new ListVector(rowNames, colNames));
+    }
+    return DoubleArrayVector.unsafe(result, attributes);
+  }
+
+  private interface PairKernel {
+
+    /**
+     * Computes the pairs {@code [from, to)}
+     */
+    void compute(int from, int to);
+  }
+
+  private void forEachPair(int numPairs, int numObservations, PairKernel kernel) {
+    if(numPairs == 0) {
+      return;
+    }
+    if((long) numPairs * numObservations < threshold || numPairs == 1) {
+      kernel.compute(0, numPairs);
+    } else {
+      KernelPool.invoke(new PairTask(kernel, 0, numPairs));
+    }
+  }
+
+  private static class PairTask extends RecursiveAction {
+    private final PairKernel kernel;
+    private final int from;
+    private final int to;
+
+    private PairTask(PairKernel kernel, int from, int to) {
+      this.kernel = kernel;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if(to - from <= PAIRS_PER_TASK) {
+        kernel.compute(from, to);
+      } else {
+        int split = (from + to) >>> 1;
+        invokeAll(new PairTask(kernel, from, split), new PairTask(kernel, split, to));
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package org.renjin.stats.internals;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the sums of products of centered columns, {@code t(X - mean(X)) %*% (Y - mean(Y))},
+ * in a single pass over the observations.
+ *
+ * <p>The observations are divided into chunks of {@code CHUNK} rows. The columns of each chunk are
+ * centered into small buffers that stay in the cache while the products of every pair of columns
+ * are accumulated. The chunks are grouped into a fixed tree of partial sums, which is summed in
+ * parallel above a threshold; since the shape of the tree depends only on the number of
+ * observations, the result is the same however many threads compute it.</p>
+ */
+class CrossProducts {
+
+  private static final int CHUNK = 256;
+
+  /**
+   * The number of observations summed by each leaf of the tree of partial sums
+   */
+  private static final int LEAF_ROWS = 64 * CHUNK;
+
+  private final double[] x;
+  private final int[] xColumns;
+  private final double[] xMeans;
+  private final double[] y;
+  private final int[] yColumns;
+  private final double[] yMeans;
+  private final int numObservations;
+  private final boolean symmetric;
+
+  /**
+   * @param x the column-major observations of the first set of variables
+   * @param xColumns the indices of the columns of {@code x} to include
+   * @param xMeans the means of the included columns of {@code x}
+   * @param y the column-major observations of the second set of variables, or {@code null}
+   *          to compute the products of the columns of {@code x} with each other
+   */
+  CrossProducts(double[] x, int[] xColumns, double[] xMeans,
+                double[] y, int[] yColumns, double[] yMeans, int numObservations) {
+    this.x = x;
+    this.xColumns = xColumns;
+    this.xMeans = xMeans;
+    this.symmetric = (y == null);
+    this.y = symmetric ? x : y;
+    this.yColumns = symmetric ? xColumns : yColumns;
+    this.yMeans = symmetric ? xMeans : yMeans;
+    this.numObservations = numObservations;
+  }
+
+  /**
+   * @return the mean of {@code x[offset], ..., x[offset+n-1]}, corrected by a second pass
+   * over the deviations from the first estimate, as in GNU R.
+   */
+  public static double mean(double[] x, int offset, int n) {
+    double sum = 0;
+    for(int i=0;i!=n;++i) {
+      sum += x[offset + i];
+    }
+    double mean = sum / n;
+    double correction = 0;
+    for(int i=0;i!=n;++i) {
+      correction += x[offset + i] - mean;
+    }
+    return mean + correction / n;
+  }
+
+  /**
+   * Computes the sums of products
+   *
+   * @param pool the pool in which to sum the partial products in parallel, or {@code null} to
+   *             sum them in this thread
+   * @return the {@code xColumns.length x yColumns.length} sums, in column-major order
+   */
+  public double[] compute(ForkJoinPool pool) {
+    Partial task = new Partial(0, numObservations, pool != null);
+    double[] sums;
+    if(pool == null) {
+      sums = task.compute();
+    } else if(ForkJoinTask.getPool() == pool) {
+      sums = task.invoke();
+    } else {
+      sums = pool.invoke(task);
+    }
+    if(symmetric) {
+      int n = xColumns.length;
+      for(int j=0;j<n;++j) {
+        for(int i=j+1;i<n;++i) {
+          sums[i + j * n] = sums[j + i * n];
+        }
+      }
+    }
+    return sums;
+  }
+
+  private double[] computeLeaf(int from, int to) {
+    int nx = xColumns.length;
+    int ny = yColumns.length;
+    double[] sums = new double[nx * ny];
+    double[] cx = new double[nx * CHUNK];
+    double[] cy = symmetric ? cx : new double[ny * CHUNK];
+
+    for(int start=from;start<to;start+=CHUNK) {
+      int length = Math.min(CHUNK, to - start);
+      center(x, xColumns, xMeans, start, length, cx);
+      if(!symmetric) {
+        center(y, yColumns, yMeans, start, length, cy);
+      }
+      for(int j=0;j<ny;++j) {
+        int yOffset = j * CHUNK;
+        int rows = symmetric ? j + 1 : nx;
+        for(int i=0;i<rows;++i) {
+          int xOffset = i * CHUNK;
+          double sum = 0;
+          for(int k=0;k<length;++k) {
+            sum += cx[xOffset + k] * cy[yOffset + k];
+          }
+          sums[i + j * nx] += sum;
+        }
+      }
+    }
+    return sums;
+  }
+
+  private void center(double[] values, int[] columns, double[] means, int start, int length, double[] buffer) {
+    for(int c=0;c<columns.length;++c) {
+      int offset = columns[c] * numObservations + start;
+      double mean = means[c];
+      int bufferOffset = c * CHUNK;
+      for(int k=0;k<length;++k) {
+        buffer[bufferOffset + k] = values[offset + k] - mean;
+      }
+    }
+  }
+
+  private class Partial extends RecursiveTask<double[]> {
+    private final int from;
+    private final int to;
+    private final boolean parallel;
+
+    private Partial(int from, int to, boolean parallel) {
+      this.from = from;
+      this.to = to;
+      this.parallel = parallel;
+    }
+
+    @Override
+    protected double[] compute() {
+      if(to - from <= LEAF_ROWS) {
+        return computeLeaf(from, to);
+      }
+      int chunks = (to - from + CHUNK - 1) / CHUNK;
+      int split = from + (chunks / 2) * CHUNK;
+      Partial left = new Partial(from, split, parallel);
+      Partial right = new Partial(split, to, parallel);
+      double[] sums;
+      double[] rightSums;
+      if(parallel) {
+        right.fork();
+        sums = left.compute();
+        rightSums = right.join();
+      } else {
+        sums = left.compute();
+        rightSums = right.compute();
+      }
+      for(int i=0;i!=sums.length;++i) {
+        sums[i] += rightSums[i];
+      }
+      return sums;
+    }
+  }
+}
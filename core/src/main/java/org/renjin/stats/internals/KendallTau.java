@@ -0,0 +1,146 @@
+package org.renjin.stats.internals;
+
+/**
+ * Counts the concordant and discordant pairs of two columns of observations in
+ * {@code O(n log n)} time, using the algorithm of Knight (1966): the observations are sorted
+ * by {@code x}, breaking ties by {@code y}, and the number of discordant pairs is then the
+ * number of swaps made by a merge sort of the {@code y} values in that order.
+ *
+ * <p>Instances hold scratch arrays for columns of up to a given number of observations, and
+ * must not be shared between threads.</p>
+ */
+class KendallTau {
+
+  private final int[] order;
+  private final int[] orderScratch;
+  private final double[] ys;
+  private final double[] ysScratch;
+
+  private long xTies;
+  private long yTies;
+
+  KendallTau(int capacity) {
+    this.order = new int[capacity];
+    this.orderScratch = new int[capacity];
+    this.ys = new double[capacity];
+    this.ysScratch = new double[capacity];
+  }
+
+  /**
+   * Computes the number of concordant pairs minus the number of discordant pairs of the
+   * observations {@code x[xOffset], ..., x[xOffset+n-1]} and {@code y[yOffset], ..., y[yOffset+n-1]}.
+   *
+   * @param xOrder the indices {@code 0, ..., n-1} stably sorted by {@code x}, or {@code null}
+   *               if they are to be sorted here.
+   */
+  public long concordance(double[] x, int xOffset, int[] xOrder, double[] y, int yOffset, int n) {
+    if(xOrder == null) {
+      Ranking.order(x, xOffset, n, order, orderScratch);
+    } else {
+      System.arraycopy(xOrder, 0, order, 0, n);
+    }
+
+    // Break ties in x by y, and count the pairs tied in x, and in both x and y
+    long xTies = 0;
+    long jointTies = 0;
+    int start = 0;
+    while(start < n) {
+      double value = x[xOffset + order[start]];
+      int end = start + 1;
+      while(end < n && x[xOffset + order[end]] == value) {
+        end++;
+      }
+      if(end - start > 1) {
+        xTies += pairs(end - start);
+        Ranking.sort(y, yOffset, order, start, end, orderScratch);
+        jointTies += ties(y, yOffset, order, start, end);
+      }
+      start = end;
+    }
+
+    for(int i=0;i!=n;++i) {
+      ys[i] = y[yOffset + order[i]];
+    }
+    long swaps = mergeSort(0, n);
+
+    long yTies = 0;
+    start = 0;
+    while(start < n) {
+      int end = start + 1;
+      while(end < n && ys[end] == ys[start]) {
+        end++;
+      }
+      yTies += pairs(end - start);
+      start = end;
+    }
+
+    this.xTies = xTies;
+    this.yTies = yTies;
+    return pairs(n) - xTies - yTies + jointTies - 2 * swaps;
+  }
+
+  /**
+   * @return the number of pairs tied in {@code x} in the last call to {@link #concordance}
+   */
+  public long getXTies() {
+    return xTies;
+  }
+
+  /**
+   * @return the number of pairs tied in {@code y} in the last call to {@link #concordance}
+   */
+  public long getYTies() {
+    return yTies;
+  }
+
+  public static long pairs(long n) {
+    return n * (n - 1) / 2;
+  }
+
+  /**
+   * @return the number of pairs tied among the observations {@code values[offset + order[i]]},
+   * {@code from <= i < to}, which must be sorted.
+   */
+  public static long ties(double[] values, int offset, int[] order, int from, int to) {
+    long ties = 0;
+    int start = from;
+    while(start < to) {
+      double value = values[offset + order[start]];
+      int end = start + 1;
+      while(end < to && values[offset + order[end]] == value) {
+        end++;
+      }
+      ties += pairs(end - start);
+      start = end;
+    }
+    return ties;
+  }
+
+  /**
+   * Sorts {@code ys[from], ..., ys[to-1]}
+   *
+   * @return the number of pairs that were out of order
+   */
+  private long mergeSort(int from, int to) {
+    if(to - from < 2) {
+      return 0;
+    }
+    int mid = (from + to) >>> 1;
+    long swaps = mergeSort(from, mid) + mergeSort(mid, to);
+    if(ys[mid - 1] <= ys[mid]) {
+      return swaps;
+    }
+    System.arraycopy(ys, from, ysScratch, from, to - from);
+    int i = from;
+    int j = mid;
+    for(int k=from;k<to;++k) {
+      if(j >= to || (i < mid && ysScratch[i] <= ysScratch[j])) {
+        ys[k] = ysScratch[i++];
+      } else {
+        swaps += mid - i;
+        ys[k] = ysScratch[j++];
+      }
+    }
+    return swaps;
+  }
+}
@@ -0,0 +1,83 @@
+package org.renjin.stats.internals;
+
+/**
+ * Sorting and ranking of columns of observations, which must not contain missing values.
+ */
+class Ranking {
+
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private Ranking() { }
+
+  /**
+   * Stores in {@code order} the indices {@code 0, ..., n-1} of the observations
+   * {@code values[offset], ..., values[offset+n-1]}, stably sorted by their values.
+   *
+   * @param scratch an array of at least {@code n} elements used during sorting
+   */
+  public static void order(double[] values, int offset, int n, int[] order, int[] scratch) {
+    for(int i=0;i!=n;++i) {
+      order[i] = i;
+    }
+    sort(values, offset, order, 0, n, scratch);
+  }
+
+  /**
+   * Stably sorts the indices {@code order[from], ..., order[to-1]} by the values
+   * {@code values[offset + order[i]]}.
+   */
+  public static void sort(double[] values, int offset, int[] order, int from, int to, int[] scratch) {
+    if(to - from <= INSERTION_SORT_THRESHOLD) {
+      for(int i=from+1;i<to;++i) {
+        int index = order[i];
+        double value = values[offset + index];
+        int j = i - 1;
+        while(j >= from && values[offset + order[j]] > value) {
+          order[j + 1] = order[j];
+          j--;
+        }
+        order[j + 1] = index;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    sort(values, offset, order, from, mid, scratch);
+    sort(values, offset, order, mid, to, scratch);
+    if(values[offset + order[mid - 1]] <= values[offset + order[mid]]) {
+      return;
+    }
+    System.arraycopy(order, from, scratch, from, to - from);
+    int i = from;
+    int j = mid;
+    for(int k=from;k<to;++k) {
+      if(j >= to || (i < mid && values[offset + scratch[i]] <= values[offset + scratch[j]])) {
+        order[k] = scratch[i++];
+      } else {
+        order[k] = scratch[j++];
+      }
+    }
+  }
+
+  /**
+   * Writes to {@code ranks[ranksOffset], ...} the ranks of the observations
+   * {@code values[offset], ..., values[offset+n-1]}, averaging the ranks of ties,
+   * as {@code rank(ties.method = "average")} does.
+   */
+  public static void averageRanks(double[] values, int offset, int n, double[] ranks, int ranksOffset,
+                                  int[] order, int[] scratch) {
+    order(values, offset, n, order, scratch);
+    int start = 0;
+    while(start < n) {
+      double value = values[offset + order[start]];
+      int end = start + 1;
+      while(end < n && values[offset + order[end]] == value) {
+        end++;
+      }
+      double rank = (start + 1 + end) / 2d;
+      for(int i=start;i<end;++i) {
+        ranks[ranksOffset + order[i]] = rank;
+      }
+      start = end;
+    }
+  }
+}
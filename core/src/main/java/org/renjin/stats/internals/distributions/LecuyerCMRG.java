@@ -0,0 +1,244 @@
+package org.renjin.stats.internals.distributions;
+
+import org.renjin.eval.EvalException;
+
+/**
+ * Pierre L'Ecuyer's MRG32k3a combined multiple recursive generator, which GNU R calls
+ * "L'Ecuyer-CMRG". Modeled after and validated with GNU R's RNG.c and the parallel
+ * package's rngstream.c.
+ *
+ * <p>The generator's period of about 2^191 is divided into streams of 2^127 numbers, each of which
+ * is divided into substreams of 2^76 numbers. {@link #nextStream(int[])} and {@link #nextSubStream(int[])}
+ * jump from a seed to the start of the next stream or substream, so that parallel computations can each
+ * draw from their own stream and still be reproducible.</p>
+ *
+ * <p>The state is six integers, the first three in {@code [0, m1)} and the last three in {@code [0, m2)},
+ * which are stored as unsigned 32-bit integers in the same order as {@code .Random.seed}.</p>
+ */
+public class LecuyerCMRG {
+
+  static final long M1 = 4294967087L;
+  static final long M2 = 4294944443L;
+
+  private static final long A12 = 1403580L;
+  private static final long A13N = 810728L;
+  private static final long A21 = 527612L;
+  private static final long A23N = 1370589L;
+
+  private static final double NORMC = 2.328306549295727688e-10;
+
+  private static final int GNU_R_SEED_SCRAMBLE_CONSTANT = 50;
+
+  /* Jump matrices for 2^127 steps (the next stream) */
+  static final long[][] A1P127 = {
+      {    2427906178L, 3580155704L,  949770784L },
+      {     226153695L, 1230515664L, 3580155704L },
+      {    1988835001L,  986791581L, 1230515664L }
+  };
+
+  static final long[][] A2P127 = {
+      {    1464411153L,  277697599L, 1610723613L },
+      {      32183930L, 1464411153L, 1022607788L },
+      {    2824425944L,   32183930L, 2093834863L }
+  };
+
+  /* Jump matrices for 2^76 steps (the next substream) */
+  static final long[][] A1P76 = {
+      {      82758667L, 1871391091L, 4127413238L },
+      {    3672831523L,   69195019L, 1871391091L },
+      {    3672091415L, 3528743235L,   69195019L }
+  };
+
+  static final long[][] A2P76 = {
+      {    1511326704L, 3759209742L, 1610795712L },
+      {    4292754251L, 1511326704L, 3889917532L },
+      {    3859662829L, 4292754251L, 3708466080L }
+  };
+
+  private long s10, s11, s12;
+  private long s20, s21, s22;
+
+  /**
+   * Constructs a new generator, seeded as GNU R's {@code set.seed(seed, kind = "L'Ecuyer-CMRG")}
+   */
+  public LecuyerCMRG(int seed) {
+    setSeed(seed);
+  }
+
+  /**
+   * Constructs a new generator with the given six integer state
+   */
+  public LecuyerCMRG(int[] state) {
+    setState(state);
+  }
+
+  /**
+   * Sets the state from an integer seed ( GNU R Convention )
+   */
+  public void setSeed(int seed) {
+    for (int j = 0; j < GNU_R_SEED_SCRAMBLE_CONSTANT; j++) {
+      seed = (69069 * seed + 1);
+    }
+    int[] state = new int[6];
+    for (int j = 0; j < state.length; j++) {
+      seed = (69069 * seed + 1);
+      while (unsigned(seed) >= M2) {
+        seed = (69069 * seed + 1);
+      }
+      state[j] = seed;
+    }
+    setState(state);
+  }
+
+  public void setState(int[] state) {
+    checkState(state);
+    s10 = unsigned(state[0]);
+    s11 = unsigned(state[1]);
+    s12 = unsigned(state[2]);
+    s20 = unsigned(state[3]);
+    s21 = unsigned(state[4]);
+    s22 = unsigned(state[5]);
+  }
+
+  public int[] getState() {
+    int[] state = new int[6];
+    getState(state, 0);
+    return state;
+  }
+
+  /**
+   * Copies the state into {@code state[offset]} to {@code state[offset + 5]}
+   */
+  public void getState(int[] state, int offset) {
+    state[offset] = (int) s10;
+    state[offset + 1] = (int) s11;
+    state[offset + 2] = (int) s12;
+    state[offset + 3] = (int) s20;
+    state[offset + 4] = (int) s21;
+    state[offset + 5] = (int) s22;
+  }
+
+  /**
+   * @return the next double in the open interval (0, 1)
+   */
+  public double nextDouble() {
+    long p1 = (A12 * s11 - A13N * s10) % M1;
+    if (p1 < 0) {
+      p1 += M1;
+    }
+    s10 = s11;
+    s11 = s12;
+    s12 = p1;
+
+    long p2 = (A21 * s22 - A23N * s20) % M2;
+    if (p2 < 0) {
+      p2 += M2;
+    }
+    s20 = s21;
+    s21 = s22;
+    s22 = p2;
+
+    return ((p1 > p2) ? (p1 - p2) : (p1 - p2 + M1)) * NORMC;
+  }
+
+  /**
+   * Fills {@code values[start]} to {@code values[end - 1]} with the next doubles, exactly as repeated
+   * calls to {@link #nextDouble()} would, but keeping the state in local variables.
+   */
+  public void nextDoubles(double[] values, int start, int end) {
+    long s10 = this.s10, s11 = this.s11, s12 = this.s12;
+    long s20 = this.s20, s21 = this.s21, s22 = this.s22;
+
+    for (int i = start; i < end; i++) {
+      long p1 = (A12 * s11 - A13N * s10) % M1;
+      if (p1 < 0) {
+        p1 += M1;
+      }
+      s10 = s11;
+      s11 = s12;
+      s12 = p1;
+
+      long p2 = (A21 * s22 - A23N * s20) % M2;
+      if (p2 < 0) {
+        p2 += M2;
+      }
+      s20 = s21;
+      s21 = s22;
+      s22 = p2;
+
+      values[i] = ((p1 > p2) ? (p1 - p2) : (p1 - p2 + M1)) * NORMC;
+    }
+
+    this.s10 = s10;
+    this.s11 = s11;
+    this.s12 = s12;
+    this.s20 = s20;
+    this.s21 = s21;
+    this.s22 = s22;
+  }
+
+  /**
+   * @return the seed of the stream following the stream which starts at {@code state}.
+   */
+  public static int[] nextStream(int[] state) {
+    return jump(A1P127, A2P127, state);
+  }
+
+  /**
+   * @return the seed of the substream following the substream which starts at {@code state}.
+   */
+  public static int[] nextSubStream(int[] state) {
+    return jump(A1P76, A2P76, state);
+  }
+
+  private static int[] jump(long[][] a1, long[][] a2, int[] state) {
+    checkState(state);
+    int[] next = new int[6];
+    for (int i = 0; i < 3; i++) {
+      long tmp = 0;
+      for (int j = 0; j < 3; j++) {
+        tmp = (tmp + multiplyMod(a1[i][j], unsigned(state[j]), M1)) % M1;
+      }
+      next[i] = (int) tmp;
+    }
+    for (int i = 0; i < 3; i++) {
+      long tmp = 0;
+      for (int j = 0; j < 3; j++) {
+        tmp = (tmp + multiplyMod(a2[i][j], unsigned(state[j + 3]), M2)) % M2;
+      }
+      next[i + 3] = (int) tmp;
+    }
+    return next;
+  }
+
+  /**
+   * Computes {@code (a * s) mod m} for {@code a} and {@code s} less than 2^32, whose product may
+   * not fit in a signed 64-bit integer.
+   */
+  static long multiplyMod(long a, long s, long m) {
+    long high = ((a >>> 16) * s) % m;
+    return ((high << 16) + (a & 0xFFFFL) * s) % m;
+  }
+
+  private static void checkState(int[] state) {
+    if (state.length != 6) {
+      throw new EvalException("L'Ecuyer-CMRG seeds must have six elements");
+    }
+    boolean notAllZero1 = false;
+    boolean notAllZero2 = false;
+    for (int j = 0; j < 3; j++) {
+      if (unsigned(state[j]) >= M1 || unsigned(state[j + 3]) >= M2) {
+        throw new EvalException("invalid L'Ecuyer-CMRG seed");
+      }
+      notAllZero1 |= state[j] != 0;
+      notAllZero2 |= state[j + 3] != 0;
+    }
+    if (!notAllZero1 || !notAllZero2) {
+      throw new EvalException("invalid L'Ecuyer-CMRG seed");
+    }
+  }
+
+  private static long unsigned(int x) {
+    return x & 0xFFFFFFFFL;
+  }
+}
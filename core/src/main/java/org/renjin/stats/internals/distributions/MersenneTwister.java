@@ -13,6 +13,7 @@ public class MersenneTwister {
     private static final int TEMPERING_MASK_B = 0x9d2c5680;
     private static final int TEMPERING_MASK_C = 0xefc60000;
     private static final int GNU_R_SEED_SCRAMBLE_CONSTANT = 50;
+    private static final int[] MAG01 = new int[]{0x0, MATRIX_A};
 
     private int[] stateVector = new int[N + 1];
     private int stateVectorIndex = N+1;
@@ -87,7 +88,7 @@ public class MersenneTwister {
      */
     public double nextDouble() {
         int y;
-        int[] mag01 = new int[]{0x0, MATRIX_A};
+        int[] mag01 = MAG01;
 
         stateVectorIndex = stateVector[0];
 
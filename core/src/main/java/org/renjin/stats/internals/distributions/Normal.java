@@ -22,6 +22,8 @@ package org.renjin.stats.internals.distributions;
 
 import org.renjin.eval.Session;
 
+import java.util.Arrays;
+
 
 public class Normal {
 
@@ -90,6 +92,45 @@ public class Normal {
     }
   }
 
+  /**
+   * Fills {@code values} with normal random numbers, drawing the same numbers as repeated calls to 
+   * {@link #rnorm(Session, double, double)}.
+   */
+  public static void rnorm(Session context, double mu, double sigma, double[] values) {
+    if (sigma < 0.) {
+      Arrays.fill(values, Double.NaN);
+    } else if (sigma == 0.) {
+      Arrays.fill(values, mu);
+    } else {
+      norm_rand(context, values);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = mu + sigma * values[i];
+      }
+    }
+  }
+
+  /**
+   * Fills {@code values} with standard normal random numbers, drawing the same numbers as repeated calls to 
+   * {@link #norm_rand(Session)}. With the default inversion method, the uniforms are drawn in blocks.
+   */
+  public static void norm_rand(Session context, double[] values) {
+    if (N01_kind != N01type.INVERSION) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = norm_rand(context);
+      }
+      return;
+    }
+    int BIG = 134217728; /* 2^27 */
+    double[] u = new double[2 * Math.min(values.length, RNG.BLOCK_SIZE)];
+    for (int start = 0; start < values.length; start += RNG.BLOCK_SIZE) {
+      int count = Math.min(values.length - start, RNG.BLOCK_SIZE);
+      context.rng.unif_rand(u, 0, 2 * count);
+      for (int j = 0; j < count; j++) {
+        double u1 = (int) (BIG * u[2 * j]) + u[2 * j + 1];
+        values[start + j] = qnorm5(u1 / BIG, 0.0, 1.0, 1, 0);
+      }
+    }
+  }
   
   public static double norm_rand(Session context) {
     double s, u1, w, y, u2, u3, aa, tt, theta, R;
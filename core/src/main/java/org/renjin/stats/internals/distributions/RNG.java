@@ -8,15 +8,38 @@ import org.renjin.invoke.annotations.Current;
 import org.renjin.invoke.annotations.Internal;
 import org.renjin.sexp.*;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 
 public class RNG {
 
+  private static final Symbol RANDOM_SEED = Symbol.get(".Random.seed");
+
+  /**
+   * The number of uniforms drawn at a time by the bulk generators
+   */
+  static final int BLOCK_SIZE = 4096;
+
   public MersenneTwister mersenneTwisterAlg = null;
+  public LecuyerCMRG lecuyerCMRGAlg = null;
   public RNGtype RNG_kind = RNGtype.MERSENNE_TWISTER; //default
   public N01type N01_kind = N01type.INVERSION; //default
   int randomseed = 0;
   public Session context;
 
+  /**
+   * The {@code .Random.seed} vector last stored in or loaded from the global environment
+   */
+  private SEXP randomSeed = null;
+
+  /**
+   * The L'Ecuyer-CMRG seed of the last stream handed out by {@link #nextStreamSeed()},
+   * or {@code null} if none has been handed out since the generator was seeded.
+   */
+  private int[] lastStream = null;
+
+
+  private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong();
 
   public RNG(Session globals){
     this.context = globals;
@@ -72,6 +95,16 @@ public class RNG {
       }
       return;
 
+    case LECUYER_CMRG:
+      if (rng.lecuyerCMRGAlg == null) {
+        rng.lecuyerCMRGAlg = new LecuyerCMRG(seed);
+      } else {
+        rng.lecuyerCMRGAlg.setSeed(seed);
+      }
+      rng.lastStream = null;
+      rng.storeRandomSeed();
+      return;
+
     case KNUTH_TAOCP:
     case KNUTH_TAOCP2:
       throw new EvalException(rng.RNG_kind + " not implemented yet");
@@ -82,23 +115,47 @@ public class RNG {
     }
   }
 
+  /**
+   * Returns the seed of the next L'Ecuyer-CMRG stream, as {@code parallel::nextRNGStream}
+   */
+  @Internal
+  public static IntVector nextRNGStream(IntVector seed) {
+    return jump(seed, false);
+  }
+
+  /**
+   * Returns the seed of the next L'Ecuyer-CMRG substream, as {@code parallel::nextRNGSubStream}
+   */
+  @Internal
+  public static IntVector nextRNGSubStream(IntVector seed) {
+    return jump(seed, true);
+  }
+
+  private static IntVector jump(IntVector seed, boolean subStream) {
+    if (!isLecuyerSeed(seed)) {
+      throw new EvalException("invalid value of 'seed'");
+    }
+    int[] state = lecuyerState(seed);
+    int[] next = subStream ? LecuyerCMRG.nextSubStream(state) : LecuyerCMRG.nextStream(state);
+    return randomSeedVector(seed.getElementAsInt(0), next);
+  }
+
   @Internal
   public static DoubleVector runif(@Current Context context, int n, double a, double b) {
     RNG rng = context.getSession().rng;
-    DoubleArrayVector.Builder vb = DoubleArrayVector.Builder.withInitialCapacity(n);
+    double[] values = new double[n];
+    rng.unif_rand(values, 0, n);
     for (int i = 0; i < n; i++) {
-      vb.add(a + rng.unif_rand() * (b - a));
+      values[i] = a + values[i] * (b - a);
     }
-    return (vb.build());
+    return DoubleArrayVector.unsafe(values);
   }
 
   @Internal
   public static DoubleVector rnorm(@Current Context context, int n, double mean, double sd) {
-    DoubleArrayVector.Builder vb = DoubleArrayVector.Builder.withInitialCapacity(n);
-    for (int i = 0; i < n; i++) {
-      vb.add(Normal.rnorm(context.getSession(), mean, sd));
-    }
-    return (vb.build());
+    double[] values = new double[n];
+    Normal.rnorm(context.getSession(), mean, sd, values);
+    return DoubleArrayVector.unsafe(values);
   }
 
   @Internal
@@ -320,6 +377,11 @@ public class RNG {
       }
       return (mersenneTwisterAlg.nextDouble());
 
+    case LECUYER_CMRG:
+      value = lecuyerCMRG().nextDouble();
+      storeRandomSeed();
+      return value;
+
     case KNUTH_TAOCP:
     case KNUTH_TAOCP2:
       throw new EvalException(RNG_kind + " not implemented yet");
@@ -330,12 +392,148 @@ public class RNG {
     }
   }
 
+  /**
+   * Fills {@code values[start]} to {@code values[end - 1]} with the same uniforms as
+   * repeated calls to {@link #unif_rand()}, but only selects the generator once, 
+   * rather than for every draw.
+   */
+  public void unif_rand(double[] values, int start, int end) {
+    switch (this.RNG_kind) {
+    case MERSENNE_TWISTER:
+      if (mersenneTwisterAlg == null && start < end) {
+        // Seeds the generator
+        values[start++] = unif_rand();
+      }
+      MersenneTwister mt = mersenneTwisterAlg;
+      for (int i = start; i < end; i++) {
+        values[i] = mt.nextDouble();
+      }
+      return;
+
+    case LECUYER_CMRG:
+      lecuyerCMRG().nextDoubles(values, start, end);
+      storeRandomSeed();
+      return;
+
+    default:
+      for (int i = start; i < end; i++) {
+        values[i] = unif_rand();
+      }
+    }
+  }
+
+  /**
+   * Creates a generator for a forked session or a worker thread. 
+   * 
+   * <p>If this generator is L'Ecuyer-CMRG, the new generator starts at the stream following 
+   * the stream last handed out (see {@link #nextStreamSeed()}), just as
+   * {@code mclapply(mc.set.seed = TRUE)} does in GNU R. The streams are therefore
+   * independent of one another, and reproducible after {@code set.seed()}.
+   * Generators of other kinds are randomly seeded.</p>
+   */
+  public RNG newStream(Session session) {
+    RNG rng = new RNG(session);
+    rng.RNG_kind = RNG_kind;
+    rng.N01_kind = N01_kind;
+    if (RNG_kind == RNGtype.LECUYER_CMRG) {
+      rng.setStream(nextStreamSeed());
+    }
+    return rng;
+  }
+
+  /**
+   * Returns the seed of the L'Ecuyer-CMRG stream following the stream last handed out, beginning
+   * with the stream after this generator's current state. Note that this generator's own state
+   * is not changed.
+   */
+  public synchronized int[] nextStreamSeed() {
+    if (lastStream == null) {
+      lastStream = lecuyerCMRG().getState();
+    }
+    lastStream = LecuyerCMRG.nextStream(lastStream);
+    return lastStream;
+  }
+
+  /**
+   * Restarts the sequence of streams returned by {@link #nextStreamSeed()} from 
+   * this generator's current state, as {@code mc.reset.stream()}.
+   */
+  public synchronized void resetStream() {
+    lastStream = null;
+  }
+
+  /**
+   * Switches this generator to L'Ecuyer-CMRG, drawing from the stream with the given seed.
+   */
+  public void setStream(int[] seed) {
+    RNG_kind = RNGtype.LECUYER_CMRG;
+    lecuyerCMRGAlg = new LecuyerCMRG(seed);
+    lastStream = null;
+    storeRandomSeed();
+  }
+
+  /**
+   * Returns the L'Ecuyer-CMRG generator, first loading its state from {@code .Random.seed}
+   * if a new seed has been assigned to it, for example with a seed from
+   * {@code nextRNGStream()}.
+   */
+  private LecuyerCMRG lecuyerCMRG() {
+    SEXP seed = context.getGlobalEnvironment().getVariable(RANDOM_SEED);
+    if (seed != randomSeed) {
+      randomSeed = seed;
+      if (isLecuyerSeed(seed)) {
+        lecuyerCMRGAlg = new LecuyerCMRG(lecuyerState((IntVector) seed));
+        lastStream = null;
+      }
+    }
+    if (lecuyerCMRGAlg == null) {
+      Randomize(RNG_kind);
+    }
+    return lecuyerCMRGAlg;
+  }
+
+  /**
+   * Stores the state of the L'Ecuyer-CMRG generator in {@code .Random.seed}, so that it can be
+   * saved and restored, or passed to {@code nextRNGStream()}. As this is done after every
+   * single draw, the vector is stored directly in the global environment's frame.
+   */
+  private void storeRandomSeed() {
+    int[] seed = new int[7];
+    seed[0] = RNG_kind.ordinal() + 100 * N01_kind.ordinal();
+    lecuyerCMRGAlg.getState(seed, 1);
+    randomSeed = IntArrayVector.unsafe(seed);
+    context.getGlobalEnvironment().getFrame().setVariable(RANDOM_SEED, randomSeed);
+  }
+
+  private static boolean isLecuyerSeed(SEXP seed) {
+    return seed instanceof IntVector && seed.length() == 7 &&
+        ((IntVector) seed).getElementAsInt(0) % 100 == RNGtype.LECUYER_CMRG.ordinal();
+  }
+
+  private static int[] lecuyerState(IntVector seed) {
+    int[] state = new int[6];
+    for (int i = 0; i < state.length; i++) {
+      state[i] = seed.getElementAsInt(i + 1);
+    }
+    return state;
+  }
+
+  private static IntVector randomSeedVector(int kind, int[] state) {
+    int[] seed = new int[7];
+    seed[0] = kind;
+    System.arraycopy(state, 0, seed, 1, state.length);
+    return IntArrayVector.unsafe(seed);
+  }
+
   /*
    * This part of R is platform dependent. this formula is random itself :)
    */
   public void Randomize(RNGtype kind) {
     int sseed;
-    sseed = (int) (new java.util.Date()).getTime();
+    // Mix in a counter so that sessions randomized within the same
+    // millisecond, such as forks leased from a pool, get distinct streams
+    sseed = (int) ((new java.util.Date()).getTime() ^ System.nanoTime() ^ 
+        SEED_UNIQUIFIER.addAndGet(0x9E3779B97F4A7C15L));
     this.randomseed = sseed;
     switch (RNG_kind) {
 
@@ -356,6 +554,12 @@ public class RNG {
       }
       return;
 
+    case LECUYER_CMRG:
+      lecuyerCMRGAlg = new LecuyerCMRG(sseed);
+      lastStream = null;
+      storeRandomSeed();
+      return;
+
     case KNUTH_TAOCP:
     case KNUTH_TAOCP2:
       throw new EvalException(RNG_kind + " not implemented yet");
@@ -23,11 +23,14 @@ package org.renjin;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.renjin.sexp.Environment;
 import org.renjin.sexp.Logical;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class S3DispatchTest extends EvalTestCase {
@@ -135,4 +138,70 @@ public class S3DispatchTest extends EvalTestCase {
 
   }
 
+  @Test
+  public void redefinedMethodsAreDispatched() {
+    eval("area <- function(s) UseMethod('area')");
+    eval("area.default <- function(s) 0");
+    eval("sq <- structure(list(side=3), class=c('square', 'shape'))");
+
+    assertThat( eval("area(sq)"), equalTo(c(0)));
+
+    eval("area.shape <- function(s) -1");
+    assertThat( eval("area(sq)"), equalTo(c(-1)));
+
+    eval("area.square <- function(s) s$side^2");
+    assertThat( eval("area(sq)"), equalTo(c(9)));
+
+    eval("area.square <- function(s) s$side * 4");
+    assertThat( eval("area(sq)"), equalTo(c(12)));
+
+    eval("rm(area.square)");
+    assertThat( eval("area(sq)"), equalTo(c(-1)));
+  }
+
+  @Test
+  public void dispatchFromFunctionsSeesRedefinedMethods() {
+    eval("describe <- function(x) UseMethod('describe')");
+    eval("describe.foo <- function(x) 'foo'");
+    eval("x <- structure(1, class=c('bar', 'foo'))");
+    eval("f <- function(x) describe(x)");
+
+    assertThat( eval("f(x)"), equalTo(c("foo")));
+    assertThat( eval("f(x)"), equalTo(c("foo")));
+
+    eval("describe.bar <- function(x) paste('bar', NextMethod())");
+    assertThat( eval("f(x)"), equalTo(c("bar foo")));
+    assertThat( eval("f(structure(1, class='foo'))"), equalTo(c("foo")));
+  }
+
+  @Test
+  public void methodsReplacedByOtherValuesAreNotDispatched() {
+    eval("area <- function(s) UseMethod('area')");
+    eval("area.shape <- function(s) -1");
+    eval("area.square <- function(s) s$side^2");
+    eval("sq <- structure(list(side=3), class=c('square', 'shape'))");
+    eval("f <- function(s) area(s)");
+
+    assertThat( eval("f(sq)"), equalTo(c(9)));
+
+    eval("area.square <- 42");
+    assertThat( eval("f(sq)"), equalTo(c(-1)));
+  }
+
+  @Test
+  public void cacheDoesNotRetainEnvironments() {
+    eval("make <- function() { describe <- function(x) UseMethod('describe'); describe.baz <- function(x) 'baz'; h <- function(x) describe(x); environment() }");
+    eval("e <- make()");
+    assertThat( eval("e$h(structure(1, class='baz'))"), equalTo(c("baz")));
+
+    WeakReference<Environment> ref = new WeakReference<Environment>((Environment) eval("e"));
+    eval("rm(e)");
+    eval("NULL");
+
+    for(int i = 0; i < 10 && ref.get() != null; i++) {
+      System.gc();
+    }
+    assertThat(ref.get(), nullValue());
+  }
+
 }
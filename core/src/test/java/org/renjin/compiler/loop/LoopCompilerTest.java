@@ -0,0 +1,176 @@
+package org.renjin.compiler.loop;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.FunctionCall;
+
+import java.lang.ref.WeakReference;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LoopCompilerTest extends EvalTestCase {
+
+  @Before
+  public void compileEarly() {
+    LoopProfile.setThreshold(5);
+  }
+
+  @After
+  public void restoreThreshold() {
+    LoopProfile.setThreshold(1000);
+  }
+
+  @Test
+  public void sum() {
+    eval("f <- function(n) { s <- 0; for(i in 1:n) s <- s + i * 2; s }");
+    assertThat(eval("f(100)"), equalTo(c(10100)));
+    assertThat(eval("f(1000)"), equalTo(c(1001000)));
+
+    LoopProfile profile = profile("body(f)[[3]]");
+    assertThat(profile.getCompletedRuns(), equalTo(2));
+    assertThat(profile.getDeoptimizations(), equalTo(0));
+  }
+
+  @Test
+  public void loopVariableIsAssigned() {
+    eval("f <- function(n) { for(i in 1:n) { } ; i }");
+    assertThat(eval("f(100)"), equalTo(c_i(100)));
+  }
+
+  @Test
+  public void doubleSequence() {
+    eval("f <- function(x) { s <- 0; for(v in x) s <- s + sqrt(v); s }");
+    eval("x <- 1:100 + 0.5");
+    assertThat(eval("f(x)"), equalTo(eval("sum(sqrt(x))")));
+  }
+
+  @Test
+  public void fillAndGrowVector() {
+    eval("f <- function(n) { y <- 0; for(i in 1:n) y[i] <- i^2; y }");
+    assertThat(eval("f(50)"), equalTo(eval("(1:50)^2")));
+  }
+
+  @Test
+  public void readElements() {
+    eval("f <- function(x) { s <- 0; for(i in 1:length(x)) s <- s + x[[i]] * x[i]; s }");
+    eval("x <- (1:200) / 10");
+    assertThat(eval("f(x)"), equalTo(eval("sum(x * x)")));
+  }
+
+  @Test
+  public void whileWithNext() {
+    eval("f <- function(n) { i <- 0L; s <- 0; " +
+        "while(i < n) { i <- i + 1L; if(i %% 3L == 0L) next; s <- s + i }; c(i, s) }");
+    assertThat(eval("f(99L)"), equalTo(c(99, 3267)));
+    assertThat(profile("body(f)[[4]]").getCompletedRuns(), equalTo(1));
+  }
+
+  @Test
+  public void breakLeavesLoopVariable() {
+    eval("f <- function(n) { y <- integer(0); for(i in 1:n) { if(i > 50) break; y[i] <- i * 2L }; list(i, y) }");
+    eval("r <- f(100)");
+    assertThat(eval("r[[1]]"), equalTo(c_i(51)));
+    assertThat(eval("r[[2]]"), equalTo(eval("(1:50) * 2L")));
+  }
+
+  @Test
+  public void nestedLoops() {
+    eval("f <- function(n) { s <- 0; for(i in 1:n) for(j in 1:5) s <- s + i * j; s }");
+    assertThat(eval("f(100)"), equalTo(c(75750)));
+    assertThat(profile("body(f)[[3]]").getCompletedRuns(), equalTo(1));
+  }
+
+  @Test
+  public void shortCircuitConditions() {
+    eval("f <- function(x) { n <- 0L; for(v in x) { if(v > 20 && v < 40) n <- n + 1L }; n }");
+    assertThat(eval("f(1:100 + 0.5)"), equalTo(c_i(20)));
+  }
+
+  @Test
+  public void missingValues() {
+    eval("f <- function(x) { s <- 0; for(i in 1:length(x)) s <- s + x[i]; s }");
+    eval("x <- (1:100) / 2");
+    assertThat(eval("f(x)"), equalTo(c(2525)));
+    eval("x[60] <- NA");
+    assertThat(eval("f(x)"), equalTo(c(DoubleVector.NA)));
+
+    // Double NAs propagate through the compiled arithmetic without leaving the compiled code
+    LoopProfile profile = profile("body(f)[[3]]");
+    assertThat(profile.getCompletedRuns(), equalTo(2));
+    assertThat(profile.getDeoptimizations(), equalTo(0));
+  }
+
+  @Test
+  public void errorIsSignaledByInterpreter() {
+    eval("f <- function(x) { n <- 0L; for(v in x) if(v > 50) n <- n + 1L; n }");
+    assertThat(eval("f(1:100 + 0)"), equalTo(c_i(50)));
+    assertThat(eval("tryCatch(f(c(1:100, NA)), error = function(e) -1L)"), equalTo(c_i(-1)));
+
+    LoopProfile profile = profile("body(f)[[3]]");
+    assertThat(profile.getCompletedRuns(), equalTo(1));
+    assertThat(profile.getDeoptimizations(), equalTo(1));
+  }
+
+  @Test
+  public void outOfBoundsFallsBack() {
+    eval("f <- function(x, n) { s <- 0; for(i in 1:n) s <- s + x[[i]]; s }");
+    assertThat(eval("f(1:100 / 4, 100)"), equalTo(c(1262.5)));
+    assertThat(eval("tryCatch(f(1:100 / 4, 101), error = function(e) -1)"), equalTo(c(-1)));
+
+    LoopProfile profile = profile("body(f)[[3]]");
+    assertThat(profile.getCompletedRuns(), equalTo(1));
+    assertThat(profile.getDeoptimizations(), equalTo(1));
+  }
+
+  @Test
+  public void changedTypesFallBack() {
+    eval("f <- function(x) { s <- 0; for(v in x) s <- s + v; s }");
+    assertThat(eval("f(1:100 / 2)"), equalTo(c(2525)));
+    assertThat(eval("f(1:100)"), equalTo(c(5050)));
+    assertThat(eval("tryCatch(f(as.character(1:100)), error = function(e) 'error')"), equalTo(c("error")));
+
+    LoopProfile profile = profile("body(f)[[3]]");
+    assertThat(profile.getCompletedRuns(), equalTo(1));
+    assertThat(profile.getDeoptimizations(), equalTo(2));
+  }
+
+  @Test
+  public void redefinedBuiltinsAreCalled() {
+    eval("f <- function(n) { s <- 0; for(i in 1:n) s <- s + sqrt(i); s }");
+    assertThat(((DoubleVector) eval("f(100)")).getElementAsDouble(0), closeTo(671.4629, 0.0001));
+    eval("sqrt <- function(x) 1");
+    assertThat(eval("f(100)"), equalTo(c(100)));
+
+    LoopProfile profile = profile("body(f)[[3]]");
+    assertThat(profile.getCompletedRuns(), equalTo(1));
+    assertThat(profile.getDeoptimizations(), equalTo(1));
+  }
+
+  @Test
+  public void profilesDoNotRetainLoops() {
+    FunctionCall loop = (FunctionCall) RParser.parseSource("for(i in 1:100) s <- i\n").getElementAsSEXP(0);
+    topLevelContext.evaluate(loop);
+    assertThat(LoopProfile.of(loop).getCompletedRuns(), equalTo(1));
+
+    WeakReference<FunctionCall> reference = new WeakReference<>(loop);
+    loop = null;
+    for (int i = 0; i < 20 && reference.get() != null; i++) {
+      System.gc();
+    }
+    assertThat(reference.get(), nullValue());
+  }
+
+  /**
+   * @return the profile of the loop call returned by {@code loop}
+   */
+  private LoopProfile profile(String loop) {
+    return LoopProfile.of((FunctionCall) eval(loop));
+  }
+}
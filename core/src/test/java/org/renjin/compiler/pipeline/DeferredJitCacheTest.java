@@ -0,0 +1,135 @@
+package org.renjin.compiler.pipeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.renjin.primitives.R$primitive$$times$deferred_dd;
+import org.renjin.primitives.summary.DeferredMean;
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.IntArrayVector;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.objectweb.asm.Opcodes.*;
+
+public class DeferredJitCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void classesAreReusedFromDisk() {
+    File dir = folder.getRoot();
+    DeferredNode node = meanOfSquares(new DoubleArrayVector(1, 2, 3));
+
+    DeferredJitCache first = new DeferredJitCache(10, new DiskJitCache(dir, 10));
+    assertThat(first.compile(node).compute(node.flattenVectors())[0], closeTo(14d / 3d, 1e-9));
+    assertThat(first.compile(node), sameInstance(first.compile(node)));
+
+    DeferredJitCache.Stats stats = first.getStats();
+    assertThat(stats.getCompileCount(), equalTo(1L));
+    assertThat(stats.getMemoryHitCount(), equalTo(2L));
+    assertThat(stats.getDiskMissCount(), equalTo(1L));
+    assertThat(stats.getDiskSize(), equalTo(1));
+
+    // A new cache, as in a new JVM, loads the class from disk rather than generating it again
+    DeferredJitCache second = new DeferredJitCache(10, new DiskJitCache(dir, 10));
+    assertThat(second.compile(node).compute(node.flattenVectors())[0], closeTo(14d / 3d, 1e-9));
+
+    stats = second.getStats();
+    assertThat(stats.getCompileCount(), equalTo(0L));
+    assertThat(stats.getDiskHitCount(), equalTo(1L));
+  }
+
+  @Test
+  public void leastRecentlyUsedClassesAreEvicted() {
+    DiskJitCache diskCache = new DiskJitCache(folder.getRoot(), 1);
+    DeferredJitCache cache = new DeferredJitCache(10, diskCache);
+
+    cache.compile(meanOfSquares(new DoubleArrayVector(1, 2, 3)));
+    cache.compile(meanOfSquares(new IntArrayVector(1, 2, 3)));
+
+    assertThat(diskCache.getEvictionCount(), equalTo(1L));
+    assertThat(diskCache.size(), equalTo(1));
+    assertThat(diskCache.getDirectory().listFiles().length, equalTo(1));
+  }
+
+  @Test
+  public void corruptClassesAreDiscarded() throws Exception {
+    DeferredNode node = meanOfSquares(new DoubleArrayVector(1, 2, 3));
+    DiskJitCache diskCache = new DiskJitCache(folder.getRoot(), 10);
+    diskCache.store(node.jitKey(), new byte[] { 1, 2, 3 });
+
+    DeferredJitCache cache = new DeferredJitCache(10, diskCache);
+    assertThat(cache.compile(node).compute(node.flattenVectors())[0], closeTo(14d / 3d, 1e-9));
+    assertThat(cache.getStats().getCompileCount(), equalTo(1L));
+  }
+
+  @Test
+  public void cacheIsSpecificToTheBuild() {
+    DiskJitCache diskCache = new DiskJitCache(folder.getRoot(), 10);
+    String name = diskCache.getDirectory().getName();
+
+    assertThat(DiskJitCache.buildFingerprint().length(), equalTo(12));
+    assertThat(name, endsWith("-" + DiskJitCache.buildFingerprint()));
+    assertThat(DiskJitCache.versionName(), equalTo(name));
+  }
+
+  @Test
+  public void classesWhichFailToLinkAreDiscarded() {
+    DeferredNode node = meanOfSquares(new DoubleArrayVector(1, 2, 3));
+    DiskJitCache diskCache = new DiskJitCache(folder.getRoot(), 10);
+    diskCache.store(node.jitKey(), classCallingMissingMethod(DiskJitCache.className(node.jitKey())));
+
+    DeferredJitCache cache = new DeferredJitCache(10, diskCache);
+    new DeferredNodeComputer(node, null, Integer.MAX_VALUE, cache).run();
+
+    assertThat(cache.getStats().getDiskHitCount(), equalTo(1L));
+    assertThat(node.getVector().getElementAsDouble(0), closeTo(14d / 3d, 1e-9));
+    assertThat(diskCache.size(), equalTo(0));
+
+    // The next computation of the same shape generates the class again
+    DeferredNode next = meanOfSquares(new DoubleArrayVector(1, 2, 3));
+    assertThat(cache.compile(next).compute(next.flattenVectors())[0], closeTo(14d / 3d, 1e-9));
+    assertThat(cache.getStats().getCompileCount(), equalTo(1L));
+  }
+
+  /**
+   * @return a class which loads successfully, but whose {@code compute()} method calls a method
+   * which does not exist, as a class generated by an older build might.
+   */
+  private byte[] classCallingMissingMethod(String className) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_6, ACC_PUBLIC + ACC_SUPER, className, null, "java/lang/Object",
+        new String[] { "org/renjin/compiler/pipeline/JittedComputation" });
+
+    MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(ALOAD, 0);
+    init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    init.visitInsn(RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    MethodVisitor compute = cw.visitMethod(ACC_PUBLIC, "compute", "([Lorg/renjin/sexp/Vector;)[D", null, null);
+    compute.visitCode();
+    compute.visitMethodInsn(INVOKESTATIC, "org/renjin/sexp/DoubleArrayVector", "noSuchMethod", "()[D", false);
+    compute.visitInsn(ARETURN);
+    compute.visitMaxs(0, 0);
+    compute.visitEnd();
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private DeferredNode meanOfSquares(org.renjin.sexp.Vector x) {
+    DeferredMean mean = new DeferredMean(new R$primitive$$times$deferred_dd(x, x, AttributeMap.EMPTY),
+        AttributeMap.EMPTY);
+    return new DeferredGraph(mean).getRoot();
+  }
+}
@@ -0,0 +1,114 @@
+package org.renjin.compiler.pipeline;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renjin.primitives.R$primitive$$times$deferred_dd;
+import org.renjin.primitives.matrix.DeferredRowMeans;
+import org.renjin.primitives.summary.DeferredMean;
+import org.renjin.primitives.summary.DeferredSum;
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.Vector;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MultiThreadedVectorPipelinerTest {
+
+  private ExecutorService executor;
+  private MultiThreadedVectorPipeliner pipeliner;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+    pipeliner = new MultiThreadedVectorPipeliner(executor, new ForkJoinPool(4), 100);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void sumInChunks() {
+    DoubleArrayVector x = sequence(10000);
+    Vector squares = new R$primitive$$times$deferred_dd(x, x, AttributeMap.EMPTY);
+    DeferredSum sum = new DeferredSum(squares, AttributeMap.EMPTY);
+
+    pipeliner.materialize(sum);
+
+    assertThat(sum.isCalculated(), equalTo(true));
+    assertThat(sum.getElementAsDouble(0), closeTo(sumOfSquares(10000), 1e-6));
+    assertThat(pipeliner.getLastTimings().size(), equalTo(1));
+    assertThat(pipeliner.getLastTimings().get(0).getChunkCount(), greaterThan(1));
+  }
+
+  @Test
+  public void smallVectorsAreNotSplit() {
+    DoubleArrayVector x = sequence(50);
+    DeferredMean mean = new DeferredMean(new R$primitive$$times$deferred_dd(x, x, AttributeMap.EMPTY),
+        AttributeMap.EMPTY);
+
+    pipeliner.materialize(mean);
+
+    assertThat(mean.getElementAsDouble(0), closeTo(sumOfSquares(50) / 50, 1e-9));
+    assertThat(pipeliner.getLastTimings().get(0).getChunkCount(), equalTo(1));
+  }
+
+  @Test
+  public void rowMeansInChunks() {
+    int numRows = 3;
+    int numCols = 1000;
+    DoubleArrayVector x = sequence(numRows * numCols);
+    DeferredRowMeans rowMeans = new DeferredRowMeans(
+        new R$primitive$$times$deferred_dd(x, x, AttributeMap.EMPTY), numRows, AttributeMap.EMPTY);
+
+    pipeliner.materialize(rowMeans);
+
+    assertThat(rowMeans.isCalculated(), equalTo(true));
+    for(int row=0;row!=numRows;++row) {
+      double expected = 0;
+      for(int col=0;col!=numCols;++col) {
+        double value = col * numRows + row;
+        expected += value * value;
+      }
+      assertThat(rowMeans.getElementAsDouble(row), closeTo(expected / numCols, 1e-6));
+    }
+  }
+
+  @Test
+  public void dependentNodesAreComputedInOrder() {
+    DoubleArrayVector x = sequence(1000);
+    DeferredSum sum = new DeferredSum(x, AttributeMap.EMPTY);
+    DeferredMean mean = new DeferredMean(new R$primitive$$times$deferred_dd(x, sum, AttributeMap.EMPTY),
+        AttributeMap.EMPTY);
+
+    pipeliner.materialize(mean);
+
+    double expectedSum = 999 * 1000 / 2;
+    assertThat(sum.getElementAsDouble(0), closeTo(expectedSum, 1e-6));
+    assertThat(mean.getElementAsDouble(0), closeTo(expectedSum * expectedSum / 1000, 1e-3));
+    assertThat(pipeliner.getLastTimings().size(), equalTo(2));
+  }
+
+  private static DoubleArrayVector sequence(int length) {
+    double[] values = new double[length];
+    for(int i=0;i!=length;++i) {
+      values[i] = i;
+    }
+    return DoubleArrayVector.unsafe(values);
+  }
+
+  private static double sumOfSquares(int length) {
+    double sum = 0;
+    for(int i=0;i!=length;++i) {
+      sum += (double)i * i;
+    }
+    return sum;
+  }
+}
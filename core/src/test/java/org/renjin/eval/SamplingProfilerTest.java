@@ -0,0 +1,123 @@
+package org.renjin.eval;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SamplingProfilerTest extends EvalTestCase {
+
+  @Test
+  public void aggregateSamples() {
+    SampledProfile profile = new SampledProfile(TimeUnit.MILLISECONDS.toNanos(10));
+    profile.record(Arrays.asList("sum", "g", "f"));
+    profile.record(Arrays.asList("g", "f"));
+    profile.record(Arrays.asList("f", "f"));
+    profile.record(Arrays.<String>asList());
+
+    assertThat(profile.getSampleCount(), equalTo(4L));
+    assertThat(profile.getSelfSamples("f"), equalTo(1L));
+    assertThat(profile.getTotalSamples("f"), equalTo(3L));
+    assertThat(profile.getSelfSamples("sum"), equalTo(1L));
+    assertThat(profile.getTotalSamples("g"), equalTo(2L));
+
+    StringWriter collapsed = new StringWriter();
+    profile.writeCollapsedStacks(new PrintWriter(collapsed));
+    List<String> lines = Arrays.asList(collapsed.toString().split("\n"));
+    assertThat(lines, containsInAnyOrder("f;g;sum 1", "f;g 1", "f;f 1"));
+  }
+
+  /**
+   * Takes a sample each time R code calls {@code SamplingProfilerTest$sample()}, rather
+   * than at a fixed interval, so that the samples do not depend on timing.
+   */
+  private static class ManualTrigger implements SamplingProfiler.Trigger {
+    private Runnable sample;
+
+    @Override
+    public void start(Runnable sample, long intervalNanos) {
+      this.sample = sample;
+    }
+
+    @Override
+    public void stop() {
+      this.sample = null;
+    }
+  }
+
+  private static ManualTrigger trigger;
+
+  public static void sample() {
+    trigger.sample.run();
+  }
+
+  private SamplingProfiler startManualProfiler() {
+    trigger = new ManualTrigger();
+    SamplingProfiler profiler = new SamplingProfiler(10, TimeUnit.MILLISECONDS, trigger);
+    return topLevelContext.getSession().startProfiler(profiler);
+  }
+
+  @Test
+  public void sampleSession() {
+    eval("import(org.renjin.eval.SamplingProfilerTest)");
+    eval("spin <- function(n) { SamplingProfilerTest$sample(); s <- 0; for(i in 1:n) s <- s + sqrt(i); " +
+        "SamplingProfilerTest$sample(); s }");
+    eval("outer <- function() spin(100)");
+
+    Session session = topLevelContext.getSession();
+    SamplingProfiler profiler = startManualProfiler();
+    assertThat(profiler.isRunning(), equalTo(true));
+    eval("for(k in 1:3) outer()");
+    SampledProfile profile = session.stopProfiler();
+
+    assertThat(profiler.isRunning(), equalTo(false));
+    assertThat(trigger.sample, nullValue());
+    assertThat(session.getProfiler(), nullValue());
+    assertThat(profile.getSampleCount(), equalTo(6L));
+    assertThat(profile.getTotalSamples("outer"), equalTo(6L));
+    assertThat(profile.getTotalSamples("spin"), equalTo(6L));
+    assertThat(profile.getSelfSamples("spin"), equalTo(6L));
+    assertThat(profile.getSelfSamples("outer"), equalTo(0L));
+  }
+
+  @Test
+  public void writeSamples() throws Exception {
+    eval("import(org.renjin.eval.SamplingProfilerTest)");
+    eval("spin <- function() SamplingProfilerTest$sample()");
+
+    SamplingProfiler profiler = startManualProfiler();
+    StringWriter output = new StringWriter();
+    profiler.setOutput(output);
+    eval("spin()");
+    topLevelContext.getSession().stopProfiler();
+
+    String[] lines = output.toString().split("\n");
+    assertThat(lines.length, equalTo(2));
+    assertThat(lines[0], equalTo("sample.interval=10000"));
+    assertThat(lines[1], containsString("\"spin\""));
+  }
+
+  @Test
+  public void rprof() throws Exception {
+    File file = File.createTempFile("Rprof", ".out");
+    file.deleteOnExit();
+
+    eval(".Internal(Rprof('" + file.getAbsolutePath() + "', FALSE, 0.001, FALSE, FALSE, FALSE, 100L, 10000L))");
+    assertThat(topLevelContext.getSession().getProfiler().isRunning(), equalTo(true));
+    eval(".Internal(Rprof('', FALSE, 0.02, FALSE, FALSE, FALSE, 100L, 10000L))");
+    assertThat(topLevelContext.getSession().getProfiler(), nullValue());
+
+    List<String> lines = Files.readLines(file, StandardCharsets.UTF_8);
+    assertThat(lines.get(0), equalTo("sample.interval=1000"));
+  }
+}
@@ -0,0 +1,111 @@
+package org.renjin.eval;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.Symbol;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SessionPoolTest {
+
+  private Session template;
+
+  @Before
+  public void setUpTemplate() {
+    template = new SessionBuilder().build();
+    eval(template, "shared <- 42");
+  }
+
+  @Test
+  public void forkHasOwnGlobalEnvironment() {
+    Session fork = template.fork();
+
+    assertThat(fork.getTemplate(), sameInstance(template));
+    assertThat(fork.getBaseEnvironment(), sameInstance(template.getBaseEnvironment()));
+    assertThat(fork.getNamespaceRegistry(), sameInstance(template.getNamespaceRegistry()));
+    assertThat(fork.getGlobalEnvironment(), not(sameInstance(template.getGlobalEnvironment())));
+    assertThat(fork.getConnectionTable(), not(sameInstance(template.getConnectionTable())));
+    assertThat(fork.rng, not(sameInstance(template.rng)));
+
+    // variables of the template's global environment are copied into the fork
+    assertThat(eval(fork, "shared + 1"), equalTo(eval(fork, "43")));
+
+    // but assignments are not visible to the template or other forks
+    eval(fork, "x <- 1; shared <- 0");
+    assertThat(template.getGlobalEnvironment().hasVariable(Symbol.get("x")), equalTo(false));
+    assertThat(eval(template.fork(), "shared"), equalTo(eval(template, "42")));
+  }
+
+  @Test
+  public void forkHasOwnOptions() {
+    eval(template, "options(digits = 3)");
+
+    Session fork = template.fork();
+    eval(fork, "options(digits = 10)");
+
+    assertThat(eval(template, "getOption('digits')"), equalTo(eval(template, "3")));
+    assertThat(eval(fork, "getOption('digits')"), equalTo(eval(fork, "10")));
+  }
+
+  @Test
+  public void leaseAndRelease() throws InterruptedException {
+    SessionPool pool = new SessionPool(template, 2, 1);
+    assertThat(pool.getMetrics().getIdleCount(), equalTo(1));
+
+    Session first = pool.lease();
+    Session second = pool.lease();
+    assertThat(first, not(sameInstance(second)));
+    assertThat(pool.getMetrics().getActiveCount(), equalTo(2));
+
+    // the pool is exhausted
+    assertThat(pool.tryLease(10, TimeUnit.MILLISECONDS), nullValue());
+
+    eval(first, "x <- 1");
+    pool.release(first);
+
+    // the next lease starts from a clean fork
+    Session third = pool.lease();
+    assertThat(third, not(sameInstance(first)));
+    assertThat(eval(third, "exists('x')"), equalTo((SEXP) LogicalVector.FALSE));
+
+    pool.release(second);
+    pool.release(third);
+
+    SessionPool.Metrics metrics = pool.getMetrics();
+    assertThat(metrics.getActiveCount(), equalTo(0));
+    assertThat(metrics.getPeakActiveCount(), equalTo(2));
+    assertThat(metrics.getLeaseCount(), equalTo(3L));
+    assertThat(metrics.getTimeoutCount(), equalTo(1L));
+    assertThat(metrics.getIdleCount(), equalTo(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void releaseTwice() throws InterruptedException {
+    SessionPool pool = new SessionPool(template, 1, 0);
+    Session session = pool.lease();
+    pool.release(session);
+    pool.release(session);
+  }
+
+  @Test
+  public void forksHaveIndependentRandomStreams() {
+    Session a = template.fork();
+    Session b = template.fork();
+
+    DoubleVector x = (DoubleVector) eval(a, ".Internal(runif(5, 0, 1))");
+    DoubleVector y = (DoubleVector) eval(b, ".Internal(runif(5, 0, 1))");
+
+    assertThat(x, not(equalTo(y)));
+  }
+
+  private static SEXP eval(Session session, String source) {
+    return session.getTopLevelContext().evaluate(RParser.parseSource(source + "\n"));
+  }
+}
@@ -1,21 +1,118 @@
 package org.renjin.packaging;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.renjin.eval.Context;
 import org.renjin.parser.RParser;
 import org.renjin.primitives.packaging.FqPackageName;
 import org.renjin.primitives.packaging.Namespace;
-import org.renjin.sexp.Closure;
-import org.renjin.sexp.NamedValue;
+import org.renjin.sexp.*;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class LazyLoadFrameBuilderTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void allValuesAreDeferred() throws Exception {
+    Context context = Context.newTopLevelContext();
+    Environment env = Environment.createChildEnvironment(context.getGlobalEnvironment());
+    env.setVariable("small", new IntArrayVector(1, 2, 3));
+    env.setVariable("large", new DoubleArrayVector(new double[1000]));
+    env.setVariable("._hidden", new StringArrayVector("a"));
+
+    final File dir = folder.getRoot();
+    new LazyLoadFrameBuilder(context).outputTo(dir).build(env);
+
+    // Everything is stored in a single resource
+    assertThat(dir.list().length, equalTo(1));
+
+    List<NamedValue> namedValues = Lists.newArrayList(LazyLoadFrame.load(context, filesIn(dir)));
+
+    assertThat(namedValues.size(), equalTo(3));
+    for (NamedValue namedValue : namedValues) {
+      assertThat(namedValue.getValue(), instanceOf(SerializedPromise.class));
+      SEXP value = namedValue.getValue().force(context);
+      assertThat(value, equalTo(env.getVariable(namedValue.getName())));
+    }
+  }
+
+  @Test
+  public void valuesCanBeForcedConcurrently() throws Exception {
+    Context context = Context.newTopLevelContext();
+    Environment env = Environment.createChildEnvironment(context.getGlobalEnvironment());
+    double[] values = new double[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    env.setVariable("x", new DoubleArrayVector(values));
+
+    File dir = folder.getRoot();
+    new LazyLoadFrameBuilder(context).outputTo(dir).build(env);
+
+    int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (int round = 0; round < 20; round++) {
+        final SEXP promise = LazyLoadFrame.load(context, filesIn(dir)).iterator().next().getValue();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<SEXP>> results = Lists.newArrayList();
+        for (int i = 0; i < numThreads; i++) {
+          results.add(executor.submit(new Callable<SEXP>() {
+            @Override
+            public SEXP call() throws Exception {
+              Context threadContext = Context.newTopLevelContext();
+              start.await();
+              return promise.force(threadContext);
+            }
+          }));
+        }
+        start.countDown();
+
+        SEXP first = results.get(0).get();
+        assertThat(first, equalTo(env.getVariable("x")));
+        for (Future<SEXP> result : results) {
+          assertThat(result.get(), sameInstance(first));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static Function<String, InputStream> filesIn(final File dir) {
+    return new Function<String, InputStream>() {
+      @Override
+      public InputStream apply(String name) {
+        try {
+          return new FileInputStream(new File(dir, name));
+        } catch (FileNotFoundException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
   @Ignore("todo")
   @Test
   public void test() throws Exception {
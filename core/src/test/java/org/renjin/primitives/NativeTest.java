@@ -0,0 +1,69 @@
+package org.renjin.primitives;
+
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+import org.renjin.eval.EvalException;
+import org.renjin.gcc.runtime.DoublePtr;
+import org.renjin.gcc.runtime.IntPtr;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class NativeTest extends EvalTestCase {
+
+  public static class Routines {
+    public static void scale_(DoublePtr x, IntPtr n, DoublePtr factor) {
+      for (int i = 0; i < n.array[0]; i++) {
+        x.array[x.offset + i] *= factor.array[0];
+      }
+    }
+
+    public static void count_(IntPtr n) {
+      n.array[0]++;
+    }
+  }
+
+  @Test
+  public void fortranByClassName() {
+    eval("z <- .Fortran('scale', x = c(1, 2, 3), 3L, 2, CLASS = 'org.renjin.primitives.NativeTest$Routines')");
+    assertThat(eval("z$x"), equalTo(c(2, 4, 6)));
+    assertThat(eval("z[[2]]"), equalTo(c_i(3)));
+  }
+
+  @Test
+  public void repeatedCallsShareCallSite() throws Exception {
+    String className = Routines.class.getName();
+    NativeCallSite site = NativeCallSite.ofFortran(className, "COUNT");
+    assertThat(NativeCallSite.ofFortran(className, "count"), sameInstance(site));
+
+    for (int i = 0; i < 3; i++) {
+      eval("n <- .Fortran('count', n = 41L, CLASS = 'org.renjin.primitives.NativeTest$Routines')$n");
+      assertThat(eval("n"), equalTo(c_i(42)));
+    }
+  }
+
+  @Test
+  public void methodHandleCallSite() throws Throwable {
+    NativeCallSite site = NativeCallSite.of(MethodHandles.publicLookup().findStatic(Routines.class, "count_",
+        MethodType.methodType(void.class, IntPtr.class)));
+
+    IntPtr n = new IntPtr(1);
+    assertThat(site.getParameterCount(), equalTo(1));
+    assertThat(site.invoke(new Object[] { n }), equalTo(null));
+    assertThat(n.array[0], equalTo(2));
+  }
+
+  @Test(expected = EvalException.class)
+  public void wrongNumberOfArguments() {
+    eval(".Fortran('scale', c(1, 2, 3), 3L, CLASS = 'org.renjin.primitives.NativeTest$Routines')");
+  }
+
+  @Test(expected = EvalException.class)
+  public void missingRoutine() {
+    eval(".Fortran('nothere', 1L, CLASS = 'org.renjin.primitives.NativeTest$Routines')");
+  }
+}
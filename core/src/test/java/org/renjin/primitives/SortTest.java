@@ -97,6 +97,33 @@ public class SortTest extends EvalTestCase {
         assertThat( eval(".Internal(order(TRUE,TRUE,c(1,1,1), c(1,2,1), c(3,9,1)))"), equalTo(c_i(2,1,3)));
     }
 
+    @Test
+    public void orderWithNAs() {
+        assertThat( eval(".Internal(order(TRUE, FALSE, c(3L, NA, 1L, 2L, NA, 1L)))"), equalTo(c_i(3, 6, 4, 1, 2, 5)));
+        assertThat( eval(".Internal(order(FALSE, FALSE, c(3L, NA, 1L, 2L, NA, 1L)))"), equalTo(c_i(2, 5, 3, 6, 4, 1)));
+        assertThat( eval(".Internal(order(TRUE, TRUE, c(3L, NA, 1L, 2L, NA, 1L)))"), equalTo(c_i(1, 4, 3, 6, 2, 5)));
+        assertThat( eval(".Internal(order(TRUE, FALSE, c(2.5, NA, -1, NaN, -Inf, 0, -0)))"), equalTo(c_i(5, 3, 7, 6, 1, 4, 2)));
+        assertThat( eval(".Internal(order(TRUE, TRUE, c(2.5, NA, -1, NaN, -Inf, 0, -0)))"), equalTo(c_i(4, 1, 6, 7, 3, 5, 2)));
+        assertThat( eval(".Internal(order(TRUE, FALSE, c('b', NA, 'a', 'c', 'a')))"), equalTo(c_i(3, 5, 1, 4, 2)));
+    }
+
+    @Test
+    public void orderMultipleKeys() {
+        assertThat( eval(".Internal(order(TRUE, FALSE, c(TRUE, FALSE, TRUE, FALSE), c('b', 'z', 'a', 'y')))"),
+            equalTo(c_i(4, 2, 3, 1)));
+        assertThat( eval(".Internal(order(TRUE, FALSE, factor(c('x', 'y', 'x', 'y')), c(2000000000L, 1L, -2000000000L, 1L)))"),
+            equalTo(c_i(3, 1, 2, 4)));
+        assertThat( eval(".Internal(order(TRUE, FALSE, c(NA, 1, NA, 1), c(3, 2, 1, NA)))"),
+            equalTo(c_i(2, 4, 3, 1)));
+    }
+
+    @Test
+    public void orderLargeVector() {
+        eval("x <- (seq_len(5000) * 7919) %% 5003");
+        assertThat( eval("all(diff(x[.Internal(order(TRUE, FALSE, x))]) >= 0)"), equalTo(c(true)));
+        assertThat( eval("all(diff(x[.Internal(order(TRUE, TRUE, as.integer(x)))]) <= 0)"), equalTo(c(true)));
+    }
+
     @Test
     public void qsort() {
       assertThat( eval(".Internal(qsort(c(3,1,5,0), FALSE))"), equalTo(c(0, 1, 3, 5)));
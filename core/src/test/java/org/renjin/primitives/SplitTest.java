@@ -54,5 +54,50 @@ public class SplitTest extends EvalTestCase {
     assertThat(eval("names(x)"), equalTo(c("1", "2")));
     assertThat(eval("names(x[[1]])"), equalTo(c("x")));
   }
-  
+
+  @Test
+  public void groupsAreInLevelOrder() {
+    assumingBasePackagesLoad();
+
+    eval("x <- split(c(1.5, 2.5, 3.5, 4.5), factor(c('b', 'a', 'b', 'c'), levels = c('c', 'b', 'a', 'd')))");
+    assertThat(eval("names(x)"), equalTo(c("c", "b", "a", "d")));
+    assertThat(eval("x$b"), equalTo(c(1.5, 3.5)));
+    assertThat(eval("length(x$d)"), equalTo(c_i(0)));
+  }
+
+  @Test
+  public void splitIsRecycled() {
+    assumingBasePackagesLoad();
+
+    eval("x <- split(letters[1:6], c(1, 2))");
+    assertThat(eval("x$`1`"), equalTo(c("a", "c", "e")));
+    assertThat(eval("x$`2`"), equalTo(c("b", "d", "f")));
+  }
+
+  @Test
+  public void splitList() {
+    assumingBasePackagesLoad();
+
+    eval("x <- split(list(a = 1, b = 'x', c = TRUE), c(2, 1, 2))");
+    assertThat(eval("names(x$`2`)"), equalTo(c("a", "c")));
+    assertThat(eval("x$`2`$c"), equalTo(c(true)));
+  }
+
+  @Test
+  public void splitLogical() {
+    assumingBasePackagesLoad();
+
+    eval("x <- split(c(TRUE, FALSE, NA), c(1, 1, 2))");
+    assertThat(eval("x$`1`"), equalTo(c(true, false)));
+    assertThat(eval("is.na(x$`2`)"), equalTo(c(true)));
+  }
+
+  @Test
+  public void lapplyOverGroups() {
+    assumingBasePackagesLoad();
+
+    eval("x <- sapply(split(1:100, (1:100) %% 3), sum)");
+    assertThat(eval("x"), equalTo(c_i(1683, 1717, 1650)));
+    assertThat(eval("names(x)"), equalTo(c("0", "1", "2")));
+  }
 }
@@ -24,6 +24,7 @@ package org.renjin.primitives;
 import com.google.common.base.Charsets;
 import org.junit.Test;
 import org.renjin.EvalTestCase;
+import org.renjin.primitives.text.regex.RECache;
 import org.renjin.sexp.IntVector;
 import org.renjin.sexp.SEXP;
 import org.renjin.sexp.StringArrayVector;
@@ -82,6 +83,27 @@ public class TextTest extends EvalTestCase {
         equalTo( c("datasets", "utils", "grDevices", "graphics", "stats", "methods")) );
   }
   
+  @Test
+  public void gsubVector() {
+    assertThat( eval(".Internal(gsub('o+', '0', c(a='foo', b=NA, c='bob'), FALSE, FALSE, FALSE, FALSE))"),
+        equalTo( eval("c(a='f0', b=NA, c='b0b')") ));
+    assertThat( eval(".Internal(gsub(NA_character_, '0', c('foo', 'bar'), FALSE, FALSE, FALSE, FALSE))"),
+        equalTo( c(StringVector.NA, StringVector.NA) ));
+  }
+
+  @Test
+  public void patternsAreCompiledOnce() {
+    RECache cache = topLevelContext.getSingleton(RECache.class);
+    long misses = cache.getMissCount();
+    long hits = cache.getHitCount();
+
+    eval("for(i in 1:10) x <- .Internal(gsub('[aeiou]', '', c('alpha', 'beta', 'gamma'), FALSE, FALSE, FALSE, FALSE))");
+
+    assertThat( eval("x"), equalTo( c("lph", "bt", "gmm") ));
+    assertThat( cache.getMissCount() - misses, equalTo(1L));
+    assertThat( cache.getHitCount() - hits, equalTo(9L));
+  }
+
   @Test
   public void posixCharacterClass() {
    
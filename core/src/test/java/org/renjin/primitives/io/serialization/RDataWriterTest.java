@@ -21,13 +21,18 @@
 
 package org.renjin.primitives.io.serialization;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.apache.commons.math.complex.Complex;
 import org.renjin.EvalTestCase;
 import org.renjin.sexp.*;
 import org.renjin.sexp.PairList.Builder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.zip.GZIPOutputStream;
@@ -39,6 +44,8 @@ import static org.junit.Assert.assertThat;
 
 public class RDataWriterTest extends EvalTestCase {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
 
   @Test
   public void NAs() throws IOException {
@@ -151,6 +158,82 @@ public class RDataWriterTest extends EvalTestCase {
     writeAndReRead(eval("g(f)"));
   }
 
+  @Test
+  public void largeVectors() throws IOException {
+    ListVector list = largeVectorList();
+    assertLargeVectorList((ListVector) writeAndReRead(list));
+  }
+
+  @Test
+  public void uncompressedFile() throws IOException {
+    File file = folder.newFile("large.rds");
+    FileOutputStream fos = new FileOutputStream(file);
+    new RDataWriter(topLevelContext, fos).save(largeVectorList());
+    fos.close();
+
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      assertLargeVectorList((ListVector) new RDataReader(topLevelContext, fis).readFile());
+      assertThat(fis.getChannel().position(), equalTo(file.length()));
+    } finally {
+      fis.close();
+    }
+  }
+
+  @Test
+  public void mappedVectors() throws IOException {
+    File file = folder.newFile("mapped.rds");
+    FileOutputStream fos = new FileOutputStream(file);
+    new RDataWriter(topLevelContext, fos).save(largeVectorList());
+    fos.close();
+
+    ListVector list = (ListVector) RDataReader.readMappedFile(topLevelContext, file);
+    assertThat(list.getElementAsSEXP(0), instanceOf(DoubleBufferVector.class));
+    assertThat(list.getElementAsSEXP(1), instanceOf(IntBufferVector.class));
+    assertLargeVectorList(list);
+  }
+
+  @Test(expected = IOException.class)
+  public void mappedVectorsRequireUncompressedFiles() throws IOException {
+    File file = folder.newFile("compressed.rds");
+    write(file.getAbsolutePath(), new DoubleArrayVector(1, 2, 3));
+
+    RDataReader.readMappedFile(topLevelContext, file);
+  }
+
+  private ListVector largeVectorList() {
+    double[] doubles = new double[20000];
+    int[] ints = new int[20000];
+    for (int i = 0; i < doubles.length; i++) {
+      doubles[i] = i % 7 == 0 ? DoubleVector.NA : (i % 11 == 0 ? Double.NaN : i / 3d);
+      ints[i] = i % 7 == 0 ? IntVector.NA : -i;
+    }
+    return new ListVector(new DoubleArrayVector(doubles), new IntArrayVector(ints),
+        new LogicalArrayVector(ints), new ComplexArrayVector(new Complex(1, 2), new Complex(3, 4)));
+  }
+
+  private void assertLargeVectorList(ListVector list) {
+    DoubleVector doubles = (DoubleVector) list.getElementAsSEXP(0);
+    IntVector ints = (IntVector) list.getElementAsSEXP(1);
+    assertThat(doubles.length(), equalTo(20000));
+    assertThat(ints.length(), equalTo(20000));
+    for (int i = 0; i < doubles.length(); i++) {
+      if (i % 7 == 0) {
+        assertThat(doubles.isElementNA(i), equalTo(true));
+        assertThat(ints.isElementNA(i), equalTo(true));
+      } else if (i % 11 == 0) {
+        assertThat(Double.isNaN(doubles.getElementAsDouble(i)), equalTo(true));
+        assertThat(DoubleVector.isNA(doubles.getElementAsDouble(i)), equalTo(false));
+      } else {
+        assertThat(doubles.getElementAsDouble(i), equalTo(i / 3d));
+        assertThat(ints.getElementAsInt(i), equalTo(-i));
+      }
+    }
+    assertThat(list.getElementAsSEXP(2), equalTo((SEXP) new LogicalArrayVector(ints.toIntArray())));
+    assertThat(list.getElementAsSEXP(3),
+        equalTo((SEXP) new ComplexArrayVector(new Complex(1, 2), new Complex(3, 4))));
+  }
+
   private void write(String fileName, SEXP exp) throws IOException {
     FileOutputStream fos = new FileOutputStream(fileName);
     GZIPOutputStream zos = new GZIPOutputStream(fos);
@@ -65,6 +65,30 @@ public class MatchTest extends EvalTestCase {
     
   }
 
+  @Test
+  public void matchAgainstLargeTables() {
+    eval("ti <- c(10L, 20L, NA, 30L, 20L, 40L, 50L, 60L, 70L)");
+    assertThat( eval(".Internal(match(c(20, 70, 15, NA), ti, NA_integer_, NULL))"), equalTo(c_i(2, 9, IntVector.NA, 3)));
+
+    eval("td <- c(1.5, -0, NaN, 2.5, NA, 3.5, 1.5, 4.5, 5.5)");
+    assertThat( eval(".Internal(match(c(0, 1.5, 5.5, NaN, 99), td, 0L, NULL))"), equalTo(c_i(2, 1, 9, 0, 0)));
+    assertThat( eval(".Internal(match(NA_real_, td, 0L, NULL))"), equalTo(c_i(5)));
+
+    eval("ts <- c('a', 'b', NA, 'c', 'd', 'b', 'e', 'f', 'g')");
+    assertThat( eval(".Internal(match(c('b', 'g', NA, 'z'), ts, NA_integer_, NULL))"), equalTo(c_i(2, 9, 3, IntVector.NA)));
+    assertThat( eval(".Internal(match(c(1, 2), c(letters, '1', '2'), NA_integer_, NULL))"), equalTo(c_i(27, 28)));
+
+    // repeated calls against the same table
+    assertThat( eval(".Internal(match(c('f', 'a'), ts, NA_integer_, NULL))"), equalTo(c_i(8, 1)));
+  }
+
+  @Test
+  public void matchFactorAgainstLargeTables() {
+    eval("f <- factor(c('x', 'y', 'z', 'y', NA, 'x', 'w', 'v', 'x'))");
+    assertThat( eval(".Internal(match(c('y', 'w', NA, 'q'), f, NA_integer_, NULL))"), equalTo(c_i(2, 7, 5, IntVector.NA)));
+    assertThat( eval(".Internal(match(factor(c('z', 'v')), c(letters, NA), NA_integer_, NULL))"), equalTo(c_i(26, 22)));
+  }
+
   @Test
   public void pmatch() {
     eval(" pmatch <- function (x, table, nomatch = NA_integer_, duplicates.ok = FALSE) \n" +
@@ -27,6 +27,9 @@ import static org.junit.Assert.assertThat;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 import org.renjin.EvalTestCase;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.Logical;
+import org.renjin.sexp.StringVector;
 
 
 public class UniqueTest extends EvalTestCase {
@@ -46,6 +49,35 @@ public class UniqueTest extends EvalTestCase {
      assertThat( eval(" .Internal(unique(1L, FALSE, FALSE)) "), CoreMatchers.equalTo(c_i(1)));
    }
   
+  @Test
+  public void uniqueDoublesWithSpecialValues() {
+    assertThat( eval("identical(.Internal(unique(c(0, NA, -0, NaN, NA, NaN, 1), FALSE, FALSE)), c(0, NA, NaN, 1))"),
+        equalTo(c(true)));
+    assertThat( eval(".Internal(anyDuplicated(c(NA, NaN, 0, -0), FALSE, FALSE))"), equalTo(c_i(4)));
+  }
+
+  @Test
+  public void uniqueIntsWithNA() {
+    assertThat( eval(".Internal(unique(c(3L, NA, 3L, 2L, NA), FALSE, FALSE))"), equalTo(c_i(3, IntVector.NA, 2)));
+    assertThat( eval(".Internal(duplicated(c(3L, NA, 3L, 2L, NA), FALSE, TRUE))"),
+        equalTo(c(true, true, false, false, false)));
+  }
+
+  @Test
+  public void uniqueLogicals() {
+    assertThat( eval(".Internal(unique(c(TRUE, NA, TRUE, FALSE, NA), FALSE, FALSE))"),
+        equalTo(c(Logical.TRUE, Logical.NA, Logical.FALSE)));
+    assertThat( eval(".Internal(anyDuplicated(c(TRUE, NA, FALSE, NA), FALSE, FALSE))"), equalTo(c_i(4)));
+  }
+
+  @Test
+  public void uniqueStrings() {
+    assertThat( eval(".Internal(unique(c('b', NA, 'a', 'b', NA, 'c'), FALSE, FALSE))"),
+        equalTo(c("b", StringVector.NA, "a", "c")));
+    assertThat( eval(".Internal(duplicated(c('b', NA, 'a', 'b', NA), FALSE, FALSE))"),
+        equalTo(c(false, false, false, true, true)));
+  }
+
   @Test
   public void falseIncomparablesIsTreatedAsNull() {
     assertThat( eval(" .Internal(unique(c(0, 1, 0, 0, 0, 0, 0, 0), FALSE, FALSE))"), equalTo(c(0,1)));
@@ -0,0 +1,161 @@
+package org.renjin.primitives.matrix;
+
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MatrixSumsTest extends EvalTestCase {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void parallelMatchesSequential() {
+    int[][] shapes = { {0, 5}, {5, 0}, {1, 1}, {3, 7}, {5000, 3}, {3, 5000}, {700, 900} };
+    for(int[] shape : shapes) {
+      int numRows = shape[0];
+      int numCols = shape[1];
+      double[] x = randomDoubles(numRows * numCols);
+      int[] ix = randomInts(numRows * numCols);
+
+      for(int flags = 0; flags < 4; flags++) {
+        boolean naRm = (flags & 1) != 0;
+        boolean mean = (flags & 2) != 0;
+
+        double[] rows = MatrixSums.rowSums(x, numRows, numCols, naRm, mean, Long.MAX_VALUE);
+        double[] cols = MatrixSums.columnSums(x, numRows, numCols, naRm, mean, Long.MAX_VALUE);
+        double[] intRows = MatrixSums.rowSums(ix, numRows, numCols, naRm, mean, Long.MAX_VALUE);
+        double[] intCols = MatrixSums.columnSums(ix, numRows, numCols, naRm, mean, Long.MAX_VALUE);
+
+        assertClose(rows, naiveDouble(x, numRows, numCols, naRm, mean, true));
+        assertClose(cols, naiveDouble(x, numRows, numCols, naRm, mean, false));
+        assertClose(intRows, naiveInt(ix, numRows, numCols, naRm, mean, true));
+        assertClose(intCols, naiveInt(ix, numRows, numCols, naRm, mean, false));
+
+        assertThat(MatrixSums.rowSums(x, numRows, numCols, naRm, mean, 1), equalTo(rows));
+        assertThat(MatrixSums.columnSums(x, numRows, numCols, naRm, mean, 1), equalTo(cols));
+        assertThat(MatrixSums.rowSums(ix, numRows, numCols, naRm, mean, 1), equalTo(intRows));
+        assertThat(MatrixSums.columnSums(ix, numRows, numCols, naRm, mean, 1), equalTo(intCols));
+      }
+    }
+  }
+
+  @Test
+  public void integerMissingValues() {
+    eval("m <- matrix(c(1L, NA, 3L, 4L, 5L, 6L), 2)");
+
+    assertThat(eval("colSums(m)"), equalTo(c(DoubleVector.NA, 7, 11)));
+    assertThat(eval("colSums(m, na.rm = TRUE)"), equalTo(c(1, 7, 11)));
+    assertThat(eval("colMeans(m, na.rm = TRUE)"), equalTo(c(1, 3.5, 5.5)));
+    assertThat(eval("rowSums(m)"), equalTo(c(9, DoubleVector.NA)));
+    assertThat(eval("rowMeans(m, na.rm = TRUE)"), equalTo(c(3, 5)));
+  }
+
+  @Test
+  public void logicalAndDoubleInputs() {
+    eval("b <- matrix(c(TRUE, FALSE, NA, TRUE), 2)");
+    assertThat(eval("colSums(b)"), equalTo(c(1, DoubleVector.NA)));
+    assertThat(eval("rowSums(b, na.rm = TRUE)"), equalTo(c(1, 1)));
+
+    eval("d <- matrix(c(NaN, 1, 2, 3), 2)");
+    assertThat(eval("is.nan(colSums(d))"), equalTo(c(true, false)));
+    assertThat(eval("colMeans(d, na.rm = TRUE)"), equalTo(c(1, 2.5)));
+    assertThat(eval("rowMeans(d, na.rm = TRUE)"), equalTo(c(2, 2)));
+  }
+
+  @Test
+  public void largeMatrix() {
+    // Larger than the default threshold, so summed in parallel
+    eval("m <- matrix(as.double(1:1200000), 1200)");
+
+    assertThat(eval("sum(rowSums(m)) == sum(m)"), equalTo(c(true)));
+    assertThat(eval("colMeans(m)[1:2]"), equalTo(c(600.5, 1800.5)));
+  }
+
+  private double[] naiveDouble(double[] x, int numRows, int numCols, boolean naRm, boolean mean, boolean rows) {
+    int numSums = rows ? numRows : numCols;
+    double[] sums = new double[numSums];
+    int[] counts = new int[numSums];
+    for(int j=0;j<numCols;++j) {
+      for(int i=0;i<numRows;++i) {
+        double value = x[i + j * numRows];
+        int k = rows ? i : j;
+        if(!naRm || !Double.isNaN(value)) {
+          sums[k] += value;
+          counts[k]++;
+        }
+      }
+    }
+    return divide(sums, counts, mean);
+  }
+
+  private double[] naiveInt(int[] x, int numRows, int numCols, boolean naRm, boolean mean, boolean rows) {
+    int numSums = rows ? numRows : numCols;
+    double[] sums = new double[numSums];
+    int[] counts = new int[numSums];
+    boolean[] missing = new boolean[numSums];
+    for(int j=0;j<numCols;++j) {
+      for(int i=0;i<numRows;++i) {
+        int value = x[i + j * numRows];
+        int k = rows ? i : j;
+        if(value != IntVector.NA) {
+          sums[k] += value;
+          counts[k]++;
+        } else if(!naRm) {
+          missing[k] = true;
+          counts[k]++;
+        }
+      }
+    }
+    for(int k=0;k<numSums;++k) {
+      if(missing[k]) {
+        sums[k] = DoubleVector.NA;
+      }
+    }
+    return divide(sums, counts, mean);
+  }
+
+  private double[] divide(double[] sums, int[] counts, boolean mean) {
+    if(mean) {
+      for(int k=0;k<sums.length;++k) {
+        sums[k] /= counts[k];
+      }
+    }
+    return sums;
+  }
+
+  private void assertClose(double[] actual, double[] expected) {
+    assertThat(actual.length, equalTo(expected.length));
+    for(int i=0;i<expected.length;++i) {
+      if(Double.isNaN(expected[i])) {
+        assertThat(Double.isNaN(actual[i]), equalTo(true));
+        assertThat(DoubleVector.isNA(actual[i]), equalTo(DoubleVector.isNA(expected[i])));
+      } else {
+        assertThat(actual[i], closeTo(expected[i], 1e-9));
+      }
+    }
+  }
+
+  private double[] randomDoubles(int n) {
+    double[] array = new double[n];
+    for(int i=0;i<n;++i) {
+      int kind = random.nextInt(200);
+      array[i] = kind == 0 ? DoubleVector.NA : random.nextGaussian();
+    }
+    return array;
+  }
+
+  private int[] randomInts(int n) {
+    int[] array = new int[n];
+    for(int i=0;i<n;++i) {
+      array[i] = random.nextInt(200) == 0 ? IntVector.NA : random.nextInt(1000) - 500;
+    }
+    return array;
+  }
+}
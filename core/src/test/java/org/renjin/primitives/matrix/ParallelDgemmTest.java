@@ -0,0 +1,147 @@
+package org.renjin.primitives.matrix;
+
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+import org.renjin.sexp.AtomicVector;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.Null;
+import org.renjin.sexp.Vector;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ParallelDgemmTest extends EvalTestCase {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void matchesNaiveProduct() {
+    int[][] shapes = { {1, 1, 1}, {3, 5, 7}, {130, 257, 300}, {300, 9, 513}, {260, 260, 0} };
+    for (int[] shape : shapes) {
+      for (int trans = 0; trans < 4; trans++) {
+        checkProduct((trans & 1) != 0, (trans & 2) != 0, shape[0], shape[1], shape[2]);
+      }
+    }
+  }
+
+  @Test
+  public void symmetricProduct() {
+    int[][] shapes = { {5, 3}, {300, 517}, {517, 300} };
+    for (int[] shape : shapes) {
+      int n = shape[0];
+      int k = shape[1];
+      double[] a = randomArray(n * k);
+
+      double[] crossprod = new double[n * n];
+      ParallelDgemm.dsyrk(true, n, k, a, k, crossprod);
+      assertClose(crossprod, naive(true, false, n, n, k, a, k, a, k));
+
+      double[] tcrossprod = new double[n * n];
+      ParallelDgemm.dsyrk(false, n, k, a, n, tcrossprod);
+      assertClose(tcrossprod, naive(false, true, n, n, k, a, n, a, n));
+    }
+  }
+
+  @Test
+  public void missingValuesPropagate() {
+    int n = 200;
+    double[] a = randomArray(n * n);
+    double[] b = new double[n * n];
+    a[17 + 5 * n] = DoubleVector.NA;
+
+    double[] c = new double[n * n];
+    ParallelDgemm.dgemm(false, false, n, n, n, a, n, b, n, c);
+
+    for (int j = 0; j < n; j++) {
+      for (int i = 0; i < n; i++) {
+        assertThat(DoubleVector.isNaN(c[i + j * n]), equalTo(i == 17));
+      }
+    }
+  }
+
+  @Test
+  public void primitives() {
+    eval("x <- matrix(sin(1:600), 30, 20)");
+    eval("y <- matrix(cos(1:300), 20, 15)");
+
+    AtomicVector x = (AtomicVector) eval("x");
+    AtomicVector y = (AtomicVector) eval("y");
+    AtomicVector xy = (AtomicVector) eval("x %*% y");
+
+    assertClose(parallel(MatrixProduct.PROD, x, y), blas(MatrixProduct.PROD, x, y));
+    assertClose(parallel(MatrixProduct.CROSSPROD, x, Null.INSTANCE), blas(MatrixProduct.CROSSPROD, x, Null.INSTANCE));
+    assertClose(parallel(MatrixProduct.TCROSSPROD, x, Null.INSTANCE), blas(MatrixProduct.TCROSSPROD, x, Null.INSTANCE));
+    assertClose(parallel(MatrixProduct.CROSSPROD, x, xy), blas(MatrixProduct.CROSSPROD, x, xy));
+    assertThat(eval("dim(tcrossprod(x, x))"), equalTo(c_i(30, 30)));
+  }
+
+  private double[] parallel(int primop, AtomicVector x, AtomicVector y) {
+    return product(primop, x, y, 1);
+  }
+
+  private double[] blas(int primop, AtomicVector x, AtomicVector y) {
+    return product(primop, x, y, Long.MAX_VALUE);
+  }
+
+  private double[] product(int primop, AtomicVector x, AtomicVector y, long parallelThreshold) {
+    MatrixProduct product = new MatrixProduct(primop, x, y).withParallelThreshold(parallelThreshold);
+    Vector result;
+    switch (primop) {
+      case MatrixProduct.CROSSPROD:
+        result = product.crossprod();
+        break;
+      case MatrixProduct.TCROSSPROD:
+        result = product.tcrossprod();
+        break;
+      default:
+        result = product.matprod();
+        break;
+    }
+    return ((AtomicVector) result).toDoubleArray();
+  }
+
+  private void checkProduct(boolean transA, boolean transB, int m, int n, int k) {
+    int lda = transA ? k : m;
+    int ldb = transB ? n : k;
+    double[] a = randomArray(m * k);
+    double[] b = randomArray(k * n);
+    double[] c = new double[m * n];
+    ParallelDgemm.dgemm(transA, transB, m, n, k, a, lda, b, ldb, c);
+    assertClose(c, naive(transA, transB, m, n, k, a, lda, b, ldb));
+  }
+
+  private double[] naive(boolean transA, boolean transB, int m, int n, int k,
+                         double[] a, int lda, double[] b, int ldb) {
+    double[] c = new double[m * n];
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < n; j++) {
+        double sum = 0;
+        for (int p = 0; p < k; p++) {
+          double aip = transA ? a[p + i * lda] : a[i + p * lda];
+          double bpj = transB ? b[j + p * ldb] : b[p + j * ldb];
+          sum += aip * bpj;
+        }
+        c[i + j * m] = sum;
+      }
+    }
+    return c;
+  }
+
+  private void assertClose(double[] actual, double[] expected) {
+    assertThat(actual.length, equalTo(expected.length));
+    for (int i = 0; i < expected.length; i++) {
+      assertThat(actual[i], closeTo(expected[i], 1e-9));
+    }
+  }
+
+  private double[] randomArray(int n) {
+    double[] array = new double[n];
+    for (int i = 0; i < n; i++) {
+      array[i] = random.nextGaussian();
+    }
+    return array;
+  }
+}
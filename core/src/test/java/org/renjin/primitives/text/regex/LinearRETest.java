@@ -0,0 +1,97 @@
+package org.renjin.primitives.text.regex;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LinearRETest {
+
+  private static final String[] PATTERNS = {
+      "a", "abc", "a*", "a+", "a?", "a*?b", "a+?", "(a|b)*c", "(a|ab)(c|bcd)(d*)",
+      "^abc", "abc$", "^$", "^", "$", "x*$", "^(a+)(b*)$", "(a|b|c|d)+",
+      "[a-c]+", "[^a-c]+", "[[:digit:]]+", "[[:alpha:]][[:alnum:].]*", "[[:space:]]+", "[[:upper:]][[:lower:]]",
+      "\\d+", "\\D+", "\\w+", "\\W", "\\s*,\\s*", "\\bfoo\\b", "\\Bo", ".", ".*", ".+?,",
+      "a{2}", "a{2,}", "a{1,3}", "(ab){2,3}", "(?:ab)+c", "((a)|(b))+", "(a)|(b)", "(x)?y",
+      "^(R|[[:alpha:]][[:alnum:].]*[[:alnum:]])$", "[[<>=!]+", "([0-9]+)\\.([0-9]+)", "(.*)-(.*)",
+      "a|", "|a", "(|a)b", "[-a]+", "[a-]+"
+  };
+
+  private static final String[] INPUTS = {
+      "", "a", "b", "abc", "aaabc", "abcd", "xabcx", "ababab", "aab", "ab ab", "foo bar", "foobar",
+      "barfoo baz", "1.25", "12.5.3", "a-b-c", "R", "Rcpp.1", "x , y,z", "  ", "x\ny", "\n", "xy",
+      "<=>", "abc123def", "--a--", "bbbbc", "ABC", "aBc"
+  };
+
+  @Test
+  public void matchesAreTheSameAsExtendedRE() throws RESyntaxException {
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      int flags = ignoreCase ? ExtendedRE.MATCH_CASEINDEPENDENT : ExtendedRE.MATCH_NORMAL;
+      for (String pattern : PATTERNS) {
+        REProgram program = new RECompiler().compile(pattern);
+        LinearProgram linearProgram = LinearProgram.compile(program, flags);
+        assertThat(pattern, linearProgram, notNullValue());
+
+        for (String input : INPUTS) {
+          for (int start = 0; start <= input.length(); start++) {
+            ExtendedRE expected = new ExtendedRE(program, flags);
+            LinearRE actual = new LinearRE(linearProgram);
+            String description = "/" + pattern + "/ on '" + input + "' from " + start;
+
+            boolean matched = expected.match(input, start);
+            assertThat(description, actual.match(input, start), equalTo(matched));
+            if (matched) {
+              assertThat(description, actual.getParenCount(), equalTo(expected.getParenCount()));
+              for (int i = 0; i < expected.getParenCount(); i++) {
+                assertThat(description + ", group " + i, actual.getGroupStart(i), equalTo(expected.getGroupStart(i)));
+                assertThat(description + ", group " + i, actual.getGroupEnd(i), equalTo(expected.getGroupEnd(i)));
+              }
+            }
+          }
+          ExtendedRE expected = new ExtendedRE(program, flags);
+          LinearRE actual = new LinearRE(linearProgram);
+          assertThat(pattern, actual.subst(input, "<\\0>", RE.REPLACE_BACKREFERENCES),
+              equalTo(expected.subst(input, "<\\0>", RE.REPLACE_BACKREFERENCES)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void backreferencesUseExtendedRE() throws RESyntaxException {
+    REProgram program = new RECompiler().compile("(a)\\1");
+    assertThat(LinearProgram.compile(program, ExtendedRE.MATCH_NORMAL), nullValue());
+    assertThat(REFactory.compile("(a)\\1", false, false, false, false), instanceOf(ExtendedRE.class));
+    assertThat(REFactory.compile("(a)b", false, false, false, false), instanceOf(LinearRE.class));
+  }
+
+  @Test
+  public void pathologicalPatternsMatchInLinearTime() throws RESyntaxException {
+    String input = Strings.repeat("a", 5000);
+    LinearRE re = new LinearRE(LinearProgram.compile(new RECompiler().compile("(a|aa)*b"), ExtendedRE.MATCH_NORMAL));
+    assertThat(re.match(input), equalTo(false));
+    assertThat(re.match(input + "b"), equalTo(true));
+    assertThat(re.getGroupStart(0), equalTo(0));
+    assertThat(re.getGroupEnd(0), equalTo(input.length() + 1));
+
+    LinearRE nested = new LinearRE(LinearProgram.compile(new RECompiler().compile("^(a+)+$"), ExtendedRE.MATCH_NORMAL));
+    assertThat(nested.match(input + "!"), equalTo(false));
+  }
+
+  @Test
+  public void dfaStatesAreFlushedWhenFull() throws RESyntaxException {
+    LinearProgram program = LinearProgram.compile(new RECompiler().compile("[ab]*a[ab]{10}c"), ExtendedRE.MATCH_NORMAL);
+    LinearRE re = new LinearRE(program);
+    Random random = new Random(42);
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      input.append(random.nextBoolean() ? 'a' : 'b');
+    }
+    assertThat(re.match(input.toString()), equalTo(false));
+    assertThat(re.match(input + "abababababac"), equalTo(true));
+    assertThat(program.getDfaFlushCount(), greaterThan(0));
+  }
+}
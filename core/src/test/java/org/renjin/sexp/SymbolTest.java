@@ -1,10 +1,19 @@
 package org.renjin.sexp;
 
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.renjin.sexp.Symbol;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class SymbolTest {
 
   @Test
@@ -37,6 +46,43 @@ public class SymbolTest {
     assertTrue(Symbol.get("*").isReservedWord());
   }
 
+  @Test
+  public void concurrentInterning() throws Exception {
+    final int numThreads = 8;
+    final int numNames = 5000;
+    final CountDownLatch start = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Symbol[]>> results = new ArrayList<Future<Symbol[]>>();
+      for (int t = 0; t < numThreads; t++) {
+        results.add(executor.submit(new Callable<Symbol[]>() {
+          @Override
+          public Symbol[] call() throws Exception {
+            start.await();
+            Symbol[] symbols = new Symbol[numNames];
+            for (int i = 0; i < numNames; i++) {
+              symbols[i] = Symbol.get("concurrentInterning." + i);
+            }
+            return symbols;
+          }
+        }));
+      }
+      start.countDown();
+
+      Symbol[] first = results.get(0).get();
+      for (Future<Symbol[]> result : results) {
+        Symbol[] symbols = result.get();
+        for (int i = 0; i < numNames; i++) {
+          assertSame(first[i], symbols[i]);
+        }
+      }
+      assertSame(first[42], Symbol.get("concurrentInterning.42"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   private void print(String name) {
     System.out.println(toBinaryString(Symbol.get(name).hashBit()) + " " + name);
   }
@@ -0,0 +1,149 @@
+package org.renjin.stats.internals;
+
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.Null;
+import org.renjin.sexp.SEXP;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CovarianceTest extends EvalTestCase {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void kendallMatchesNaiveCount() {
+    for(int n : new int[] { 2, 3, 17, 100, 1000 }) {
+      double[] x = randomTies(n);
+      double[] y = randomTies(n);
+      KendallTau tau = new KendallTau(n);
+      long concordance = tau.concordance(x, 0, null, y, 0, n);
+
+      long naive = 0;
+      long xTies = 0;
+      long yTies = 0;
+      for(int i=0;i<n;++i) {
+        for(int j=i+1;j<n;++j) {
+          naive += (long) (Math.signum(x[i] - x[j]) * Math.signum(y[i] - y[j]));
+          if(x[i] == x[j]) {
+            xTies++;
+          }
+          if(y[i] == y[j]) {
+            yTies++;
+          }
+        }
+      }
+      assertThat(concordance, equalTo(naive));
+      assertThat(tau.getXTies(), equalTo(xTies));
+      assertThat(tau.getYTies(), equalTo(yTies));
+    }
+  }
+
+  @Test
+  public void kendall() {
+    assertThat(eval(".Internal(cor(c(1,2,3,4,5), c(3,1,2,5,4), 4L, TRUE))"), closeTo(c(0.4), 1e-12));
+    assertThat(eval(".Internal(cov(c(1,2,3,4,5), c(3,1,2,5,4), 4L, TRUE))"), equalTo(c(8)));
+
+    // tau-b, with ties in both columns
+    assertThat(eval(".Internal(cor(c(1,1,2,3), c(1,2,2,3), 4L, TRUE))"), closeTo(c(0.8), 1e-12));
+  }
+
+  @Test
+  public void missingValues() {
+    eval("m <- cbind(a = c(1, 2, NA, 4, 5), b = c(2, 4, 5, 8, 11), c = c(5, 3, 4, 1, 2))");
+
+    assertThat(eval("is.na(.Internal(cov(m, NULL, 4L, FALSE)))[, 1]"), equalTo(c(true, true, true)));
+    assertThat(eval(".Internal(cov(m, NULL, 4L, FALSE))[2, 3]"), equalTo(c(-4.5)));
+
+    eval("complete <- m[-3, ]");
+    assertThat(eval("identical(.Internal(cov(m, NULL, 2L, FALSE)), .Internal(cov(complete, NULL, 4L, FALSE)))"),
+        equalTo(c(true)));
+    assertThat(eval("identical(.Internal(cor(m, NULL, 5L, FALSE)), .Internal(cor(complete, NULL, 4L, FALSE)))"),
+        equalTo(c(true)));
+
+    // Only the pairs with the first column exclude the third observation
+    assertThat(eval(".Internal(cov(m, NULL, 3L, FALSE))[1, 2]"), equalTo(eval(".Internal(cov(complete[, 1], complete[, 2], 4L, FALSE))")));
+    assertThat(eval(".Internal(cov(m, NULL, 3L, FALSE))[2, 3]"), equalTo(c(-4.5)));
+
+    assertThat(eval("dimnames(.Internal(cor(m, NULL, 3L, FALSE)))[[1]]"), equalTo(c("a", "b", "c")));
+  }
+
+  @Test(expected = org.renjin.eval.EvalException.class)
+  public void allObservationsRequired() {
+    eval(".Internal(cov(c(1, NA, 3), c(1, 2, 3), 1L, FALSE))");
+  }
+
+  @Test
+  public void noCompleteObservations() {
+    assertThat(eval(".Internal(cov(c(1, NA), c(NA, 2), 5L, FALSE))"), equalTo(c(DoubleVector.NA)));
+  }
+
+  @Test
+  public void zeroStandardDeviation() {
+    eval("m <- cbind(c(1, 2, 3), c(4, 4, 4))");
+    assertThat(eval("is.na(.Internal(cor(m, NULL, 4L, FALSE)))"), equalTo(c(false, true, true, false)));
+    assertThat(eval("is.na(.Internal(cor(m, NULL, 3L, FALSE)))"), equalTo(c(false, true, true, true)));
+  }
+
+  @Test
+  public void spearmanPairwise() {
+    eval("x <- c(1, 5, NA, 2, 8, 3)");
+    eval("y <- c(10, 2, 7, NA, 9, 1)");
+    eval("ok <- !is.na(x) & !is.na(y)");
+
+    assertThat(eval(".Internal(cor.rank(x, y, FALSE))"),
+        equalTo(eval(".Internal(cor(rank(x[ok]), rank(y[ok]), 4L, FALSE))")));
+    assertThat(eval(".Internal(cor.rank(cbind(x, y), NULL, FALSE))[1, 2]"),
+        equalTo(eval(".Internal(cor(rank(x[ok]), rank(y[ok]), 4L, FALSE))")));
+    assertThat(eval(".Internal(cor.rank(cbind(x, y), NULL, TRUE))[1, 2]"),
+        equalTo(eval(".Internal(cor(x[ok], y[ok], 4L, TRUE))")));
+  }
+
+  @Test
+  public void parallelMatchesSequential() {
+    int numObservations = 40000;
+    int numColumns = 12;
+    double[] values = new double[numObservations * numColumns];
+    for(int i=0;i<values.length;++i) {
+      values[i] = random.nextInt(500) == 0 ? DoubleVector.NA : random.nextGaussian();
+    }
+    // Keep some columns complete
+    for(int i=0;i<numObservations;++i) {
+      values[i] = random.nextGaussian();
+      values[numObservations + i] = values[i] * 2 + random.nextGaussian();
+    }
+    DoubleArrayVector x = DoubleArrayVector.unsafe(values, AttributeMap.dim(numObservations, numColumns));
+
+    for(int naMethod = 2; naMethod <= 5; naMethod++) {
+      for(boolean kendall : new boolean[] { false, true }) {
+        SEXP sequential = new CovarianceCalculator(x, Null.INSTANCE, naMethod).withCorrelation()
+            .withKendall(kendall).withThreshold(Long.MAX_VALUE).calculate(topLevelContext);
+
+        SEXP parallel = new CovarianceCalculator(x, Null.INSTANCE, naMethod).withCorrelation()
+            .withKendall(kendall).withThreshold(1).calculate(topLevelContext);
+
+        assertThat(parallel, equalTo(sequential));
+      }
+    }
+
+    // Two strongly correlated complete columns
+    DoubleVector r = new CovarianceCalculator(x, Null.INSTANCE, 3).withCorrelation().withThreshold(1)
+        .calculate(topLevelContext);
+    assertThat(r.getElementAsDouble(1), closeTo(2 / Math.sqrt(5), 0.01));
+  }
+
+  private double[] randomTies(int n) {
+    double[] values = new double[n];
+    for(int i=0;i<n;++i) {
+      values[i] = random.nextInt(Math.max(2, n / 3));
+    }
+    return values;
+  }
+}
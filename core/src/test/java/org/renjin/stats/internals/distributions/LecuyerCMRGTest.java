@@ -0,0 +1,132 @@
+package org.renjin.stats.internals.distributions;
+
+import org.junit.Test;
+import org.renjin.EvalTestCase;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LecuyerCMRGTest extends EvalTestCase {
+
+  @Test
+  public void seedIsScrambledAsInGnuR() {
+    LecuyerCMRG rng = new LecuyerCMRG(123);
+    assertThat(rng.getState(), equalTo(new int[] {
+        1806547166, -983674937, 643431772, 1162448557, -959247990, -133913213 }));
+  }
+
+  @Test
+  public void jumpMatricesArePowersOfTheTransitionMatrix() {
+    long[][] a1 = {
+        { 0, 1, 0 },
+        { 0, 0, 1 },
+        { LecuyerCMRG.M1 - 810728, 1403580, 0 } };
+    long[][] a2 = {
+        { 0, 1, 0 },
+        { 0, 0, 1 },
+        { LecuyerCMRG.M2 - 1370589, 0, 527612 } };
+
+    assertThat(power(a1, 76, LecuyerCMRG.M1), equalTo(LecuyerCMRG.A1P76));
+    assertThat(power(a2, 76, LecuyerCMRG.M2), equalTo(LecuyerCMRG.A2P76));
+    assertThat(power(a1, 127, LecuyerCMRG.M1), equalTo(LecuyerCMRG.A1P127));
+    assertThat(power(a2, 127, LecuyerCMRG.M2), equalTo(LecuyerCMRG.A2P127));
+  }
+
+  /**
+   * @return {@code a^(2^e) mod m}
+   */
+  private static long[][] power(long[][] a, int e, long m) {
+    for (int k = 0; k < e; k++) {
+      long[][] square = new long[3][3];
+      for (int i = 0; i < 3; i++) {
+        for (int j = 0; j < 3; j++) {
+          long sum = 0;
+          for (int l = 0; l < 3; l++) {
+            sum = (sum + LecuyerCMRG.multiplyMod(a[i][l], a[l][j], m)) % m;
+          }
+          square[i][j] = sum;
+        }
+      }
+      a = square;
+    }
+    return a;
+  }
+
+  @Test
+  public void bulkDrawsMatchSingleDraws() {
+    LecuyerCMRG single = new LecuyerCMRG(42);
+    LecuyerCMRG bulk = new LecuyerCMRG(42);
+    double[] values = new double[1000];
+    bulk.nextDoubles(values, 0, values.length);
+    for (int i = 0; i < values.length; i++) {
+      assertThat(values[i], equalTo(single.nextDouble()));
+      assertThat(values[i], allOf(greaterThan(0d), lessThan(1d)));
+    }
+    assertThat(bulk.getState(), equalTo(single.getState()));
+  }
+
+  @Test
+  public void streamsFromR() throws IOException {
+    assumingBasePackagesLoad();
+    eval("set.seed(123, kind = \"L'Ecuyer-CMRG\")");
+    eval("s <- .Random.seed");
+    assertThat(eval("s[1]"), equalTo(c_i(407)));
+    eval("x <- .Internal(runif(3, 0, 1))");
+    eval("assign('.Random.seed', s, envir = globalenv())");
+    assertThat(eval("identical(x, .Internal(runif(3, 0, 1)))"), equalTo(c(true)));
+
+    eval("s2 <- .Internal(nextRNGStream(s))");
+    assertThat(eval("s2[1]"), equalTo(eval("s[1]")));
+    assertThat(eval("identical(s2[-1], s[-1])"), equalTo(c(false)));
+    eval("assign('.Random.seed', s2, envir = globalenv())");
+    assertThat(eval("identical(x, .Internal(runif(3, 0, 1)))"), equalTo(c(false)));
+    assertThat(eval("identical(.Internal(nextRNGSubStream(s)), s)"), equalTo(c(false)));
+  }
+
+  @Test
+  public void forksDrawFromSuccessiveStreams() throws IOException {
+    Session session = new SessionBuilder().build();
+    RNG rng = session.rng;
+    rng.RNG_kind = RNGtype.LECUYER_CMRG;
+    rng.lecuyerCMRGAlg = new LecuyerCMRG(1);
+    int[] seed = rng.lecuyerCMRGAlg.getState();
+
+    RNG first = session.fork().rng;
+    RNG second = session.fork().rng;
+
+    int[] firstSeed = LecuyerCMRG.nextStream(seed);
+    assertThat(first.lecuyerCMRGAlg.getState(), equalTo(firstSeed));
+    assertThat(second.lecuyerCMRGAlg.getState(), equalTo(LecuyerCMRG.nextStream(firstSeed)));
+
+    LecuyerCMRG expected = new LecuyerCMRG(firstSeed);
+    double[] values = new double[10];
+    first.unif_rand(values, 0, values.length);
+    for (double value : values) {
+      assertThat(value, equalTo(expected.nextDouble()));
+    }
+  }
+
+  @Test
+  public void bulkNormalsMatchSingleDraws() {
+    Session session = new SessionBuilder().build();
+    Session other = new SessionBuilder().build();
+    for (RNGtype kind : new RNGtype[] { RNGtype.MERSENNE_TWISTER, RNGtype.LECUYER_CMRG }) {
+      session.rng.RNG_kind = kind;
+      other.rng.RNG_kind = kind;
+      session.rng.mersenneTwisterAlg = new MersenneTwister(7);
+      other.rng.mersenneTwisterAlg = new MersenneTwister(7);
+      session.rng.lecuyerCMRGAlg = new LecuyerCMRG(7);
+      other.rng.lecuyerCMRGAlg = new LecuyerCMRG(7);
+
+      double[] values = new double[RNG.BLOCK_SIZE + 10];
+      Normal.rnorm(session, 1, 2, values);
+      for (double value : values) {
+        assertThat(value, equalTo(Normal.rnorm(other, 1, 2)));
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package org.renjin.parallel;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.renjin.eval.Context;
+import org.renjin.eval.EvalException;
+import org.renjin.eval.Session;
+import org.renjin.invoke.annotations.Current;
+import org.renjin.primitives.Warning;
+import org.renjin.sexp.*;
+import org.renjin.stats.internals.distributions.RNGtype;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements {@code mclapply()} with threads rather than forked processes: each core
+ * is a {@link Worker} with its own forked session.
+ */
+public class Multicore {
+
+  /**
+   * Applies {@code function} to each element of {@code x} in parallel.
+   *
+   * <p>If {@code preschedule} is true, the elements are divided among the cores in advance, as in
+   * GNU R. Otherwise each core takes the next element as soon as it is idle, which balances the load
+   * when the time taken by each element varies.</p>
+   *
+   * <p>An error in one element does not affect the others: its result is a {@code try-error}
+   * object, and a warning is issued once all the elements have been evaluated.</p>
+   *
+   * <p>If {@code setSeed} is true and the session uses the L'Ecuyer-CMRG generator, each element
+   * is evaluated with its own random number stream, so that the results are reproducible
+   * after {@code set.seed()} however the elements are scheduled.</p>
+   */
+  public static ListVector lapply(@Current Context context, ListVector x, Function function,
+                                  ListVector arguments, int cores, boolean preschedule, boolean setSeed) {
+
+    final Session master = context.getSession();
+    final int n = x.length();
+    cores = Math.max(1, Math.min(cores, n));
+
+    int[][] seeds = null;
+    if (setSeed && master.rng.RNG_kind == RNGtype.LECUYER_CMRG) {
+      seeds = new int[n][];
+      for (int i = 0; i < n; i++) {
+        seeds[i] = master.rng.nextStreamSeed();
+      }
+    }
+
+    SEXP[] results = new SEXP[n];
+    AtomicInteger errorCount = new AtomicInteger();
+    AtomicInteger nextElement = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(cores, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("renjin-mclapply-%d")
+        .build());
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int core = 0; core < cores; core++) {
+        Core task = new Core(new Worker(master), x, function, arguments, seeds, results, errorCount);
+        if (preschedule) {
+          task.schedule(core, cores);
+        } else {
+          task.balance(nextElement);
+        }
+        futures.add(executor.submit(task));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EvalException("mclapply() was interrupted");
+    } catch (ExecutionException e) {
+      throw new EvalException("mclapply() failed: " + e.getCause().getMessage(), e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    if (errorCount.get() > 0) {
+      Warning.invokeWarning(context, "%d function calls resulted in an error", errorCount.get());
+    }
+
+    return new ListVector(results);
+  }
+
+  /**
+   * Restarts the sequence of L'Ecuyer-CMRG streams handed out to elements from the
+   * current state of the session's generator, as {@code mc.reset.stream()}.
+   */
+  public static void resetStream(@Current Context context) {
+    context.getSession().rng.resetStream();
+  }
+
+  /**
+   * Evaluates elements on a single worker
+   */
+  private static class Core implements Runnable {
+    private final Worker worker;
+    private final ListVector x;
+    private final Function function;
+    private final ListVector arguments;
+    private final int[][] seeds;
+    private final SEXP[] results;
+    private final AtomicInteger errorCount;
+
+    private int first;
+    private int stride;
+    private AtomicInteger nextElement;
+
+    private Core(Worker worker, ListVector x, Function function, ListVector arguments, int[][] seeds,
+                 SEXP[] results, AtomicInteger errorCount) {
+      this.worker = worker;
+      this.x = x;
+      this.function = function;
+      this.arguments = arguments;
+      this.seeds = seeds;
+      this.results = results;
+      this.errorCount = errorCount;
+    }
+
+    /**
+     * Evaluates every {@code stride}-th element, starting with {@code first}
+     */
+    private void schedule(int first, int stride) {
+      this.first = first;
+      this.stride = stride;
+    }
+
+    /**
+     * Evaluates the next element not yet taken by another core, until none remain
+     */
+    private void balance(AtomicInteger nextElement) {
+      this.nextElement = nextElement;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (nextElement == null) {
+          for (int i = first; i < x.length(); i += stride) {
+            evaluate(i);
+          }
+        } else {
+          int i;
+          while ((i = nextElement.getAndIncrement()) < x.length()) {
+            evaluate(i);
+          }
+        }
+      } finally {
+        worker.close();
+      }
+    }
+
+    private void evaluate(int i) {
+      if (seeds != null) {
+        worker.getSession().rng.setStream(seeds[i]);
+      }
+      try {
+        results[i] = worker.apply(function, x.getElementAsSEXP(i), arguments);
+      } catch (RuntimeException e) {
+        errorCount.incrementAndGet();
+        results[i] = StringVector.valueOf("Error : " + Worker.errorMessage(e) + "\n")
+            .setAttribute(Symbols.CLASS, StringVector.valueOf("try-error"));
+      }
+    }
+  }
+}
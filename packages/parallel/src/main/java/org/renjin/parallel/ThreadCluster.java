@@ -0,0 +1,164 @@
+package org.renjin.parallel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.renjin.eval.Context;
+import org.renjin.eval.EvalException;
+import org.renjin.invoke.annotations.Current;
+import org.renjin.sexp.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A snow cluster whose nodes are forks of the master session, each with its own thread,
+ * rather than separate R processes.
+ *
+ * <p>Each node evaluates the messages sent to it in order, and in its own global environment,
+ * so that, for example, variables assigned by {@code clusterExport()} remain visible to later calls.
+ * Values are shared with the master rather than serialized: see {@link Worker}.</p>
+ *
+ * <p>Nodes are numbered from 1, as their ranks in the R-level {@code cluster} object.</p>
+ */
+public class ThreadCluster {
+
+  private final Node[] nodes;
+
+  /**
+   * The ranks of the nodes which have produced results, in the order in
+   * which they were produced.
+   */
+  private final LinkedBlockingQueue<Integer> completed = new LinkedBlockingQueue<Integer>();
+
+  private class Node {
+    private final int rank;
+    private final Worker worker;
+    private final ExecutorService executor;
+    private final LinkedBlockingQueue<SEXP> results = new LinkedBlockingQueue<SEXP>();
+
+    private Node(Context context, int rank) {
+      this.rank = rank;
+      this.worker = new Worker(context.getSession());
+      this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("renjin-cluster-node-" + rank)
+          .build());
+    }
+
+    private void execute(ListVector data) {
+      Function function = (Function) data.get("fun");
+      ListVector arguments = (ListVector) data.get("args");
+      SEXP value;
+      boolean success;
+      try {
+        value = worker.apply(function, arguments);
+        success = true;
+      } catch (RuntimeException e) {
+        value = StringVector.valueOf(Worker.errorMessage(e))
+            .setAttribute(Symbols.CLASS, new StringArrayVector("snow-try-error", "try-error"));
+        success = false;
+      }
+      ListVector.NamedBuilder result = new ListVector.NamedBuilder();
+      result.add("type", StringVector.valueOf("VALUE"));
+      result.add("value", value);
+      result.add("success", LogicalVector.valueOf(success));
+      result.add("tag", data.get("tag"));
+
+      completed.add(rank);
+      results.add(result.build());
+    }
+  }
+
+  private ThreadCluster(Context context, int size) {
+    nodes = new Node[size];
+    for (int i = 0; i < size; i++) {
+      nodes[i] = new Node(context, i + 1);
+    }
+  }
+
+  /**
+   * Starts a new cluster of {@code size} nodes, each forked from the current session.
+   */
+  public static ThreadCluster start(@Current Context context, int size) {
+    if (size < 1) {
+      throw new EvalException("numeric 'names' must be >= 1");
+    }
+    return new ThreadCluster(context, size);
+  }
+
+  public int size() {
+    return nodes.length;
+  }
+
+  /**
+   * Sends a snow message, {@code list(type, data, tag)}, to the node with the given rank.
+   * Only {@code EXEC} messages are supported.
+   */
+  public void send(int rank, ListVector message) {
+    final Node node = node(rank);
+    String type = ((AtomicVector) message.get("type")).getElementAsString(0);
+    if (!"EXEC".equals(type)) {
+      throw new EvalException("unsupported message type '%s'", type);
+    }
+    final ListVector data = (ListVector) message.get("data");
+    node.executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        node.execute(data);
+      }
+    });
+  }
+
+  /**
+   * Waits for and returns the next result from the node with the given rank.
+   */
+  public SEXP receive(int rank) {
+    Node node = node(rank);
+    SEXP result = take(node.results);
+    completed.remove(rank);
+    return result;
+  }
+
+  /**
+   * Waits for the next result from any node, and returns it as {@code list(node, value)}.
+   */
+  public ListVector receiveAny() {
+    int rank = take(completed);
+    ListVector.NamedBuilder result = new ListVector.NamedBuilder();
+    result.add("node", IntVector.valueOf(rank));
+    result.add("value", take(node(rank).results));
+    return result.build();
+  }
+
+  /**
+   * Closes the nodes' sessions and stops their threads, once any tasks already sent
+   * to them have completed.
+   */
+  public void stop() {
+    for (final Node node : nodes) {
+      node.executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          node.worker.close();
+        }
+      });
+      node.executor.shutdown();
+    }
+  }
+
+  private Node node(int rank) {
+    if (rank < 1 || rank > nodes.length) {
+      throw new EvalException("invalid node rank %d", rank);
+    }
+    return nodes[rank - 1];
+  }
+
+  private static <T> T take(LinkedBlockingQueue<T> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EvalException("interrupted while waiting for a cluster node");
+    }
+  }
+}
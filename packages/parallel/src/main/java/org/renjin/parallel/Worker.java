@@ -0,0 +1,95 @@
+package org.renjin.parallel;
+
+import org.renjin.eval.Context;
+import org.renjin.eval.Session;
+import org.renjin.sexp.*;
+
+/**
+ * A fork of the master session, in which a worker thread evaluates function calls
+ * sent from the master.
+ *
+ * <p>Values are passed to and from the worker by reference rather than being serialized. R's vectors
+ * and lists are immutable, so they are in effect shared copy-on-write. As when values are serialized
+ * to a snow node, the master's global environment is replaced by the worker's own global environment,
+ * both where it is passed as an argument, and as the enclosing environment of functions defined in the
+ * global environment. Any other environments are shared with the master, and should be treated as
+ * read-only.</p>
+ */
+class Worker {
+
+  private final Environment masterGlobals;
+  private final Session session;
+  private final Context context;
+
+  Worker(Session master) {
+    this.masterGlobals = master.getGlobalEnvironment();
+    this.session = master.fork();
+    this.context = session.getTopLevelContext();
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  /**
+   * Applies {@code function} to {@code arguments} in the worker's global environment,
+   * as {@code do.call(function, arguments, quote = TRUE)}. Must be called from the worker's thread.
+   */
+  public SEXP apply(Function function, ListVector arguments) {
+    PairList.Builder args = new PairList.Builder();
+    addArguments(args, arguments);
+    return apply(function, args);
+  }
+
+  /**
+   * Applies {@code function} to {@code element} and the further {@code arguments},
+   * as {@code FUN(X[[i]], ...)} is called by {@code lapply()}.
+   */
+  public SEXP apply(Function function, SEXP element, ListVector arguments) {
+    PairList.Builder args = new PairList.Builder();
+    args.add(Promise.repromise(element));
+    addArguments(args, arguments);
+    return apply(function, args);
+  }
+
+  private SEXP apply(Function function, PairList.Builder args) {
+    FunctionCall call = new FunctionCall(localize(function), args.build());
+    return context.evaluate(call, session.getGlobalEnvironment());
+  }
+
+  private void addArguments(PairList.Builder args, ListVector arguments) {
+    for (int i = 0; i < arguments.length(); i++) {
+      SEXP value = Promise.repromise(localize(arguments.getElementAsSEXP(i)));
+      String name = arguments.getName(i);
+      if (StringVector.isNA(name) || name.isEmpty()) {
+        args.add(value);
+      } else {
+        args.add(name, value);
+      }
+    }
+  }
+
+  private SEXP localize(SEXP value) {
+    if (value == masterGlobals) {
+      return session.getGlobalEnvironment();
+    }
+    if (value instanceof Closure && ((Closure) value).getEnclosingEnvironment() == masterGlobals) {
+      return ((Closure) value).setEnclosingEnvironment(session.getGlobalEnvironment());
+    }
+    return value;
+  }
+
+  public void close() {
+    session.close();
+  }
+
+  /**
+   * @return the message of an error raised while evaluating a task
+   */
+  static String errorMessage(RuntimeException e) {
+    if (e.getMessage() != null) {
+      return e.getMessage();
+    }
+    return e.toString();
+  }
+}
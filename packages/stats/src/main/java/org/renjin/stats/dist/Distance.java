@@ -1,6 +1,7 @@
 package org.renjin.stats.dist;
 
 
+import org.renjin.sexp.AtomicVector;
 import org.renjin.sexp.AttributeMap;
 import org.renjin.sexp.Null;
 import org.renjin.sexp.Vector;
@@ -12,6 +13,14 @@ public class Distance {
     return new Euclidean1dDistanceTriangle(x, AttributeMap.EMPTY);
   }
   
+  /**
+   * @return the lower triangle of the distance matrix between the rows of the
+   * column-major {@code numRows}-row matrix {@code x}, computed on demand.
+   */
+  public static DistanceTriangle distance(AtomicVector x, int numRows, String method, double p) {
+    return new DistanceTriangle(x, numRows, DistanceMethod.fromName(method), p, AttributeMap.EMPTY);
+  }
+
   public static Vector toMatrix(Vector x) {
     if(x instanceof Euclidean1dDistanceTriangle) {
       return new Euclidean1dDistanceMatrix ( ((Euclidean1dDistanceTriangle) x).getVector() );
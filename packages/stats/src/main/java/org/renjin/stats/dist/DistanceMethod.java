@@ -0,0 +1,218 @@
+package org.renjin.stats.dist;
+
+import org.renjin.eval.EvalException;
+import org.renjin.sexp.DoubleVector;
+
+/**
+ * The measures of distance supported by {@code dist()}, ported from GNU R's {@code distance.c}.
+ *
+ * <p>Each measure is computed between two rows of a matrix that has been copied in row-major
+ * order, so that the columns of each row are contiguous. Columns in which either row is
+ * {@code NA} or {@code NaN} are skipped, and sums are scaled up in proportion to the number
+ * of columns skipped.</p>
+ */
+public enum DistanceMethod {
+
+  EUCLIDEAN("euclidean") {
+    @Override
+    public double distance(double[] x, int i1, int i2, int numCols, double p) {
+      double dist = 0;
+      int count = 0;
+      for(int j=0;j!=numCols;++j) {
+        double a = x[i1 + j];
+        double b = x[i2 + j];
+        if(!Double.isNaN(a) && !Double.isNaN(b)) {
+          double dev = a - b;
+          if(!Double.isNaN(dev)) {
+            dist += dev * dev;
+            count++;
+          }
+        }
+      }
+      if(count == 0) {
+        return DoubleVector.NA;
+      }
+      if(count != numCols) {
+        dist /= ((double)count / numCols);
+      }
+      return Math.sqrt(dist);
+    }
+  },
+
+  MAXIMUM("maximum") {
+    @Override
+    public double distance(double[] x, int i1, int i2, int numCols, double p) {
+      double dist = -Double.MAX_VALUE;
+      int count = 0;
+      for(int j=0;j!=numCols;++j) {
+        double a = x[i1 + j];
+        double b = x[i2 + j];
+        if(!Double.isNaN(a) && !Double.isNaN(b)) {
+          double dev = Math.abs(a - b);
+          if(!Double.isNaN(dev)) {
+            if(dev > dist) {
+              dist = dev;
+            }
+            count++;
+          }
+        }
+      }
+      if(count == 0) {
+        return DoubleVector.NA;
+      }
+      return dist;
+    }
+  },
+
+  MANHATTAN("manhattan") {
+    @Override
+    public double distance(double[] x, int i1, int i2, int numCols, double p) {
+      double dist = 0;
+      int count = 0;
+      for(int j=0;j!=numCols;++j) {
+        double a = x[i1 + j];
+        double b = x[i2 + j];
+        if(!Double.isNaN(a) && !Double.isNaN(b)) {
+          double dev = Math.abs(a - b);
+          if(!Double.isNaN(dev)) {
+            dist += dev;
+            count++;
+          }
+        }
+      }
+      if(count == 0) {
+        return DoubleVector.NA;
+      }
+      if(count != numCols) {
+        dist /= ((double)count / numCols);
+      }
+      return dist;
+    }
+  },
+
+  CANBERRA("canberra") {
+    @Override
+    public double distance(double[] x, int i1, int i2, int numCols, double p) {
+      double dist = 0;
+      int count = 0;
+      for(int j=0;j!=numCols;++j) {
+        double a = x[i1 + j];
+        double b = x[i2 + j];
+        if(!Double.isNaN(a) && !Double.isNaN(b)) {
+          double sum = Math.abs(a + b);
+          double diff = Math.abs(a - b);
+          if(sum > Double.MIN_NORMAL || diff > Double.MIN_NORMAL) {
+            double dev = diff / sum;
+            if(Double.isNaN(dev) && Double.isInfinite(diff) && diff == sum) {
+              // use Inf = lim x -> oo
+              dev = 1;
+            }
+            if(!Double.isNaN(dev)) {
+              dist += dev;
+              count++;
+            }
+          }
+        }
+      }
+      if(count == 0) {
+        return DoubleVector.NA;
+      }
+      if(count != numCols) {
+        dist /= ((double)count / numCols);
+      }
+      return dist;
+    }
+  },
+
+  /**
+   * The proportion of columns in which only one of the two rows is non-zero, among
+   * the columns in which at least one is non-zero. Non-finite values are treated as {@code NA}.
+   */
+  BINARY("binary") {
+    @Override
+    public double distance(double[] x, int i1, int i2, int numCols, double p) {
+      int total = 0;
+      int count = 0;
+      int dist = 0;
+      for(int j=0;j!=numCols;++j) {
+        double a = x[i1 + j];
+        double b = x[i2 + j];
+        if(DoubleVector.isFinite(a) && DoubleVector.isFinite(b)) {
+          if(a != 0 || b != 0) {
+            count++;
+            if(a == 0 || b == 0) {
+              dist++;
+            }
+          }
+          total++;
+        }
+      }
+      if(total == 0) {
+        return DoubleVector.NA;
+      }
+      if(count == 0) {
+        return 0;
+      }
+      return (double) dist / count;
+    }
+  },
+
+  MINKOWSKI("minkowski") {
+    @Override
+    public double distance(double[] x, int i1, int i2, int numCols, double p) {
+      double dist = 0;
+      int count = 0;
+      for(int j=0;j!=numCols;++j) {
+        double a = x[i1 + j];
+        double b = x[i2 + j];
+        if(!Double.isNaN(a) && !Double.isNaN(b)) {
+          double dev = a - b;
+          if(!Double.isNaN(dev)) {
+            dist += Math.pow(Math.abs(dev), p);
+            count++;
+          }
+        }
+      }
+      if(count == 0) {
+        return DoubleVector.NA;
+      }
+      if(count != numCols) {
+        dist /= ((double)count / numCols);
+      }
+      return Math.pow(dist, 1.0 / p);
+    }
+  };
+
+  private final String name;
+
+  DistanceMethod(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return the name of this method, as passed to {@code dist()}
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Computes the distance between two rows of a row-major matrix.
+   *
+   * @param x the elements of the matrix, in row-major order
+   * @param i1 the offset of the first row in {@code x}
+   * @param i2 the offset of the second row in {@code x}
+   * @param numCols the number of columns of the matrix
+   * @param p the power of the Minkowski distance
+   */
+  public abstract double distance(double[] x, int i1, int i2, int numCols, double p);
+
+  public static DistanceMethod fromName(String name) {
+    for(DistanceMethod method : values()) {
+      if(method.name.equals(name)) {
+        return method;
+      }
+    }
+    throw new EvalException("invalid distance method");
+  }
+}
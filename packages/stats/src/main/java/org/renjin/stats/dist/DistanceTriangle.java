@@ -0,0 +1,161 @@
+package org.renjin.stats.dist;
+
+import org.renjin.eval.EvalException;
+import org.renjin.primitives.vector.MemoizedComputation;
+import org.renjin.sexp.*;
+
+/**
+ * View of the rows of a matrix as the lower triangle of the distance matrix between them,
+ * laid out as returned by {@code dist()}.
+ *
+ * <p>Elements read one at a time are computed a column of the triangle at a time, keeping only
+ * the most recently used column, so that consumers which stream through the triangle, such as
+ * {@code hclust}, never hold more than a single column. When the whole triangle is copied to an
+ * array, or the result is forced, it is computed in parallel by {@link ParallelDistance}.</p>
+ */
+public class DistanceTriangle extends DoubleVector implements MemoizedComputation {
+
+  private final AtomicVector x;
+  private final int numRows;
+  private final int numCols;
+  private final DistanceMethod method;
+  private final double p;
+  private final int length;
+
+  private volatile double[] rows;
+  private volatile Column column;
+  private volatile double[] result;
+
+  private static class Column {
+    private final long start;
+    private final double[] values;
+
+    private Column(long start, double[] values) {
+      this.start = start;
+      this.values = values;
+    }
+  }
+
+  public DistanceTriangle(AtomicVector x, int numRows, DistanceMethod method, double p, AttributeMap attributes) {
+    super(attributes);
+    if(method == DistanceMethod.MINKOWSKI && (!DoubleVector.isFinite(p) || p <= 0)) {
+      throw new EvalException("distance(): invalid p");
+    }
+    long length = ParallelDistance.triangleLength(numRows);
+    if(length > Integer.MAX_VALUE) {
+      throw new EvalException("'dist' too large: %d rows", numRows);
+    }
+    this.x = x;
+    this.numRows = numRows;
+    this.numCols = numRows == 0 ? 0 : x.length() / numRows;
+    this.method = method;
+    this.p = p;
+    this.length = (int) length;
+  }
+
+  private DistanceTriangle(DistanceTriangle source, AttributeMap attributes) {
+    super(attributes);
+    this.x = source.x;
+    this.numRows = source.numRows;
+    this.numCols = source.numCols;
+    this.method = source.method;
+    this.p = source.p;
+    this.length = source.length;
+    this.rows = source.rows;
+    this.result = source.result;
+  }
+
+  public DistanceMethod getMethod() {
+    return method;
+  }
+
+  @Override
+  public Vector[] getOperands() {
+    return new Vector[] { x, new IntArrayVector(numRows), new DoubleArrayVector(p) };
+  }
+
+  @Override
+  public String getComputationName() {
+    return "dist:" + method.getName();
+  }
+
+  @Override
+  protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    return new DistanceTriangle(this, attributes);
+  }
+
+  @Override
+  public double getElementAsDouble(int index) {
+    double[] result = this.result;
+    if(result != null) {
+      return result[index];
+    }
+    Column column = this.column;
+    if(column == null || index < column.start || index >= column.start + column.values.length) {
+      column = computeColumn(ParallelDistance.columnOf(numRows, index));
+      this.column = column;
+    }
+    return column.values[(int)(index - column.start)];
+  }
+
+  private Column computeColumn(int j) {
+    double[] values = new double[numRows - j - 1];
+    ParallelDistance.computeColumn(method, p, getRows(), numRows, numCols, j, values);
+    return new Column(ParallelDistance.columnStart(numRows, j), values);
+  }
+
+  private double[] getRows() {
+    double[] rows = this.rows;
+    if(rows == null) {
+      rows = ParallelDistance.rowMajor(x, numRows, numCols);
+      this.rows = rows;
+    }
+    return rows;
+  }
+
+  @Override
+  public double[] toDoubleArray() {
+    return computeResult().clone();
+  }
+
+  @Override
+  public boolean isConstantAccessTime() {
+    return false;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public boolean isCalculated() {
+    return result != null;
+  }
+
+  @Override
+  public Vector forceResult() {
+    return DoubleArrayVector.unsafe(computeResult());
+  }
+
+  /**
+   * Computes the whole triangle the first time it is needed, and keeps it in place of the rows
+   * and the most recently used column.
+   */
+  private double[] computeResult() {
+    double[] result = this.result;
+    if(result == null) {
+      result = ParallelDistance.compute(method, p, getRows(), numRows, numCols,
+          ParallelDistance.DEFAULT_THRESHOLD);
+      this.result = result;
+      this.rows = null;
+      this.column = null;
+    }
+    return result;
+  }
+
+  @Override
+  public void setResult(Vector result) {
+    this.result = ((DoubleArrayVector) result).toDoubleArrayUnsafe();
+  }
+}
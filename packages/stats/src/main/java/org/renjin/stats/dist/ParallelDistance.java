@@ -0,0 +1,201 @@
+package org.renjin.stats.dist;
+
+import org.renjin.parallel.KernelPool;
+import org.renjin.sexp.Vector;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the lower triangle of the distance matrix between the rows of a matrix, dividing
+ * the triangle into tiles that are computed in parallel in the {@link KernelPool}.
+ *
+ * <p>The matrix is first copied in row-major order, so that each distance reads two contiguous
+ * rows. Each tile covers a block of rows against a block of columns of the triangle, both small
+ * enough that the rows of the tile stay in the cache while it is computed.</p>
+ *
+ * <p>As in GNU R, the triangle is laid out in column-major order without its diagonal: the
+ * distances of row {@code j} to rows {@code j+1}, ..., {@code n-1} are stored together,
+ * followed by those of row {@code j+1}.</p>
+ */
+public class ParallelDistance {
+
+  /**
+   * The number of row-to-row comparisons, multiplied by the number of columns, above which
+   * {@code dist()} computes the triangle in parallel.
+   */
+  public static final long DEFAULT_THRESHOLD = Long.getLong("renjin.dist.parallel.threshold", 1L << 20);
+
+  /**
+   * The number of bytes of the rows of a tile, chosen to fit in a typical L1 cache.
+   */
+  private static final int TILE_BYTES = 32 * 1024;
+
+  private ParallelDistance() { }
+
+  /**
+   * @return the number of elements in the lower triangle, without diagonal, of
+   * an {@code n x n} matrix
+   */
+  public static long triangleLength(int n) {
+    return (long)n * (long)(n - 1) / 2L;
+  }
+
+  /**
+   * @return the index within the triangle of the distance between rows {@code j} and {@code j+1}
+   */
+  public static long columnStart(int n, int j) {
+    return (long)j * (long)n - (long)j * (long)(j + 1) / 2L;
+  }
+
+  /**
+   * @return the column of the triangle to which {@code index} belongs
+   */
+  public static int columnOf(int n, long index) {
+    // Invert columnStart() approximately, then correct for rounding
+    double b = n - 0.5;
+    int j = (int)(b - Math.sqrt(Math.max(0, b * b - 2.0 * index)));
+    j = Math.max(0, Math.min(n - 2, j));
+    while(j > 0 && columnStart(n, j) > index) {
+      j--;
+    }
+    while(j < n - 2 && columnStart(n, j + 1) <= index) {
+      j++;
+    }
+    return j;
+  }
+
+  /**
+   * Copies a column-major matrix to a new array in row-major order.
+   */
+  public static double[] rowMajor(Vector x, int numRows, int numCols) {
+    double[] rows = new double[numRows * numCols];
+    int index = 0;
+    for(int j=0;j!=numCols;++j) {
+      int k = j;
+      for(int i=0;i!=numRows;++i) {
+        rows[k] = x.getElementAsDouble(index++);
+        k += numCols;
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Computes the lower triangle of the distance matrix between the rows of {@code rows}.
+   *
+   * @param rows the elements of the matrix in row-major order
+   * @param numRows the number of rows of the matrix
+   * @param numCols the number of columns of the matrix
+   * @param threshold the number of comparisons, multiplied by the number of columns, above which
+   *                  the triangle is computed in parallel
+   */
+  public static double[] compute(DistanceMethod method, double p, double[] rows, int numRows, int numCols,
+                                 long threshold) {
+    double[] d = new double[(int) triangleLength(numRows)];
+    if(numRows < 2) {
+      return d;
+    }
+    TileTask task = new TileTask(method, p, rows, numRows, numCols, d, 0, numRows, 0, numRows);
+    if(triangleLength(numRows) * Math.max(1, numCols) < threshold) {
+      task.computeSequentially();
+    } else {
+      KernelPool.invoke(task);
+    }
+    return d;
+  }
+
+  /**
+   * Computes the distances of row {@code j} to each of the rows {@code j+1}, ..., {@code n-1}.
+   */
+  public static void computeColumn(DistanceMethod method, double p, double[] rows, int numRows, int numCols,
+                                   int j, double[] column) {
+    int jOffset = j * numCols;
+    int k = 0;
+    for(int i=j+1;i<numRows;++i) {
+      column[k++] = method.distance(rows, i * numCols, jOffset, numCols, p);
+    }
+  }
+
+  private static int tileRows(int numCols) {
+    return Math.max(8, Math.min(1024, TILE_BYTES / (16 * Math.max(1, numCols))));
+  }
+
+  /**
+   * Computes the distances between the rows {@code [i0, i1)} and the rows {@code [j0, j1)}
+   * that lie in the lower triangle, splitting the rectangle until it is the size of a tile.
+   */
+  private static class TileTask extends RecursiveAction {
+    private final DistanceMethod method;
+    private final double p;
+    private final double[] rows;
+    private final int numRows;
+    private final int numCols;
+    private final double[] d;
+    private final int j0;
+    private final int j1;
+    private final int i0;
+    private final int i1;
+
+    private TileTask(DistanceMethod method, double p, double[] rows, int numRows, int numCols,
+                     double[] d, int j0, int j1, int i0, int i1) {
+      this.method = method;
+      this.p = p;
+      this.rows = rows;
+      this.numRows = numRows;
+      this.numCols = numCols;
+      this.d = d;
+      this.j0 = j0;
+      this.j1 = j1;
+      this.i0 = i0;
+      this.i1 = i1;
+    }
+
+    @Override
+    protected void compute() {
+      if(i1 <= j0 + 1) {
+        // The rectangle lies entirely above the diagonal
+        return;
+      }
+      int tileRows = tileRows(numCols);
+      int width = j1 - j0;
+      int height = i1 - i0;
+      if(width <= tileRows && height <= tileRows) {
+        computeTile();
+      } else if(width >= height) {
+        int split = j0 + half(width, tileRows);
+        invokeAll(subTask(j0, split, i0, i1), subTask(split, j1, i0, i1));
+      } else {
+        int split = i0 + half(height, tileRows);
+        invokeAll(subTask(j0, j1, i0, split), subTask(j0, j1, split, i1));
+      }
+    }
+
+    private void computeSequentially() {
+      int tileRows = tileRows(numCols);
+      for(int j=j0;j<j1;j+=tileRows) {
+        for(int i=Math.max(i0, j);i<i1;i+=tileRows) {
+          subTask(j, Math.min(j1, j + tileRows), i, Math.min(i1, i + tileRows)).computeTile();
+        }
+      }
+    }
+
+    private int half(int length, int tileRows) {
+      int tiles = (length + tileRows - 1) / tileRows;
+      return (tiles / 2) * tileRows;
+    }
+
+    private TileTask subTask(int j0, int j1, int i0, int i1) {
+      return new TileTask(method, p, rows, numRows, numCols, d, j0, j1, i0, i1);
+    }
+
+    private void computeTile() {
+      for(int j=j0;j<j1;++j) {
+        int jOffset = j * numCols;
+        long start = columnStart(numRows, j) - j - 1;
+        for(int i=Math.max(i0, j + 1);i<i1;++i) {
+          d[(int)(start + i)] = method.distance(rows, i * numCols, jOffset, numCols, p);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package org.renjin.stats.dist;
+
+import org.junit.Test;
+import org.renjin.eval.EvalException;
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.DoubleVector;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+
+public class ParallelDistanceTest {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void columnOf() {
+    for(int n : new int[] { 2, 3, 10, 257 }) {
+      int index = 0;
+      for(int j=0;j<n-1;++j) {
+        assertThat(ParallelDistance.columnStart(n, j), equalTo((long)index));
+        for(int i=j+1;i<n;++i) {
+          assertThat(ParallelDistance.columnOf(n, index++), equalTo(j));
+        }
+      }
+      assertThat(ParallelDistance.triangleLength(n), equalTo((long)index));
+    }
+  }
+
+  @Test
+  public void smallMatrix() {
+    // rows (0, 0), (3, 4), (1, 0)
+    DoubleArrayVector x = new DoubleArrayVector(0, 3, 1, 0, 4, 0);
+
+    assertThat(triangle(x, 3, DistanceMethod.EUCLIDEAN).toDoubleArray(), equalTo(new double[] { 5, 1, Math.sqrt(20) }));
+    assertThat(triangle(x, 3, DistanceMethod.MANHATTAN).toDoubleArray(), equalTo(new double[] { 7, 1, 6 }));
+    assertThat(triangle(x, 3, DistanceMethod.MAXIMUM).toDoubleArray(), equalTo(new double[] { 4, 1, 4 }));
+    assertThat(triangle(x, 3, DistanceMethod.BINARY).toDoubleArray(), equalTo(new double[] { 1, 1, 0.5 }));
+    assertThat(triangle(x, 3, DistanceMethod.CANBERRA).toDoubleArray(), equalTo(new double[] { 2, 2, 1.5 }));
+  }
+
+  @Test
+  public void copiesAreComputedOnce() {
+    DistanceTriangle triangle = triangle(randomMatrix(40 * 3), 40, DistanceMethod.EUCLIDEAN);
+    assertThat(triangle.isCalculated(), equalTo(false));
+
+    double[] first = triangle.toDoubleArray();
+    assertThat(triangle.isCalculated(), equalTo(true));
+
+    // Each caller gets its own copy of the memoized result
+    double expected = first[0];
+    first[0] = -1;
+    assertThat(triangle.getElementAsDouble(0), equalTo(expected));
+    double[] second = triangle.toDoubleArray();
+    assertThat(second[0], equalTo(expected));
+    assertThat(second, not(sameInstance(first)));
+  }
+
+  @Test
+  public void missingValuesAreSkipped() {
+    // rows (1, NA, 3), (2, 5, 1)
+    DoubleArrayVector x = new DoubleArrayVector(1, 2, DoubleVector.NA, 5, 3, 1);
+    DistanceTriangle triangle = triangle(x, 2, DistanceMethod.MANHATTAN);
+    assertThat(triangle.getElementAsDouble(0), equalTo(3d * 3d / 2d));
+
+    DoubleArrayVector allMissing = new DoubleArrayVector(1, DoubleVector.NA);
+    assertThat(DoubleVector.isNA(triangle(allMissing, 2, DistanceMethod.EUCLIDEAN).getElementAsDouble(0)), equalTo(true));
+  }
+
+  @Test
+  public void parallelMatchesLazy() {
+    int[][] shapes = { {1, 3}, {2, 1}, {97, 30}, {300, 100}, {700, 3} };
+    for(int[] shape : shapes) {
+      int numRows = shape[0];
+      int numCols = shape[1];
+      DoubleArrayVector x = randomMatrix(numRows * numCols);
+
+      for(DistanceMethod method : DistanceMethod.values()) {
+        DistanceTriangle lazy = triangle(x, numRows, method);
+        double[] expected = new double[lazy.length()];
+        for(int i=0;i!=expected.length;++i) {
+          expected[i] = lazy.getElementAsDouble(i);
+        }
+        assertThat(triangle(x, numRows, method).toDoubleArray(), equalTo(expected));
+        assertThat(((DoubleVector) triangle(x, numRows, method).forceResult()).toDoubleArray(), equalTo(expected));
+
+        double[] rows = ParallelDistance.rowMajor(x, numRows, numCols);
+        assertThat(ParallelDistance.compute(method, 3, rows, numRows, numCols, 1), equalTo(expected));
+        assertThat(ParallelDistance.compute(method, 3, rows, numRows, numCols, Long.MAX_VALUE), equalTo(expected));
+      }
+    }
+  }
+
+  @Test
+  public void lazyMatchesNaive() {
+    int numRows = 40;
+    int numCols = 7;
+    DoubleArrayVector x = randomMatrix(numRows * numCols);
+    DistanceTriangle triangle = triangle(x, numRows, DistanceMethod.MINKOWSKI);
+
+    int index = 0;
+    for(int j=0;j<numRows;++j) {
+      for(int i=j+1;i<numRows;++i) {
+        double sum = 0;
+        for(int k=0;k<numCols;++k) {
+          sum += Math.pow(Math.abs(x.get(i + k * numRows) - x.get(j + k * numRows)), 3);
+        }
+        assertThat(triangle.getElementAsDouble(index++), closeTo(Math.pow(sum, 1d / 3d), 1e-12));
+      }
+    }
+  }
+
+  @Test(expected = EvalException.class)
+  public void invalidMinkowskiPower() {
+    new DistanceTriangle(new DoubleArrayVector(1, 2), 2, DistanceMethod.MINKOWSKI, -1, AttributeMap.EMPTY);
+  }
+
+  private DistanceTriangle triangle(DoubleArrayVector x, int numRows, DistanceMethod method) {
+    return new DistanceTriangle(x, numRows, method, 3, AttributeMap.EMPTY);
+  }
+
+  private DoubleArrayVector randomMatrix(int length) {
+    double[] values = new double[length];
+    for(int i=0;i!=length;++i) {
+      values[i] = random.nextInt(4) == 0 ? 0 : random.nextGaussian();
+    }
+    return new DoubleArrayVector(values);
+  }
+}
@@ -24,6 +24,10 @@ public class RenjinBindings implements Bindings {
     this.frame = frame;
   }
 
+  Frame getFrame() {
+    return frame;
+  }
+
   @Override
   public void clear() {
     frame.clear();
@@ -0,0 +1,65 @@
+package org.renjin.script;
+
+import org.renjin.sexp.ExpressionVector;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A script that has been parsed once by a {@link RenjinScriptEngine}, and can be
+ * evaluated any number of times without reparsing.
+ */
+public class RenjinCompiledScript extends CompiledScript {
+
+  private final RenjinScriptEngine engine;
+  private final ExpressionVector expressions;
+
+  RenjinCompiledScript(RenjinScriptEngine engine, ExpressionVector expressions) {
+    this.engine = engine;
+    this.expressions = expressions;
+  }
+
+  /**
+   * @return the parsed expressions of this script
+   */
+  public ExpressionVector getExpressions() {
+    return expressions;
+  }
+
+  /**
+   * Evaluates this script in the engine's global environment.
+   */
+  @Override
+  public Object eval() throws ScriptException {
+    return engine.eval(engine.getTopLevelContext(), expressions);
+  }
+
+  /**
+   * Evaluates this script in a new environment whose variables are the given {@code bindings}. 
+   * Variables assigned by the script are written back to {@code bindings}.
+   */
+  @Override
+  public Object eval(Bindings bindings) throws ScriptException {
+    if(bindings == null) {
+      return eval();
+    }
+    return engine.eval(expressions, bindings);
+  }
+
+  @Override
+  public Object eval(ScriptContext context) throws ScriptException {
+    if(context instanceof RenjinScriptContext) {
+      return engine.eval(engine.unwrapContext(context), expressions);
+    } else {
+      return eval(context.getBindings(ScriptContext.ENGINE_SCOPE));
+    }
+  }
+
+  @Override
+  public ScriptEngine getEngine() {
+    return engine;
+  }
+}
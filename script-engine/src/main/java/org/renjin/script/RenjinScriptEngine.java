@@ -1,5 +1,6 @@
 package org.renjin.script;
 
+import com.google.common.collect.Maps;
 import com.google.common.io.CharSource;
 import org.renjin.eval.Context;
 import org.renjin.eval.EvalException;
@@ -17,8 +18,9 @@ import java.io.*;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Map;
 
-public class RenjinScriptEngine implements ScriptEngine, Invocable {
+public class RenjinScriptEngine implements ScriptEngine, Invocable, Compilable {
 
   private final RenjinScriptEngineFactory factory;
 
@@ -94,19 +96,21 @@ public class RenjinScriptEngine implements ScriptEngine, Invocable {
 
 
   @Override
-  public Object eval(Reader reader, Bindings n) throws ScriptException {
-    throw new UnsupportedOperationException();
+  public Object eval(Reader reader, Bindings bindings) throws ScriptException {
+    String filename = getFilenameFromContext(scriptContext, UNKNOWN);
+    return eval(parse(reader, filename), bindings);
   }
 
   @Override
-  public Object eval(String script, Bindings n) throws ScriptException {
-    throw new UnsupportedOperationException("nyi");
+  public Object eval(String script, Bindings bindings) throws ScriptException {
+    String filename = getFilenameFromContext(scriptContext, INLINE_STRING);
+    return eval(parse(script, filename), bindings);
   }
 
   @Override
   public Object eval(String script) throws ScriptException {
     String filename = getFilenameFromContext(scriptContext,INLINE_STRING);
-    return eval(topLevelContext, RParser.parseSource(script + "\n", filename));
+    return eval(topLevelContext, parse(script, filename));
   }
   
   @Override
@@ -114,40 +118,104 @@ public class RenjinScriptEngine implements ScriptEngine, Invocable {
       throws ScriptException {
     //TODO: agreement to bind name.
     String filename = getFilenameFromContext(scriptContext,INLINE_STRING);
-    SEXP source = RParser.parseSource(script + "\n", filename);
-    return eval(unwrapContext(scriptContext), source);
+    return eval(unwrapContext(scriptContext), parse(script, filename));
   }
 
   @Override
   public Object eval(Reader reader) throws ScriptException {
     String filename = getFilenameFromContext(scriptContext,INLINE_STRING);
-    return eval(reader, topLevelContext, filename);
+    return eval(topLevelContext, parse(reader, filename));
   }
   
   @Override
   public Object eval(final Reader reader, ScriptContext scriptContext)
       throws ScriptException {
     String filename = getFilenameFromContext(scriptContext,UNKNOWN);
-    return eval(reader, unwrapContext(scriptContext), filename);
+    return eval(unwrapContext(scriptContext), parse(reader, filename));
   }
 
-  private Object eval(Reader reader, Context context, String filename) throws ScriptException {
-    SEXP source;
+  /**
+   * Parses the script once so that it can be evaluated repeatedly, against
+   * this engine's context or against different {@code Bindings}, without reparsing.
+   */
+  @Override
+  public RenjinCompiledScript compile(String script) throws ScriptException {
+    String filename = getFilenameFromContext(scriptContext,INLINE_STRING);
+    return new RenjinCompiledScript(this, parse(script, filename));
+  }
+
+  @Override
+  public RenjinCompiledScript compile(Reader reader) throws ScriptException {
+    String filename = getFilenameFromContext(scriptContext,UNKNOWN);
+    return new RenjinCompiledScript(this, parse(reader, filename));
+  }
+
+  private ExpressionVector parse(String script, String filename) {
+    return RParser.parseSource(script + "\n", filename);
+  }
+
+  private ExpressionVector parse(Reader reader, String filename) throws ScriptException {
     try {
       // terminate with '\n'
       CharSource terminated = CharSource.concat(
           newReaderSupplier(reader),
           CharSource.wrap("\n"));
-      source = RParser.parseSource(terminated, new CHARSEXP(filename) );
+      return RParser.parseSource(terminated, new CHARSEXP(filename) );
     } catch (IOException e) {
       throw new ScriptException(e);
     }
-    return eval(context, source);
   }
   
-  private Object eval(Context context, SEXP source) {
+  Object eval(Context context, SEXP source) {
+    return eval(context, source, context.getEnvironment());
+  }
+
+  /**
+   * Evaluates {@code source} in a new environment, enclosed by the global environment,
+   * whose variables are those of the given {@code bindings}.
+   *
+   * <p>If the {@code bindings} are not backed by a Renjin environment, they are copied
+   * to one, and when the script completes, variables assigned by the script are written back
+   * to the {@code bindings} as R values, and variables it removed are removed from them.
+   * Variables the script did not change keep their original Java values. If the script
+   * fails, the {@code bindings} are left unchanged.</p>
+   */
+  Object eval(SEXP source, Bindings bindings) {
+    if(bindings instanceof RenjinBindings) {
+      Frame frame = ((RenjinBindings) bindings).getFrame();
+      return eval(topLevelContext, source, 
+          Environment.createChildEnvironment(topLevelContext.getGlobalEnvironment(), frame));
+    }
+
+    RenjinBindings copy = new RenjinBindings(new HashFrame());
+    copy.putAll(bindings);
+
+    Frame frame = copy.getFrame();
+    Map<Symbol, SEXP> initialValues = Maps.newHashMap();
+    for(Symbol symbol : frame.getSymbols()) {
+      initialValues.put(symbol, frame.getVariable(symbol));
+    }
+
+    Object result = eval(topLevelContext, source,
+        Environment.createChildEnvironment(topLevelContext.getGlobalEnvironment(), frame));
+
+    for(Symbol symbol : initialValues.keySet()) {
+      if(frame.getVariable(symbol) == Symbol.UNBOUND_VALUE) {
+        bindings.remove(symbol.getPrintName());
+      }
+    }
+    for(Symbol symbol : frame.getSymbols()) {
+      SEXP value = frame.getVariable(symbol);
+      if(value != initialValues.get(symbol)) {
+        bindings.put(symbol.getPrintName(), value);
+      }
+    }
+    return result;
+  }
+
+  private Object eval(Context context, SEXP source, Environment rho) {
     try {
-      return context.evaluate( source, context.getEnvironment());
+      return context.evaluate(source, rho);
     } catch(BreakException e) {
       throw new EvalException("no loop for break");
     } catch(NextException e) {
@@ -174,7 +242,7 @@ public class RenjinScriptEngine implements ScriptEngine, Invocable {
     };
   }
 
-  private Context unwrapContext(ScriptContext scriptContext) {
+  Context unwrapContext(ScriptContext scriptContext) {
     return ((RenjinScriptContext)scriptContext).getContext();
   }
 
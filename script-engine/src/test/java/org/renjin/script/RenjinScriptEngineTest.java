@@ -3,6 +3,7 @@ package org.renjin.script;
 import org.hamcrest.CoreMatchers;
 import org.junit.Before;
 import org.junit.Test;
+import org.renjin.eval.EvalException;
 import org.renjin.sexp.DoubleArrayVector;
 import org.renjin.sexp.DoubleVector;
 import org.renjin.sexp.IntArrayVector;
@@ -13,6 +14,7 @@ import java.util.HashMap;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 
 public class RenjinScriptEngineTest {
@@ -133,4 +135,60 @@ public class RenjinScriptEngineTest {
     assertThat(engine.eval("is.null(x)"), CoreMatchers.<Object>equalTo(LogicalVector.TRUE));
   }
   
+  @Test
+  public void compiledScriptIsEvaluatedRepeatedly() throws ScriptException {
+    CompiledScript script = ((Compilable) engine).compile("counter <- counter + 1");
+    engine.eval("counter <- 0");
+
+    script.eval();
+    script.eval();
+
+    assertThat(engine.eval("counter"), CoreMatchers.<Object>equalTo(new DoubleArrayVector(2)));
+  }
+
+  @Test
+  public void compiledScriptWithBindings() throws ScriptException {
+    CompiledScript script = ((Compilable) engine).compile("y <- x * 2; y");
+
+    Bindings first = engine.createBindings();
+    first.put("x", 21);
+    assertThat(script.eval(first), CoreMatchers.<Object>equalTo(new DoubleArrayVector(42)));
+    assertThat(first.get("y"), CoreMatchers.<Object>equalTo(new DoubleArrayVector(42)));
+
+    Bindings second = new SimpleBindings();
+    second.put("x", 5);
+    assertThat(script.eval(second), CoreMatchers.<Object>equalTo(new DoubleArrayVector(10)));
+    assertThat(second.get("y"), CoreMatchers.<Object>equalTo(new DoubleArrayVector(10)));
+
+    // bindings must not leak into the engine's global environment
+    assertThat(engine.eval("exists('y')"), CoreMatchers.<Object>equalTo(LogicalVector.FALSE));
+  }
+
+  @Test
+  public void evalWithBindings() throws ScriptException {
+    Bindings bindings = engine.createBindings();
+    bindings.put("x", 16);
+    assertThat(engine.eval("sqrt(x)", bindings), CoreMatchers.<Object>equalTo(new DoubleArrayVector(4)));
+  }
+
+  @Test
+  public void evalWithSimpleBindings() throws ScriptException {
+    Bindings bindings = new SimpleBindings();
+    bindings.put("x", 5);
+    bindings.put("z", "unused");
+    engine.eval("y <- x * 2; rm(z)", bindings);
+
+    assertThat(bindings.get("x"), CoreMatchers.<Object>equalTo(5));
+    assertThat(bindings.get("y"), CoreMatchers.<Object>equalTo(new DoubleArrayVector(10)));
+    assertThat(bindings.containsKey("z"), equalTo(false));
+
+    try {
+      engine.eval("x <- 6; stop('failed')", bindings);
+      fail("expected the script to fail");
+    } catch(EvalException e) {
+      // expected
+    }
+    assertThat(bindings.get("x"), CoreMatchers.<Object>equalTo(5));
+  }
+
 }
@@ -0,0 +1,90 @@
+package org.renjin.gnur;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.renjin.primitives.sequence.DoubleSequence;
+import org.renjin.primitives.sequence.IntSequence;
+import org.renjin.primitives.vector.MemoizedComputation;
+import org.renjin.sexp.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the arrays that {@code REAL()} and {@code INTEGER()} return to native code.
+ *
+ * <p>Array-backed vectors and sequences hand out their own arrays, and memoized computations
+ * the arrays of their results, so values written to these arrays by native code are also seen
+ * from R. Any other vector is copied to an array the first time native code asks for it, and the
+ * copy is kept for as long as the vector is reachable, so that code calling {@code REAL(x)[i]}
+ * in a loop copies {@code x} only once. These copies may only be read: as in GNU R, native code
+ * must duplicate such a vector before writing to it.</p>
+ */
+public class VectorArrays {
+
+  private static final Cache<SEXP, double[]> DOUBLE_ARRAYS = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build();
+
+  private static final Cache<SEXP, int[]> INT_ARRAYS = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build();
+
+  private static final AtomicLong copyCount = new AtomicLong();
+
+  private VectorArrays() { }
+
+  public static double[] doubleArray(DoubleVector x) {
+    if(x instanceof DoubleArrayVector) {
+      return ((DoubleArrayVector) x).toDoubleArrayUnsafe();
+    }
+    if(x instanceof DoubleSequence) {
+      return ((DoubleSequence) x).toDoubleArrayUnsafe();
+    }
+    double[] array = DOUBLE_ARRAYS.getIfPresent(x);
+    if(array == null) {
+      AtomicVector source = x;
+      if(x instanceof MemoizedComputation) {
+        source = (AtomicVector) ((MemoizedComputation) x).forceResult();
+      }
+      if(source instanceof DoubleArrayVector) {
+        array = ((DoubleArrayVector) source).toDoubleArrayUnsafe();
+      } else {
+        array = source.toDoubleArray();
+        copyCount.incrementAndGet();
+      }
+      DOUBLE_ARRAYS.put(x, array);
+    }
+    return array;
+  }
+
+  public static int[] intArray(IntVector x) {
+    if(x instanceof IntArrayVector) {
+      return ((IntArrayVector) x).toIntArrayUnsafe();
+    }
+    if(x instanceof IntSequence) {
+      return ((IntSequence) x).toIntArrayUnsafe();
+    }
+    int[] array = INT_ARRAYS.getIfPresent(x);
+    if(array == null) {
+      AtomicVector source = x;
+      if(x instanceof MemoizedComputation) {
+        source = (AtomicVector) ((MemoizedComputation) x).forceResult();
+      }
+      if(source instanceof IntArrayVector) {
+        array = ((IntArrayVector) source).toIntArrayUnsafe();
+      } else {
+        array = source.toIntArray();
+        copyCount.incrementAndGet();
+      }
+      INT_ARRAYS.put(x, array);
+    }
+    return array;
+  }
+
+  /**
+   * @return the number of vectors that have been copied to arrays for native code
+   */
+  public static long getCopyCount() {
+    return copyCount.get();
+  }
+}
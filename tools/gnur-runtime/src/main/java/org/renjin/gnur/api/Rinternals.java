@@ -3,6 +3,7 @@ package org.renjin.gnur.api;
 
 import org.renjin.eval.EvalException;
 import org.renjin.gcc.runtime.*;
+import org.renjin.gnur.VectorArrays;
 import org.renjin.primitives.Vectors;
 import org.renjin.sexp.*;
 
@@ -252,11 +253,10 @@ public final class Rinternals {
   }
 
   public static IntPtr INTEGER(SEXP x) {
-    if(x instanceof IntArrayVector) {
-      return new IntPtr(((IntArrayVector) x).toIntArrayUnsafe());
-    } else if(x instanceof IntVector) {
-      // TODO: cache arrays for the case of repeated INTEGER() calls?
-      return new IntPtr(((IntVector) x).toIntArray());
+    if(x instanceof IntVector) {
+      // Array-backed vectors and sequences hand out their own arrays, other
+      // vectors are copied once and the copy is returned for later calls
+      return new IntPtr(VectorArrays.intArray((IntVector) x));
     } else {
       throw new EvalException("INTEGER(): expected integer vector, found %s", x.getTypeName());
     }
@@ -275,9 +275,9 @@ public final class Rinternals {
       // this contract.
       return new DoublePtr(((DoubleArrayVector) x).toDoubleArrayUnsafe());
     } else if(x instanceof DoubleVector) {
-      // Return a copy of this vector as an array.
-      // TODO: Cache arrays for the case of frequent REAL() calls?
-      return new DoublePtr(((DoubleVector) x).toDoubleArray());
+      // Return the array of a sequence or memoized result, or a copy of this vector,
+      // which is kept for later REAL() calls
+      return new DoublePtr(VectorArrays.doubleArray((DoubleVector) x));
     } else {
       throw new EvalException("REAL(): expected numeric vector, found %s", x.getTypeName());
     }
@@ -0,0 +1,146 @@
+package org.renjin.gnur;
+
+import org.junit.Test;
+import org.renjin.gnur.api.Rinternals;
+import org.renjin.primitives.sequence.DoubleSequence;
+import org.renjin.primitives.sequence.IntSequence;
+import org.renjin.primitives.sequence.RepDoubleVector;
+import org.renjin.primitives.vector.MemoizedDoubleVector;
+import org.renjin.sexp.*;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class VectorArraysTest {
+
+  @Test
+  public void arrayVectorsHandOutTheirBackingArrays() {
+    DoubleArrayVector x = new DoubleArrayVector(1, 2, 3);
+    IntArrayVector y = new IntArrayVector(4, 5, 6);
+    long copies = VectorArrays.getCopyCount();
+
+    assertThat(Rinternals.REAL(x).array, sameInstance(x.toDoubleArrayUnsafe()));
+    assertThat(Rinternals.INTEGER(y).array, sameInstance(y.toIntArrayUnsafe()));
+    assertThat(VectorArrays.getCopyCount(), equalTo(copies));
+  }
+
+  @Test
+  public void sequencesAreMaterializedOnce() {
+    IntSequence x = new IntSequence(1, 1, 100);
+    DoubleSequence y = new DoubleSequence(0.5, 0.25, 100);
+    long copies = VectorArrays.getCopyCount();
+
+    int[] xArray = Rinternals.INTEGER(x).array;
+    assertThat(Rinternals.INTEGER(x).array, sameInstance(xArray));
+    assertThat(xArray[99], equalTo(100));
+
+    double[] yArray = Rinternals.REAL(y).array;
+    assertThat(Rinternals.REAL(y).array, sameInstance(yArray));
+    assertThat(yArray[2], equalTo(1.0));
+
+    assertThat(VectorArrays.getCopyCount(), equalTo(copies));
+  }
+
+  @Test
+  public void deferredVectorsAreCopiedOnce() {
+    RepDoubleVector x = new RepDoubleVector(new DoubleArrayVector(1, 2), 1000, 1, AttributeMap.EMPTY);
+    long copies = VectorArrays.getCopyCount();
+
+    double[] array = Rinternals.REAL(x).array;
+    for (int i = 0; i < 10; i++) {
+      assertThat(Rinternals.REAL(x).array, sameInstance(array));
+    }
+    assertThat(array[999], equalTo(2.0));
+    assertThat(VectorArrays.getCopyCount(), equalTo(copies + 1));
+  }
+
+  @Test
+  public void memoizedResultsAreShared() {
+    DoubleArrayVector result = new DoubleArrayVector(2, 4, 6);
+    Doubled x = new Doubled(new DoubleArrayVector(1, 2, 3), result);
+    long copies = VectorArrays.getCopyCount();
+
+    assertThat(Rinternals.REAL(x).array, sameInstance(result.toDoubleArrayUnsafe()));
+    assertThat(Rinternals.REAL(x).array, sameInstance(result.toDoubleArrayUnsafe()));
+    assertThat(VectorArrays.getCopyCount(), equalTo(copies));
+  }
+
+  @Test
+  public void writesToSequencesAreSeenFromR() {
+    IntSequence ints = new IntSequence(1, 1, 10);
+    Rinternals.INTEGER(ints).array[0] = 42;
+    Rinternals.INTEGER(ints).array[1] = IntVector.NA;
+    assertThat(ints.getElementAsInt(0), equalTo(42));
+    assertThat(ints.isElementNA(1), equalTo(true));
+    assertThat(ints.getElementAsInt(2), equalTo(3));
+
+    DoubleSequence doubles = new DoubleSequence(1, 1, 10);
+    Rinternals.REAL(doubles).array[0] = 42;
+    assertThat(doubles.getElementAsDouble(0), equalTo(42.0));
+    assertThat(doubles.getElementAsDouble(1), equalTo(2.0));
+
+    // Copies made after the write keep the written values
+    IntVector named = (IntVector) ints.setAttribute(Symbols.NAMES, names(10));
+    assertThat(named.getElementAsInt(0), equalTo(42));
+    assertThat(Rinternals.INTEGER(named).array[0], equalTo(42));
+  }
+
+  @Test
+  public void writesDoNotChangeVectorsSharingStorage() {
+    // Copies with new attributes share the original's values, but not the array handed to native code
+    IntSequence sequence = new IntSequence(1, 1, 10);
+    IntVector namedSequence = (IntVector) sequence.setAttribute(Symbols.NAMES, names(10));
+    Rinternals.INTEGER(sequence).array[0] = 42;
+    assertThat(sequence.getElementAsInt(0), equalTo(42));
+    assertThat(namedSequence.getElementAsInt(0), equalTo(1));
+    assertThat(Rinternals.INTEGER(namedSequence).array[0], equalTo(1));
+
+    // Native code must duplicate a deferred vector before writing to it
+    DoubleArrayVector source = new DoubleArrayVector(1, 2);
+    RepDoubleVector rep = new RepDoubleVector(source, 10, 1, AttributeMap.EMPTY);
+    double[] shared = Rinternals.REAL(rep).array;
+    SEXP copy = Rinternals.Rf_duplicate(rep);
+    assertThat(Rinternals.REAL(copy).array, not(sameInstance(shared)));
+    Rinternals.REAL(copy).array[0] = 42;
+    assertThat(((DoubleVector) copy).getElementAsDouble(0), equalTo(42.0));
+    assertThat(Rinternals.REAL(copy).array[0], equalTo(42.0));
+    assertThat(rep.getElementAsDouble(0), equalTo(1.0));
+    assertThat(shared[0], equalTo(1.0));
+    assertThat(source.getElementAsDouble(0), equalTo(1.0));
+  }
+
+  private static StringVector names(int length) {
+    String[] names = new String[length];
+    for (int i = 0; i < length; i++) {
+      names[i] = "x" + i;
+    }
+    return new StringArrayVector(names);
+  }
+
+  private static class Doubled extends MemoizedDoubleVector {
+    private final DoubleVector result;
+
+    public Doubled(DoubleVector operand, DoubleVector result) {
+      super(new Vector[] { operand }, operand.length(), AttributeMap.EMPTY);
+      this.result = result;
+    }
+
+    @Override
+    public Vector forceResult() {
+      setResult(result);
+      return result;
+    }
+
+    @Override
+    public String getComputationName() {
+      return "doubled";
+    }
+
+    @Override
+    public boolean isConstantAccessTime() {
+      return true;
+    }
+  }
+}